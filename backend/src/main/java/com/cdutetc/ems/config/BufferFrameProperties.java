@@ -0,0 +1,33 @@
+package com.cdutetc.ems.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 缓冲队列打包帧配置
+ * 启用后Redis缓冲队列的一个元素是一帧二进制数据（MonitoringDataFrameCodec），包含多条读数
+ *
+ * @author EMS Team
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.ems.buffer.frame")
+public class BufferFrameProperties {
+
+    /**
+     * 是否启用打包帧
+     * 关闭时每条读数一个JSON元素（与旧版本行为一致）；两种元素可以共存，切换无需清空队列
+     */
+    private boolean enabled = false;
+
+    /**
+     * 每帧最多包含的读数条数
+     */
+    private int maxReadings = 200;
+
+    /**
+     * 帧体是否Deflate压缩
+     */
+    private boolean compress = true;
+}
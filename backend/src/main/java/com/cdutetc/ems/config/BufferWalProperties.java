@@ -0,0 +1,61 @@
+package com.cdutetc.ems.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * 监测数据本地预写日志（WAL）配置
+ * Redis不可用时监测数据写入本地分段日志，由MonitoringDataWal重放到MySQL
+ *
+ * @author EMS Team
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.ems.buffer.wal")
+public class BufferWalProperties {
+
+    /**
+     * 是否启用本地WAL
+     * 关闭时Redis写入失败直接抛出异常（MQTT消息不确认，等待重新投递）
+     */
+    private boolean enabled = true;
+
+    /**
+     * 缓冲模式
+     */
+    private Mode mode = Mode.FALLBACK;
+
+    /**
+     * 日志目录
+     */
+    private String dir = "./data/wal";
+
+    /**
+     * 单个分段文件大小，写满后切换到新分段
+     */
+    private DataSize segmentSize = DataSize.ofMegabytes(64);
+
+    /**
+     * 重放间隔（毫秒），同时也是日志刷盘间隔
+     */
+    private long replayIntervalMs = 1000;
+
+    /**
+     * 每次重放写入MySQL的最大条数
+     */
+    private int replayBatchSize = 1000;
+
+    /**
+     * Redis写入失败后直接写WAL的时长（毫秒），之后再尝试Redis
+     */
+    private long redisRetryIntervalMs = 5000;
+
+    public enum Mode {
+        /** Redis不可用时写入WAL（默认） */
+        FALLBACK,
+        /** 始终写入WAL、不使用Redis缓冲队列（单节点小规模部署） */
+        PRIMARY
+    }
+}
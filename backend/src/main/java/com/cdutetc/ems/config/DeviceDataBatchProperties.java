@@ -0,0 +1,36 @@
+package com.cdutetc.ems.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * HTTP批量数据接收配置
+ * 控制/device-data/{type}/batch的分块大小、并发请求数和实时读数范围
+ *
+ * @author EMS Team
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.ems.device-data.batch")
+public class DeviceDataBatchProperties {
+
+    /**
+     * 每次写入缓冲区的读数条数
+     * 请求体流式解析，内存中最多保留一个分块
+     */
+    private int chunkSize = 500;
+
+    /**
+     * 同时处理的批量请求数上限
+     * 超出时直接返回429，避免大批量导入占满Servlet线程池
+     */
+    private int maxConcurrentRequests = 2;
+
+    /**
+     * 实时读数的时间范围（秒）
+     * 批量读数中采集时间距今不超过该值的视为实时数据，更新在线状态、上报并推送和检查告警；
+     * 更早的读数视为历史补传，只写入缓冲区
+     */
+    private long realtimeWindowSeconds = 600;
+}
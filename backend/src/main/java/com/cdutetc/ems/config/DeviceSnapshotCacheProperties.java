@@ -0,0 +1,34 @@
+package com.cdutetc.ems.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 设备快照本地缓存配置
+ * 用于MQTT接收热路径上的设备校验，减少Redis访问
+ *
+ * @author EMS Team
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.ems.device-snapshot")
+public class DeviceSnapshotCacheProperties {
+
+    /**
+     * 是否启用本地缓存
+     * 关闭后每次校验都经过DeviceCacheService（Redis）
+     */
+    private boolean enabled = true;
+
+    /**
+     * 缓存过期时间（秒）
+     * 作为Redis失效通知丢失时的兜底，默认60秒
+     */
+    private long ttlSeconds = 60;
+
+    /**
+     * 最大缓存设备数
+     */
+    private int maxSize = 10000;
+}
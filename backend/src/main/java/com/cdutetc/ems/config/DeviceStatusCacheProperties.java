@@ -0,0 +1,28 @@
+package com.cdutetc.ems.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 设备状态缓存写入配置
+ *
+ * @author EMS Team
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.ems.device-status")
+public class DeviceStatusCacheProperties {
+
+    /**
+     * 是否启用微批写入
+     * 启用后状态更新先在内存中按设备合并，每batchIntervalMs毫秒通过一个Pipeline统一写入Redis
+     * 注意：启用后读取到的状态最多滞后一个批次间隔
+     */
+    private boolean batchEnabled = false;
+
+    /**
+     * 微批写入间隔（毫秒）
+     */
+    private long batchIntervalMs = 5;
+}
@@ -0,0 +1,28 @@
+package com.cdutetc.ems.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 监测数据导出配置（/radiation-data/export、/environment-data/export）
+ *
+ * @author EMS Team
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.ems.export")
+public class MonitoringDataExportProperties {
+
+    /**
+     * JDBC每次从数据库取回的行数
+     * MySQL连接串未开启useCursorFetch时改为逐行流式读取（驱动不支持按批游标取数）
+     */
+    private int fetchSize = 1000;
+
+    /**
+     * 同时进行的导出数上限
+     * 每个导出占用一个数据库连接直到输出完成，超出时直接返回429
+     */
+    private int maxConcurrentExports = 2;
+}
@@ -0,0 +1,78 @@
+package com.cdutetc.ems.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 监测数据批量刷新配置
+ * 控制MonitoringDataFlushScheduler何时刷新Redis缓冲队列、每个刷新周期取出多少数据
+ *
+ * @author EMS Team
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.ems.buffer.flush")
+public class MonitoringDataFlushProperties {
+
+    /**
+     * 每个队列每次取出的最大条数
+     * 整批原子移入分片的处理中列表，写入失败不会丢失，可按写入能力调大
+     */
+    private int batchSize = 1000;
+
+    /**
+     * 常规刷新间隔（毫秒）
+     */
+    private long intervalMs = 60000;
+
+    /**
+     * 检查队列积压的间隔（毫秒）
+     */
+    private long checkIntervalMs = 1000;
+
+    /**
+     * 高水位：任一队列长度达到该值时不等常规间隔，立即刷新
+     */
+    private long highWaterMark = 5000;
+
+    /**
+     * 积压阈值：一个刷新周期内，队列剩余长度大于该值时继续取下一批（0 = 取空为止）
+     */
+    private long backlogThreshold = 0;
+
+    /**
+     * 单个刷新周期的最长时间（毫秒），超出后剩余积压留到下一周期
+     */
+    private long maxCycleMs = 5000;
+
+    /**
+     * 处理中列表写入失败的最大重放次数，超出后移入死信列表（buffer:dead:{queue}）
+     */
+    private int maxReplayAttempts = 3;
+
+    /**
+     * 缓冲队列分片数
+     * 读数按deviceCode哈希写入buffer:queue:{queue}:{shard}（分片0沿用buffer:queue:{queue}），
+     * 所有节点必须一致；调小分片数前需先取空多出的分片
+     */
+    private int shards = 8;
+
+    /**
+     * 每个节点的刷新线程数，各线程通过租约认领分片并行刷新
+     */
+    private int workers = 2;
+
+    /**
+     * 分片租约时长（秒）
+     * 每取一批续约一次；持有租约的节点失效后，租约过期即由其他节点接管该分片（包括处理中列表）。
+     * 需大于单批写入MySQL的最长耗时，否则可能被其他节点接管导致重复写入
+     */
+    private long leaseSeconds = 30;
+
+    /**
+     * 已写入批次标识的保留时间（小时）
+     * 重放处理中列表或WAL时按批次标识跳过已提交的批次，需大于批次可能等待重放的最长时间
+     */
+    private long appliedBatchRetentionHours = 168;
+}
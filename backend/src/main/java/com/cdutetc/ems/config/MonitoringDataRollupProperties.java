@@ -0,0 +1,37 @@
+package com.cdutetc.ems.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 监测数据汇总配置
+ * 控制写入时是否更新汇总表、统计接口是否从汇总表查询，以及分钟桶保留时长和历史数据补算
+ *
+ * @author EMS Team
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.ems.rollup")
+public class MonitoringDataRollupProperties {
+
+    /**
+     * 是否启用汇总（关闭后统计接口直接查询原始数据）
+     */
+    private boolean enabled = true;
+
+    /**
+     * 分钟桶保留天数（每台设备每天最多1440行，更早的范围两端改查原始数据）
+     */
+    private int minuteRetentionDays = 7;
+
+    /**
+     * 历史数据补算间隔（毫秒），补算完成前统计接口对启用汇总之前的时间段查询原始数据
+     */
+    private long backfillIntervalMs = 5000;
+
+    /**
+     * 每次补算的设备数
+     */
+    private int backfillDevicesPerRun = 10;
+}
@@ -0,0 +1,27 @@
+package com.cdutetc.ems.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 监测数据降采样曲线配置（/radiation-data/series、/environment-data/series）
+ * 限制返回点数和每次请求读取的行数，使响应大小和查询耗时与时间范围长短无关
+ *
+ * @author EMS Team
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.ems.series")
+public class MonitoringDataSeriesProperties {
+
+    /**
+     * 单条曲线最多返回的点数（请求的points超出时按此截断）
+     */
+    private int maxPoints = 2000;
+
+    /**
+     * 每次请求最多读取的原始行数或汇总桶数，超出时改用更粗的汇总分辨率
+     */
+    private int maxSourceRows = 20000;
+}
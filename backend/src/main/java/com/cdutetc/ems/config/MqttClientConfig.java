@@ -1,6 +1,6 @@
 package com.cdutetc.ems.config;
 
-import com.cdutetc.ems.mqtt.MqttMessageListener;
+import com.cdutetc.ems.mqtt.MqttClientCallbackFactory;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.eclipse.paho.client.mqttv3.*;
@@ -9,12 +9,20 @@ import org.springframework.context.SmartLifecycle;
 import org.springframework.stereotype.Component;
 
 import jakarta.annotation.PostConstruct;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 
 /**
  * MQTT客户端配置类
  * 负责MQTT连接的初始化、管理和维护
+ *
+ * 集群部署:
+ * - 客户端ID按 {clientId}-{nodeId}-{index} 生成，多个后端节点互不挤占
+ * - 启用共享订阅（$share/{group}/...）时，Broker在所有节点的所有连接间分摊设备消息
+ * - 每个节点可建立多个连接（connections），提高单节点接收并行度
+ * - 手动确认（manualAck）时每个连接绑定自己的回调，消息写入缓冲区后由接收它的连接发送PUBACK
  */
 @Slf4j
 @Component
@@ -22,9 +30,10 @@ import java.util.concurrent.TimeUnit;
 public class MqttClientConfig implements SmartLifecycle {
 
     private final MqttConfig mqttConfig;
-    private final MqttMessageListener messageListener;
+    private final MqttClientCallbackFactory callbackFactory;  // MqttMessageListener
 
-    private MqttClient mqttClient;
+    private final List<MqttClient> mqttClients = new CopyOnWriteArrayList<>();
+    private String nodeId;
     private volatile boolean isRunning = false;
     private volatile boolean isConnected = false;
 
@@ -78,26 +87,43 @@ public class MqttClientConfig implements SmartLifecycle {
     }
 
     /**
-     * 初始化MQTT客户端
+     * 初始化MQTT客户端（每个节点connections个连接）
      */
-    private void initializeMqttClient() throws MqttException {
+    void initializeMqttClient() throws MqttException {
         log.debug("🔧 开始初始化MQTT客户端...");
 
+        // 重新初始化前关闭旧连接，避免同一客户端ID重复连接
+        closeClients();
+
+        if (nodeId == null) {
+            nodeId = mqttConfig.resolveNodeId();
+        }
+        int connections = mqttConfig.getEffectiveConnections();
+        if (connections < mqttConfig.getConnections()) {
+            log.warn("⚠️ 未启用共享订阅，每个节点只能使用1个MQTT连接（配置值: {}）", mqttConfig.getConnections());
+        }
+
         MqttConnectOptions options = createConnectionOptions();
-        String clientId = mqttConfig.getClientId();
 
-        // 创建MQTT客户端
-        mqttClient = new MqttClient(mqttConfig.getBrokerUrl(), clientId, new MemoryPersistence());
-        mqttClient.setCallback(messageListener);
+        for (int i = 0; i < connections; i++) {
+            String clientId = mqttConfig.getClientId(nodeId, i);
+
+            // 创建MQTT客户端
+            MqttClient client = new MqttClient(mqttConfig.getBrokerUrl(), clientId, new MemoryPersistence());
+            client.setManualAcks(mqttConfig.isManualAck());
+            client.setCallback(callbackFactory.callbackFor(client));
+            mqttClients.add(client);
 
-        // 连接到MQTT Broker
-        mqttClient.connect(options);
-        isConnected = mqttClient.isConnected();
+            // 连接到MQTT Broker并订阅主题
+            client.connect(options);
+            subscribeToTopics(client);
+            log.info("🔗 MQTT连接已建立: clientId={}", clientId);
+        }
+
+        isConnected = allConnected();
 
         if (isConnected) {
-            // 订阅主题
-            subscribeToTopics();
-            log.info("🎯 MQTT连接状态验证通过，开始接收消息");
+            log.info("🎯 MQTT连接状态验证通过，开始接收消息（节点: {}, 连接数: {}）", nodeId, connections);
         } else {
             log.warn("⚠️ MQTT连接状态异常，将在下次检查时重试");
         }
@@ -132,14 +158,14 @@ public class MqttClientConfig implements SmartLifecycle {
     /**
      * 订阅设备数据主题
      */
-    private void subscribeToTopics() {
+    private void subscribeToTopics(MqttClient client) {
         try {
             String[] topics = mqttConfig.getSubscribeTopics();
             int[] qos = mqttConfig.getSubscribeQos();
 
-            mqttClient.subscribe(topics, qos);
+            client.subscribe(topics, qos);
 
-            log.info("📡 成功订阅MQTT主题:");
+            log.info("📡 成功订阅MQTT主题 ({}):", client.getClientId());
             for (int i = 0; i < topics.length; i++) {
                 log.info("  - {} (QoS: {})", topics[i], qos[i]);
             }
@@ -176,7 +202,7 @@ public class MqttClientConfig implements SmartLifecycle {
         try {
             log.debug("🔍 检查MQTT连接状态...");
 
-            if (mqttClient == null || !mqttClient.isConnected()) {
+            if (!allConnected()) {
                 log.warn("🔍 检测到MQTT连接断开，尝试重新连接");
                 isConnected = false;
                 initializeMqttClientWithRetry();
@@ -222,17 +248,38 @@ public class MqttClientConfig implements SmartLifecycle {
         log.info("🛑 停止MQTT客户端配置");
         isRunning = false;
 
-        if (mqttClient != null && mqttClient.isConnected()) {
+        closeClients();
+
+        isConnected = false;
+    }
+
+    /**
+     * 当前节点的MQTT客户端（只读）
+     */
+    public List<MqttClient> getMqttClients() {
+        return List.copyOf(mqttClients);
+    }
+
+    private boolean allConnected() {
+        return !mqttClients.isEmpty() && mqttClients.stream().allMatch(MqttClient::isConnected);
+    }
+
+    /**
+     * 断开并关闭当前节点的全部MQTT连接
+     */
+    private void closeClients() {
+        for (MqttClient client : mqttClients) {
             try {
-                mqttClient.disconnect();
-                mqttClient.close();
-                log.info("👋 MQTT客户端已断开连接");
+                if (client.isConnected()) {
+                    client.disconnect();
+                }
+                client.close();
+                log.info("👋 MQTT客户端已断开连接: {}", client.getClientId());
             } catch (MqttException e) {
-                log.error("❌ 断开MQTT连接失败", e);
+                log.error("❌ 断开MQTT连接失败: {}", client.getClientId(), e);
             }
         }
-
-        isConnected = false;
+        mqttClients.clear();
     }
 
     @Override
@@ -1,9 +1,14 @@
 package com.cdutetc.ems.config;
 
+import jakarta.annotation.PostConstruct;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.UUID;
+
 /**
  * MQTT配置属性类
  * 绑定application.yaml中的ems.mqtt配置
@@ -28,6 +33,24 @@ public class MqttConfig {
      */
     private String clientId = "ems-backend-server";
 
+    /**
+     * 节点标识（用于生成集群内唯一的客户端ID）
+     * 持久会话（cleanSession=false）必须显式配置且在重启、重新部署后保持不变；
+     * 清除会话时可为空，依次使用环境变量HOSTNAME、主机名、随机值
+     */
+    private String nodeId = "";
+
+    /**
+     * 每个节点的MQTT连接数
+     * 大于1时需要启用共享订阅，否则每个连接都会收到全部消息
+     */
+    private int connections = 1;
+
+    /**
+     * 共享订阅配置
+     */
+    private SharedSubscription sharedSubscription = new SharedSubscription();
+
     /**
      * MQTT用户名（可选）
      */
@@ -50,9 +73,17 @@ public class MqttConfig {
 
     /**
      * 是否清除会话
+     * false（持久会话）时Broker按客户端ID保留会话和未确认的消息，要求nodeId稳定
      */
     private boolean cleanSession = true;
 
+    /**
+     * 是否手动确认消息（QoS 1/2）
+     * 启用后消息写入缓冲区后才向Broker发送PUBACK
+     * 持久会话（cleanSession=false）下处理失败的消息在重连后由Broker重新投递，清除会话下确认并丢弃
+     */
+    private boolean manualAck = true;
+
     /**
      * 是否自动重连
      */
@@ -87,6 +118,63 @@ public class MqttConfig {
         return clientId + "-" + System.currentTimeMillis();
     }
 
+    /**
+     * 获取指定连接的客户端ID
+     * 格式: {clientId}-{nodeId}-{index}，同一节点重连时保持不变，不同节点互不冲突
+     */
+    public String getClientId(String resolvedNodeId, int connectionIndex) {
+        return clientId + "-" + resolvedNodeId + "-" + connectionIndex;
+    }
+
+    /**
+     * 启动时校验：持久会话必须配置稳定的节点标识
+     * 否则每次重启都会产生新的客户端ID，旧的持久会话留在共享订阅组中继续分得消息，最终被丢弃
+     */
+    @PostConstruct
+    public void validate() {
+        if (!cleanSession && !hasExplicitNodeId()) {
+            throw new IllegalStateException(
+                "MQTT持久会话（clean-session=false）需要配置稳定的节点标识 app.ems.mqtt.node-id（EMS_NODE_ID）");
+        }
+    }
+
+    /**
+     * 解析节点标识
+     * 持久会话只使用显式配置的nodeId，不回退到主机名或随机值
+     */
+    public String resolveNodeId() {
+        if (hasExplicitNodeId()) {
+            return nodeId;
+        }
+        if (!cleanSession) {
+            throw new IllegalStateException("MQTT持久会话未配置节点标识（EMS_NODE_ID）");
+        }
+        String hostname = System.getenv("HOSTNAME");
+        if (hostname != null && !hostname.isBlank()) {
+            return hostname;
+        }
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return UUID.randomUUID().toString().substring(0, 8);
+        }
+    }
+
+    private boolean hasExplicitNodeId() {
+        return nodeId != null && !nodeId.isBlank();
+    }
+
+    /**
+     * 获取实际使用的连接数
+     * 未启用共享订阅时只能使用1个连接
+     */
+    public int getEffectiveConnections() {
+        if (!sharedSubscription.isEnabled()) {
+            return 1;
+        }
+        return Math.max(1, connections);
+    }
+
     /**
      * 获取辐射设备数据主题模式
      */
@@ -101,13 +189,34 @@ public class MqttConfig {
         return topicPrefix + "/device/+/data/ENVIRONMENT";
     }
 
+    /**
+     * 获取辐射设备二进制数据主题模式（RadiationBinaryFormat）
+     */
+    public String getRadiationBinaryTopicPattern() {
+        return getRadiationTopicPattern() + "/bin";
+    }
+
+    /**
+     * 获取批量数据主题模式（网关转发、断线补传），如 ems/device/+/batch/RADIATION
+     */
+    public String getBatchTopicPattern(String deviceType) {
+        return topicPrefix + "/device/+/batch/" + deviceType;
+    }
+
     /**
      * 获取所有设备数据主题数组
+     * 启用共享订阅时添加 $share/{group}/ 前缀，由Broker在组内各连接间分摊消息
      */
     public String[] getSubscribeTopics() {
+        String prefix = sharedSubscription.isEnabled()
+            ? "$share/" + sharedSubscription.getGroup() + "/"
+            : "";
         return new String[]{
-            getRadiationTopicPattern(),
-            getEnvironmentTopicPattern()
+            prefix + getRadiationTopicPattern(),
+            prefix + getEnvironmentTopicPattern(),
+            prefix + getRadiationBinaryTopicPattern(),
+            prefix + getBatchTopicPattern("RADIATION"),
+            prefix + getBatchTopicPattern("ENVIRONMENT")
         };
     }
 
@@ -115,6 +224,25 @@ public class MqttConfig {
      * 获取订阅主题对应的QoS数组
      */
     public int[] getSubscribeQos() {
-        return new int[]{qos, qos};
+        int[] subscribeQos = new int[getSubscribeTopics().length];
+        Arrays.fill(subscribeQos, qos);
+        return subscribeQos;
+    }
+
+    /**
+     * 共享订阅配置
+     */
+    @Data
+    public static class SharedSubscription {
+
+        /**
+         * 是否启用共享订阅（需要Broker支持，Mosquitto 1.6+ / EMQX）
+         */
+        private boolean enabled = true;
+
+        /**
+         * 共享订阅组名，所有后端节点使用同一组名
+         */
+        private String group = "ems";
     }
 }
\ No newline at end of file
@@ -0,0 +1,33 @@
+package com.cdutetc.ems.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * MQTT重复读数过滤配置
+ * 控制DuplicateReadingFilter的每设备滑动窗口大小和有效期
+ *
+ * @author EMS Team
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.ems.mqtt.dedup")
+public class MqttDedupProperties {
+
+    /**
+     * 是否启用重复读数过滤
+     */
+    private boolean enabled = true;
+
+    /**
+     * 每台设备记住的最近读数个数
+     */
+    private int windowSize = 32;
+
+    /**
+     * 读数标识的有效期（秒），超过后同一读数不再视为重复
+     * 应大于设备重试间隔和Broker重新投递的时间
+     */
+    private long windowSeconds = 600;
+}
@@ -0,0 +1,70 @@
+package com.cdutetc.ems.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * MQTT消息分发配置
+ * 控制MqttIngestDispatcher的工作通道数量、队列容量和线程模型
+ *
+ * @author EMS Team
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.ems.mqtt.ingest")
+public class MqttIngestProperties {
+
+    /**
+     * 是否启用并行分发
+     * 关闭时消息直接在Paho回调线程中处理（与旧版本行为一致）
+     */
+    private boolean enabled = true;
+
+    /**
+     * 工作通道数量
+     * 小于等于0时使用CPU核数
+     */
+    private int lanes = 0;
+
+    /**
+     * 每个通道的队列容量
+     */
+    private int queueCapacity = 1000;
+
+    /**
+     * 通道队列已满时的最长等待时间（毫秒）
+     * 等待期间阻塞Paho回调线程，从而对Broker形成背压
+     */
+    private long offerTimeoutMs = 5000;
+
+    /**
+     * 是否使用虚拟线程（需要JDK 21+，低版本自动回退为平台线程）
+     */
+    private boolean virtualThreads = false;
+
+    /**
+     * 关闭时等待通道排空的最长时间（秒）
+     */
+    private int shutdownTimeoutSeconds = 10;
+
+    /**
+     * 每个MQTT连接的在途消息窗口（已接收但尚未确认的最大消息数）
+     * 窗口已满时阻塞Paho回调线程；不应超过Broker的在途窗口（Mosquitto max_inflight_messages，默认20），
+     * 否则Broker先停止投递，本窗口不会生效
+     */
+    private int maxInFlight = 20;
+
+    /**
+     * 等待在途窗口空位的告警时间（毫秒）
+     * 超过后记录告警并继续等待，不拒绝消息。窗口不超过Broker的在途窗口时，窗口满时Broker已停止向该连接投递QoS 1消息
+     */
+    private long inFlightWaitWarnMs = 2000;
+
+    /**
+     * 获取实际生效的通道数量
+     */
+    public int getEffectiveLanes() {
+        return lanes > 0 ? lanes : Runtime.getRuntime().availableProcessors();
+    }
+}
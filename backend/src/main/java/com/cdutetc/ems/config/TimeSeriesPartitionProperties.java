@@ -0,0 +1,64 @@
+package com.cdutetc.ems.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 时序数据表分区配置
+ * 控制TimeSeriesPartitionManager按record_time对时序表做范围分区（仅MySQL）
+ *
+ * @author EMS Team
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.ems.partition")
+public class TimeSeriesPartitionProperties {
+
+    /**
+     * 是否启用分区维护（转换未分区的表、提前创建分区）
+     * 关闭后已分区的表仍按分区删除过期数据
+     */
+    private boolean enabled = true;
+
+    /**
+     * 分区粒度
+     */
+    private Granularity granularity = Granularity.MONTH;
+
+    /**
+     * 除当前周期外提前创建的分区数
+     */
+    private int premake = 3;
+
+    /**
+     * 是否自动转换已有数据的未分区表
+     * 转换需要复制整张表并阻塞写入，默认只自动转换空表（新部署），已有数据的表需在维护窗口内开启
+     */
+    private boolean convertExisting = false;
+
+    /**
+     * 需要分区的时序表（必须包含record_time列和自增主键id）
+     */
+    private List<String> tables = new ArrayList<>(List.of(
+            "ems_radiation_device_data",
+            "ems_environment_device_data"
+    ));
+
+    /**
+     * 分区粒度
+     */
+    public enum Granularity {
+        /**
+         * 按月分区，分区名pYYYYMM
+         */
+        MONTH,
+        /**
+         * 按天分区，分区名pYYYYMMDD
+         */
+        DAY
+    }
+}
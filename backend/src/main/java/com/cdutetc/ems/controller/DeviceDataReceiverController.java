@@ -1,18 +1,17 @@
 package com.cdutetc.ems.controller;
 
-import com.cdutetc.ems.config.CpmConversionProperties;
 import com.cdutetc.ems.util.ApiResponse;
-import com.cdutetc.ems.dto.event.DeviceDataEvent;
+import com.cdutetc.ems.dto.cache.DeviceSnapshot;
 import com.cdutetc.ems.dto.request.RadiationDataReceiveRequest;
 import com.cdutetc.ems.dto.request.EnvironmentDataReceiveRequest;
+import com.cdutetc.ems.dto.response.DeviceDataBatchReceiveResponse;
 import com.cdutetc.ems.dto.response.DeviceDataReceiveResponse;
-import com.cdutetc.ems.entity.Device;
 import com.cdutetc.ems.entity.RadiationDeviceData;
 import com.cdutetc.ems.entity.EnvironmentDeviceData;
-import com.cdutetc.ems.service.DeviceService;
-import com.cdutetc.ems.service.RadiationDeviceDataService;
-import com.cdutetc.ems.service.EnvironmentDeviceDataService;
-import com.cdutetc.ems.service.SseEmitterService;
+import com.cdutetc.ems.mqtt.DuplicateReadingFilter;
+import com.cdutetc.ems.service.DeviceDataIngestService;
+import com.cdutetc.ems.service.DeviceDataIngestService.IngestResult;
+import com.cdutetc.ems.service.DeviceDataReceiveService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
@@ -21,13 +20,15 @@ import org.springframework.web.bind.annotation.*;
 
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
+import java.io.IOException;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.List;
 
 /**
  * 设备数据接收控制器
  * 处理设备上报的监测数据
+ *
+ * 与MQTT接入共用DeviceDataIngestService：数据写入Redis缓冲区后即返回（由定时任务批量写MySQL），
+ * 设备在线状态只写状态缓存，并执行数据上报、SSE推送和告警检查
  */
 @Slf4j
 @RestController
@@ -35,11 +36,9 @@ import java.util.List;
 @RequiredArgsConstructor
 public class DeviceDataReceiverController {
 
-    private final DeviceService deviceService;
-    private final RadiationDeviceDataService radiationDeviceDataService;
-    private final EnvironmentDeviceDataService environmentDeviceDataService;
-    private final SseEmitterService sseEmitterService;
-    private final CpmConversionProperties cpmConversionProperties;
+    private final DeviceDataIngestService ingestService;
+    private final DeviceDataReceiveService receiveService;
+    private final DuplicateReadingFilter duplicateFilter;
 
     /**
      * 接收辐射设备数据
@@ -53,98 +52,22 @@ public class DeviceDataReceiverController {
         log.info("接收到辐射设备数据上报 - 设备编码: {}, IP: {}", request.getDeviceCode(), clientIp);
 
         try {
-            // 验证设备是否存在
-            Device device = deviceService.findByDeviceCode(request.getDeviceCode());
+            // 验证设备是否存在且已激活（设备快照本地缓存）
+            DeviceSnapshot device = ingestService.validateDevice(request.getDeviceCode(), "RADIATION");
             if (device == null) {
-                log.warn("设备不存在: {}", request.getDeviceCode());
                 return ResponseEntity.badRequest()
-                        .body(ApiResponse.badRequest("设备不存在: " + request.getDeviceCode()));
+                        .body(ApiResponse.badRequest("设备不存在或未激活: " + request.getDeviceCode()));
             }
 
-            // 更新设备最后在线时间
-            device.setLastOnlineAt(LocalDateTime.now());
-            deviceService.updateDevice(device.getId(), device, device.getCompany().getId());
+            // 创建辐射设备数据记录（CPM转换系数、电压mV→V、GPS来源选择）
+            RadiationDeviceData data = receiveService.toRadiationData(request);
 
-            // 创建辐射设备数据记录
-            RadiationDeviceData data = new RadiationDeviceData();
-            data.setDeviceCode(request.getDeviceCode());
-            data.setRawData(request.getRawData());
-            data.setSrc(request.getSrc());
-            data.setMsgtype(request.getMsgtype());
+            // 状态缓存、重复过滤、写入缓冲区、上报、SSE推送和告警
+            IngestResult result = ingestService.ingestRadiation(device, data,
+                    readingKey(data.getTime(), data.getRawData()), false, () -> { });
 
-            // 应用CPM转换系数
-            Double rawCpm = request.getCpm();
-            if (rawCpm != null) {
-                double convertedCpm = cpmConversionProperties.isEnabled()
-                    ? rawCpm / cpmConversionProperties.getRadiationConversionFactor()
-                    : rawCpm;
-                data.setCpm(convertedCpm);
-                if (cpmConversionProperties.isEnabled()) {
-                    log.debug("🔄 REST API辐射设备CPM转换: 设备={}, 原始值={}, 转换系数={}, 转换后值={}",
-                        request.getDeviceCode(), rawCpm,
-                        cpmConversionProperties.getRadiationConversionFactor(), convertedCpm);
-                }
-            }
-
-            // 辐射设备发送的是毫伏mV，需要转换为伏V存储
-            Double rawBatvolt = request.getBatvolt();
-            if (rawBatvolt != null) {
-                data.setBatvolt(rawBatvolt / 1000.0); // mV转V：原始值(mV) ÷ 1000 = 电压(V)
-                log.debug("🔄 REST API辐射设备电压转换: 设备={}, 原始值={}mV, 转换后值={}V",
-                    request.getDeviceCode(), rawBatvolt, data.getBatvolt());
-            }
-            data.setTime(request.getTime());
-            data.setRecordTime(LocalDateTime.now());
-            data.setDataTrigger(request.getTrigger());
-            data.setMulti(request.getMulti());
-            data.setWay(request.getWay());
-
-            // GPS数据选择（根据useful字段自动选择BDS或LBS）
-            if (request.getBdsUseful() != null && request.getBdsUseful() == 1
-                && request.getBdsLongitude() != null && request.getBdsLatitude() != null) {
-                // BDS可用，使用北斗
-                data.setGpsType("BDS");
-                data.setGpsLongitude(request.getBdsLongitude());
-                data.setGpsLatitude(request.getBdsLatitude());
-                data.setGpsUtc(request.getBdsUtc());
-            } else if (request.getLbsLongitude() != null && request.getLbsLatitude() != null) {
-                // BDS不可用，使用LBS
-                data.setGpsType("LBS");
-                data.setGpsLongitude(request.getLbsLongitude());
-                data.setGpsLatitude(request.getLbsLatitude());
-                data.setGpsUtc(null);
-            }
-
-            RadiationDeviceData savedData = radiationDeviceDataService.save(data);
-
-            // SSE推送实时数据
-            try {
-                DeviceDataEvent event = new DeviceDataEvent(
-                    "radiation-data",
-                    request.getDeviceCode(),
-                    "RADIATION_MONITOR",
-                    java.util.Map.of(
-                        "cpm", savedData.getCpm(),
-                        "batVolt", savedData.getBatvolt(),
-                        "recordTime", savedData.getRecordTime().toString()
-                    )
-                );
-                sseEmitterService.broadcastDeviceData(device.getCompany().getId(), event);
-                log.debug("📡 SSE推送辐射数据成功: {}", request.getDeviceCode());
-            } catch (Exception e) {
-                log.warn("⚠️ SSE推送辐射数据失败: {}", e.getMessage());
-            }
-
-            DeviceDataReceiveResponse response = DeviceDataReceiveResponse.builder()
-                    .success(true)
-                    .message("数据接收成功")
-                    .deviceId(savedData.getId())
-                    .deviceCode(request.getDeviceCode())
-                    .receiveTime(LocalDateTime.now())
-                    .build();
-
-            log.info("辐射设备数据接收成功 - 设备: {}, 数据ID: {}", request.getDeviceCode(), savedData.getId());
-            return ResponseEntity.ok(ApiResponse.success(response));
+            log.info("辐射设备数据接收成功 - 设备: {}, 结果: {}", request.getDeviceCode(), result);
+            return ResponseEntity.ok(ApiResponse.success(buildResponse(device, result)));
 
         } catch (Exception e) {
             log.error("处理辐射设备数据时发生错误 - 设备: {}", request.getDeviceCode(), e);
@@ -165,77 +88,22 @@ public class DeviceDataReceiverController {
         log.info("接收到环境设备数据上报 - 设备编码: {}, IP: {}", request.getDeviceCode(), clientIp);
 
         try {
-            // 验证设备是否存在
-            Device device = deviceService.findByDeviceCode(request.getDeviceCode());
+            // 验证设备是否存在且已激活（设备快照本地缓存）
+            DeviceSnapshot device = ingestService.validateDevice(request.getDeviceCode(), "ENVIRONMENT");
             if (device == null) {
-                log.warn("设备不存在: {}", request.getDeviceCode());
                 return ResponseEntity.badRequest()
-                        .body(ApiResponse.badRequest("设备不存在: " + request.getDeviceCode()));
+                        .body(ApiResponse.badRequest("设备不存在或未激活: " + request.getDeviceCode()));
             }
 
-            // 更新设备最后在线时间
-            device.setLastOnlineAt(LocalDateTime.now());
-            deviceService.updateDevice(device.getId(), device, device.getCompany().getId());
+            // 创建环境设备数据记录（CPM转换系数）
+            EnvironmentDeviceData data = receiveService.toEnvironmentData(request);
 
-            // 创建环境设备数据记录
-            EnvironmentDeviceData data = new EnvironmentDeviceData();
-            data.setDeviceCode(request.getDeviceCode());
-            data.setRawData(request.getRawData());
-            data.setSrc(request.getSrc());
+            // 状态缓存、重复过滤、写入缓冲区、SSE推送和告警
+            IngestResult result = ingestService.ingestEnvironment(device, data,
+                    readingKey(null, data.getRawData()), false, () -> { });
 
-            // 应用CPM转换系数
-            Double rawCpm = request.getCpm();
-            if (rawCpm != null) {
-                double convertedCpm = cpmConversionProperties.isEnabled()
-                    ? rawCpm / cpmConversionProperties.getEnvironmentConversionFactor()
-                    : rawCpm;
-                data.setCpm(convertedCpm);
-                if (cpmConversionProperties.isEnabled()) {
-                    log.debug("🔄 REST API环境设备CPM转换: 设备={}, 原始值={}, 转换系数={}, 转换后值={}",
-                        request.getDeviceCode(), rawCpm,
-                        cpmConversionProperties.getEnvironmentConversionFactor(), convertedCpm);
-                }
-            }
-
-            data.setTemperature(request.getTemperature());
-            data.setWetness(request.getWetness());
-            data.setWindspeed(request.getWindspeed());
-            data.setTotal(request.getTotal());
-            data.setBattery(request.getBattery());
-            data.setRecordTime(LocalDateTime.now());
-
-            EnvironmentDeviceData savedData = environmentDeviceDataService.save(data);
-
-            // SSE推送实时数据
-            try {
-                DeviceDataEvent event = new DeviceDataEvent(
-                    "environment-data",
-                    request.getDeviceCode(),
-                    "ENVIRONMENT_STATION",
-                    java.util.Map.of(
-                        "cpm", savedData.getCpm(),
-                        "temperature", savedData.getTemperature(),
-                        "wetness", savedData.getWetness(),
-                        "windspeed", savedData.getWindspeed(),
-                        "recordTime", savedData.getRecordTime().toString()
-                    )
-                );
-                sseEmitterService.broadcastDeviceData(device.getCompany().getId(), event);
-                log.debug("📡 SSE推送环境数据成功: {}", request.getDeviceCode());
-            } catch (Exception e) {
-                log.warn("⚠️ SSE推送环境数据失败: {}", e.getMessage());
-            }
-
-            DeviceDataReceiveResponse response = DeviceDataReceiveResponse.builder()
-                    .success(true)
-                    .message("数据接收成功")
-                    .deviceId(savedData.getId())
-                    .deviceCode(request.getDeviceCode())
-                    .receiveTime(LocalDateTime.now())
-                    .build();
-
-            log.info("环境设备数据接收成功 - 设备: {}, 数据ID: {}", request.getDeviceCode(), savedData.getId());
-            return ResponseEntity.ok(ApiResponse.success(response));
+            log.info("环境设备数据接收成功 - 设备: {}, 结果: {}", request.getDeviceCode(), result);
+            return ResponseEntity.ok(ApiResponse.success(buildResponse(device, result)));
 
         } catch (Exception e) {
             log.error("处理环境设备数据时发生错误 - 设备: {}", request.getDeviceCode(), e);
@@ -245,79 +113,64 @@ public class DeviceDataReceiverController {
     }
 
     /**
-     * 批量接收辐射设备数据
+     * 批量接收设备数据
+     * 请求体为NDJSON（每行一个读数）或JSON数组，流式解析后分块写入缓冲区，不在内存中保留整个请求体
+     *
+     * @param type radiation 或 environment
      */
-    @PostMapping("/radiation/batch")
-    public ResponseEntity<ApiResponse<List<DeviceDataReceiveResponse>>> receiveRadiationDataBatch(
-            @Valid @RequestBody List<RadiationDataReceiveRequest> requests,
-            HttpServletRequest httpRequest) {
+    @PostMapping("/{type}/batch")
+    public ResponseEntity<ApiResponse<DeviceDataBatchReceiveResponse>> receiveDataBatch(
+            @PathVariable String type,
+            HttpServletRequest httpRequest) throws IOException {
+
+        boolean radiation = "radiation".equalsIgnoreCase(type);
+        if (!radiation && !"environment".equalsIgnoreCase(type)) {
+            return ResponseEntity.badRequest()
+                    .body(ApiResponse.badRequest("不支持的设备类型: " + type));
+        }
 
         String clientIp = getClientIpAddress(httpRequest);
-        log.info("接收到批量辐射设备数据上报 - 数据条数: {}, IP: {}", requests.size(), clientIp);
-
-        List<DeviceDataReceiveResponse> responses = new ArrayList<>();
-        int successCount = 0;
-        int failureCount = 0;
-
-        for (RadiationDataReceiveRequest request : requests) {
-            try {
-                ResponseEntity<ApiResponse<DeviceDataReceiveResponse>> response =
-                        receiveRadiationData(request, httpRequest);
-
-                if (response.getStatusCode().is2xxSuccessful()) {
-                    responses.add(response.getBody().getData());
-                    successCount++;
-                } else {
-                    failureCount++;
-                    log.warn("批量数据中的单条数据处理失败 - 设备: {}", request.getDeviceCode());
-                }
-            } catch (Exception e) {
-                failureCount++;
-                log.error("批量数据处理时发生错误 - 设备: {}", request.getDeviceCode(), e);
-            }
+        log.info("接收到批量{}设备数据上报 - 格式: {}, IP: {}",
+                radiation ? "辐射" : "环境", httpRequest.getContentType(), clientIp);
+
+        // 限制同时处理的批量请求数，超出时由客户端稍后重试
+        if (!receiveService.tryBeginBatch()) {
+            log.warn("⚠️ 批量数据请求过多，拒绝来自 {} 的请求", clientIp);
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .body(ApiResponse.error(HttpStatus.TOO_MANY_REQUESTS.value(), "批量数据请求过多，请稍后重试"));
+        }
+        try {
+            DeviceDataBatchReceiveResponse response = radiation
+                    ? receiveService.receiveRadiationBatch(httpRequest.getInputStream())
+                    : receiveService.receiveEnvironmentBatch(httpRequest.getInputStream());
+            return ResponseEntity.ok(ApiResponse.success(response));
+        } finally {
+            receiveService.endBatch();
         }
-
-        log.info("批量辐射设备数据处理完成 - 成功: {}, 失败: {}", successCount, failureCount);
-
-        return ResponseEntity.ok(ApiResponse.success(responses));
     }
 
     /**
-     * 批量接收环境设备数据
+     * 构建接收响应
+     * 数据写入缓冲区后由定时任务批量入库，此时还没有数据ID，deviceId返回设备ID
      */
-    @PostMapping("/environment/batch")
-    public ResponseEntity<ApiResponse<List<DeviceDataReceiveResponse>>> receiveEnvironmentDataBatch(
-            @Valid @RequestBody List<EnvironmentDataReceiveRequest> requests,
-            HttpServletRequest httpRequest) {
-
-        String clientIp = getClientIpAddress(httpRequest);
-        log.info("接收到批量环境设备数据上报 - 数据条数: {}, IP: {}", requests.size(), clientIp);
-
-        List<DeviceDataReceiveResponse> responses = new ArrayList<>();
-        int successCount = 0;
-        int failureCount = 0;
-
-        for (EnvironmentDataReceiveRequest request : requests) {
-            try {
-                ResponseEntity<ApiResponse<DeviceDataReceiveResponse>> response =
-                        receiveEnvironmentData(request, httpRequest);
+    private DeviceDataReceiveResponse buildResponse(DeviceSnapshot device, IngestResult result) {
+        return DeviceDataReceiveResponse.builder()
+                .success(true)
+                .message(result == IngestResult.DUPLICATE ? "重复数据已忽略" : "数据接收成功")
+                .deviceId(device.getId())
+                .deviceCode(device.getDeviceCode())
+                .receiveTime(LocalDateTime.now())
+                .build();
+    }
 
-                if (response.getStatusCode().is2xxSuccessful()) {
-                    responses.add(response.getBody().getData());
-                    successCount++;
-                } else {
-                    failureCount++;
-                    log.warn("批量数据中的单条数据处理失败 - 设备: {}", request.getDeviceCode());
-                }
-            } catch (Exception e) {
-                failureCount++;
-                log.error("批量数据处理时发生错误 - 设备: {}", request.getDeviceCode(), e);
-            }
+    /**
+     * 计算重复过滤标识，没有设备时间和原始数据时不过滤
+     */
+    private Long readingKey(String deviceTime, String rawData) {
+        if (deviceTime == null && rawData == null) {
+            return null;
         }
-
-        log.info("批量环境设备数据处理完成 - 成功: {}, 失败: {}", successCount, failureCount);
-
-        return ResponseEntity.ok(ApiResponse.success(responses));
+        return duplicateFilter.readingKey(deviceTime, rawData);
     }
 
     /**
@@ -1,24 +1,42 @@
 package com.cdutetc.ems.controller;
 
 import com.cdutetc.ems.dto.response.EnvironmentDeviceDataResponse;
+import com.cdutetc.ems.dto.response.CursorPageResponse;
 import com.cdutetc.ems.dto.response.PageResponse;
+import com.cdutetc.ems.dto.response.TimeSeriesResponse;
+import com.cdutetc.ems.entity.DeviceDataRollup.DataType;
 import com.cdutetc.ems.entity.EnvironmentDeviceData;
 import com.cdutetc.ems.entity.User;
 import com.cdutetc.ems.service.EnvironmentDeviceDataService;
+import com.cdutetc.ems.service.MonitoringDataExportService;
+import com.cdutetc.ems.service.MonitoringDataSeriesService;
+import com.cdutetc.ems.service.SeriesDownsampler;
 import com.cdutetc.ems.util.ApiResponse;
+import com.cdutetc.ems.util.RecordCursor;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.Callable;
 
 /**
  * 环境监测站数据控制器
@@ -30,6 +48,8 @@ import java.time.LocalDateTime;
 public class EnvironmentDeviceDataController {
 
     private final EnvironmentDeviceDataService environmentDeviceDataService;
+    private final MonitoringDataSeriesService seriesService;
+    private final MonitoringDataExportService exportService;
 
     /**
      * 获取环境监测数据列表
@@ -96,6 +116,129 @@ public class EnvironmentDeviceDataController {
         }
     }
 
+    /**
+     * 游标分页获取环境监测数据（按记录时间倒序，不统计总数，适合深分页和大结果集）
+     */
+    @GetMapping("/cursor")
+    public ResponseEntity<ApiResponse<CursorPageResponse<EnvironmentDeviceDataResponse>>> getEnvironmentDataByCursor(
+            @RequestParam(required = false) String deviceCode,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startTime,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endTime,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size) {
+        try {
+            // 获取当前用户信息
+            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+            User currentUser = (User) authentication.getPrincipal();
+
+            RecordCursor position = cursor != null && !cursor.isEmpty() ? RecordCursor.decode(cursor) : null;
+            Slice<EnvironmentDeviceData> data;
+            if (deviceCode != null && !deviceCode.isEmpty()) {
+                // 验证设备属于当前用户的企业
+                environmentDeviceDataService.validateDeviceAccess(deviceCode, currentUser.getCompany().getId());
+                data = environmentDeviceDataService.getDataSliceByDeviceCode(deviceCode, startTime, endTime, position, size);
+            } else {
+                data = environmentDeviceDataService.getDataSlice(
+                        currentUser.getCompany().getId(), startTime, endTime, position, size);
+            }
+
+            EnvironmentDeviceData last = data.hasContent() ? data.getContent().get(data.getNumberOfElements() - 1) : null;
+            CursorPageResponse<EnvironmentDeviceDataResponse> response = CursorPageResponse.<EnvironmentDeviceDataResponse>builder()
+                    .content(data.getContent().stream()
+                            .map(EnvironmentDeviceDataResponse::fromEnvironmentDeviceData)
+                            .toList())
+                    .size(data.getSize())
+                    .hasNext(data.hasNext())
+                    .nextCursor(data.hasNext() && last != null
+                            ? new RecordCursor(last.getRecordTime(), last.getId()).encode() : null)
+                    .build();
+
+            return ResponseEntity.ok(ApiResponse.success("获取环境监测数据成功", response));
+
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid environment data cursor request: {}", e.getMessage());
+            return ResponseEntity.badRequest()
+                    .body(ApiResponse.badRequest(e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error getting environment data by cursor: {}", e.getMessage());
+            return ResponseEntity.status(500)
+                    .body(ApiResponse.error("获取环境监测数据失败，请稍后重试"));
+        }
+    }
+
+    /**
+     * 导出环境监测数据（CSV或NDJSON，可选gzip；从数据库游标流式输出，行数不受限制）
+     */
+    @GetMapping("/export")
+    public ResponseEntity<?> exportEnvironmentData(
+            @RequestParam(required = false) String deviceCode,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startTime,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endTime,
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(defaultValue = "false") boolean gzip,
+            HttpServletRequest request) {
+        try {
+            // 获取当前用户信息
+            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+            User currentUser = (User) authentication.getPrincipal();
+
+            MonitoringDataExportService.Format exportFormat = MonitoringDataExportService.Format.of(format);
+            // 开始输出前一次性确定可导出的设备
+            List<String> deviceCodes;
+            if (deviceCode != null && !deviceCode.isEmpty()) {
+                environmentDeviceDataService.validateDeviceAccess(deviceCode, currentUser.getCompany().getId());
+                deviceCodes = List.of(deviceCode);
+            } else {
+                deviceCodes = exportService.companyDeviceCodes(currentUser.getCompany().getId());
+            }
+
+            String filename = exportService.filename("environment-data", exportFormat, gzip);
+            MediaType contentType = MediaType.parseMediaType(exportService.contentType(exportFormat, gzip));
+
+            MonitoringDataExportService.ExportPermit permit = exportService.tryBeginExport();
+            if (permit == null) {
+                return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                        .body(ApiResponse.error(HttpStatus.TOO_MANY_REQUESTS.value(), "导出请求过多，请稍后重试"));
+            }
+            releaseOnAsyncCompletion(request, permit);
+            StreamingResponseBody body = outputStream -> {
+                try {
+                    exportService.export(DataType.ENVIRONMENT, deviceCodes, startTime, endTime,
+                            exportFormat, gzip, outputStream);
+                } finally {
+                    permit.release();
+                }
+            };
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+                    .contentType(contentType)
+                    .body(body);
+
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid environment data export request: {}", e.getMessage());
+            return ResponseEntity.badRequest()
+                    .body(ApiResponse.badRequest(e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error exporting environment data: {}", e.getMessage());
+            return ResponseEntity.status(500)
+                    .body(ApiResponse.error("导出环境监测数据失败，请稍后重试"));
+        }
+    }
+
+    /**
+     * 异步请求结束时释放导出名额
+     * 异步请求超时、出错或客户端断开时StreamingResponseBody可能从未执行，不能只依赖输出结束时释放
+     */
+    private void releaseOnAsyncCompletion(HttpServletRequest request,
+                                          MonitoringDataExportService.ExportPermit permit) {
+        WebAsyncUtils.getAsyncManager(request).registerCallableInterceptor(permit, new CallableProcessingInterceptor() {
+            @Override
+            public <T> void afterCompletion(NativeWebRequest webRequest, Callable<T> task) {
+                permit.release();
+            }
+        });
+    }
+
     /**
      * 获取环境监测数据详情
      */
@@ -195,4 +338,38 @@ public class EnvironmentDeviceDataController {
                     .body(ApiResponse.error("获取环境数据统计信息失败，请稍后重试"));
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 获取环境监测数据降采样曲线（长时间范围图表，返回点数不超过points）
+     */
+    @GetMapping("/series")
+    public ResponseEntity<ApiResponse<TimeSeriesResponse>> getEnvironmentDataSeries(
+            @RequestParam String deviceCode,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startTime,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endTime,
+            @RequestParam(defaultValue = "cpm") String metric,
+            @RequestParam(defaultValue = "500") int points,
+            @RequestParam(defaultValue = "lttb") String mode) {
+        try {
+            // 获取当前用户信息
+            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+            User currentUser = (User) authentication.getPrincipal();
+
+            // 验证设备属于当前用户的企业
+            environmentDeviceDataService.validateDeviceAccess(deviceCode, currentUser.getCompany().getId());
+            TimeSeriesResponse response = seriesService.series(DataType.ENVIRONMENT, deviceCode, metric,
+                    startTime, endTime, points, SeriesDownsampler.Mode.of(mode));
+
+            return ResponseEntity.ok(ApiResponse.success("获取环境数据曲线成功", response));
+
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid environment data series request: {}", e.getMessage());
+            return ResponseEntity.badRequest()
+                    .body(ApiResponse.badRequest(e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error getting environment data series: {}", e.getMessage());
+            return ResponseEntity.status(500)
+                    .body(ApiResponse.error("获取环境数据曲线失败，请稍后重试"));
+        }
+    }
+}
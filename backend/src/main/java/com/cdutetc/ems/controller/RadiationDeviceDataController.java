@@ -1,24 +1,42 @@
 package com.cdutetc.ems.controller;
 
+import com.cdutetc.ems.dto.response.CursorPageResponse;
 import com.cdutetc.ems.dto.response.PageResponse;
 import com.cdutetc.ems.dto.response.RadiationDeviceDataResponse;
+import com.cdutetc.ems.dto.response.TimeSeriesResponse;
+import com.cdutetc.ems.entity.DeviceDataRollup.DataType;
 import com.cdutetc.ems.entity.RadiationDeviceData;
 import com.cdutetc.ems.entity.User;
 import com.cdutetc.ems.service.RadiationDeviceDataService;
+import com.cdutetc.ems.service.MonitoringDataExportService;
+import com.cdutetc.ems.service.MonitoringDataSeriesService;
+import com.cdutetc.ems.service.SeriesDownsampler;
 import com.cdutetc.ems.util.ApiResponse;
+import com.cdutetc.ems.util.RecordCursor;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.Callable;
 
 /**
  * 辐射监测仪数据控制器
@@ -30,6 +48,8 @@ import java.time.LocalDateTime;
 public class RadiationDeviceDataController {
 
     private final RadiationDeviceDataService radiationDeviceDataService;
+    private final MonitoringDataSeriesService seriesService;
+    private final MonitoringDataExportService exportService;
 
     /**
      * 获取辐射监测数据列表
@@ -96,6 +116,129 @@ public class RadiationDeviceDataController {
         }
     }
 
+    /**
+     * 游标分页获取辐射监测数据（按记录时间倒序，不统计总数，适合深分页和大结果集）
+     */
+    @GetMapping("/cursor")
+    public ResponseEntity<ApiResponse<CursorPageResponse<RadiationDeviceDataResponse>>> getRadiationDataByCursor(
+            @RequestParam(required = false) String deviceCode,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startTime,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endTime,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size) {
+        try {
+            // 获取当前用户信息
+            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+            User currentUser = (User) authentication.getPrincipal();
+
+            RecordCursor position = cursor != null && !cursor.isEmpty() ? RecordCursor.decode(cursor) : null;
+            Slice<RadiationDeviceData> data;
+            if (deviceCode != null && !deviceCode.isEmpty()) {
+                // 验证设备属于当前用户的企业
+                radiationDeviceDataService.validateDeviceAccess(deviceCode, currentUser.getCompany().getId());
+                data = radiationDeviceDataService.getDataSliceByDeviceCode(deviceCode, startTime, endTime, position, size);
+            } else {
+                data = radiationDeviceDataService.getDataSlice(
+                        currentUser.getCompany().getId(), startTime, endTime, position, size);
+            }
+
+            RadiationDeviceData last = data.hasContent() ? data.getContent().get(data.getNumberOfElements() - 1) : null;
+            CursorPageResponse<RadiationDeviceDataResponse> response = CursorPageResponse.<RadiationDeviceDataResponse>builder()
+                    .content(data.getContent().stream()
+                            .map(RadiationDeviceDataResponse::fromRadiationDeviceData)
+                            .toList())
+                    .size(data.getSize())
+                    .hasNext(data.hasNext())
+                    .nextCursor(data.hasNext() && last != null
+                            ? new RecordCursor(last.getRecordTime(), last.getId()).encode() : null)
+                    .build();
+
+            return ResponseEntity.ok(ApiResponse.success("获取辐射监测数据成功", response));
+
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid radiation data cursor request: {}", e.getMessage());
+            return ResponseEntity.badRequest()
+                    .body(ApiResponse.badRequest(e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error getting radiation data by cursor: {}", e.getMessage());
+            return ResponseEntity.status(500)
+                    .body(ApiResponse.error("获取辐射监测数据失败，请稍后重试"));
+        }
+    }
+
+    /**
+     * 导出辐射监测数据（CSV或NDJSON，可选gzip；从数据库游标流式输出，行数不受限制）
+     */
+    @GetMapping("/export")
+    public ResponseEntity<?> exportRadiationData(
+            @RequestParam(required = false) String deviceCode,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startTime,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endTime,
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(defaultValue = "false") boolean gzip,
+            HttpServletRequest request) {
+        try {
+            // 获取当前用户信息
+            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+            User currentUser = (User) authentication.getPrincipal();
+
+            MonitoringDataExportService.Format exportFormat = MonitoringDataExportService.Format.of(format);
+            // 开始输出前一次性确定可导出的设备
+            List<String> deviceCodes;
+            if (deviceCode != null && !deviceCode.isEmpty()) {
+                radiationDeviceDataService.validateDeviceAccess(deviceCode, currentUser.getCompany().getId());
+                deviceCodes = List.of(deviceCode);
+            } else {
+                deviceCodes = exportService.companyDeviceCodes(currentUser.getCompany().getId());
+            }
+
+            String filename = exportService.filename("radiation-data", exportFormat, gzip);
+            MediaType contentType = MediaType.parseMediaType(exportService.contentType(exportFormat, gzip));
+
+            MonitoringDataExportService.ExportPermit permit = exportService.tryBeginExport();
+            if (permit == null) {
+                return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                        .body(ApiResponse.error(HttpStatus.TOO_MANY_REQUESTS.value(), "导出请求过多，请稍后重试"));
+            }
+            releaseOnAsyncCompletion(request, permit);
+            StreamingResponseBody body = outputStream -> {
+                try {
+                    exportService.export(DataType.RADIATION, deviceCodes, startTime, endTime,
+                            exportFormat, gzip, outputStream);
+                } finally {
+                    permit.release();
+                }
+            };
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+                    .contentType(contentType)
+                    .body(body);
+
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid radiation data export request: {}", e.getMessage());
+            return ResponseEntity.badRequest()
+                    .body(ApiResponse.badRequest(e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error exporting radiation data: {}", e.getMessage());
+            return ResponseEntity.status(500)
+                    .body(ApiResponse.error("导出辐射监测数据失败，请稍后重试"));
+        }
+    }
+
+    /**
+     * 异步请求结束时释放导出名额
+     * 异步请求超时、出错或客户端断开时StreamingResponseBody可能从未执行，不能只依赖输出结束时释放
+     */
+    private void releaseOnAsyncCompletion(HttpServletRequest request,
+                                          MonitoringDataExportService.ExportPermit permit) {
+        WebAsyncUtils.getAsyncManager(request).registerCallableInterceptor(permit, new CallableProcessingInterceptor() {
+            @Override
+            public <T> void afterCompletion(NativeWebRequest webRequest, Callable<T> task) {
+                permit.release();
+            }
+        });
+    }
+
     /**
      * 获取辐射监测数据详情
      */
@@ -195,4 +338,38 @@ public class RadiationDeviceDataController {
                     .body(ApiResponse.error("获取辐射数据统计信息失败，请稍后重试"));
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 获取辐射监测数据降采样曲线（长时间范围图表，返回点数不超过points）
+     */
+    @GetMapping("/series")
+    public ResponseEntity<ApiResponse<TimeSeriesResponse>> getRadiationDataSeries(
+            @RequestParam String deviceCode,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startTime,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endTime,
+            @RequestParam(defaultValue = "cpm") String metric,
+            @RequestParam(defaultValue = "500") int points,
+            @RequestParam(defaultValue = "lttb") String mode) {
+        try {
+            // 获取当前用户信息
+            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+            User currentUser = (User) authentication.getPrincipal();
+
+            // 验证设备属于当前用户的企业
+            radiationDeviceDataService.validateDeviceAccess(deviceCode, currentUser.getCompany().getId());
+            TimeSeriesResponse response = seriesService.series(DataType.RADIATION, deviceCode, metric,
+                    startTime, endTime, points, SeriesDownsampler.Mode.of(mode));
+
+            return ResponseEntity.ok(ApiResponse.success("获取辐射数据曲线成功", response));
+
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid radiation data series request: {}", e.getMessage());
+            return ResponseEntity.badRequest()
+                    .body(ApiResponse.badRequest(e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error getting radiation data series: {}", e.getMessage());
+            return ResponseEntity.status(500)
+                    .body(ApiResponse.error("获取辐射数据曲线失败，请稍后重试"));
+        }
+    }
+}
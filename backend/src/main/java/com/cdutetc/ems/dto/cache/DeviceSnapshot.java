@@ -0,0 +1,54 @@
+package com.cdutetc.ems.dto.cache;
+
+import com.cdutetc.ems.entity.Device;
+import com.cdutetc.ems.entity.enums.DeviceActivationStatus;
+import com.cdutetc.ems.entity.enums.DeviceType;
+import lombok.Value;
+
+/**
+ * 设备快照（不可变）
+ * 用于MQTT接收热路径上的设备校验，只保留校验和告警需要的字段
+ *
+ * @author EMS Team
+ */
+@Value
+public class DeviceSnapshot {
+
+    /**
+     * 设备ID（数据库主键）
+     */
+    Long id;
+
+    /**
+     * 设备编码
+     */
+    String deviceCode;
+
+    /**
+     * 设备类型
+     */
+    DeviceType deviceType;
+
+    /**
+     * 激活状态
+     */
+    DeviceActivationStatus activationStatus;
+
+    /**
+     * 所属企业ID（未归属企业时为null）
+     */
+    Long companyId;
+
+    /**
+     * 从Device实体创建快照
+     */
+    public static DeviceSnapshot of(Device device) {
+        return new DeviceSnapshot(
+            device.getId(),
+            device.getDeviceCode(),
+            device.getDeviceType(),
+            device.getActivationStatus(),
+            device.getCompany() != null ? device.getCompany().getId() : null
+        );
+    }
+}
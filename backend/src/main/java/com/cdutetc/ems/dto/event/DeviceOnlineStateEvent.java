@@ -0,0 +1,41 @@
+package com.cdutetc.ems.dto.event;
+
+import com.cdutetc.ems.entity.enums.DeviceStatus;
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+import java.time.LocalDateTime;
+
+/**
+ * 设备在线状态变化事件
+ * 仅在状态实际变化时发布（ONLINE ↔ OFFLINE，或启动后首次收到消息）
+ *
+ * @author EMS Team
+ */
+@Getter
+public class DeviceOnlineStateEvent extends ApplicationEvent {
+    private final String deviceCode;
+    private final Long deviceId;
+    private final Long companyId;
+    private final DeviceStatus previousStatus;  // 本节点启动后首次记录时为null
+    private final DeviceStatus currentStatus;
+    private final LocalDateTime eventTime;
+
+    public DeviceOnlineStateEvent(Object source, String deviceCode, Long deviceId, Long companyId,
+                                  DeviceStatus previousStatus, DeviceStatus currentStatus) {
+        super(source);
+        this.deviceCode = deviceCode;
+        this.deviceId = deviceId;
+        this.companyId = companyId;
+        this.previousStatus = previousStatus;
+        this.currentStatus = currentStatus;
+        this.eventTime = LocalDateTime.now();
+    }
+
+    /**
+     * 是否为上线事件
+     */
+    public boolean isOnline() {
+        return currentStatus == DeviceStatus.ONLINE;
+    }
+}
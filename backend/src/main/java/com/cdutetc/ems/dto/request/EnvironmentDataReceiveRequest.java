@@ -1,5 +1,6 @@
 package com.cdutetc.ems.dto.request;
 
+import com.fasterxml.jackson.annotation.JsonAlias;
 import jakarta.validation.constraints.DecimalMin;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
@@ -39,4 +40,10 @@ public class EnvironmentDataReceiveRequest {
     @NotNull(message = "电池电压不能为空")
     @DecimalMin(value = "0.0", message = "电池电压必须大于等于0")
     private Double battery;
+
+    /**
+     * 设备采集时间（毫秒时间戳，可选，也可使用recordTime字段名），缺省时使用接收时间
+     */
+    @JsonAlias("recordTime")
+    private Long ts;
 }
\ No newline at end of file
@@ -1,5 +1,6 @@
 package com.cdutetc.ems.dto.request;
 
+import com.fasterxml.jackson.annotation.JsonAlias;
 import jakarta.validation.constraints.DecimalMin;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
@@ -43,6 +44,12 @@ public class RadiationDataReceiveRequest {
     @NotNull(message = "方式不能为空")
     private Integer way;
 
+    /**
+     * 设备采集时间（毫秒时间戳，可选，也可使用recordTime字段名），缺省时解析time字段，均无效时使用接收时间
+     */
+    @JsonAlias("recordTime")
+    private Long ts;
+
     // BDS位置信息
     private String bdsLongitude;
     private String bdsLatitude;
@@ -0,0 +1,75 @@
+package com.cdutetc.ems.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * 设备数据批量接收结果DTO
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DeviceDataBatchReceiveResponse {
+
+    /**
+     * 是否完整处理了请求体（解析出错或写入缓冲区失败时为false，之前的读数已接收）
+     */
+    private Boolean success;
+
+    /**
+     * 响应消息
+     */
+    private String message;
+
+    /**
+     * 设备类型（RADIATION / ENVIRONMENT）
+     */
+    private String deviceType;
+
+    /**
+     * 读取的读数总数
+     */
+    private long totalCount;
+
+    /**
+     * 已写入缓冲区的读数数
+     */
+    private long acceptedCount;
+
+    /**
+     * 被拒绝的读数数（设备不存在/未激活、重复读数）
+     */
+    private long rejectedCount;
+
+    /**
+     * 格式或字段校验不通过的读数数
+     */
+    private long invalidCount;
+
+    /**
+     * 按设备统计的接收结果
+     */
+    private Map<String, DeviceCount> devices;
+
+    /**
+     * 接收时间
+     */
+    private LocalDateTime receiveTime;
+
+    /**
+     * 单台设备的接收统计
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class DeviceCount {
+        private long accepted;
+        private long rejected;
+    }
+}
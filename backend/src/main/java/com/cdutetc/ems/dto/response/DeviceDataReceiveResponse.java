@@ -27,7 +27,7 @@ public class DeviceDataReceiveResponse {
     private String message;
 
     /**
-     * 保存的数据ID
+     * 设备ID（数据先写入缓冲区再批量入库，接收时还没有数据ID）
      */
     private Long deviceId;
 
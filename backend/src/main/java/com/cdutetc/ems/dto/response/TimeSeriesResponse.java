@@ -0,0 +1,35 @@
+package com.cdutetc.ems.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 降采样曲线响应DTO
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TimeSeriesResponse {
+
+    private String deviceCode;
+    private String metric;
+    private LocalDateTime startTime;
+    private LocalDateTime endTime;
+    private String source;         // RAW（原始读数）或 MINUTE/HOUR/DAY（汇总桶平均值，时间为桶起点）
+    private String mode;           // LTTB 或 MINMAX
+    private List<Point> points;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Point {
+        private LocalDateTime time;
+        private Double value;
+    }
+}
@@ -0,0 +1,30 @@
+package com.cdutetc.ems.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 已写入MySQL的缓冲批次（重放去重）
+ *
+ * MonitoringDataBatchWriter在写入原始数据和汇总的同一事务中插入批次标识：
+ * 事务提交后、确认处理中列表或推进WAL检查点前退出时，重放的批次标识已存在，整批跳过，不会重复写入和累加。
+ * 超过保留时间的记录由MonitoringDataFlushScheduler定时清理。
+ */
+@Data
+@NoArgsConstructor
+@Entity
+@Table(name = "ems_buffer_applied_batch",
+       indexes = @Index(name = "idx_applied_batch_applied_at", columnList = "applied_at"))
+public class BufferAppliedBatch {
+
+    // 批次标识: 来源 + 批次内容的SHA-256（MonitoringDataBatchWriter.batchId）
+    @Id
+    @Column(name = "batch_id", length = 128)
+    private String batchId;
+
+    @Column(name = "applied_at", nullable = false)
+    private LocalDateTime appliedAt;
+}
@@ -0,0 +1,148 @@
+package com.cdutetc.ems.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 监测数据汇总实体（按设备、时间桶预聚合）
+ *
+ * 由MonitoringDataRollupRepository在写入原始数据的同一事务中增量更新（INSERT ... ON DUPLICATE KEY UPDATE），
+ * 统计接口按时间桶汇总，只在查询范围两端不足一个桶的部分查询原始数据。
+ * 时间桶为1分钟/1小时/1天，以resolution区分（分钟桶只保留最近几天）。
+ */
+@Data
+@NoArgsConstructor
+@Entity
+@Table(name = "ems_device_data_rollup",
+       uniqueConstraints = @UniqueConstraint(name = "uk_rollup_bucket",
+               columnNames = {"data_type", "resolution", "device_code", "bucket_start"}),
+       indexes = @Index(name = "idx_rollup_resolution_bucket", columnList = "resolution,bucket_start"))
+public class DeviceDataRollup {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "data_type", nullable = false, length = 20)
+    private DataType dataType;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "resolution", nullable = false, length = 10)
+    private Resolution resolution;
+
+    @Column(name = "device_code", nullable = false)
+    private String deviceCode;
+
+    // 时间桶起点（含），桶内读数record_time在[bucket_start, bucket_start + 桶长度)
+    @Column(name = "bucket_start", nullable = false)
+    private LocalDateTime bucketStart;
+
+    // 桶内读数条数
+    @Column(name = "sample_count", nullable = false)
+    private long sampleCount;
+
+    // 桶内最新读数的采集时间（*_last取该读数的值）
+    @Column(name = "last_time", columnDefinition = "DATETIME(6)")
+    private LocalDateTime lastTime;
+
+    // CPM：非空读数条数、合计、最小值、最大值、最新值
+    @Column(name = "cpm_count", nullable = false)
+    private long cpmCount;
+
+    @Column(name = "cpm_sum")
+    private Double cpmSum;
+
+    @Column(name = "cpm_min")
+    private Double cpmMin;
+
+    @Column(name = "cpm_max")
+    private Double cpmMax;
+
+    @Column(name = "cpm_last")
+    private Double cpmLast;
+
+    // 电池电压（辐射设备为Batvolt）：非空读数条数、合计、最小值、最大值、最新值
+    @Column(name = "battery_count", nullable = false)
+    private long batteryCount;
+
+    @Column(name = "battery_sum")
+    private Double batterySum;
+
+    @Column(name = "battery_min")
+    private Double batteryMin;
+
+    @Column(name = "battery_max")
+    private Double batteryMax;
+
+    @Column(name = "battery_last")
+    private Double batteryLast;
+
+    // 温度：非空读数条数、合计、最小值、最大值、最新值
+    @Column(name = "temperature_count", nullable = false)
+    private long temperatureCount;
+
+    @Column(name = "temperature_sum")
+    private Double temperatureSum;
+
+    @Column(name = "temperature_min")
+    private Double temperatureMin;
+
+    @Column(name = "temperature_max")
+    private Double temperatureMax;
+
+    @Column(name = "temperature_last")
+    private Double temperatureLast;
+
+    // 湿度：非空读数条数、合计、最小值、最大值、最新值
+    @Column(name = "wetness_count", nullable = false)
+    private long wetnessCount;
+
+    @Column(name = "wetness_sum")
+    private Double wetnessSum;
+
+    @Column(name = "wetness_min")
+    private Double wetnessMin;
+
+    @Column(name = "wetness_max")
+    private Double wetnessMax;
+
+    @Column(name = "wetness_last")
+    private Double wetnessLast;
+
+    // 风速：非空读数条数、合计、最小值、最大值、最新值
+    @Column(name = "windspeed_count", nullable = false)
+    private long windspeedCount;
+
+    @Column(name = "windspeed_sum")
+    private Double windspeedSum;
+
+    @Column(name = "windspeed_min")
+    private Double windspeedMin;
+
+    @Column(name = "windspeed_max")
+    private Double windspeedMax;
+
+    @Column(name = "windspeed_last")
+    private Double windspeedLast;
+
+    /**
+     * 数据类型
+     */
+    public enum DataType {
+        RADIATION,
+        ENVIRONMENT
+    }
+
+    /**
+     * 时间桶长度
+     */
+    public enum Resolution {
+        MINUTE,
+        HOUR,
+        DAY
+    }
+}
@@ -0,0 +1,40 @@
+package com.cdutetc.ems.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 监测数据汇总状态（每种数据类型一行）
+ *
+ * 启用汇总时记录原始表当时的最大id：之后写入的读数在写入时汇总，
+ * id不超过该值的历史读数由MonitoringDataRollupScheduler按设备逐个补算（只补算小时/天桶）。
+ */
+@Data
+@NoArgsConstructor
+@Entity
+@Table(name = "ems_device_data_rollup_state")
+public class DeviceDataRollupState {
+
+    @Id
+    @Enumerated(EnumType.STRING)
+    @Column(name = "data_type", length = 20)
+    private DeviceDataRollup.DataType dataType;
+
+    // 启用汇总时原始表的最大id，补算范围为id <= backfill_max_id
+    @Column(name = "backfill_max_id", nullable = false)
+    private long backfillMaxId;
+
+    // 启用汇总的时间：之后的分钟桶完整；补算完成前，之后的小时/天桶完整
+    @Column(name = "enabled_at", nullable = false)
+    private LocalDateTime enabledAt;
+
+    // 已补算的最后一个设备编码（按编码顺序逐个补算）
+    @Column(name = "backfill_cursor")
+    private String backfillCursor;
+
+    @Column(name = "backfill_done", nullable = false)
+    private boolean backfillDone;
+}
@@ -7,7 +7,6 @@ import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
-import org.hibernate.annotations.CreationTimestamp;
 
 import java.time.LocalDateTime;
 
@@ -19,7 +18,11 @@ import java.time.LocalDateTime;
 @AllArgsConstructor
 @EqualsAndHashCode(callSuper = true)
 @Entity
-@Table(name = "ems_radiation_device_data")
+@Table(name = "ems_radiation_device_data",
+       indexes = {
+               @Index(name = "idx_radiation_device_time", columnList = "device_code,record_time"),
+               @Index(name = "idx_radiation_time", columnList = "record_time")
+       })
 public class RadiationDeviceData extends BaseEntity {
 
     @Id
@@ -70,7 +73,14 @@ public class RadiationDeviceData extends BaseEntity {
     @Column(name = "gps_utc", length = 50)
     private String gpsUtc;   // 仅BDS有值，LBS为null
 
-    @CreationTimestamp
+    // 采集时间：批量补传的读数使用设备时间，未设置时取入库时间
     @Column(name = "record_time", nullable = false, updatable = false)
     private LocalDateTime recordTime;
+
+    @PrePersist
+    protected void onCreate() {
+        if (recordTime == null) {
+            recordTime = LocalDateTime.now();
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,72 @@
+package com.cdutetc.ems.listener;
+
+import com.cdutetc.ems.dto.event.DeviceDataEvent;
+import com.cdutetc.ems.dto.event.DeviceOnlineStateEvent;
+import com.cdutetc.ems.service.AlertService;
+import com.cdutetc.ems.service.SseEmitterService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * 设备在线状态事件监听器
+ * 1. 设备上线 → 解决离线告警
+ * 2. 状态变化 → SSE推送（事件名: device-status）
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class DeviceOnlineStateEventListener {
+
+    private final AlertService alertService;
+    private final SseEmitterService sseEmitterService;
+
+    /**
+     * 设备上线时解决离线告警
+     *
+     * @param event 在线状态变化事件
+     */
+    @EventListener(classes = DeviceOnlineStateEvent.class)
+    public void resolveOfflineAlerts(DeviceOnlineStateEvent event) {
+        if (!event.isOnline() || event.getDeviceId() == null) {
+            return;
+        }
+
+        try {
+            alertService.resolveOfflineAlerts(event.getDeviceCode(), event.getDeviceId());
+        } catch (Exception e) {
+            log.warn("解决离线告警失败: deviceCode={}, error={}", event.getDeviceCode(), e.getMessage());
+        }
+    }
+
+    /**
+     * 推送在线状态变化
+     *
+     * @param event 在线状态变化事件
+     */
+    @EventListener(classes = DeviceOnlineStateEvent.class)
+    public void pushStatusViaSSE(DeviceOnlineStateEvent event) {
+        if (event.getCompanyId() == null) {
+            return;
+        }
+
+        try {
+            DeviceDataEvent sseEvent = new DeviceDataEvent(
+                "device-status",
+                event.getDeviceCode(),
+                "DEVICE",
+                Map.of(
+                    "status", event.getCurrentStatus().name(),
+                    "changedAt", event.getEventTime().toString()
+                )
+            );
+            sseEmitterService.broadcastDeviceData(event.getCompanyId(), sseEvent);
+            log.debug("📡 SSE推送设备状态成功: {} -> {}", event.getDeviceCode(), event.getCurrentStatus());
+        } catch (Exception e) {
+            log.warn("⚠️ SSE推送设备状态失败: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,565 @@
+package com.cdutetc.ems.mqtt;
+
+import com.cdutetc.ems.config.CpmConversionProperties;
+import com.cdutetc.ems.entity.EnvironmentDeviceData;
+import com.cdutetc.ems.entity.RadiationDeviceData;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 设备消息流式解码器
+ *
+ * 功能:
+ * 1. 直接在原始byte[]上按Token流式解析，不构建JsonNode树
+ * 2. 解析结果直接写入RadiationDeviceData / EnvironmentDeviceData
+ * 3. 保持与JsonParserUtil一致的字段容错规则（字符串数字、浮点转整数、null跳过）
+ * 4. 保留BDS/LBS定位选择、CPM转换系数和电压mV→V转换
+ * 5. 批量消息（网关/断线补传）一次解析出多条读数
+ * 6. 辐射设备二进制消息（RadiationBinaryFormat）直接按偏移读取
+ *
+ * 与旧实现相比，每条消息不再分配JsonNode树、Optional和lambda对象。
+ *
+ * @author EMS Team
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class DevicePayloadDecoder {
+
+    /**
+     * JsonFactory线程安全，可在所有工作通道间共享
+     */
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /**
+     * 设备time字段格式
+     */
+    private static final DateTimeFormatter DEVICE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss");
+
+    private final CpmConversionProperties cpmConversionProperties;
+
+    /**
+     * 解码辐射设备消息
+     * 原始JSON格式: {"src":1,"msgtype":1,"CPM":123,"Batvolt":3989,"time":"2025/01/15 14:30:45","trigger":1,"multi":1,"way":1,"BDS":{...},"LBS":{...}}
+     *
+     * @param payload 原始消息字节
+     * @param data 解析结果写入的目标对象
+     * @throws IOException JSON格式错误时抛出（已解析的字段保留在data中）
+     */
+    public void decodeRadiation(byte[] payload, RadiationDeviceData data) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(payload)) {
+            expectObject(parser);
+            readRadiation(parser, data, false);
+        }
+    }
+
+    /**
+     * 解码辐射设备二进制消息（布局见RadiationBinaryFormat）
+     *
+     * @param payload 原始消息字节
+     * @param data 解析结果写入的目标对象
+     * @throws IOException 版本不支持或长度不足时抛出
+     */
+    public void decodeRadiationBinary(byte[] payload, RadiationDeviceData data) throws IOException {
+        if (payload.length < RadiationBinaryFormat.HEADER_LENGTH) {
+            throw new IOException("二进制消息长度不足: " + payload.length);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        int version = Byte.toUnsignedInt(buffer.get());
+        if (version != RadiationBinaryFormat.VERSION) {
+            throw new IOException("不支持的二进制消息版本: " + version);
+        }
+
+        data.setSrc(Byte.toUnsignedInt(buffer.get()));
+        data.setMsgtype(Byte.toUnsignedInt(buffer.get()));
+        data.setDataTrigger(Byte.toUnsignedInt(buffer.get()));
+        data.setMulti(Byte.toUnsignedInt(buffer.get()));
+        data.setWay(Byte.toUnsignedInt(buffer.get()));
+        data.setBatvolt(Short.toUnsignedInt(buffer.getShort()) / 1000.0); // mV转V
+        data.setCpm(convertCpm(buffer.getFloat(), cpmConversionProperties.getRadiationConversionFactor()));
+
+        long epochSeconds = Integer.toUnsignedLong(buffer.getInt());
+        if (epochSeconds != 0) {
+            data.setTime(formatDeviceTime(
+                    LocalDateTime.ofInstant(Instant.ofEpochSecond(epochSeconds), ZoneId.systemDefault())));
+        }
+
+        int gpsType = Byte.toUnsignedInt(buffer.get());
+        if (gpsType == RadiationBinaryFormat.GPS_NONE) {
+            return;
+        }
+        int required = RadiationBinaryFormat.LOCATION_LENGTH
+                + (gpsType == RadiationBinaryFormat.GPS_BDS ? RadiationBinaryFormat.UTC_LENGTH : 0);
+        if (buffer.remaining() < required) {
+            throw new IOException("二进制消息定位数据不完整: " + payload.length);
+        }
+        String longitude = formatMicroDegrees(buffer.getInt());
+        String latitude = formatMicroDegrees(buffer.getInt());
+        if (gpsType == RadiationBinaryFormat.GPS_BDS) {
+            int utc = buffer.getInt();
+            selectGps(data, longitude, latitude, formatSecondOfDay(utc), 1, null, null);
+        } else if (gpsType == RadiationBinaryFormat.GPS_LBS) {
+            selectGps(data, null, null, null, null, longitude, latitude);
+        } else {
+            log.warn("未知的定位类型: {}", gpsType);
+        }
+    }
+
+    /**
+     * 解码环境设备消息
+     * 原始JSON格式: {"src":1,"CPM":4,"temperature":10,"wetness":95,"windspeed":0.2,"total":144.1,"battery":11.9}
+     *
+     * @param payload 原始消息字节
+     * @param data 解析结果写入的目标对象
+     * @throws IOException JSON格式错误时抛出（已解析的字段保留在data中）
+     */
+    public void decodeEnvironment(byte[] payload, EnvironmentDeviceData data) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(payload)) {
+            expectObject(parser);
+            readEnvironment(parser, data, false);
+        }
+    }
+
+    /**
+     * 解码辐射设备批量消息
+     * 格式: [{读数}, ...] 或 {"readings":[{读数}, ...]}
+     * 读数字段与单条消息相同，另外支持:
+     * - ts: 设备采集时间（毫秒时间戳），写入recordTime；缺省时使用time字段
+     * - deviceCode: 读数所属设备（网关转发多台设备时使用），缺省为null
+     * 每条读数的rawData为其自身的JSON文本
+     *
+     * @param payload 原始消息字节
+     * @return 按消息中顺序排列的读数
+     * @throws IOException JSON格式错误时抛出
+     */
+    public List<RadiationDeviceData> decodeRadiationBatch(byte[] payload) throws IOException {
+        List<RadiationDeviceData> readings = new ArrayList<>();
+        try (JsonParser parser = JSON_FACTORY.createParser(payload)) {
+            expectReadingsArray(parser);
+            while (nextReading(parser)) {
+                int start = (int) parser.currentTokenLocation().getByteOffset();
+                RadiationDeviceData data = new RadiationDeviceData();
+                readRadiation(parser, data, true);
+                data.setRawData(rawText(payload, start, parser));
+                if (data.getRecordTime() == null) {
+                    data.setRecordTime(parseDeviceTime(data.getTime()));
+                }
+                readings.add(data);
+            }
+        }
+        return readings;
+    }
+
+    /**
+     * 解码环境设备批量消息
+     * 格式同decodeRadiationBatch
+     *
+     * @param payload 原始消息字节
+     * @return 按消息中顺序排列的读数
+     * @throws IOException JSON格式错误时抛出
+     */
+    public List<EnvironmentDeviceData> decodeEnvironmentBatch(byte[] payload) throws IOException {
+        List<EnvironmentDeviceData> readings = new ArrayList<>();
+        try (JsonParser parser = JSON_FACTORY.createParser(payload)) {
+            expectReadingsArray(parser);
+            while (nextReading(parser)) {
+                int start = (int) parser.currentTokenLocation().getByteOffset();
+                EnvironmentDeviceData data = new EnvironmentDeviceData();
+                readEnvironment(parser, data, true);
+                data.setRawData(rawText(payload, start, parser));
+                readings.add(data);
+            }
+        }
+        return readings;
+    }
+
+    // ==================== 读数解析 ====================
+
+    /**
+     * 读取一条辐射读数（parser位于START_OBJECT）
+     *
+     * @param batchItem 是否为批量消息中的读数（仅批量读数接受ts和deviceCode字段）
+     */
+    private void readRadiation(JsonParser parser, RadiationDeviceData data, boolean batchItem) throws IOException {
+        String bdsLongitude = null;
+        String bdsLatitude = null;
+        String bdsUtc = null;
+        Integer bdsUseful = null;
+        String lbsLongitude = null;
+        String lbsLatitude = null;
+
+        try {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+
+                if (batchItem && readBatchField(parser, field, data::setDeviceCode, data::setRecordTime)) {
+                    continue;
+                }
+
+                switch (field) {
+                    case "src" -> data.setSrc(readInt(parser, field));
+                    case "msgtype" -> data.setMsgtype(readInt(parser, field));
+                    case "CPM" -> {
+                        Double rawCpm = readDouble(parser, field);
+                        if (rawCpm != null) {
+                            data.setCpm(convertCpm(rawCpm, cpmConversionProperties.getRadiationConversionFactor()));
+                        }
+                    }
+                    case "Batvolt" -> {
+                        Double rawBatvolt = readDouble(parser, field);
+                        if (rawBatvolt != null) {
+                            data.setBatvolt(rawBatvolt / 1000.0); // mV转V：原始值(mV) ÷ 1000 = 电压(V)
+                        }
+                    }
+                    case "time" -> data.setTime(readString(parser));
+                    case "trigger" -> data.setDataTrigger(readInt(parser, field));
+                    case "multi" -> data.setMulti(readInt(parser, field));
+                    case "way" -> data.setWay(readInt(parser, field));
+                    case "BDS" -> {
+                        if (isObjectStart(parser, field)) {
+                            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                                String gpsField = parser.getCurrentName();
+                                parser.nextToken();
+                                switch (gpsField) {
+                                    case "longitude" -> bdsLongitude = readString(parser);
+                                    case "latitude" -> bdsLatitude = readString(parser);
+                                    case "UTC" -> bdsUtc = readString(parser);
+                                    case "useful" -> bdsUseful = readInt(parser, gpsField);
+                                    default -> parser.skipChildren();
+                                }
+                            }
+                        }
+                    }
+                    case "LBS" -> {
+                        if (isObjectStart(parser, field)) {
+                            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                                String gpsField = parser.getCurrentName();
+                                parser.nextToken();
+                                switch (gpsField) {
+                                    case "longitude" -> lbsLongitude = readString(parser);
+                                    case "latitude" -> lbsLatitude = readString(parser);
+                                    default -> parser.skipChildren();
+                                }
+                            }
+                        }
+                    }
+                    default -> parser.skipChildren();
+                }
+            }
+        } finally {
+            // GPS数据选择（根据useful字段自动选择BDS或LBS），JSON截断时也使用已解析的部分
+            selectGps(data, bdsLongitude, bdsLatitude, bdsUtc, bdsUseful, lbsLongitude, lbsLatitude);
+        }
+    }
+
+    /**
+     * 读取一条环境读数（parser位于START_OBJECT）
+     *
+     * @param batchItem 是否为批量消息中的读数（仅批量读数接受ts和deviceCode字段）
+     */
+    private void readEnvironment(JsonParser parser, EnvironmentDeviceData data, boolean batchItem) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+
+            if (batchItem && readBatchField(parser, field, data::setDeviceCode, data::setRecordTime)) {
+                continue;
+            }
+
+            switch (field) {
+                case "src" -> data.setSrc(readInt(parser, field));
+                case "CPM" -> {
+                    Double rawCpm = readDouble(parser, field);
+                    if (rawCpm != null) {
+                        data.setCpm(convertCpm(rawCpm, cpmConversionProperties.getEnvironmentConversionFactor()));
+                    }
+                }
+                case "temperature" -> data.setTemperature(readDouble(parser, field));
+                case "wetness" -> data.setWetness(readDouble(parser, field));
+                case "windspeed" -> data.setWindspeed(readDouble(parser, field));
+                case "total" -> data.setTotal(readDouble(parser, field));
+                case "battery" -> data.setBattery(readDouble(parser, field));
+                default -> parser.skipChildren();
+            }
+        }
+    }
+
+    /**
+     * 读取批量读数专有字段
+     *
+     * @return 字段已处理时返回true
+     */
+    private static boolean readBatchField(JsonParser parser, String field,
+                                          Consumer<String> deviceCodeSetter,
+                                          Consumer<LocalDateTime> recordTimeSetter) throws IOException {
+        switch (field) {
+            case "deviceCode" -> deviceCodeSetter.accept(readString(parser));
+            case "ts" -> {
+                Double ts = readDouble(parser, field);
+                if (ts != null) {
+                    recordTimeSetter.accept(LocalDateTime.ofInstant(
+                            Instant.ofEpochMilli(ts.longValue()), ZoneId.systemDefault()));
+                }
+            }
+            default -> {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // ==================== 内部辅助方法 ====================
+
+    private double convertCpm(double rawCpm, double factor) {
+        return cpmConversionProperties.isEnabled() ? rawCpm / factor : rawCpm;
+    }
+
+    private static void expectObject(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("消息体不是JSON对象");
+        }
+    }
+
+    /**
+     * 定位到读数数组：支持顶层数组或{"readings":[...]}
+     */
+    private static void expectReadingsArray(JsonParser parser) throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == JsonToken.START_ARRAY) {
+            return;
+        }
+        if (token == JsonToken.START_OBJECT) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                if (parser.nextToken() == JsonToken.START_ARRAY && "readings".equals(field)) {
+                    return;
+                }
+                parser.skipChildren();
+            }
+        }
+        throw new IOException("批量消息缺少readings数组");
+    }
+
+    /**
+     * 移动到下一条读数的START_OBJECT，数组结束时返回false
+     */
+    private static boolean nextReading(JsonParser parser) throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token == null) {
+                throw new IOException("批量消息不完整");
+            }
+            if (token == JsonToken.START_OBJECT) {
+                return true;
+            }
+            log.warn("批量消息中的读数不是JSON对象，已跳过");
+            parser.skipChildren();
+        }
+        return false;
+    }
+
+    /**
+     * 截取当前读数（parser位于END_OBJECT）的原始JSON文本
+     */
+    private static String rawText(byte[] payload, int start, JsonParser parser) {
+        int end = (int) parser.currentLocation().getByteOffset();
+        return new String(payload, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    // 二进制消息的文本字段按固定格式逐位拼接，避免DateTimeFormatter/String.format/BigDecimal的开销
+
+    /**
+     * 1e-6度 → 十进制度数文本，去掉小数部分末尾的0（103980000 → "103.98"）
+     */
+    static String formatMicroDegrees(int micros) {
+        StringBuilder sb = new StringBuilder(12);
+        long value = micros;
+        if (value < 0) {
+            sb.append('-');
+            value = -value;
+        }
+        sb.append(value / 1_000_000);
+        int fraction = (int) (value % 1_000_000);
+        if (fraction != 0) {
+            int digits = 6;
+            while (fraction % 10 == 0) {
+                fraction /= 10;
+                digits--;
+            }
+            sb.append('.');
+            // 补齐小数部分前导0（1 → "0.000001"）
+            for (int bound = POWERS_OF_TEN[digits - 1]; bound > fraction; bound /= 10) {
+                sb.append('0');
+            }
+            sb.append(fraction);
+        }
+        return sb.toString();
+    }
+
+    private static final int[] POWERS_OF_TEN = {1, 10, 100, 1_000, 10_000, 100_000};
+
+    /**
+     * 格式化为设备time字段格式 yyyy/MM/dd HH:mm:ss
+     */
+    static String formatDeviceTime(LocalDateTime time) {
+        StringBuilder sb = new StringBuilder(19);
+        sb.append(time.getYear()).append('/');
+        appendTwoDigits(sb, time.getMonthValue()).append('/');
+        appendTwoDigits(sb, time.getDayOfMonth()).append(' ');
+        appendTwoDigits(sb, time.getHour()).append(':');
+        appendTwoDigits(sb, time.getMinute()).append(':');
+        appendTwoDigits(sb, time.getSecond());
+        return sb.toString();
+    }
+
+    /**
+     * 当日秒数 → HH:mm:ss
+     */
+    static String formatSecondOfDay(int secondOfDay) {
+        StringBuilder sb = new StringBuilder(8);
+        appendTwoDigits(sb, secondOfDay / 3600).append(':');
+        appendTwoDigits(sb, secondOfDay / 60 % 60).append(':');
+        appendTwoDigits(sb, secondOfDay % 60);
+        return sb.toString();
+    }
+
+    private static StringBuilder appendTwoDigits(StringBuilder sb, int value) {
+        if (value < 10) {
+            sb.append('0');
+        }
+        return sb.append(value);
+    }
+
+    /**
+     * 解析设备time字段（yyyy/MM/dd HH:mm:ss），无法解析时返回null
+     */
+    public static LocalDateTime parseDeviceTime(String time) {
+        if (time == null) {
+            return null;
+        }
+        try {
+            return LocalDateTime.parse(time, DEVICE_TIME_FORMAT);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 当前Token是否为对象起始；不是对象时跳过该值
+     */
+    private static boolean isObjectStart(JsonParser parser, String fieldName) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.START_OBJECT) {
+            return true;
+        }
+        if (token != JsonToken.VALUE_NULL && token != JsonToken.START_ARRAY) {
+            log.warn("字段 {} 不是对象或数组类型", fieldName);
+        }
+        parser.skipChildren();
+        return false;
+    }
+
+    /**
+     * 读取整数值，规则与JsonParserUtil.parseInt一致
+     */
+    private static Integer readInt(JsonParser parser, String fieldName) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == null) {
+            return null;
+        }
+        switch (token) {
+            case VALUE_NUMBER_INT:
+                return parser.getIntValue();
+            case VALUE_NUMBER_FLOAT:
+                return (int) parser.getDoubleValue();
+            case VALUE_STRING:
+                try {
+                    return Integer.parseInt(parser.getText());
+                } catch (NumberFormatException e) {
+                    log.warn("字段 {} 的值 '{}' 无法转换为整数", fieldName, parser.getText());
+                    return null;
+                }
+            default:
+                parser.skipChildren();
+                return null;
+        }
+    }
+
+    /**
+     * 读取浮点数值，规则与JsonParserUtil.parseDouble一致
+     */
+    private static Double readDouble(JsonParser parser, String fieldName) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == null) {
+            return null;
+        }
+        switch (token) {
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                return parser.getDoubleValue();
+            case VALUE_STRING:
+                try {
+                    return Double.parseDouble(parser.getText());
+                } catch (NumberFormatException e) {
+                    log.warn("字段 {} 的值 '{}' 无法转换为浮点数", fieldName, parser.getText());
+                    return null;
+                }
+            default:
+                parser.skipChildren();
+                return null;
+        }
+    }
+
+    /**
+     * 读取字符串值，规则与JsonParserUtil.parseString一致（标量值转为文本）
+     */
+    private static String readString(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token != null && token.isScalarValue() && token != JsonToken.VALUE_NULL) {
+            return parser.getText();
+        }
+        parser.skipChildren();
+        return null;
+    }
+
+    /**
+     * 根据useful字段选择GPS数据
+     * 优先级：BDS可用 → BDS；否则 → LBS
+     */
+    private static void selectGps(RadiationDeviceData data,
+                                  String bdsLongitude, String bdsLatitude, String bdsUtc, Integer bdsUseful,
+                                  String lbsLongitude, String lbsLatitude) {
+        if (bdsUseful != null && bdsUseful == 1 && bdsLongitude != null && bdsLatitude != null) {
+            // BDS可用，使用北斗
+            data.setGpsType("BDS");
+            data.setGpsLongitude(bdsLongitude);
+            data.setGpsLatitude(bdsLatitude);
+            data.setGpsUtc(bdsUtc);
+        } else if (lbsLongitude != null && lbsLatitude != null) {
+            // BDS不可用，使用LBS
+            data.setGpsType("LBS");
+            data.setGpsLongitude(lbsLongitude);
+            data.setGpsLatitude(lbsLatitude);
+            data.setGpsUtc(null);
+        } else {
+            log.debug("📍 GPS选择: BDS和LBS都不可用或数据缺失");
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.cdutetc.ems.mqtt;
+
+import com.cdutetc.ems.config.MqttDedupProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 重复读数过滤器
+ *
+ * QoS 1重新投递和设备端重试会使同一读数多次到达，重复读数在写入缓冲区前被丢弃，
+ * 不会被持久化、上报省平台或参与CPM上升率计算。
+ *
+ * 读数标识: 设备上报了time字段时为time，否则为消息内容的64位哈希（FNV-1a），最低位区分两者（time为1）。
+ * 每台设备保留最近windowSize个标识（环形数组），超过windowSeconds的标识失效。
+ *
+ * 内容哈希只在重新投递（MQTT DUP标记）时用于丢弃：设备读数不变时（温湿度、CPM、电压相同）
+ * 内容完全相同的新消息是有效样本，首次投递只记录标识，不视为重复。
+ *
+ * 过滤状态保存在本节点内存中；启用共享订阅时，重新投递到其他节点的读数不会被识别。
+ *
+ * @author EMS Team
+ */
+@Slf4j
+@Component
+public class DuplicateReadingFilter {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * 区分time标识和内容哈希标识
+     */
+    private static final long TIME_KEY_SALT = 0x9e3779b97f4a7c15L;
+    private static final long TIME_KEY_BIT = 1L;
+
+    private final MqttDedupProperties properties;
+    private final Map<String, Window> windows = new ConcurrentHashMap<>();
+    private final Counter suppressedCounter;
+
+    public DuplicateReadingFilter(MqttDedupProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.suppressedCounter = Counter.builder("ems.ingest.duplicates.suppressed")
+                .description("被丢弃的重复读数")
+                .register(meterRegistry);
+        Gauge.builder("ems.ingest.duplicates.devices", windows, Map::size)
+                .description("重复过滤器中跟踪的设备数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 计算读数标识
+     *
+     * @param deviceTime 设备time字段，为null时使用消息内容
+     * @param payload 原始消息字节
+     */
+    public long readingKey(String deviceTime, byte[] payload) {
+        return deviceTime != null ? timeKey(deviceTime) : hash(payload) & ~TIME_KEY_BIT;
+    }
+
+    /**
+     * 计算读数标识（批量消息中的读数，内容为其自身的JSON文本）
+     *
+     * @param deviceTime 设备time字段，为null时使用rawData
+     * @param rawData 读数原始文本
+     */
+    public long readingKey(String deviceTime, String rawData) {
+        return readingKey(deviceTime, rawData != null ? rawData.getBytes(StandardCharsets.UTF_8) : new byte[0]);
+    }
+
+    /**
+     * 检查首次投递的读数是否重复，不重复时记录该读数
+     * 只有time标识会被判定为重复
+     *
+     * @param deviceCode 设备编码
+     * @param key 读数标识（readingKey）
+     * @return 重复时返回true
+     */
+    public boolean isDuplicate(String deviceCode, long key) {
+        return isDuplicate(deviceCode, key, false);
+    }
+
+    /**
+     * 检查读数是否重复，不重复时记录该读数
+     *
+     * @param deviceCode 设备编码
+     * @param key 读数标识（readingKey）
+     * @param redelivery 是否为重新投递的消息（MQTT DUP标记），只有重新投递时内容哈希标识才会被判定为重复
+     * @return 重复时返回true
+     */
+    public boolean isDuplicate(String deviceCode, long key, boolean redelivery) {
+        if (!properties.isEnabled()) {
+            return false;
+        }
+        Window window = windows.computeIfAbsent(deviceCode,
+                code -> new Window(Math.max(1, properties.getWindowSize())));
+        long ttl = TimeUnit.SECONDS.toNanos(properties.getWindowSeconds());
+        boolean suppress = redelivery || (key & TIME_KEY_BIT) != 0;
+        if (window.checkAndAdd(key, System.nanoTime(), ttl, suppress)) {
+            suppressedCounter.increment();
+            log.debug("丢弃重复读数: deviceCode={}", deviceCode);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 撤销读数记录（写入缓冲区失败时调用，使Broker重新投递的读数能够通过）
+     *
+     * @param deviceCode 设备编码
+     * @param key 读数标识（readingKey）
+     */
+    public void forget(String deviceCode, long key) {
+        Window window = windows.get(deviceCode);
+        if (window != null) {
+            window.remove(key);
+        }
+    }
+
+    /**
+     * 清理长时间没有读数的设备窗口
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void evictIdleWindows() {
+        long cutoff = System.nanoTime() - TimeUnit.SECONDS.toNanos(properties.getWindowSeconds());
+        windows.values().removeIf(window -> window.lastSeenAt() - cutoff < 0);
+    }
+
+    /**
+     * 当前跟踪的设备数
+     */
+    public int size() {
+        return windows.size();
+    }
+
+    private static long timeKey(String deviceTime) {
+        return (hash(deviceTime.getBytes(StandardCharsets.UTF_8)) ^ TIME_KEY_SALT) | TIME_KEY_BIT;
+    }
+
+    static long hash(byte[] bytes) {
+        long hash = FNV_OFFSET_BASIS;
+        for (byte b : bytes) {
+            hash ^= (b & 0xff);
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * 单台设备的滑动窗口（环形数组）
+     * 同一设备的消息通常在同一工作通道中处理，批量消息可能来自其他通道，因此加锁
+     */
+    private static final class Window {
+        private final long[] keys;
+        private final long[] seenAt;
+        private final boolean[] live;
+        private int next;
+        private int size;
+        private volatile long lastSeenAt;
+
+        private Window(int capacity) {
+            this.keys = new long[capacity];
+            this.seenAt = new long[capacity];
+            this.live = new boolean[capacity];
+        }
+
+        /**
+         * @param suppress 标识已存在时是否判定为重复；为false时只刷新记录时间
+         */
+        private synchronized boolean checkAndAdd(long key, long now, long ttlNanos, boolean suppress) {
+            lastSeenAt = now;
+            for (int i = 0; i < size; i++) {
+                if (live[i] && keys[i] == key && now - seenAt[i] < ttlNanos) {
+                    if (suppress) {
+                        return true;
+                    }
+                    seenAt[i] = now;
+                    return false;
+                }
+            }
+            keys[next] = key;
+            seenAt[next] = now;
+            live[next] = true;
+            next = (next + 1) % keys.length;
+            size = Math.min(size + 1, keys.length);
+            return false;
+        }
+
+        private synchronized void remove(long key) {
+            for (int i = 0; i < size; i++) {
+                if (keys[i] == key) {
+                    live[i] = false;
+                }
+            }
+        }
+
+        private long lastSeenAt() {
+            return lastSeenAt;
+        }
+    }
+}
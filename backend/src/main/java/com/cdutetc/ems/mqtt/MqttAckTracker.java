@@ -0,0 +1,287 @@
+package com.cdutetc.ems.mqtt;
+
+import com.cdutetc.ems.config.MqttConfig;
+import com.cdutetc.ems.config.MqttIngestProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.paho.client.mqttv3.IMqttClient;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * MQTT消息确认跟踪器
+ *
+ * 功能:
+ * 1. 为每条消息创建MqttAck，在数据写入缓冲区后确认（手动确认模式下发送PUBACK）
+ * 2. 在途窗口（每个连接独立，maxInFlight）：窗口已满时阻塞该连接的Paho回调线程直到有消息确认，形成背压；
+ *    不因等待超时拒绝消息，窗口满说明处理跟不上，拒绝并重连只会让Broker重新投递，加重过载
+ * 3. 指标：确认延迟、确认/拒绝/丢弃数、重复投递数、在途消息数、窗口等待超时次数
+ *
+ * 拒绝（reject）的消息:
+ * - 持久会话（cleanSession=false）：不发送PUBACK，并断开重连该连接。Broker只在重连时重新投递
+ *   未确认的QoS 1消息，不重连则未确认的消息会占满Broker的在途窗口（max_inflight_messages），该连接停止接收。
+ *   重连前该连接已接收、尚未确认的消息不再发送PUBACK，一并重新投递（已写入缓冲区的由DuplicateReadingFilter过滤）
+ * - 清除会话：重连也不会重新投递，发送PUBACK释放Broker窗口，按丢弃计数
+ *
+ * @author EMS Team
+ */
+@Slf4j
+@Component
+public class MqttAckTracker {
+
+    private final MqttIngestProperties properties;
+    private final MqttConfig mqttConfig;
+    private final int windowSize;
+
+    /**
+     * 每个连接的在途窗口；自动确认模式（client为null）共用一个窗口
+     */
+    private final Map<IMqttClient, Semaphore> windows = new ConcurrentHashMap<>();
+    private final Semaphore autoAckWindow;
+
+    /**
+     * 每个连接的会话代数，请求重连时加1；旧代数的消息不再发送PUBACK
+     */
+    private final Map<IMqttClient, AtomicInteger> sessionEpochs = new ConcurrentHashMap<>();
+    private final ExecutorService reconnectExecutor;
+
+    private final Timer ackLatencyTimer;
+    private final Counter ackedCounter;
+    private final Counter rejectedCounter;
+    private final Counter droppedCounter;
+    private final Counter redeliveredCounter;
+    private final Counter reconnectCounter;
+    private final Counter windowStalledCounter;
+
+    public MqttAckTracker(MqttIngestProperties properties, MqttConfig mqttConfig, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.mqttConfig = mqttConfig;
+        // 每个连接一个窗口，与Broker对每个客户端的在途窗口对应
+        this.windowSize = Math.max(1, properties.getMaxInFlight());
+        this.autoAckWindow = new Semaphore(windowSize);
+        this.reconnectExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "mqtt-redelivery");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.ackLatencyTimer = Timer.builder("ems.ingest.ack.latency")
+                .description("MQTT消息从接收到确认的耗时")
+                .register(meterRegistry);
+        this.ackedCounter = Counter.builder("ems.ingest.ack")
+                .description("MQTT消息确认结果")
+                .tag("outcome", "acked")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("ems.ingest.ack")
+                .description("MQTT消息确认结果")
+                .tag("outcome", "rejected")
+                .register(meterRegistry);
+        this.droppedCounter = Counter.builder("ems.ingest.ack")
+                .description("MQTT消息确认结果")
+                .tag("outcome", "dropped")
+                .register(meterRegistry);
+        this.redeliveredCounter = Counter.builder("ems.ingest.redelivered")
+                .description("Broker重复投递（DUP标记）的MQTT消息数")
+                .register(meterRegistry);
+        this.reconnectCounter = Counter.builder("ems.ingest.redelivery.reconnect")
+                .description("为重新投递拒绝的消息而重连的次数")
+                .register(meterRegistry);
+        this.windowStalledCounter = Counter.builder("ems.ingest.inflight.stalled")
+                .description("等待在途窗口空位超过告警时间的次数")
+                .register(meterRegistry);
+        Gauge.builder("ems.ingest.inflight", this, MqttAckTracker::getInFlightCount)
+                .description("已接收但尚未确认的MQTT消息数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 开始跟踪一条消息（在Paho回调线程中调用）
+     * 该连接的在途窗口已满时阻塞直到有消息确认；等待超过告警时间时记录日志并继续等待
+     *
+     * @param client 接收消息的客户端，为null时不发送PUBACK（自动确认模式）
+     * @param message MQTT消息
+     * @return 消息确认句柄
+     */
+    public MqttAck begin(IMqttClient client, MqttMessage message) {
+        if (message.isDuplicate()) {
+            redeliveredCounter.increment();
+        }
+
+        Semaphore window = windowOf(client);
+        boolean acquired = acquire(window, message.getId());
+        return new MqttAck(client, message.getId(), message.getQos(), epochOf(client), acquired ? window : null);
+    }
+
+    /**
+     * 当前在途消息数（所有连接之和）
+     */
+    public int getInFlightCount() {
+        int count = windowSize - autoAckWindow.availablePermits();
+        for (Semaphore window : windows.values()) {
+            count += windowSize - window.availablePermits();
+        }
+        return count;
+    }
+
+    /**
+     * 停止重连线程
+     */
+    @PreDestroy
+    public void shutdown() {
+        reconnectExecutor.shutdownNow();
+    }
+
+    private Semaphore windowOf(IMqttClient client) {
+        return client != null ? windows.computeIfAbsent(client, c -> new Semaphore(windowSize)) : autoAckWindow;
+    }
+
+    /**
+     * 阻塞获取窗口空位
+     * 被中断时不占用窗口继续处理（应用正在关闭）
+     */
+    private boolean acquire(Semaphore window, int messageId) {
+        long warnMs = Math.max(1, properties.getInFlightWaitWarnMs());
+        try {
+            while (!window.tryAcquire(warnMs, TimeUnit.MILLISECONDS)) {
+                windowStalledCounter.increment();
+                log.warn("⚠️ MQTT在途消息窗口已满（{}），已等待超过{}ms，继续等待: id={}", windowSize, warnMs, messageId);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private int epochOf(IMqttClient client) {
+        return client != null ? epochCounter(client).get() : 0;
+    }
+
+    private AtomicInteger epochCounter(IMqttClient client) {
+        return sessionEpochs.computeIfAbsent(client, c -> new AtomicInteger());
+    }
+
+    /**
+     * 请求重连以重新投递未确认的消息
+     * 同一会话代数只重连一次，重连前该代数的其余拒绝由同一次重连覆盖
+     */
+    private void requestRedelivery(IMqttClient client, int epoch) {
+        if (!epochCounter(client).compareAndSet(epoch, epoch + 1)) {
+            return;
+        }
+        reconnectCounter.increment();
+        reconnectExecutor.execute(() -> reconnect(client));
+    }
+
+    /**
+     * 断开并重连（持久会话和订阅保留在Broker，重连后Broker重新投递未确认的消息）
+     * 不能在Paho回调线程中执行，disconnect会等待回调返回
+     */
+    private void reconnect(IMqttClient client) {
+        try {
+            if (client.isConnected()) {
+                client.disconnect(0);
+            }
+            client.reconnect();
+            log.info("🔁 MQTT连接已重连，等待Broker重新投递未确认的消息: clientId={}", client.getClientId());
+        } catch (Exception e) {
+            // 自动重连或MqttClientConfig的连接检查会继续恢复连接
+            log.warn("⚠️ MQTT重连失败: clientId={}, error={}", client.getClientId(), e.getMessage());
+        }
+    }
+
+    /**
+     * 单条消息的确认句柄
+     * ack()和reject()只有第一次调用生效
+     */
+    public final class MqttAck {
+
+        private final IMqttClient client;
+        private final int messageId;
+        private final int qos;
+        private final int epoch;
+        private final Semaphore window;
+        private final long arrivedAt = System.nanoTime();
+        private final AtomicBoolean completed = new AtomicBoolean(false);
+
+        private MqttAck(IMqttClient client, int messageId, int qos, int epoch, Semaphore window) {
+            this.client = client;
+            this.messageId = messageId;
+            this.qos = qos;
+            this.epoch = epoch;
+            this.window = window;
+        }
+
+        /**
+         * 确认消息（数据已写入缓冲区，或消息被有意丢弃）
+         */
+        public void ack() {
+            if (!completed.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                // 已请求重连的会话不再确认，消息会被重新投递
+                if (client != null && qos > 0 && epoch == epochOf(client)) {
+                    client.messageArrivedComplete(messageId, qos);
+                }
+                ackedCounter.increment();
+            } catch (Exception e) {
+                log.warn("⚠️ MQTT消息确认失败: id={}, error={}", messageId, e.getMessage());
+            } finally {
+                ackLatencyTimer.record(System.nanoTime() - arrivedAt, TimeUnit.NANOSECONDS);
+                release();
+            }
+        }
+
+        /**
+         * 拒绝消息（处理失败）
+         * 持久会话下不发送PUBACK并重连该连接，由Broker重新投递；否则确认并丢弃
+         */
+        public void reject() {
+            if (!completed.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                if (client == null || qos == 0) {
+                    droppedCounter.increment();
+                } else if (!mqttConfig.isCleanSession()) {
+                    rejectedCounter.increment();
+                    requestRedelivery(client, epoch);
+                } else {
+                    log.error("❌ 清除会话无法重新投递，确认并丢弃MQTT消息: id={}", messageId);
+                    droppedCounter.increment();
+                    if (epoch == epochOf(client)) {
+                        client.messageArrivedComplete(messageId, qos);
+                    }
+                }
+            } catch (Exception e) {
+                log.warn("⚠️ MQTT消息拒绝处理失败: id={}, error={}", messageId, e.getMessage());
+            } finally {
+                release();
+            }
+        }
+
+        public boolean isCompleted() {
+            return completed.get();
+        }
+
+        private void release() {
+            if (window != null) {
+                window.release();
+            }
+        }
+    }
+}
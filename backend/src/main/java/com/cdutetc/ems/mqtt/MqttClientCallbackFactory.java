@@ -0,0 +1,22 @@
+package com.cdutetc.ems.mqtt;
+
+import org.eclipse.paho.client.mqttv3.IMqttClient;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+
+/**
+ * 按客户端创建MQTT回调
+ * 手动确认模式下，消息必须通过接收它的客户端确认，因此每个连接需要绑定自己的回调
+ *
+ * @author EMS Team
+ */
+@FunctionalInterface
+public interface MqttClientCallbackFactory {
+
+    /**
+     * 为指定客户端创建回调
+     *
+     * @param client 已创建（尚未连接）的MQTT客户端
+     * @return 绑定该客户端的回调
+     */
+    MqttCallback callbackFor(IMqttClient client);
+}
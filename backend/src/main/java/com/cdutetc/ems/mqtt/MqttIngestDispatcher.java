@@ -0,0 +1,246 @@
+package com.cdutetc.ems.mqtt;
+
+import com.cdutetc.ems.config.MqttIngestProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MQTT消息分区分发器
+ *
+ * 功能:
+ * 1. 按deviceCode哈希将消息分配到N个工作通道
+ * 2. 每个通道单线程顺序消费，保证同一设备的消息顺序
+ * 3. 每个通道使用有界队列，队列满时阻塞Paho回调线程形成背压
+ * 4. 暴露通道队列深度、分发数、拒绝数等指标
+ *
+ * 数据流转:
+ * Paho回调线程 → parseTopic → hash(deviceCode) → 通道队列 → 通道线程执行完整处理流程
+ *
+ * @author EMS Team
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MqttIngestDispatcher {
+
+    private final MqttIngestProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    private IngestLane[] lanes = new IngestLane[0];
+    private Counter dispatchedCounter;
+    private Counter rejectedCounter;
+    private volatile boolean running = false;
+
+    /**
+     * 创建并启动所有工作通道
+     */
+    @PostConstruct
+    public void start() {
+        dispatchedCounter = Counter.builder("ems.ingest.dispatched")
+                .description("分发到工作通道的MQTT消息数")
+                .register(meterRegistry);
+        rejectedCounter = Counter.builder("ems.ingest.rejected")
+                .description("通道队列已满被拒绝的MQTT消息数")
+                .register(meterRegistry);
+
+        if (!properties.isEnabled()) {
+            log.info("MQTT并行分发未启用，消息将在回调线程中直接处理");
+            return;
+        }
+
+        int laneCount = properties.getEffectiveLanes();
+        ThreadFactory threadFactory = createThreadFactory();
+        lanes = new IngestLane[laneCount];
+
+        for (int i = 0; i < laneCount; i++) {
+            IngestLane lane = new IngestLane(i, properties.getQueueCapacity());
+            lane.start(threadFactory);
+            lanes[i] = lane;
+
+            Gauge.builder("ems.ingest.lane.queue.depth", lane, IngestLane::depth)
+                    .description("工作通道当前排队的消息数")
+                    .tag("lane", String.valueOf(i))
+                    .register(meterRegistry);
+        }
+
+        running = true;
+        log.info("MQTT并行分发已启动: lanes={}, queueCapacity={}, virtualThreads={}",
+                laneCount, properties.getQueueCapacity(), properties.isVirtualThreads());
+    }
+
+    /**
+     * 分发消息处理任务
+     *
+     * 相同deviceCode的任务总是进入同一通道，按提交顺序执行。
+     * 未启用分发或分发器已停止时，直接在调用线程中执行。
+     *
+     * @param deviceCode 设备编码（分区键）
+     * @param task 消息处理任务
+     * @return true表示已执行或已入队，false表示通道已满被拒绝
+     */
+    public boolean dispatch(String deviceCode, Runnable task) {
+        if (!running || lanes.length == 0) {
+            runSafely(task);
+            return true;
+        }
+
+        IngestLane lane = lanes[laneIndex(deviceCode, lanes.length)];
+        try {
+            if (lane.queue.offer(task, properties.getOfferTimeoutMs(), TimeUnit.MILLISECONDS)) {
+                dispatchedCounter.increment();
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        rejectedCounter.increment();
+        log.warn("⚠️ 工作通道{}已满，丢弃设备{}的消息（队列容量: {}）",
+                lane.index, deviceCode, properties.getQueueCapacity());
+        return false;
+    }
+
+    /**
+     * 获取指定通道当前队列深度
+     */
+    public int getQueueDepth(int laneIndex) {
+        return lanes[laneIndex].depth();
+    }
+
+    /**
+     * 获取通道数量（未启用分发时为0）
+     */
+    public int getLaneCount() {
+        return lanes.length;
+    }
+
+    /**
+     * 停止分发并等待通道排空
+     */
+    @PreDestroy
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(properties.getShutdownTimeoutSeconds());
+        for (IngestLane lane : lanes) {
+            lane.stop(deadline);
+        }
+        log.info("MQTT并行分发已停止");
+    }
+
+    /**
+     * 计算deviceCode对应的通道下标
+     * 对hashCode做一次高位扰动，避免编码后缀相近的设备集中到同一通道
+     */
+    static int laneIndex(String deviceCode, int laneCount) {
+        int h = deviceCode != null ? deviceCode.hashCode() : 0;
+        h ^= (h >>> 16);
+        return Math.floorMod(h, laneCount);
+    }
+
+    private ThreadFactory createThreadFactory() {
+        if (properties.isVirtualThreads()) {
+            ThreadFactory virtualFactory = virtualThreadFactory();
+            if (virtualFactory != null) {
+                return virtualFactory;
+            }
+            log.warn("⚠️ 当前JDK不支持虚拟线程，MQTT工作通道回退为平台线程");
+        }
+        return runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * 通过反射获取虚拟线程工厂（JDK 21+），不支持时返回null
+     */
+    private static ThreadFactory virtualThreadFactory() {
+        try {
+            Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            Object builder = ofVirtual.invoke(null);
+            Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static void runSafely(Runnable task) {
+        try {
+            task.run();
+        } catch (Exception e) {
+            log.error("❌ MQTT消息处理任务执行失败", e);
+        }
+    }
+
+    /**
+     * 工作通道
+     * 一个有界队列 + 一个顺序消费线程
+     */
+    private static final class IngestLane {
+        private final int index;
+        private final BlockingQueue<Runnable> queue;
+        private Thread worker;
+        private volatile boolean active = true;
+
+        IngestLane(int index, int capacity) {
+            this.index = index;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        void start(ThreadFactory threadFactory) {
+            worker = threadFactory.newThread(this::runLoop);
+            worker.setName("mqtt-ingest-" + index);
+            worker.start();
+        }
+
+        int depth() {
+            return queue.size();
+        }
+
+        private void runLoop() {
+            while (active || !queue.isEmpty()) {
+                try {
+                    Runnable task = queue.poll(200, TimeUnit.MILLISECONDS);
+                    if (task != null) {
+                        runSafely(task);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+
+        void stop(long deadlineNanos) {
+            active = false;
+            long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+            try {
+                worker.join(Math.max(remainingMillis, 1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (worker.isAlive()) {
+                log.warn("⚠️ 工作通道{}未在超时时间内排空，剩余{}条消息", index, queue.size());
+                worker.interrupt();
+            }
+        }
+    }
+}
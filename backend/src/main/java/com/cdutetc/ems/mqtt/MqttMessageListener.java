@@ -1,70 +1,147 @@
 package com.cdutetc.ems.mqtt;
 
-import com.cdutetc.ems.config.CpmConversionProperties;
-import com.cdutetc.ems.dto.event.DeviceDataEvent;
+import com.cdutetc.ems.dto.cache.DeviceSnapshot;
 import com.cdutetc.ems.dto.mqtt.MqttDeviceDataMessage;
-import com.cdutetc.ems.entity.Device;
-import com.cdutetc.ems.entity.enums.DeviceActivationStatus;
+import com.cdutetc.ems.entity.EnvironmentDeviceData;
+import com.cdutetc.ems.entity.RadiationDeviceData;
+import com.cdutetc.ems.mqtt.IngestStageMetrics.Stage;
 import com.cdutetc.ems.entity.enums.DeviceStatus;
 import com.cdutetc.ems.entity.enums.DeviceType;
-import com.cdutetc.ems.service.AlertService;
-import com.cdutetc.ems.service.DeviceService;
-import com.cdutetc.ems.service.DeviceStatusCacheService;
+import com.cdutetc.ems.service.DeviceDataIngestService;
 import com.cdutetc.ems.service.EnvironmentDeviceDataService;
-import com.cdutetc.ems.service.MonitoringDataBufferService;
 import com.cdutetc.ems.service.RadiationDeviceDataService;
-import com.cdutetc.ems.service.SseEmitterService;
-import com.cdutetc.ems.util.JsonParserUtil;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.eclipse.paho.client.mqttv3.IMqttClient;
 import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
 import org.eclipse.paho.client.mqttv3.MqttCallback;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
 import org.eclipse.paho.client.mqttv3.MqttToken;
-import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
 import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.List;
 
 /**
  * MQTT消息监听器
  * 负责处理接收到的MQTT设备数据消息
+ *
+ * 解码后的读数交给DeviceDataIngestService处理（与HTTP接收接口共用）
+ * 消息确认: 数据写入Redis缓冲区后才确认（MqttAck），处理失败的消息被拒绝（持久会话下重连后由Broker重新投递）
+ * 重复读数: 由DuplicateReadingFilter在写入缓冲区前丢弃（没有time字段的读数只丢弃重新投递的消息）
+ * 分阶段耗时: IngestStageMetrics（ems.ingest.stage）
+ *
+ * 主题格式:
+ * - ems/device/{deviceCode}/data/{deviceType}: 单条读数
+ * - ems/device/{deviceCode}/data/RADIATION/bin: 单条辐射读数，二进制格式（RadiationBinaryFormat）
+ * - ems/device/{deviceCode}/batch/{deviceType}: 批量读数（网关转发、断线补传），一次写入缓冲区，
+ *   SSE推送和告警只针对每台设备的最新读数
  */
 @Slf4j
 @Component
 @RequiredArgsConstructor
-public class MqttMessageListener implements MqttCallback {
+public class MqttMessageListener implements MqttCallback, MqttClientCallbackFactory {
 
-    private final DeviceService deviceService;
+    private final DeviceDataIngestService ingestService;  // 校验、状态缓存、写入缓冲区、推送和告警
     private final RadiationDeviceDataService radiationDeviceDataService;
     private final EnvironmentDeviceDataService environmentDeviceDataService;
-    private final SseEmitterService sseEmitterService;
-    private final AlertService alertService;
-    private final DeviceStatusCacheService deviceStatusCacheService;
-    private final MonitoringDataBufferService monitoringDataBufferService;  // 批量写入服务
-    private final ObjectMapper objectMapper;
-    private final CpmConversionProperties cpmConversionProperties;
-    private final ApplicationEventPublisher applicationEventPublisher;
+    private final DevicePayloadDecoder payloadDecoder;
+    private final MqttIngestDispatcher ingestDispatcher;
+    private final MqttAckTracker ackTracker;
+    private final DuplicateReadingFilter duplicateFilter;
+    private final IngestStageMetrics stageMetrics;
+
+    private static final String RADIATION = "RADIATION";
+    private static final String ENVIRONMENT = "ENVIRONMENT";
 
     @Override
     public void connectionLost(Throwable cause) {
         log.error("🔌 MQTT连接丢失: {}", cause.getMessage(), cause);
     }
 
+    @Override
+    public MqttCallback callbackFor(IMqttClient client) {
+        return new MqttCallback() {
+            @Override
+            public void connectionLost(Throwable cause) {
+                MqttMessageListener.this.connectionLost(cause);
+            }
+
+            @Override
+            public void messageArrived(String topic, MqttMessage mqttMessage) {
+                onMessage(client, topic, mqttMessage);
+            }
+
+            @Override
+            public void deliveryComplete(IMqttDeliveryToken token) {
+                MqttMessageListener.this.deliveryComplete(token);
+            }
+        };
+    }
+
     @Override
     public void messageArrived(String topic, MqttMessage mqttMessage) throws Exception {
-        try {
-            String payload = new String(mqttMessage.getPayload());
-            log.info("📥 收到MQTT消息 - 主题: {}, 消息: {}", topic, payload);
+        onMessage(null, topic, mqttMessage);
+    }
 
-            // 从主题中提取设备信息
+    /**
+     * 接收消息（Paho回调线程）
+     *
+     * @param client 接收消息的客户端，手动确认时用于发送PUBACK
+     */
+    private void onMessage(IMqttClient client, String topic, MqttMessage mqttMessage) {
+        // 占用在途窗口，窗口已满时阻塞回调线程
+        MqttAckTracker.MqttAck ack = ackTracker.begin(client, mqttMessage);
+        if (ack.isCompleted()) {
+            return;
+        }
+
+        try {
+            // 从主题中提取设备信息（在回调线程中完成，用于选择工作通道）
+            long parseStart = stageMetrics.start();
             DeviceTopicInfo topicInfo = parseTopic(topic);
+            stageMetrics.record(Stage.TOPIC_PARSE, topicInfo.getDeviceType(), parseStart);
+            byte[] payload = mqttMessage.getPayload();
+            boolean redelivery = mqttMessage.isDuplicate();
+
+            // 按设备编码分发到工作通道，同一设备的消息保持顺序
+            long dispatchedAt = stageMetrics.start();
+            boolean dispatched = ingestDispatcher.dispatch(topicInfo.getDeviceCode(), topicInfo.isBatch()
+                    ? () -> processBatch(topicInfo, payload, redelivery, ack, dispatchedAt)
+                    : () -> processMessage(topicInfo, payload, redelivery, ack, dispatchedAt));
+            if (!dispatched) {
+                ack.reject();
+            }
+
+        } catch (Exception e) {
+            log.error("❌ 处理MQTT消息失败 - 主题: {}, 错误: {}", topic, e.getMessage(), e);
+            stageMetrics.error(Stage.TOPIC_PARSE, null);
+            // 主题格式错误，重新投递也无法处理，直接确认丢弃
+            ack.ack();
+        }
+    }
+
+    /**
+     * 处理单条设备消息
+     * 在MqttIngestDispatcher的工作通道线程中执行
+     */
+    private void processMessage(DeviceTopicInfo topicInfo, byte[] rawPayload, boolean redelivery,
+                                MqttAckTracker.MqttAck ack, long dispatchedAt) {
+        String deviceType = topicInfo.getDeviceType();
+        stageMetrics.record(Stage.LANE_WAIT, deviceType, dispatchedAt);
+        long processStart = stageMetrics.start();
+        try {
+            // 二进制消息的原始数据以Base64保存
+            String payload = topicInfo.isBinary()
+                ? Base64.getEncoder().encodeToString(rawPayload)
+                : new String(rawPayload);
+            log.debug("📥 收到MQTT消息 - 主题: {}, 消息: {}", topicInfo.getOriginalTopic(), payload);
             log.debug("📍 解析主题信息: {}", topicInfo);
 
             // 验证设备是否存在且已激活
-            Device device = getAndValidateDevice(topicInfo.getDeviceCode(), topicInfo.getDeviceType());
+            DeviceSnapshot device = ingestService.validateDevice(topicInfo.getDeviceCode(), deviceType);
 
             // 如果设备验证失败，不处理数据
             if (device == null) {
@@ -72,16 +149,64 @@ public class MqttMessageListener implements MqttCallback {
             }
 
             // 根据消息类型处理数据
-            if ("RADIATION".equalsIgnoreCase(topicInfo.getDeviceType())) {
-                handleRadiationData(device, payload);
-            } else if ("ENVIRONMENT".equalsIgnoreCase(topicInfo.getDeviceType())) {
-                handleEnvironmentData(device, payload);
+            if (RADIATION.equalsIgnoreCase(deviceType)) {
+                handleRadiationData(device, ack, rawPayload, payload, topicInfo.isBinary(), redelivery);
+            } else if (ENVIRONMENT.equalsIgnoreCase(deviceType)) {
+                handleEnvironmentData(device, ack, rawPayload, payload, redelivery);
             } else {
-                log.warn("⚠️ 未知的设备类型: {}", topicInfo.getDeviceType());
+                ingestService.touch(device);
+                log.warn("⚠️ 未知的设备类型: {}", deviceType);
             }
 
         } catch (Exception e) {
-            log.error("❌ 处理MQTT消息失败 - 主题: {}, 错误: {}", topic, e.getMessage(), e);
+            log.error("❌ 处理MQTT消息失败 - 主题: {}, 错误: {}", topicInfo.getOriginalTopic(), e.getMessage(), e);
+            stageMetrics.error(Stage.TOTAL, deviceType);
+            ack.reject();
+        } finally {
+            // 设备校验未通过、未知类型等被有意丢弃的消息在此确认（已确认/已拒绝的消息不受影响）
+            ack.ack();
+            stageMetrics.record(Stage.TOTAL, deviceType, processStart);
+        }
+    }
+
+    /**
+     * 处理批量消息
+     * 在MqttIngestDispatcher的工作通道线程中执行（按主题中的设备/网关编码分配通道）
+     * 所有读数一次写入缓冲区，SSE推送和告警只针对每台设备的最新读数（DeviceDataIngestService）
+     */
+    private void processBatch(DeviceTopicInfo topicInfo, byte[] rawPayload, boolean redelivery,
+                              MqttAckTracker.MqttAck ack, long dispatchedAt) {
+        String deviceType = topicInfo.getDeviceType();
+        stageMetrics.record(Stage.LANE_WAIT, deviceType, dispatchedAt);
+        long processStart = stageMetrics.start();
+        try {
+            log.info("📦 收到MQTT批量消息 - 主题: {}, 大小: {}字节", topicInfo.getOriginalTopic(), rawPayload.length);
+
+            if (RADIATION.equalsIgnoreCase(deviceType)) {
+                long decodeStart = stageMetrics.start();
+                List<RadiationDeviceData> readings = payloadDecoder.decodeRadiationBatch(rawPayload);
+                stageMetrics.record(Stage.DECODE, deviceType, decodeStart);
+                ingestService.ingestRadiationBatch(topicInfo.getDeviceCode(), readings, redelivery, ack::ack);
+            } else if (ENVIRONMENT.equalsIgnoreCase(deviceType)) {
+                long decodeStart = stageMetrics.start();
+                List<EnvironmentDeviceData> readings = payloadDecoder.decodeEnvironmentBatch(rawPayload);
+                stageMetrics.record(Stage.DECODE, deviceType, decodeStart);
+                ingestService.ingestEnvironmentBatch(topicInfo.getDeviceCode(), readings, redelivery, ack::ack);
+            } else {
+                log.warn("⚠️ 未知的设备类型: {}", deviceType);
+            }
+
+        } catch (IOException e) {
+            // 格式错误的批量消息重新投递也无法处理，确认丢弃
+            log.warn("⚠️ 解析MQTT批量消息失败，已丢弃 - 主题: {}, 错误: {}", topicInfo.getOriginalTopic(), e.getMessage());
+            stageMetrics.error(Stage.DECODE, deviceType);
+        } catch (Exception e) {
+            log.error("❌ 处理MQTT批量消息失败 - 主题: {}, 错误: {}", topicInfo.getOriginalTopic(), e.getMessage(), e);
+            stageMetrics.error(Stage.TOTAL, deviceType);
+            ack.reject();
+        } finally {
+            ack.ack();
+            stageMetrics.record(Stage.TOTAL, deviceType, processStart);
         }
     }
 
@@ -101,7 +226,7 @@ public class MqttMessageListener implements MqttCallback {
      */
     private DeviceTopicInfo parseTopic(String topic) {
         try {
-            // 主题格式: ems/device/{deviceCode}/data/{deviceType}
+            // 主题格式: ems/device/{deviceCode}/data/{deviceType} 或 ems/device/{deviceCode}/batch/{deviceType}
             String[] topicParts = topic.split("/");
 
             if (topicParts.length < 5) {
@@ -114,6 +239,8 @@ public class MqttMessageListener implements MqttCallback {
             return DeviceTopicInfo.builder()
                     .deviceCode(deviceCode)
                     .deviceType(deviceType)
+                    .batch("batch".equals(topicParts[3]))
+                    .binary(topicParts.length > 5 && RadiationBinaryFormat.TOPIC_SUFFIX.equals(topicParts[5]))
                     .originalTopic(topic)
                     .build();
         } catch (Exception e) {
@@ -122,187 +249,48 @@ public class MqttMessageListener implements MqttCallback {
         }
     }
 
-    /**
-     * 获取并验证设备
-     * 只处理已激活且归属企业的设备数据
-     */
-    private Device getAndValidateDevice(String deviceCode, String deviceTypeStr) {
-        try {
-            // 查找设备
-            Device device = deviceService.findByDeviceCode(deviceCode);
-
-            if (device == null) {
-                log.warn("⚠️ 丢弃未录入设备 {} 的数据（设备不存在）", deviceCode);
-                return null;
-            }
-
-            // 检查设备激活状态
-            if (device.getActivationStatus() != DeviceActivationStatus.ACTIVE) {
-                log.warn("⚠️ 丢弃未激活设备 {} 的数据（当前状态: {}）",
-                    deviceCode, device.getActivationStatus());
-                return null;
-            }
-
-            // 检查设备是否已归属企业
-            if (device.getCompany() == null) {
-                log.error("❌ 丢弃设备 {} 的数据（未归属企业）", deviceCode);
-                return null;
-            }
-
-            // 更新设备状态缓存（最后消息时间和在线状态）
-            deviceStatusCacheService.updateLastMessageTime(deviceCode, LocalDateTime.now());
-            deviceStatusCacheService.updateStatus(deviceCode, "ONLINE");
-
-            // 如果设备之前离线，自动解决离线告警
-            try {
-                alertService.resolveOfflineAlerts(deviceCode, device.getId());
-            } catch (Exception e) {
-                log.warn("解决离线告警失败: deviceCode={}, error={}", deviceCode, e.getMessage());
-            }
-
-            return device;
-
-        } catch (Exception e) {
-            log.error("❌ 验证设备失败: {}", deviceCode, e);
-            return null;
-        }
-    }
 
     /**
      * 处理辐射设备数据
      * 原始JSON格式: {"src":1,"msgtype":1,"CPM":123,"Batvolt":3989,"time":"2025/01/15 14:30:45","trigger":1,"multi":1,"way":1}
+     * 二进制格式见RadiationBinaryFormat
      */
-    private void handleRadiationData(Device device, String payload) {
+    private void handleRadiationData(DeviceSnapshot device, MqttAckTracker.MqttAck ack, byte[] rawPayload,
+                                     String payload, boolean binary, boolean redelivery) {
         try {
             log.debug("🔬 处理辐射设备数据: {}", device.getDeviceCode());
 
             // 创建辐射设备数据记录
-            com.cdutetc.ems.entity.RadiationDeviceData data = new com.cdutetc.ems.entity.RadiationDeviceData();
+            RadiationDeviceData data = new RadiationDeviceData();
             data.setDeviceCode(device.getDeviceCode());
             data.setRawData(payload);
             data.setRecordTime(LocalDateTime.now());
 
-            // 解析JSON数据（使用JsonParserUtil优化）
+            // 流式解析JSON数据或按固定布局解析二进制数据（直接基于原始字节，写入data）
+            long decodeStart = stageMetrics.start();
             try {
-                JsonNode rootNode = objectMapper.readTree(payload);
-
-                // 使用JsonParserUtil解析基础字段
-                JsonParserUtil.parseInt(rootNode, "src").ifPresent(data::setSrc);
-                JsonParserUtil.parseInt(rootNode, "msgtype").ifPresent(data::setMsgtype);
-
-                // 解析CPM并应用转换系数
-                JsonParserUtil.parseDouble(rootNode, "CPM").ifPresent(rawCpm -> {
-                    double convertedCpm = cpmConversionProperties.isEnabled()
-                        ? rawCpm / cpmConversionProperties.getRadiationConversionFactor()
-                        : rawCpm;
-                    data.setCpm(convertedCpm);
-                    if (cpmConversionProperties.isEnabled()) {
-                        log.debug("🔄 辐射设备CPM转换: 原始值={}, 转换系数={}, 转换后值={}",
-                            rawCpm, cpmConversionProperties.getRadiationConversionFactor(), convertedCpm);
-                    }
-                });
-
-                // 解析电池电压（辐射设备发送的是毫伏mV，需要转换为伏V存储）
-                JsonParserUtil.parseDouble(rootNode, "Batvolt").ifPresent(rawBatvolt -> {
-                    data.setBatvolt(rawBatvolt / 1000.0); // mV转V：原始值(mV) ÷ 1000 = 电压(V)
-                    log.debug("🔄 辐射设备电压转换: 原始值={}mV, 转换后值={}V",
-                        rawBatvolt, data.getBatvolt());
-                });
-                JsonParserUtil.parseString(rootNode, "time").ifPresent(data::setTime);
-                JsonParserUtil.parseInt(rootNode, "trigger").ifPresent(data::setDataTrigger);
-                JsonParserUtil.parseInt(rootNode, "multi").ifPresent(data::setMulti);
-                JsonParserUtil.parseInt(rootNode, "way").ifPresent(data::setWay);
-
-                // GPS数据选择（根据useful字段自动选择BDS或LBS）
-                GpsData selectedGps = selectGpsData(rootNode);
-                if (selectedGps != null) {
-                    data.setGpsType(selectedGps.getType());
-                    data.setGpsLongitude(selectedGps.getLongitude());
-                    data.setGpsLatitude(selectedGps.getLatitude());
-                    data.setGpsUtc(selectedGps.getUtc());
-                    log.debug("📍 GPS选择: type={}, longitude={}, latitude={}",
-                        selectedGps.getType(), selectedGps.getLongitude(), selectedGps.getLatitude());
+                if (binary) {
+                    payloadDecoder.decodeRadiationBinary(rawPayload, data);
+                } else {
+                    payloadDecoder.decodeRadiation(rawPayload, data);
                 }
 
-                log.debug("✅ 辐射数据解析成功: CPM={}, Batvolt={}, time={}",
-                    data.getCpm(), data.getBatvolt(), data.getTime());
-
-            } catch (Exception e) {
-                log.warn("⚠️ 解析辐射设备数据JSON失败，仅保存原始数据: {}", e.getMessage());
-            }
-
-            // 保存数据到缓冲区(先写Redis,定时任务批量写MySQL)
-            monitoringDataBufferService.saveRadiationDataToBuffer(data);
-            com.cdutetc.ems.entity.RadiationDeviceData savedData = data;  // 使用data对象作为返回值
-            log.info("💾 辐射设备数据已写入缓冲区: {}", device.getDeviceCode());
+                log.debug("✅ 辐射数据解析成功: CPM={}, Batvolt={}, time={}, gpsType={}",
+                    data.getCpm(), data.getBatvolt(), data.getTime(), data.getGpsType());
 
-            // 更新缓存：CPM值和电池电压
-            if (savedData.getCpm() != null) {
-                deviceStatusCacheService.updateLastCpm(device.getDeviceCode(), savedData.getCpm());
-            }
-            if (savedData.getBatvolt() != null) {
-                deviceStatusCacheService.updateLastBattery(device.getDeviceCode(), savedData.getBatvolt());
-            }
-
-            // 发布DeviceDataEvent事件（用于数据上报）
-            try {
-                DeviceDataEvent event = new DeviceDataEvent(
-                    "radiation-data",
-                    device.getDeviceCode(),
-                    "RADIATION_MONITOR",
-                    savedData  // 传递完整的RadiationDeviceData对象
-                );
-                applicationEventPublisher.publishEvent(event);
-                log.debug("📤 DeviceDataEvent发布成功: {}", device.getDeviceCode());
-            } catch (Exception e) {
-                log.warn("⚠️ 发布DeviceDataEvent失败: {}", e.getMessage());
-            }
-
-            // SSE推送实时数据（使用简化的Map格式）
-            try {
-                DeviceDataEvent sseEvent = new DeviceDataEvent(
-                    "radiation-data",
-                    device.getDeviceCode(),
-                    "RADIATION_MONITOR",
-                    java.util.Map.of(
-                        "cpm", savedData.getCpm(),
-                        "batVolt", savedData.getBatvolt(),
-                        "recordTime", savedData.getRecordTime().toString()
-                    )
-                );
-                sseEmitterService.broadcastDeviceData(device.getCompany().getId(), sseEvent);
-                log.debug("📡 SSE推送辐射数据成功: {}", device.getDeviceCode());
             } catch (Exception e) {
-                log.warn("⚠️ SSE推送辐射数据失败: {}", e.getMessage());
+                log.warn("⚠️ 解析辐射设备数据{}失败，仅保存原始数据: {}", binary ? "二进制" : "JSON", e.getMessage());
+                stageMetrics.error(Stage.DECODE, RADIATION);
             }
+            stageMetrics.record(Stage.DECODE, RADIATION, decodeStart);
 
-            // 检查告警条件
-            try {
-                // CPM上升率告警（辐射设备）
-                alertService.checkRadiationDataAndAlert(
-                    device.getDeviceCode(),
-                    savedData.getCpm(),
-                    "RADIATION",  // 辐射设备类型
-                    device.getId(),
-                    device.getCompany().getId()
-                );
-
-                // 电压告警（辐射设备）
-                if (savedData.getBatvolt() != null) {
-                    alertService.checkEnvironmentDataAndAlert(
-                        device.getDeviceCode(),
-                        savedData.getBatvolt(),
-                        "RADIATION",  // 辐射设备类型
-                        device.getId(),
-                        device.getCompany().getId()
-                    );
-                }
-            } catch (Exception e) {
-                log.warn("⚠️ 辐射数据告警检查失败: {}", e.getMessage());
-            }
+            // 状态缓存、重复过滤、写入缓冲区（写入后确认消息）、上报、SSE推送和告警
+            long readingKey = duplicateFilter.readingKey(data.getTime(), rawPayload);
+            ingestService.ingestRadiation(device, data, readingKey, redelivery, ack::ack);
 
         } catch (Exception e) {
             log.error("❌ 处理辐射设备数据失败: {}", device.getDeviceCode(), e);
+            ack.reject();  // 未写入缓冲区，拒绝后由Broker重新投递
         }
     }
 
@@ -310,107 +298,38 @@ public class MqttMessageListener implements MqttCallback {
      * 处理环境设备数据
      * 原始JSON格式: {"src":1,"CPM":4,"temperature":10,"wetness":95,"windspeed":0.2,"total":144.1,"battery":11.9}
      */
-    private void handleEnvironmentData(Device device, String payload) {
+    private void handleEnvironmentData(DeviceSnapshot device, MqttAckTracker.MqttAck ack, byte[] rawPayload,
+                                       String payload, boolean redelivery) {
         try {
             log.debug("🌍 处理环境设备数据: {}", device.getDeviceCode());
 
             // 创建环境设备数据记录
-            com.cdutetc.ems.entity.EnvironmentDeviceData data = new com.cdutetc.ems.entity.EnvironmentDeviceData();
+            EnvironmentDeviceData data = new EnvironmentDeviceData();
             data.setDeviceCode(device.getDeviceCode());
             data.setRawData(payload);
             data.setRecordTime(LocalDateTime.now());
 
-            // 解析JSON数据（使用JsonParserUtil优化）
+            // 流式解析JSON数据（直接基于原始字节，写入data）
+            long decodeStart = stageMetrics.start();
             try {
-                JsonNode rootNode = objectMapper.readTree(payload);
-
-                // 使用JsonParserUtil解析基础字段
-                JsonParserUtil.parseInt(rootNode, "src").ifPresent(data::setSrc);
-
-                // 解析CPM并应用转换系数
-                JsonParserUtil.parseDouble(rootNode, "CPM").ifPresent(rawCpm -> {
-                    double convertedCpm = cpmConversionProperties.isEnabled()
-                        ? rawCpm / cpmConversionProperties.getEnvironmentConversionFactor()
-                        : rawCpm;
-                    data.setCpm(convertedCpm);
-                    if (cpmConversionProperties.isEnabled()) {
-                        log.debug("🔄 环境设备CPM转换: 原始值={}, 转换系数={}, 转换后值={}",
-                            rawCpm, cpmConversionProperties.getEnvironmentConversionFactor(), convertedCpm);
-                    }
-                });
-
-                JsonParserUtil.parseDouble(rootNode, "temperature").ifPresent(data::setTemperature);
-                JsonParserUtil.parseDouble(rootNode, "wetness").ifPresent(data::setWetness);
-                JsonParserUtil.parseDouble(rootNode, "windspeed").ifPresent(data::setWindspeed);
-                JsonParserUtil.parseDouble(rootNode, "total").ifPresent(data::setTotal);
-                JsonParserUtil.parseDouble(rootNode, "battery").ifPresent(data::setBattery);
+                payloadDecoder.decodeEnvironment(rawPayload, data);
 
                 log.debug("✅ 环境数据解析成功: CPM={}, temperature={}, wetness={}, battery={}",
                     data.getCpm(), data.getTemperature(), data.getWetness(), data.getBattery());
 
             } catch (Exception e) {
                 log.warn("⚠️ 解析环境设备数据JSON失败，仅保存原始数据: {}", e.getMessage());
+                stageMetrics.error(Stage.DECODE, ENVIRONMENT);
             }
+            stageMetrics.record(Stage.DECODE, ENVIRONMENT, decodeStart);
 
-            // 保存数据到缓冲区(先写Redis,定时任务批量写MySQL)
-            monitoringDataBufferService.saveEnvironmentDataToBuffer(data);
-            com.cdutetc.ems.entity.EnvironmentDeviceData savedData = data;  // 使用data对象作为返回值
-            log.info("💾 环境设备数据已写入缓冲区: {}", device.getDeviceCode());
-
-            // 更新缓存：电池电压
-            if (savedData.getBattery() != null) {
-                deviceStatusCacheService.updateLastBattery(device.getDeviceCode(), savedData.getBattery());
-            }
-
-            // SSE推送实时数据
-            try {
-                DeviceDataEvent event = new DeviceDataEvent(
-                    "environment-data",
-                    device.getDeviceCode(),
-                    "ENVIRONMENT_STATION",
-                    java.util.Map.of(
-                        "cpm", savedData.getCpm(),
-                        "temperature", savedData.getTemperature(),
-                        "wetness", savedData.getWetness(),
-                        "windspeed", savedData.getWindspeed(),
-                        "recordTime", savedData.getRecordTime().toString()
-                    )
-                );
-                sseEmitterService.broadcastDeviceData(device.getCompany().getId(), event);
-                log.debug("📡 SSE推送环境数据成功: {}", device.getDeviceCode());
-            } catch (Exception e) {
-                log.warn("⚠️ SSE推送环境数据失败: {}", e.getMessage());
-            }
-
-            // 检查告警条件
-            try {
-                // CPM上升率告警（环境设备）
-                if (savedData.getCpm() != null) {
-                    alertService.checkRadiationDataAndAlert(
-                        device.getDeviceCode(),
-                        savedData.getCpm(),
-                        "ENVIRONMENT",  // 环境设备类型
-                        device.getId(),
-                        device.getCompany().getId()
-                    );
-                }
-
-                // 电压告警（环境设备）
-                if (savedData.getBattery() != null) {
-                    alertService.checkEnvironmentDataAndAlert(
-                        device.getDeviceCode(),
-                        savedData.getBattery(),
-                        "ENVIRONMENT",  // 环境设备类型
-                        device.getId(),
-                        device.getCompany().getId()
-                    );
-                }
-            } catch (Exception e) {
-                log.warn("⚠️ 环境数据告警检查失败: {}", e.getMessage());
-            }
+            // 环境设备没有time字段，按消息内容识别重复读数（只丢弃重新投递的消息）
+            long readingKey = duplicateFilter.readingKey(null, rawPayload);
+            ingestService.ingestEnvironment(device, data, readingKey, redelivery, ack::ack);
 
         } catch (Exception e) {
             log.error("❌ 处理环境设备数据失败: {}", device.getDeviceCode(), e);
+            ack.reject();  // 未写入缓冲区，拒绝后由Broker重新投递
         }
     }
 
@@ -424,58 +343,8 @@ public class MqttMessageListener implements MqttCallback {
     private static class DeviceTopicInfo {
         private String deviceCode;
         private String deviceType;
+        private boolean batch;  // 批量读数主题
+        private boolean binary;  // 二进制消息主题（/bin后缀）
         private String originalTopic;
     }
-
-    /**
-     * 根据useful字段选择GPS数据
-     * 优先级：BDS可用 → BDS；否则 → LBS
-     */
-    private GpsData selectGpsData(JsonNode rootNode) {
-        // 使用数组来存储解析结果，以便在lambda中修改
-        final String[] bdsData = new String[3]; // [longitude, latitude, utc]
-        final Integer[] bdsUseful = {0};
-        final String[] lbsData = new String[2]; // [longitude, latitude]
-
-        // 解析BDS数据
-        JsonParserUtil.parseObject(rootNode, "BDS").ifPresent(bds -> {
-            JsonParserUtil.parseString(bds, "longitude").ifPresent(v -> bdsData[0] = v);
-            JsonParserUtil.parseString(bds, "latitude").ifPresent(v -> bdsData[1] = v);
-            JsonParserUtil.parseString(bds, "UTC").ifPresent(v -> bdsData[2] = v);
-            JsonParserUtil.parseInt(bds, "useful").ifPresent(v -> bdsUseful[0] = v);
-        });
-
-        // 解析LBS数据
-        JsonParserUtil.parseObject(rootNode, "LBS").ifPresent(lbs -> {
-            JsonParserUtil.parseString(lbs, "longitude").ifPresent(v -> lbsData[0] = v);
-            JsonParserUtil.parseString(lbs, "latitude").ifPresent(v -> lbsData[1] = v);
-        });
-
-        // GPS选择逻辑
-        if (bdsUseful[0] != null && bdsUseful[0] == 1 && bdsData[0] != null && bdsData[1] != null) {
-            // BDS可用，使用北斗
-            log.debug("📍 GPS选择: BDS可用（useful=1），使用北斗GPS");
-            return new GpsData("BDS", bdsData[0], bdsData[1], bdsData[2]);
-        } else if (lbsData[0] != null && lbsData[1] != null) {
-            // BDS不可用，使用LBS
-            log.debug("📍 GPS选择: BDS不可用，使用基站GPS");
-            return new GpsData("LBS", lbsData[0], lbsData[1], null);
-        } else {
-            // 都不可用
-            log.warn("⚠️ GPS选择: BDS和LBS都不可用或数据缺失");
-            return null;
-        }
-    }
-
-    /**
-     * GPS数据内部类
-     */
-    @lombok.Data
-    @lombok.AllArgsConstructor
-    private static class GpsData {
-        private String type;      // BDS 或 LBS
-        private String longitude;
-        private String latitude;
-        private String utc;       // 仅BDS有
-    }
-}
\ No newline at end of file
+}
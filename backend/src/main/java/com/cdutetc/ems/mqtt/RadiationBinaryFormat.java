@@ -0,0 +1,95 @@
+package com.cdutetc.ems.mqtt;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 辐射设备二进制消息格式（主题后缀 /bin，如 ems/device/{deviceCode}/data/RADIATION/bin）
+ *
+ * 固定布局，大端序，替代约250字节的JSON消息:
+ * <pre>
+ * 偏移  长度  字段
+ * 0     1    version    格式版本，当前为1
+ * 1     1    src        无符号
+ * 2     1    msgtype    无符号
+ * 3     1    trigger    无符号
+ * 4     1    multi      无符号
+ * 5     1    way        无符号
+ * 6     2    Batvolt    无符号，单位mV
+ * 8     4    CPM        float32，设备原始计数（与JSON一致，服务端再按转换系数换算）
+ * 12    4    time       无符号，设备时间（epoch秒），0表示未上报
+ * 16    1    gpsType    0=无定位，1=BDS，2=LBS（由设备完成BDS/LBS选择）
+ * 17    4    longitude  int32，单位1e-6度（gpsType≠0时存在）
+ * 21    4    latitude   int32，单位1e-6度（gpsType≠0时存在）
+ * 25    4    UTC        无符号，BDS定位时刻（当日秒数，仅gpsType=1时存在）
+ * </pre>
+ * 消息长度: 无定位17字节，LBS 25字节，BDS 29字节
+ *
+ * @author EMS Team
+ */
+public final class RadiationBinaryFormat {
+
+    public static final int VERSION = 1;
+
+    public static final int HEADER_LENGTH = 17;
+    public static final int LOCATION_LENGTH = 8;
+    public static final int UTC_LENGTH = 4;
+
+    public static final int GPS_NONE = 0;
+    public static final int GPS_BDS = 1;
+    public static final int GPS_LBS = 2;
+
+    /**
+     * 二进制主题后缀
+     */
+    public static final String TOPIC_SUFFIX = "bin";
+
+    private RadiationBinaryFormat() {
+    }
+
+    /**
+     * 二进制消息帧（设备模拟器和测试用的编码器）
+     */
+    @Value
+    @Builder
+    public static class Frame {
+        int src;
+        int msgtype;
+        int trigger;
+        int multi;
+        int way;
+        int batvoltMv;
+        float cpm;
+        long epochSeconds;
+        int gpsType;
+        int longitudeMicros;
+        int latitudeMicros;
+        int utcSecondOfDay;
+
+        public byte[] toBytes() {
+            int length = HEADER_LENGTH
+                    + (gpsType != GPS_NONE ? LOCATION_LENGTH : 0)
+                    + (gpsType == GPS_BDS ? UTC_LENGTH : 0);
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            buffer.put((byte) VERSION)
+                    .put((byte) src)
+                    .put((byte) msgtype)
+                    .put((byte) trigger)
+                    .put((byte) multi)
+                    .put((byte) way)
+                    .putShort((short) batvoltMv)
+                    .putFloat(cpm)
+                    .putInt((int) epochSeconds)
+                    .put((byte) gpsType);
+            if (gpsType != GPS_NONE) {
+                buffer.putInt(longitudeMicros).putInt(latitudeMicros);
+            }
+            if (gpsType == GPS_BDS) {
+                buffer.putInt(utcSecondOfDay);
+            }
+            return buffer.array();
+        }
+    }
+}
@@ -158,6 +158,12 @@ public interface DeviceRepository extends JpaRepository<Device, Long> {
     @Query("SELECT CASE WHEN COUNT(d) > 0 THEN true ELSE false END FROM Device d WHERE d.deviceCode = :deviceCode AND d.company.id = :companyId")
     boolean existsByDeviceCodeAndCompanyId(@Param("deviceCode") String deviceCode, @Param("companyId") Long companyId);
 
+    /**
+     * 获取企业的全部设备编码（统计接口按设备编码查询汇总表）
+     */
+    @Query("SELECT d.deviceCode FROM Device d WHERE d.company.id = :companyId")
+    List<String> findDeviceCodesByCompanyId(@Param("companyId") Long companyId);
+
     /**
      * 根据企业ID和设备状态统计设备数量
      */
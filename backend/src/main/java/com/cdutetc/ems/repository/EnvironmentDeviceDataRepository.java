@@ -3,6 +3,7 @@ package com.cdutetc.ems.repository;
 import com.cdutetc.ems.entity.EnvironmentDeviceData;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -211,6 +212,34 @@ public interface EnvironmentDeviceDataRepository extends JpaRepository<Environme
     @Query("SELECT e FROM EnvironmentDeviceData e JOIN Device d ON e.deviceCode = d.deviceCode WHERE d.company.id = :companyId ORDER BY e.recordTime DESC")
     List<EnvironmentDeviceData> findTopByCompanyIdOrderByRecordTimeDesc(@Param("companyId") Long companyId);
 
+    /**
+     * 根据设备编码和时间范围游标分页查询（按记录时间、ID降序，不统计总数）
+     */
+    @Query("SELECT e FROM EnvironmentDeviceData e WHERE e.deviceCode = :deviceCode AND e.recordTime BETWEEN :startTime AND :endTime "
+            + "AND (e.recordTime < :cursorTime OR (e.recordTime = :cursorTime AND e.id < :cursorId)) "
+            + "ORDER BY e.recordTime DESC, e.id DESC")
+    Slice<EnvironmentDeviceData> findSliceByDeviceCode(
+            @Param("deviceCode") String deviceCode,
+            @Param("startTime") LocalDateTime startTime,
+            @Param("endTime") LocalDateTime endTime,
+            @Param("cursorTime") LocalDateTime cursorTime,
+            @Param("cursorId") Long cursorId,
+            Pageable pageable);
+
+    /**
+     * 根据设备编码列表和时间范围游标分页查询（企业数据，不关联设备表，不统计总数）
+     */
+    @Query("SELECT e FROM EnvironmentDeviceData e WHERE e.deviceCode IN :deviceCodes AND e.recordTime BETWEEN :startTime AND :endTime "
+            + "AND (e.recordTime < :cursorTime OR (e.recordTime = :cursorTime AND e.id < :cursorId)) "
+            + "ORDER BY e.recordTime DESC, e.id DESC")
+    Slice<EnvironmentDeviceData> findSliceByDeviceCodes(
+            @Param("deviceCodes") List<String> deviceCodes,
+            @Param("startTime") LocalDateTime startTime,
+            @Param("endTime") LocalDateTime endTime,
+            @Param("cursorTime") LocalDateTime cursorTime,
+            @Param("cursorId") Long cursorId,
+            Pageable pageable);
+
     /**
      * 统计企业数据条数
      */
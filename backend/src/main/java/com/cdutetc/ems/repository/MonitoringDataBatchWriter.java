@@ -0,0 +1,284 @@
+package com.cdutetc.ems.repository;
+
+import com.cdutetc.ems.entity.DeviceDataRollup.DataType;
+import com.cdutetc.ems.entity.EnvironmentDeviceData;
+import com.cdutetc.ems.entity.RadiationDeviceData;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * 监测数据批量写入
+ *
+ * 使用多行INSERT ... VALUES (...),(...)写入时序数据表，不经过Hibernate持久化上下文:
+ * - 实体主键为IDENTITY生成，Hibernate无法对其做JDBC批处理（saveAll = 逐条INSERT，每条一次往返）
+ * - 每条语句最多ROWS_PER_STATEMENT行，一个刷新批次只需几次往返；不依赖驱动的rewriteBatchedStatements
+ * - 写入后实体的id不回填（缓冲数据写入后不再使用实体对象）
+ * - 每次调用在一个事务中执行，多条语句全部提交或全部回滚（重放失败批次时不会重复写入已提交的部分）
+ *
+ * 列与RadiationDeviceData/EnvironmentDeviceData的@Column映射保持一致，created_at/updated_at取写入时间。
+ * 同一事务中累加汇总表（MonitoringDataRollupRepository），统计接口从汇总表查询。
+ *
+ * 重放去重: 指定批次标识时，同一事务中先插入ems_buffer_applied_batch；标识已存在说明该批次已提交
+ * （提交后、确认前退出），整批跳过，原始数据和汇总都不会重复写入。并发重放同一批次时，后插入的事务
+ * 等待先插入的事务提交后得到主键冲突。
+ *
+ * @author EMS Team
+ */
+@Slf4j
+@Repository
+public class MonitoringDataBatchWriter {
+
+    static final String RADIATION_INSERT_PREFIX = "INSERT INTO ems_radiation_device_data "
+            + "(device_code, raw_data, src, msgtype, CPM, Batvolt, time, data_trigger, multi, way, "
+            + "gps_longitude, gps_latitude, gps_type, gps_utc, record_time, created_at, updated_at) VALUES ";
+    private static final int RADIATION_COLUMNS = 17;
+
+    static final String ENVIRONMENT_INSERT_PREFIX = "INSERT INTO ems_environment_device_data "
+            + "(device_code, raw_data, src, CPM, temperature, wetness, windspeed, total, battery, "
+            + "record_time, created_at, updated_at) VALUES ";
+    private static final int ENVIRONMENT_COLUMNS = 12;
+
+    static final String APPLIED_BATCH_INSERT = "INSERT INTO ems_buffer_applied_batch (batch_id, applied_at) VALUES (?, ?)";
+
+    /**
+     * 批次已写入过，本次未写入任何数据
+     */
+    public static final int ALREADY_APPLIED = -1;
+
+    /**
+     * 每条INSERT语句的最大行数（MySQL单条语句最多65535个占位符）
+     */
+    static final int ROWS_PER_STATEMENT = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final MonitoringDataRollupRepository rollupRepository;
+
+    public MonitoringDataBatchWriter(JdbcTemplate jdbcTemplate, MonitoringDataRollupRepository rollupRepository) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.rollupRepository = rollupRepository;
+    }
+
+    /**
+     * 批量写入辐射设备数据
+     *
+     * @param dataList 辐射设备数据
+     * @return 写入的行数
+     */
+    @Transactional
+    public int insertRadiationData(List<RadiationDeviceData> dataList) {
+        return insertRadiationData(dataList, null);
+    }
+
+    /**
+     * 批量写入辐射设备数据（按批次标识去重）
+     *
+     * @param dataList 辐射设备数据
+     * @param batchId 批次标识（batchId），为null时不去重
+     * @return 写入的行数，批次已写入过时返回ALREADY_APPLIED
+     */
+    @Transactional
+    public int insertRadiationData(List<RadiationDeviceData> dataList, String batchId) {
+        if (!recordBatch(batchId)) {
+            return ALREADY_APPLIED;
+        }
+        ensureRollupState(DataType.RADIATION);
+        int rows = insertRows(RADIATION_INSERT_PREFIX, RADIATION_COLUMNS, dataList, (ps, i, data, now) -> {
+            ps.setString(i++, data.getDeviceCode());
+            ps.setString(i++, data.getRawData());
+            setInteger(ps, i++, data.getSrc());
+            setInteger(ps, i++, data.getMsgtype());
+            setDouble(ps, i++, data.getCpm());
+            setDouble(ps, i++, data.getBatvolt());
+            ps.setString(i++, data.getTime());
+            setInteger(ps, i++, data.getDataTrigger());
+            setInteger(ps, i++, data.getMulti());
+            setInteger(ps, i++, data.getWay());
+            ps.setString(i++, data.getGpsLongitude());
+            ps.setString(i++, data.getGpsLatitude());
+            ps.setString(i++, data.getGpsType());
+            ps.setString(i++, data.getGpsUtc());
+            ps.setObject(i++, data.getRecordTime() != null ? data.getRecordTime() : now);
+            ps.setObject(i++, now);
+            ps.setObject(i, now);
+        });
+        rollupRepository.applyRadiation(dataList);
+        log.debug("JDBC批量写入辐射数据: count={}", rows);
+        return rows;
+    }
+
+    /**
+     * 写入原始数据之前记录汇总起点，本批读数不会再被历史补算重复计入
+     */
+    private void ensureRollupState(DataType dataType) {
+        if (rollupRepository.isEnabled()) {
+            rollupRepository.ensureState(dataType);
+        }
+    }
+
+    /**
+     * 批量写入环境设备数据
+     *
+     * @param dataList 环境设备数据
+     * @return 写入的行数
+     */
+    @Transactional
+    public int insertEnvironmentData(List<EnvironmentDeviceData> dataList) {
+        return insertEnvironmentData(dataList, null);
+    }
+
+    /**
+     * 批量写入环境设备数据（按批次标识去重）
+     *
+     * @param dataList 环境设备数据
+     * @param batchId 批次标识（batchId），为null时不去重
+     * @return 写入的行数，批次已写入过时返回ALREADY_APPLIED
+     */
+    @Transactional
+    public int insertEnvironmentData(List<EnvironmentDeviceData> dataList, String batchId) {
+        if (!recordBatch(batchId)) {
+            return ALREADY_APPLIED;
+        }
+        ensureRollupState(DataType.ENVIRONMENT);
+        int rows = insertRows(ENVIRONMENT_INSERT_PREFIX, ENVIRONMENT_COLUMNS, dataList, (ps, i, data, now) -> {
+            ps.setString(i++, data.getDeviceCode());
+            ps.setString(i++, data.getRawData());
+            setInteger(ps, i++, data.getSrc());
+            setDouble(ps, i++, data.getCpm());
+            setDouble(ps, i++, data.getTemperature());
+            setDouble(ps, i++, data.getWetness());
+            setDouble(ps, i++, data.getWindspeed());
+            setDouble(ps, i++, data.getTotal());
+            setDouble(ps, i++, data.getBattery());
+            ps.setObject(i++, data.getRecordTime() != null ? data.getRecordTime() : now);
+            ps.setObject(i++, now);
+            ps.setObject(i, now);
+        });
+        rollupRepository.applyEnvironment(dataList);
+        log.debug("JDBC批量写入环境数据: count={}", rows);
+        return rows;
+    }
+
+    /**
+     * 删除早于指定时间写入的批次标识
+     *
+     * @return 删除的行数
+     */
+    public int purgeAppliedBatches(LocalDateTime before) {
+        return jdbcTemplate.update("DELETE FROM ems_buffer_applied_batch WHERE applied_at < ?", before);
+    }
+
+    /**
+     * 生成批次标识: scope + ":" + 批次内容的SHA-256
+     * 同一批次重放时内容不变，标识相同；元素为原始字节时按字节计算，其余按toString计算
+     *
+     * @param scope 批次来源（如处理中列表的key），不同来源的相同内容互不影响
+     */
+    public static String batchId(String scope, List<?> values) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (Object value : values) {
+            byte[] bytes = value instanceof byte[] raw ? raw : String.valueOf(value).getBytes(StandardCharsets.UTF_8);
+            digest.update(new byte[]{(byte) (bytes.length >>> 24), (byte) (bytes.length >>> 16),
+                    (byte) (bytes.length >>> 8), (byte) bytes.length});
+            digest.update(bytes);
+        }
+        return scope + ":" + HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * 在当前事务中记录批次标识
+     *
+     * @return 批次标识为null或记录成功时返回true，已存在时返回false
+     */
+    private boolean recordBatch(String batchId) {
+        if (batchId == null) {
+            return true;
+        }
+        try {
+            jdbcTemplate.update(APPLIED_BATCH_INSERT, batchId, LocalDateTime.now());
+            return true;
+        } catch (DuplicateKeyException e) {
+            log.info("♻️ 批次已写入过，跳过重放: {}", batchId);
+            return false;
+        }
+    }
+
+    /**
+     * 按ROWS_PER_STATEMENT分段，每段执行一条多行INSERT
+     */
+    private <T> int insertRows(String insertPrefix, int columns, List<T> dataList, RowBinder<T> binder) {
+        LocalDateTime now = LocalDateTime.now();
+        int written = 0;
+        for (int from = 0; from < dataList.size(); from += ROWS_PER_STATEMENT) {
+            List<T> rows = dataList.subList(from, Math.min(from + ROWS_PER_STATEMENT, dataList.size()));
+            written += jdbcTemplate.update(insertSql(insertPrefix, columns, rows.size()), ps -> {
+                int index = 1;
+                for (T data : rows) {
+                    binder.bind(ps, index, data, now);
+                    index += columns;
+                }
+            });
+        }
+        return written;
+    }
+
+    /**
+     * 生成多行INSERT语句: prefix (?, ...), (?, ...), ...
+     */
+    static String insertSql(String insertPrefix, int columns, int rows) {
+        String row = "(" + "?, ".repeat(columns - 1) + "?)";
+        StringBuilder sql = new StringBuilder(insertPrefix.length() + rows * (row.length() + 2));
+        sql.append(insertPrefix);
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(row);
+        }
+        return sql.toString();
+    }
+
+    private static void setInteger(PreparedStatement ps, int index, Integer value) throws SQLException {
+        if (value != null) {
+            ps.setInt(index, value);
+        } else {
+            ps.setNull(index, Types.INTEGER);
+        }
+    }
+
+    private static void setDouble(PreparedStatement ps, int index, Double value) throws SQLException {
+        if (value != null) {
+            ps.setDouble(index, value);
+        } else {
+            ps.setNull(index, Types.DOUBLE);
+        }
+    }
+
+    /**
+     * 绑定一行数据的参数
+     */
+    @FunctionalInterface
+    private interface RowBinder<T> {
+        /**
+         * @param index 本行第一列的参数位置
+         */
+        void bind(PreparedStatement ps, int index, T data, LocalDateTime now) throws SQLException;
+    }
+}
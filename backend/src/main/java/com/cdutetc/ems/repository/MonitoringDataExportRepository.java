@@ -0,0 +1,137 @@
+package com.cdutetc.ems.repository;
+
+import com.cdutetc.ems.config.MonitoringDataExportProperties;
+import com.cdutetc.ems.entity.DeviceDataRollup.DataType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 监测数据导出查询
+ *
+ * 使用只进只读的结果集逐行读取，不在内存中保存整个结果:
+ * - MySQL连接串带useCursorFetch=true时按fetchSize分批取回（服务端游标）
+ * - 否则设置fetchSize = Integer.MIN_VALUE，Connector/J逐行流式读取
+ * - 其他数据库直接使用fetchSize
+ *
+ * 导出列使用与响应DTO一致的字段名，不导出raw_data。
+ *
+ * @author EMS Team
+ */
+@Repository
+public class MonitoringDataExportRepository {
+
+    private static final List<ExportColumn> RADIATION_COLUMNS = List.of(
+            new ExportColumn("id", "id"),
+            new ExportColumn("deviceCode", "device_code"),
+            new ExportColumn("recordTime", "record_time"),
+            new ExportColumn("CPM", "CPM"),
+            new ExportColumn("Batvolt", "Batvolt"),
+            new ExportColumn("src", "src"),
+            new ExportColumn("msgtype", "msgtype"),
+            new ExportColumn("time", "time"),
+            new ExportColumn("trigger", "data_trigger"),
+            new ExportColumn("multi", "multi"),
+            new ExportColumn("way", "way"),
+            new ExportColumn("gpsType", "gps_type"),
+            new ExportColumn("gpsLongitude", "gps_longitude"),
+            new ExportColumn("gpsLatitude", "gps_latitude"),
+            new ExportColumn("gpsUtc", "gps_utc")
+    );
+
+    private static final List<ExportColumn> ENVIRONMENT_COLUMNS = List.of(
+            new ExportColumn("id", "id"),
+            new ExportColumn("deviceCode", "device_code"),
+            new ExportColumn("recordTime", "record_time"),
+            new ExportColumn("CPM", "CPM"),
+            new ExportColumn("temperature", "temperature"),
+            new ExportColumn("wetness", "wetness"),
+            new ExportColumn("windspeed", "windspeed"),
+            new ExportColumn("total", "total"),
+            new ExportColumn("battery", "battery"),
+            new ExportColumn("src", "src")
+    );
+
+    private final JdbcTemplate jdbcTemplate;
+    private final MonitoringDataExportProperties properties;
+
+    public MonitoringDataExportRepository(JdbcTemplate jdbcTemplate, MonitoringDataExportProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.properties = properties;
+    }
+
+    /**
+     * 导出的字段名（与streamRows的列顺序一致）
+     */
+    public static List<String> columnNames(DataType dataType) {
+        return columns(dataType).stream().map(ExportColumn::name).toList();
+    }
+
+    /**
+     * 按记录时间升序逐行读取指定设备在[startTime, endTime]内的数据，startTime/endTime为null时不限
+     */
+    public void streamRows(DataType dataType, List<String> deviceCodes,
+                           LocalDateTime startTime, LocalDateTime endTime, RowCallbackHandler handler) {
+        if (deviceCodes.isEmpty()) {
+            return;
+        }
+        StringBuilder sql = new StringBuilder("SELECT ");
+        List<ExportColumn> columns = columns(dataType);
+        for (int i = 0; i < columns.size(); i++) {
+            sql.append(i > 0 ? ", " : "").append(columns.get(i).column());
+        }
+        sql.append(" FROM ").append(dataType == DataType.RADIATION ? "ems_radiation_device_data" : "ems_environment_device_data")
+                .append(" WHERE device_code IN (").append("?, ".repeat(deviceCodes.size() - 1)).append("?)");
+        List<Object> args = new ArrayList<>(deviceCodes);
+        if (startTime != null) {
+            sql.append(" AND record_time >= ?");
+            args.add(Timestamp.valueOf(startTime));
+        }
+        if (endTime != null) {
+            sql.append(" AND record_time <= ?");
+            args.add(Timestamp.valueOf(endTime));
+        }
+        sql.append(" ORDER BY record_time, id");
+
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(sql.toString(),
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize(connection));
+            for (int i = 0; i < args.size(); i++) {
+                ps.setObject(i + 1, args.get(i));
+            }
+            return ps;
+        }, handler);
+    }
+
+    private int fetchSize(Connection connection) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        String product = metaData.getDatabaseProductName();
+        boolean mySql = product != null && (product.contains("MySQL") || product.contains("MariaDB"));
+        String url = metaData.getURL();
+        if (mySql && (url == null || !url.contains("useCursorFetch=true"))) {
+            return Integer.MIN_VALUE;
+        }
+        return properties.getFetchSize();
+    }
+
+    private static List<ExportColumn> columns(DataType dataType) {
+        return dataType == DataType.RADIATION ? RADIATION_COLUMNS : ENVIRONMENT_COLUMNS;
+    }
+
+    /**
+     * 导出字段名与表中的列
+     */
+    private record ExportColumn(String name, String column) {
+    }
+}
@@ -0,0 +1,616 @@
+package com.cdutetc.ems.repository;
+
+import com.cdutetc.ems.config.MonitoringDataRollupProperties;
+import com.cdutetc.ems.entity.DeviceDataRollup.DataType;
+import com.cdutetc.ems.entity.DeviceDataRollup.Resolution;
+import com.cdutetc.ems.entity.DeviceDataRollupState;
+import com.cdutetc.ems.entity.EnvironmentDeviceData;
+import com.cdutetc.ems.entity.RadiationDeviceData;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 监测数据汇总表读写（ems_device_data_rollup）
+ *
+ * 写入: 原始数据写入的同一事务中，把一批读数先在内存中按(分辨率, 设备, 时间桶)合并，
+ * 再用INSERT ... ON DUPLICATE KEY UPDATE累加到汇总表（每个桶一行，按键排序写入，多节点并发写同一批桶时加锁顺序一致）。
+ * 原始数据事务回滚时汇总一起回滚，重放失败批次不会重复累加。
+ *
+ * 历史数据: 首次写入前记录原始表当时的最大id（ems_device_data_rollup_state），
+ * 之后写入的读数在写入时汇总，id不超过该值的读数由backfillNextDevice逐个设备补算，两部分不重叠。
+ *
+ * 指标顺序见METRICS，辐射设备的电池电压为Batvolt，没有温度/湿度/风速。
+ *
+ * @author EMS Team
+ */
+@Slf4j
+@Repository
+public class MonitoringDataRollupRepository {
+
+    /**
+     * 汇总的指标（列名前缀）
+     */
+    public static final List<String> METRICS = List.of("cpm", "battery", "temperature", "wetness", "windspeed");
+
+    private static final String RADIATION_TABLE = "ems_radiation_device_data";
+    private static final String ENVIRONMENT_TABLE = "ems_environment_device_data";
+
+    /**
+     * 原始表中与METRICS对应的列（null = 该类型没有此指标）
+     */
+    private static final List<String> RADIATION_COLUMNS = Arrays.asList("CPM", "Batvolt", null, null, null);
+    private static final List<String> ENVIRONMENT_COLUMNS = List.of("CPM", "battery", "temperature", "wetness", "windspeed");
+
+    static final String UPSERT_SQL = upsertSql();
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate newTransaction;
+    private final MonitoringDataRollupProperties properties;
+
+    /**
+     * 已确认存在汇总状态的数据类型
+     */
+    private final Set<DataType> initialized = ConcurrentHashMap.newKeySet();
+
+    public MonitoringDataRollupRepository(JdbcTemplate jdbcTemplate,
+                                          PlatformTransactionManager transactionManager,
+                                          MonitoringDataRollupProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.properties = properties;
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * 累加一批辐射设备读数（调用方负责事务，与原始数据写入在同一事务中）
+     */
+    public void applyRadiation(List<RadiationDeviceData> dataList) {
+        if (!properties.isEnabled() || dataList.isEmpty()) {
+            return;
+        }
+        ensureState(DataType.RADIATION);
+        LocalDateTime now = LocalDateTime.now();
+        Map<BucketKey, Aggregate> buckets = newBuckets();
+        for (RadiationDeviceData data : dataList) {
+            LocalDateTime time = data.getRecordTime() != null ? data.getRecordTime() : now;
+            add(buckets, EnumSet.allOf(Resolution.class), data.getDeviceCode(), time,
+                    data.getCpm(), data.getBatvolt(), null, null, null);
+        }
+        upsert(DataType.RADIATION, buckets);
+    }
+
+    /**
+     * 累加一批环境设备读数（调用方负责事务，与原始数据写入在同一事务中）
+     */
+    public void applyEnvironment(List<EnvironmentDeviceData> dataList) {
+        if (!properties.isEnabled() || dataList.isEmpty()) {
+            return;
+        }
+        ensureState(DataType.ENVIRONMENT);
+        LocalDateTime now = LocalDateTime.now();
+        Map<BucketKey, Aggregate> buckets = newBuckets();
+        for (EnvironmentDeviceData data : dataList) {
+            LocalDateTime time = data.getRecordTime() != null ? data.getRecordTime() : now;
+            add(buckets, EnumSet.allOf(Resolution.class), data.getDeviceCode(), time,
+                    data.getCpm(), data.getBattery(), data.getTemperature(), data.getWetness(), data.getWindspeed());
+        }
+        upsert(DataType.ENVIRONMENT, buckets);
+    }
+
+    /**
+     * 汇总状态，尚未写入过汇总数据时返回null
+     */
+    public DeviceDataRollupState findState(DataType dataType) {
+        List<DeviceDataRollupState> states = jdbcTemplate.query(
+                "SELECT backfill_max_id, enabled_at, backfill_cursor, backfill_done "
+                        + "FROM ems_device_data_rollup_state WHERE data_type = ?",
+                (rs, rowNum) -> {
+                    DeviceDataRollupState state = new DeviceDataRollupState();
+                    state.setDataType(dataType);
+                    state.setBackfillMaxId(rs.getLong(1));
+                    state.setEnabledAt(rs.getTimestamp(2).toLocalDateTime());
+                    state.setBackfillCursor(rs.getString(3));
+                    state.setBackfillDone(rs.getBoolean(4));
+                    return state;
+                }, dataType.name());
+        return states.isEmpty() ? null : states.get(0);
+    }
+
+    /**
+     * 首次写入前记录原始表的最大id（独立事务提交，之后写入的读数id一定更大）
+     */
+    public void ensureState(DataType dataType) {
+        if (initialized.contains(dataType)) {
+            return;
+        }
+        try {
+            newTransaction.executeWithoutResult(status -> {
+                if (findState(dataType) == null) {
+                    Long maxId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM " + table(dataType), Long.class);
+                    jdbcTemplate.update("INSERT INTO ems_device_data_rollup_state "
+                                    + "(data_type, backfill_max_id, enabled_at, backfill_done) VALUES (?, ?, ?, FALSE)",
+                            dataType.name(), maxId != null ? maxId : 0L, Timestamp.valueOf(LocalDateTime.now()));
+                    log.info("📊 启用{}数据汇总，历史数据将在后台补算", dataType);
+                }
+            });
+        } catch (DuplicateKeyException e) {
+            log.debug("汇总状态已由其他节点创建: {}", dataType);
+        }
+        initialized.add(dataType);
+    }
+
+    /**
+     * 补算下一个设备的历史读数（只补算小时/天桶）
+     * 锁定状态行，多节点同时补算时串行执行
+     *
+     * @return 是否还有设备待补算
+     */
+    @Transactional
+    public boolean backfillNextDevice(DataType dataType) {
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                "SELECT backfill_max_id, backfill_cursor, backfill_done FROM ems_device_data_rollup_state "
+                        + "WHERE data_type = ? FOR UPDATE", dataType.name());
+        if (rows.isEmpty() || Boolean.TRUE.equals(rows.get(0).get("backfill_done"))) {
+            return false;
+        }
+        long maxId = ((Number) rows.get(0).get("backfill_max_id")).longValue();
+        String cursor = (String) rows.get(0).get("backfill_cursor");
+
+        String table = table(dataType);
+        String deviceCode = jdbcTemplate.queryForObject(
+                "SELECT MIN(device_code) FROM " + table + " WHERE device_code > ?", String.class,
+                cursor != null ? cursor : "");
+        if (deviceCode == null) {
+            jdbcTemplate.update("UPDATE ems_device_data_rollup_state SET backfill_done = TRUE WHERE data_type = ?",
+                    dataType.name());
+            log.info("✅ {}数据汇总历史补算完成", dataType);
+            return false;
+        }
+
+        List<String> columns = columns(dataType);
+        StringBuilder sql = new StringBuilder("SELECT record_time");
+        for (String column : columns) {
+            sql.append(", ").append(column != null ? column : "NULL");
+        }
+        sql.append(" FROM ").append(table).append(" WHERE device_code = ? AND id <= ?");
+
+        Map<BucketKey, Aggregate> buckets = newBuckets();
+        Set<Resolution> resolutions = EnumSet.of(Resolution.HOUR, Resolution.DAY);
+        int[] count = new int[1];
+        jdbcTemplate.query(sql.toString(), rs -> {
+            Double[] values = new Double[METRICS.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = columns.get(i) != null ? getDouble(rs, i + 2) : null;
+            }
+            add(buckets, resolutions, deviceCode, rs.getTimestamp(1).toLocalDateTime(), values);
+            count[0]++;
+        }, deviceCode, maxId);
+        upsert(dataType, buckets);
+
+        jdbcTemplate.update("UPDATE ems_device_data_rollup_state SET backfill_cursor = ? WHERE data_type = ?",
+                deviceCode, dataType.name());
+        log.debug("补算{}数据汇总: device={}, readings={}, buckets={}", dataType, deviceCode, count[0], buckets.size());
+        return true;
+    }
+
+    /**
+     * 删除早于before的分钟桶
+     *
+     * @return 删除的行数
+     */
+    public int deleteMinuteBucketsBefore(LocalDateTime before, int chunkSize) {
+        int deleted = 0;
+        int affected;
+        do {
+            affected = jdbcTemplate.update("DELETE FROM ems_device_data_rollup WHERE resolution = ? "
+                    + "AND bucket_start < ? LIMIT " + chunkSize, Resolution.MINUTE.name(), before);
+            deleted += affected;
+        } while (affected == chunkSize);
+        return deleted;
+    }
+
+    /**
+     * 汇总指定设备在若干时间桶范围内的数据
+     */
+    public Aggregate aggregateRollups(DataType dataType, Collection<String> deviceCodes, List<BucketRange> ranges) {
+        Aggregate aggregate = new Aggregate();
+        if (deviceCodes.isEmpty() || ranges.isEmpty()) {
+            return aggregate;
+        }
+        StringBuilder sql = new StringBuilder("SELECT SUM(sample_count)");
+        for (String metric : METRICS) {
+            sql.append(", SUM(").append(metric).append("_count), SUM(").append(metric).append("_sum), MIN(")
+                    .append(metric).append("_min), MAX(").append(metric).append("_max)");
+        }
+        sql.append(" FROM ems_device_data_rollup WHERE data_type = ?");
+        List<Object> args = new ArrayList<>();
+        args.add(dataType.name());
+        appendDeviceCodes(sql, args, deviceCodes);
+        sql.append(" AND (");
+        for (int i = 0; i < ranges.size(); i++) {
+            BucketRange range = ranges.get(i);
+            sql.append(i > 0 ? " OR " : "").append("(resolution = ?");
+            args.add(range.resolution().name());
+            if (range.from() != null) {
+                sql.append(" AND bucket_start >= ?");
+                args.add(Timestamp.valueOf(range.from()));
+            }
+            if (range.to() != null) {
+                sql.append(" AND bucket_start < ?");
+                args.add(Timestamp.valueOf(range.to()));
+            }
+            sql.append(")");
+        }
+        sql.append(")");
+        jdbcTemplate.query(sql.toString(), aggregate::mergeRow, args.toArray());
+        return aggregate;
+    }
+
+    /**
+     * 汇总指定设备在若干时间范围内的原始数据
+     */
+    public Aggregate aggregateRaw(DataType dataType, Collection<String> deviceCodes, List<RawRange> ranges) {
+        Aggregate aggregate = new Aggregate();
+        if (deviceCodes.isEmpty() || ranges.isEmpty()) {
+            return aggregate;
+        }
+        StringBuilder sql = new StringBuilder("SELECT COUNT(*)");
+        for (String column : columns(dataType)) {
+            if (column != null) {
+                sql.append(", COUNT(").append(column).append("), SUM(").append(column).append("), MIN(")
+                        .append(column).append("), MAX(").append(column).append(")");
+            } else {
+                sql.append(", 0, NULL, NULL, NULL");
+            }
+        }
+        sql.append(" FROM ").append(table(dataType)).append(" WHERE 1 = 1");
+        List<Object> args = new ArrayList<>();
+        appendDeviceCodes(sql, args, deviceCodes);
+        sql.append(" AND (");
+        for (int i = 0; i < ranges.size(); i++) {
+            RawRange range = ranges.get(i);
+            sql.append(i > 0 ? " OR " : "").append("(1 = 1");
+            if (range.from() != null) {
+                sql.append(" AND record_time >= ?");
+                args.add(Timestamp.valueOf(range.from()));
+            }
+            if (range.to() != null) {
+                sql.append(range.inclusiveEnd() ? " AND record_time <= ?" : " AND record_time < ?");
+                args.add(Timestamp.valueOf(range.to()));
+            }
+            sql.append(")");
+        }
+        sql.append(")");
+        jdbcTemplate.query(sql.toString(), aggregate::mergeRow, args.toArray());
+        return aggregate;
+    }
+
+    /**
+     * 统计设备在[from, to]内该指标的原始读数，最多数到limit（只扫描limit行索引，用于决定是否直接读取原始数据）
+     */
+    public int countRawReadings(DataType dataType, String deviceCode, String metric,
+                                LocalDateTime from, LocalDateTime to, int limit) {
+        String column = rawColumn(dataType, metric);
+        Integer count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM (SELECT 1 FROM " + table(dataType)
+                        + " WHERE device_code = ? AND record_time BETWEEN ? AND ? AND " + column + " IS NOT NULL LIMIT ?) readings",
+                Integer.class, deviceCode, Timestamp.valueOf(from), Timestamp.valueOf(to), limit);
+        return count != null ? count : 0;
+    }
+
+    /**
+     * 按时间升序逐行读取设备在[from, to]内该指标的原始读数
+     */
+    public void streamRawReadings(DataType dataType, String deviceCode, String metric,
+                                  LocalDateTime from, LocalDateTime to, ReadingHandler handler) {
+        String column = rawColumn(dataType, metric);
+        jdbcTemplate.query("SELECT record_time, " + column + " FROM " + table(dataType)
+                        + " WHERE device_code = ? AND record_time BETWEEN ? AND ? AND " + column + " IS NOT NULL"
+                        + " ORDER BY record_time",
+                rs -> {
+                    handler.accept(rs.getTimestamp(1).toLocalDateTime(), rs.getDouble(2));
+                },
+                deviceCode, Timestamp.valueOf(from), Timestamp.valueOf(to));
+    }
+
+    /**
+     * 按时间升序逐行读取设备在[from, to]内该指标的汇总桶（包含from所在的桶）
+     */
+    public void streamBuckets(DataType dataType, String deviceCode, String metric, Resolution resolution,
+                              LocalDateTime from, LocalDateTime to, BucketHandler handler) {
+        rawColumn(dataType, metric);
+        jdbcTemplate.query("SELECT bucket_start, " + metric + "_sum / " + metric + "_count, " + metric + "_min, "
+                        + metric + "_max FROM ems_device_data_rollup WHERE data_type = ? AND resolution = ? "
+                        + "AND device_code = ? AND bucket_start >= ? AND bucket_start <= ? AND " + metric + "_count > 0 "
+                        + "ORDER BY bucket_start",
+                rs -> {
+                    handler.accept(rs.getTimestamp(1).toLocalDateTime(), rs.getDouble(2), rs.getDouble(3), rs.getDouble(4));
+                },
+                dataType.name(), resolution.name(), deviceCode,
+                Timestamp.valueOf(bucketStart(from, resolution)), Timestamp.valueOf(to));
+    }
+
+    /**
+     * 原始表中与指标对应的列
+     *
+     * @throws IllegalArgumentException 该类型没有此指标
+     */
+    public static String rawColumn(DataType dataType, String metric) {
+        int index = METRICS.indexOf(metric);
+        String column = index >= 0 ? columns(dataType).get(index) : null;
+        if (column == null) {
+            throw new IllegalArgumentException("不支持的指标: " + metric);
+        }
+        return column;
+    }
+
+    private void upsert(DataType dataType, Map<BucketKey, Aggregate> buckets) {
+        if (buckets.isEmpty()) {
+            return;
+        }
+        List<Object[]> batchArgs = new ArrayList<>(buckets.size());
+        for (Map.Entry<BucketKey, Aggregate> entry : buckets.entrySet()) {
+            BucketKey key = entry.getKey();
+            Aggregate aggregate = entry.getValue();
+            Object[] args = new Object[6 + METRICS.size() * 5];
+            int i = 0;
+            args[i++] = dataType.name();
+            args[i++] = key.resolution().name();
+            args[i++] = key.deviceCode();
+            args[i++] = Timestamp.valueOf(key.bucketStart());
+            args[i++] = aggregate.sampleCount;
+            args[i++] = aggregate.lastTime != null ? Timestamp.valueOf(aggregate.lastTime) : null;
+            for (int m = 0; m < METRICS.size(); m++) {
+                args[i++] = aggregate.count[m];
+                args[i++] = aggregate.count[m] > 0 ? aggregate.sum[m] : null;
+                args[i++] = aggregate.min[m];
+                args[i++] = aggregate.max[m];
+                args[i++] = aggregate.last[m];
+            }
+            batchArgs.add(args);
+        }
+        jdbcTemplate.batchUpdate(UPSERT_SQL, batchArgs);
+    }
+
+    private static void add(Map<BucketKey, Aggregate> buckets, Set<Resolution> resolutions, String deviceCode,
+                            LocalDateTime time, Double... values) {
+        for (Resolution resolution : resolutions) {
+            buckets.computeIfAbsent(new BucketKey(resolution, deviceCode, bucketStart(time, resolution)),
+                    key -> new Aggregate()).add(time, values);
+        }
+    }
+
+    /**
+     * 按(分辨率, 设备, 时间桶)排序，保证写入汇总表时的加锁顺序
+     */
+    private static Map<BucketKey, Aggregate> newBuckets() {
+        return new TreeMap<>(Comparator.comparing(BucketKey::resolution)
+                .thenComparing(BucketKey::deviceCode)
+                .thenComparing(BucketKey::bucketStart));
+    }
+
+    /**
+     * 时间所在桶的起点
+     */
+    public static LocalDateTime bucketStart(LocalDateTime time, Resolution resolution) {
+        return switch (resolution) {
+            case MINUTE -> time.truncatedTo(ChronoUnit.MINUTES);
+            case HOUR -> time.truncatedTo(ChronoUnit.HOURS);
+            case DAY -> time.truncatedTo(ChronoUnit.DAYS);
+        };
+    }
+
+    private static void appendDeviceCodes(StringBuilder sql, List<Object> args, Collection<String> deviceCodes) {
+        sql.append(" AND device_code IN (");
+        int i = 0;
+        for (String deviceCode : deviceCodes) {
+            sql.append(i++ > 0 ? ", ?" : "?");
+            args.add(deviceCode);
+        }
+        sql.append(")");
+    }
+
+    private static String table(DataType dataType) {
+        return dataType == DataType.RADIATION ? RADIATION_TABLE : ENVIRONMENT_TABLE;
+    }
+
+    private static List<String> columns(DataType dataType) {
+        return dataType == DataType.RADIATION ? RADIATION_COLUMNS : ENVIRONMENT_COLUMNS;
+    }
+
+    private static Double getDouble(ResultSet rs, int column) throws SQLException {
+        double value = rs.getDouble(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    /**
+     * 按桶累加: 计数、合计相加，最小/最大取极值，最新值取last_time较新的一方
+     * （last_time最后更新，前面的*_last比较的是更新前的last_time）
+     */
+    private static String upsertSql() {
+        StringBuilder columns = new StringBuilder("data_type, resolution, device_code, bucket_start, sample_count, last_time");
+        StringBuilder update = new StringBuilder("sample_count = sample_count + VALUES(sample_count)");
+        String newer = "last_time IS NULL OR last_time <= VALUES(last_time)";
+        for (String metric : METRICS) {
+            String count = metric + "_count";
+            String sum = metric + "_sum";
+            String min = metric + "_min";
+            String max = metric + "_max";
+            String last = metric + "_last";
+            columns.append(", ").append(count).append(", ").append(sum).append(", ").append(min)
+                    .append(", ").append(max).append(", ").append(last);
+            update.append(", ").append(count).append(" = ").append(count).append(" + VALUES(").append(count).append(")")
+                    .append(", ").append(sum).append(" = COALESCE(").append(sum).append(" + VALUES(").append(sum)
+                    .append("), ").append(sum).append(", VALUES(").append(sum).append("))")
+                    .append(", ").append(min).append(" = LEAST(COALESCE(").append(min).append(", VALUES(").append(min)
+                    .append(")), COALESCE(VALUES(").append(min).append("), ").append(min).append("))")
+                    .append(", ").append(max).append(" = GREATEST(COALESCE(").append(max).append(", VALUES(").append(max)
+                    .append(")), COALESCE(VALUES(").append(max).append("), ").append(max).append("))")
+                    .append(", ").append(last).append(" = CASE WHEN ").append(newer).append(" THEN VALUES(").append(last)
+                    .append(") ELSE ").append(last).append(" END");
+        }
+        update.append(", last_time = CASE WHEN ").append(newer).append(" THEN VALUES(last_time) ELSE last_time END");
+        int placeholders = columns.toString().split(",").length;
+        return "INSERT INTO ems_device_data_rollup (" + columns + ") VALUES ("
+                + "?, ".repeat(placeholders - 1) + "?) ON DUPLICATE KEY UPDATE " + update;
+    }
+
+    /**
+     * 逐行接收原始读数
+     */
+    @FunctionalInterface
+    public interface ReadingHandler {
+        void accept(LocalDateTime time, double value);
+    }
+
+    /**
+     * 逐行接收汇总桶（平均值、最小值、最大值）
+     */
+    @FunctionalInterface
+    public interface BucketHandler {
+        void accept(LocalDateTime bucketStart, double average, double minimum, double maximum);
+    }
+
+    /**
+     * 汇总桶的键
+     */
+    record BucketKey(Resolution resolution, String deviceCode, LocalDateTime bucketStart) {
+    }
+
+    /**
+     * 汇总表查询范围: 指定分辨率、bucket_start在[from, to)内的桶（null = 不限）
+     */
+    public record BucketRange(Resolution resolution, LocalDateTime from, LocalDateTime to) {
+    }
+
+    /**
+     * 原始数据查询范围: record_time在[from, to)内（inclusiveEnd时为[from, to]，null = 不限）
+     */
+    public record RawRange(LocalDateTime from, LocalDateTime to, boolean inclusiveEnd) {
+    }
+
+    /**
+     * 一组读数的汇总值（每个指标: 非空条数、合计、最小值、最大值、最新值）
+     */
+    public static final class Aggregate {
+        private long sampleCount;
+        private LocalDateTime lastTime;
+        private final long[] count = new long[METRICS.size()];
+        private final double[] sum = new double[METRICS.size()];
+        private final Double[] min = new Double[METRICS.size()];
+        private final Double[] max = new Double[METRICS.size()];
+        private final Double[] last = new Double[METRICS.size()];
+
+        void add(LocalDateTime time, Double... values) {
+            sampleCount++;
+            boolean newest = lastTime == null || !time.isBefore(lastTime);
+            if (newest) {
+                lastTime = time;
+            }
+            for (int m = 0; m < values.length; m++) {
+                Double value = values[m];
+                if (newest) {
+                    last[m] = value;
+                }
+                if (value != null) {
+                    count[m]++;
+                    sum[m] += value;
+                    min[m] = min[m] == null ? value : Math.min(min[m], value);
+                    max[m] = max[m] == null ? value : Math.max(max[m], value);
+                }
+            }
+        }
+
+        /**
+         * 合并一行聚合查询结果: 总条数, 然后每个指标 条数, 合计, 最小值, 最大值
+         */
+        void mergeRow(ResultSet rs) throws SQLException {
+            sampleCount += rs.getLong(1);
+            for (int m = 0; m < METRICS.size(); m++) {
+                int column = 2 + m * 4;
+                long rowCount = rs.getLong(column);
+                if (rowCount == 0) {
+                    continue;
+                }
+                count[m] += rowCount;
+                sum[m] += rs.getDouble(column + 1);
+                merge(m, getDouble(rs, column + 2), getDouble(rs, column + 3));
+            }
+        }
+
+        /**
+         * 合并另一组汇总值
+         */
+        public Aggregate merge(Aggregate other) {
+            sampleCount += other.sampleCount;
+            for (int m = 0; m < METRICS.size(); m++) {
+                count[m] += other.count[m];
+                sum[m] += other.sum[m];
+                merge(m, other.min[m], other.max[m]);
+            }
+            if (other.lastTime != null && (lastTime == null || !other.lastTime.isBefore(lastTime))) {
+                lastTime = other.lastTime;
+                System.arraycopy(other.last, 0, last, 0, last.length);
+            }
+            return this;
+        }
+
+        private void merge(int m, Double otherMin, Double otherMax) {
+            if (otherMin != null) {
+                min[m] = min[m] == null ? otherMin : Math.min(min[m], otherMin);
+            }
+            if (otherMax != null) {
+                max[m] = max[m] == null ? otherMax : Math.max(max[m], otherMax);
+            }
+        }
+
+        public long getSampleCount() {
+            return sampleCount;
+        }
+
+        public long getCount(String metric) {
+            return count[METRICS.indexOf(metric)];
+        }
+
+        /**
+         * 平均值，没有非空读数时为null
+         */
+        public Double getAverage(String metric) {
+            int m = METRICS.indexOf(metric);
+            return count[m] > 0 ? sum[m] / count[m] : null;
+        }
+
+        public Double getMinimum(String metric) {
+            return min[METRICS.indexOf(metric)];
+        }
+
+        public Double getMaximum(String metric) {
+            return max[METRICS.indexOf(metric)];
+        }
+    }
+}
@@ -3,6 +3,7 @@ package com.cdutetc.ems.repository;
 import com.cdutetc.ems.entity.RadiationDeviceData;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -166,6 +167,34 @@ public interface RadiationDeviceDataRepository extends JpaRepository<RadiationDe
             @Param("endTime") LocalDateTime endTime,
             Pageable pageable);
 
+    /**
+     * 根据设备编码和时间范围游标分页查询（按记录时间、ID降序，不统计总数）
+     */
+    @Query("SELECT r FROM RadiationDeviceData r WHERE r.deviceCode = :deviceCode AND r.recordTime BETWEEN :startTime AND :endTime "
+            + "AND (r.recordTime < :cursorTime OR (r.recordTime = :cursorTime AND r.id < :cursorId)) "
+            + "ORDER BY r.recordTime DESC, r.id DESC")
+    Slice<RadiationDeviceData> findSliceByDeviceCode(
+            @Param("deviceCode") String deviceCode,
+            @Param("startTime") LocalDateTime startTime,
+            @Param("endTime") LocalDateTime endTime,
+            @Param("cursorTime") LocalDateTime cursorTime,
+            @Param("cursorId") Long cursorId,
+            Pageable pageable);
+
+    /**
+     * 根据设备编码列表和时间范围游标分页查询（企业数据，不关联设备表，不统计总数）
+     */
+    @Query("SELECT r FROM RadiationDeviceData r WHERE r.deviceCode IN :deviceCodes AND r.recordTime BETWEEN :startTime AND :endTime "
+            + "AND (r.recordTime < :cursorTime OR (r.recordTime = :cursorTime AND r.id < :cursorId)) "
+            + "ORDER BY r.recordTime DESC, r.id DESC")
+    Slice<RadiationDeviceData> findSliceByDeviceCodes(
+            @Param("deviceCodes") List<String> deviceCodes,
+            @Param("startTime") LocalDateTime startTime,
+            @Param("endTime") LocalDateTime endTime,
+            @Param("cursorTime") LocalDateTime cursorTime,
+            @Param("cursorId") Long cursorId,
+            Pageable pageable);
+
     /**
      * 统计企业数据条数
      */
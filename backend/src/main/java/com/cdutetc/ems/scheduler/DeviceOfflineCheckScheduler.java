@@ -9,6 +9,7 @@ import com.cdutetc.ems.repository.AlertRepository;
 import com.cdutetc.ems.repository.DeviceRepository;
 import com.cdutetc.ems.service.AlertConfigService;
 import com.cdutetc.ems.service.AlertService;
+import com.cdutetc.ems.service.DeviceOnlineStateTracker;
 import com.cdutetc.ems.service.DeviceStatusCacheService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -44,6 +45,7 @@ public class DeviceOfflineCheckScheduler {
     private final AlertRepository alertRepository;
     private final AlertService alertService;
     private final AlertConfigService alertConfigService;
+    private final DeviceOnlineStateTracker deviceOnlineStateTracker;
 
     /**
      * 每分钟检查一次设备离线状态
@@ -89,7 +91,11 @@ public class DeviceOfflineCheckScheduler {
 
                     // 判断是否离线
                     if (lastMessageTime.isBefore(offlineThreshold)) {
-                        // 设备离线，检查是否已有告警
+                        // 设备离线，写入共享状态（每个节点都会执行，只有一个节点发布状态变化）
+                        deviceOnlineStateTracker.markOffline(
+                                device.getDeviceCode(), device.getId(), device.getCompany().getId());
+
+                        // 检查是否已有告警
                         List<Alert> existingAlerts = alertRepository
                                 .findByDeviceIdAndAlertTypeAndResolved(
                                         device.getId(),
@@ -126,8 +132,6 @@ public class DeviceOfflineCheckScheduler {
                                     )
                             );
 
-                            // 更新设备状态为OFFLINE
-                            cacheService.updateStatus(device.getDeviceCode(), "OFFLINE");
 
                             offlineCount++;
                         }
@@ -1,141 +1,684 @@
 package com.cdutetc.ems.scheduler;
 
+import com.cdutetc.ems.config.MonitoringDataFlushProperties;
+import com.cdutetc.ems.config.MqttConfig;
 import com.cdutetc.ems.entity.EnvironmentDeviceData;
 import com.cdutetc.ems.entity.RadiationDeviceData;
-import com.cdutetc.ems.repository.EnvironmentDeviceDataRepository;
-import com.cdutetc.ems.repository.RadiationDeviceDataRepository;
-import lombok.RequiredArgsConstructor;
+import com.cdutetc.ems.repository.MonitoringDataBatchWriter;
+import com.cdutetc.ems.service.MonitoringDataBufferService;
+import com.cdutetc.ems.service.MonitoringDataFrameCodec;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 监测数据批量刷新定时任务
  *
  * 功能:
- * 1. 每1分钟从Redis队列批量取出监测数据
- * 2. 批量写入MySQL(最多1000条/次)
- * 3. 降低MySQL写入频率99.5%(3.3次/秒 → 1次/分钟)
+ * 1. 每checkIntervalMs检查一次各分片队列长度；到达常规间隔(intervalMs)时刷新所有分片，
+ *    分片超过高水位(highWaterMark)时提前刷新该分片。检查在独立的buffer-flush-check线程中执行，
+ *    刷新周期（最长maxCycleMs）不占用Spring的定时任务线程
+ * 2. 本节点workers个刷新线程并行处理分片；每个分片通过Redis租约 buffer:lease:{queue}:{shard}
+ *    由一个线程独占（所有节点之间），未取得租约的分片本周期跳过
+ * 3. 持有租约的线程持续取批（每次最多batchSize条），直到分片剩余不超过backlogThreshold
+ *    或周期用时超过maxCycleMs；每取一批续约一次
+ * 4. JDBC批量写入MySQL(MonitoringDataBatchWriter，不经过Hibernate，每批一个事务)
+ * 5. 指标：取出耗时、取出条数（吞吐）、写入耗时、分片数、每个分片的队列长度与积压时长、重放条数、租约冲突次数
+ *    （ems.buffer.drain / ems.buffer.drained / ems.buffer.persist / ems.buffer.shards / ems.buffer.backlog
+ *    / ems.buffer.backlog.age / ems.buffer.replayed / ems.buffer.dead.lettered / ems.buffer.lease.skipped）
+ *
+ * 可靠取出（至少一次）:
+ * - 每批通过Lua脚本原子地从分片队列头部移入分片的处理中列表 buffer:processing:{queue}:{shard}，
+ *   事务提交后（确认租约仍由本线程持有）才删除；写入失败或进程退出时数据仍在处理中列表
+ * - 取得租约后先重放分片的处理中列表；连续失败maxReplayAttempts次后移入死信列表 buffer:dead:{queue}
+ * - 无法解码的元素不写入MySQL，确认时按原始字节移入死信列表
+ * - 持有租约的节点失效后租约过期，其他节点取得租约时重放其处理中列表，无需单独接管
+ * - 提交后、删除处理中列表前退出（或租约已过期）的批次会被重放：批次标识（处理中列表key + 内容哈希）
+ *   与数据在同一事务中记录，重放时整批跳过，原始数据和汇总不会重复写入（MonitoringDataBatchWriter）
+ *
+ * 队列元素既可以是一条读数的JSON，也可以是包含多条读数的打包帧（MonitoringDataFrameCodec），
+ * 按原始字节取出后逐个解码；batchSize按元素计数。
  *
  * 数据流转:
- * MQTT消息 → Redis队列 → 定时任务(每1分钟) → MySQL批量写入
+ * MQTT消息 → Redis分片队列 → 处理中列表 → 刷新线程(持有分片租约) → MySQL批量写入 → 删除处理中列表
  *
  * @author EMS Team
  */
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class MonitoringDataFlushScheduler {
 
-    private final RadiationDeviceDataRepository radiationRepository;
-    private final EnvironmentDeviceDataRepository environmentRepository;
-    private final org.springframework.data.redis.core.RedisTemplate<String, Object> redisTemplate;
+    private final MonitoringDataBatchWriter batchWriter;
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final MonitoringDataFlushProperties properties;
+    private final String nodeId;
 
-    // Redis队列前缀
-    private static final String RADIATION_QUEUE = "buffer:queue:radiation";
-    private static final String ENV_QUEUE = "buffer:queue:environment";
+    // 数据类型（队列名）
+    private static final String RADIATION = "radiation";
+    private static final String ENVIRONMENT = "environment";
 
-    // 批量写入最大数量
-    private static final int MAX_BATCH_SIZE = 1000;
+    // 处理中列表、死信列表、分片租约前缀
+    private static final String PROCESSING_PREFIX = "buffer:processing:";
+    private static final String DEAD_LETTER_PREFIX = "buffer:dead:";
+    private static final String LEASE_PREFIX = "buffer:lease:";
 
     /**
-     * 定时批量写入监测数据到MySQL
-     *
-     * 执行频率: 每1分钟执行一次
-     * 执行逻辑:
-     * 1. 从Redis队列批量取出数据(最多1000条)
-     * 2. 使用saveAll批量写入MySQL
-     * 3. 记录写入日志
+     * 原子地把源列表头部最多ARGV[1]条数据移到目标列表尾部（ARGV[1]为0时移动全部），返回移动的数据
+     * 分段RPUSH，避免unpack参数过多
      */
-    @Scheduled(fixedRate = 60000)  // 1分钟 = 60000毫秒
-    public void flushMonitoringDataToMySQL() {
+    static final RedisScript<List> MOVE_SCRIPT = new DefaultRedisScript<>(
+            "local items = redis.call('LRANGE', KEYS[1], 0, tonumber(ARGV[1]) - 1)\n"
+            + "for i = 1, #items, 1000 do\n"
+            + "  redis.call('RPUSH', KEYS[2], unpack(items, i, math.min(i + 999, #items)))\n"
+            + "end\n"
+            + "if #items > 0 then redis.call('LTRIM', KEYS[1], #items, -1) end\n"
+            + "return items", List.class);
+
+    /**
+     * 读取整个列表（原始字节，打包帧不能经过JSON序列化器）
+     */
+    static final RedisScript<List> RANGE_SCRIPT = new DefaultRedisScript<>(
+            "return redis.call('LRANGE', KEYS[1], 0, -1)", List.class);
+
+    /**
+     * 获取租约：KEYS[1]不存在时写入持有者ARGV[1]，过期时间ARGV[2]毫秒；成功返回1
+     */
+    static final RedisScript<Long> ACQUIRE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('SET', KEYS[1], ARGV[1], 'NX', 'PX', ARGV[2]) then return 1 end\n"
+            + "return 0", Long.class);
+
+    /**
+     * 续约：持有者仍为ARGV[1]时重置过期时间；成功返回1
+     */
+    static final RedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('PEXPIRE', KEYS[1], ARGV[2]) end\n"
+            + "return 0", Long.class);
+
+    /**
+     * 确认：持有者仍为ARGV[1]时把ARGV[2..]（无法解码的原始数据）追加到死信列表KEYS[3]，删除处理中列表KEYS[2]；
+     * 持有租约返回1。分段RPUSH，避免unpack参数过多
+     */
+    static final RedisScript<Long> ACK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) ~= ARGV[1] then return 0 end\n"
+            + "for i = 2, #ARGV, 1000 do\n"
+            + "  redis.call('RPUSH', KEYS[3], unpack(ARGV, i, math.min(i + 999, #ARGV)))\n"
+            + "end\n"
+            + "redis.call('DEL', KEYS[2])\n"
+            + "return 1", Long.class);
+
+    /**
+     * 释放租约：持有者仍为ARGV[1]时删除
+     */
+    static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end\n"
+            + "return 0", Long.class);
+
+    private final List<BufferQueue<?>> shards = new ArrayList<>();
+    private final ExecutorService workers;
+    private final ScheduledExecutorService checker;
+    private final Counter leaseSkippedCounter;
+
+    /**
+     * 上次刷新全部分片的开始时间（毫秒）
+     */
+    private volatile long lastFlushTime = System.currentTimeMillis();
+
+    /**
+     * 刷新周期序号，用于轮换分片的提交顺序（启动重放与检查线程都会递增）
+     */
+    private final AtomicInteger cycle = new AtomicInteger();
+
+    public MonitoringDataFlushScheduler(MonitoringDataBatchWriter batchWriter,
+                                        RedisTemplate<String, Object> redisTemplate,
+                                        MonitoringDataFlushProperties properties,
+                                        MqttConfig mqttConfig,
+                                        MeterRegistry meterRegistry) {
+        this.batchWriter = batchWriter;
+        this.redisTemplate = redisTemplate;
+        this.properties = properties;
+        this.nodeId = mqttConfig.resolveNodeId();
+
+        int shardCount = Math.max(1, properties.getShards());
+        for (int shard = 0; shard < shardCount; shard++) {
+            shards.add(new BufferQueue<>(RADIATION, shard, RadiationDeviceData.class,
+                    batchWriter::insertRadiationData, meterRegistry));
+            shards.add(new BufferQueue<>(ENVIRONMENT, shard, EnvironmentDeviceData.class,
+                    batchWriter::insertEnvironmentData, meterRegistry));
+        }
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(Math.max(1, properties.getWorkers()), runnable -> {
+            Thread thread = new Thread(runnable, "buffer-flush-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.checker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "buffer-flush-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.leaseSkippedCounter = Counter.builder("ems.buffer.lease.skipped")
+                .description("分片租约由其他线程/节点持有而跳过的次数")
+                .register(meterRegistry);
+        Gauge.builder("ems.buffer.shards", shards, list -> list.size() / 2)
+                .description("缓冲队列分片数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 应用启动完成后刷新所有分片（重放上次运行遗留的处理中列表），然后开始定时检查积压
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
         try {
-            long startRad = flushRadiationData();
-            long startEnv = flushEnvironmentData();
+            flushMonitoringDataToMySQL();
+        } catch (Exception e) {
+            log.error("重放缓冲处理中列表失败", e);
+        }
+        long interval = Math.max(1, properties.getCheckIntervalMs());
+        checker.scheduleWithFixedDelay(this::checkBacklog, interval, interval, TimeUnit.MILLISECONDS);
+    }
 
-            // 如果两个队列都有数据,记录汇总日志
-            if (startRad > 0 || startEnv > 0) {
-                log.info("批量写入监测数据完成 - 辐射: {}条, 环境: {}条", startRad, startEnv);
+    /**
+     * 清理过期的批次标识（重放去重只需要覆盖处理中列表和WAL可能被重放的时间）
+     *
+     * 执行频率: 每小时
+     */
+    @Scheduled(fixedDelay = 3600000, initialDelay = 60000)
+    public void purgeAppliedBatches() {
+        try {
+            int deleted = batchWriter.purgeAppliedBatches(
+                    LocalDateTime.now().minusHours(properties.getAppliedBatchRetentionHours()));
+            if (deleted > 0) {
+                log.debug("清理过期的缓冲批次标识: {}条", deleted);
             }
         } catch (Exception e) {
-            log.error("批量写入监测数据失败", e);
+            log.warn("清理缓冲批次标识失败: {}", e.getMessage());
         }
     }
 
     /**
-     * 批量写入辐射设备数据
+     * 检查分片积压，决定刷新哪些分片
      *
-     * @return 写入的数据条数
+     * 执行频率: 每checkIntervalMs执行一次（buffer-flush-check线程，上次执行结束后开始计时，刷新周期不会重叠）
+     * 触发条件:
+     * 1. 距上次刷新已超过intervalMs（常规刷新，刷新所有分片）
+     * 2. 分片队列长度达到highWaterMark（提前刷新该分片）
      */
-    private long flushRadiationData() {
-        String queueKey = RADIATION_QUEUE;
-        Long size = redisTemplate.opsForList().size(queueKey);
+    public void checkBacklog() {
+        try {
+            if (System.currentTimeMillis() - lastFlushTime >= properties.getIntervalMs()) {
+                shards.forEach(BufferQueue::observeSize);
+                flushMonitoringDataToMySQL();
+                return;
+            }
 
-        if (size == null || size == 0) {
-            return 0;
+            List<BufferQueue<?>> highWater = new ArrayList<>();
+            for (BufferQueue<?> shard : shards) {
+                if (shard.observeSize() >= properties.getHighWaterMark()) {
+                    highWater.add(shard);
+                }
+            }
+            if (!highWater.isEmpty()) {
+                log.info("⚡ 缓冲队列分片超过高水位，提前刷新: {}",
+                    highWater.stream().map(shard -> shard.queueKey + "=" + shard.size).toList());
+                flushShards(highWater);
+            }
+        } catch (Exception e) {
+            log.error("检查缓冲队列积压失败", e);
         }
+    }
+
+    /**
+     * 执行一个刷新周期，把所有分片的监测数据批量写入MySQL
+     */
+    public void flushMonitoringDataToMySQL() {
+        lastFlushTime = System.currentTimeMillis();
+        flushShards(shards);
+    }
 
-        List<RadiationDeviceData> dataList = new ArrayList<>();
+    /**
+     * 并行刷新指定分片
+     *
+     * 执行逻辑:
+     * 1. 分片依次提交到刷新线程池（每个周期轮换起始分片），各线程先获取分片租约，未取得的分片跳过
+     * 2. 取得租约后先重放分片处理中列表，重放失败的分片本周期不再取新数据
+     * 3. 持续取批写入MySQL，取出不满一批（分片已空）、剩余不超过backlogThreshold或写入失败时结束
+     * 4. 周期用时超过maxCycleMs时停止，剩余积压留到下一周期（每个分片每周期至少取一批）
+     * 5. 等待所有分片完成后记录汇总日志
+     */
+    private void flushShards(List<BufferQueue<?>> targets) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(properties.getMaxCycleMs());
+        int offset = Math.floorMod(cycle.getAndIncrement(), targets.size());
 
-        // 批量取出数据(最多1000条)
-        int batchSize = Math.min(size.intValue(), MAX_BATCH_SIZE);
-        for (int i = 0; i < batchSize; i++) {
-            RadiationDeviceData data =
-                (RadiationDeviceData) redisTemplate.opsForList().leftPop(queueKey);
-            if (data != null) {
-                dataList.add(data);
+        List<Future<?>> futures = new ArrayList<>(targets.size());
+        for (int i = 0; i < targets.size(); i++) {
+            BufferQueue<?> shard = targets.get((offset + i) % targets.size());
+            futures.add(workers.submit(() -> shard.flush(deadline)));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                log.error("批量写入监测数据失败", e.getCause());
             }
         }
 
-        if (!dataList.isEmpty()) {
-            // 批量写入MySQL
-            long startTime = System.currentTimeMillis();
-            radiationRepository.saveAll(dataList);
-            long duration = System.currentTimeMillis() - startTime;
+        long radiationCount = 0;
+        long environmentCount = 0;
+        List<String> unfinished = new ArrayList<>();
+        for (BufferQueue<?> shard : targets) {
+            if (RADIATION.equals(shard.queue)) {
+                radiationCount += shard.cycleCount;
+            } else {
+                environmentCount += shard.cycleCount;
+            }
+            if (shard.unfinished) {
+                unfinished.add(shard.queueKey + "=" + shard.size);
+            }
+        }
+        if (!unfinished.isEmpty()) {
+            log.warn("⚠️ 刷新周期超过{}ms，剩余积压留到下一周期: {}（本周期已写入 辐射: {}条, 环境: {}条）",
+                properties.getMaxCycleMs(), unfinished, radiationCount, environmentCount);
+        } else if (radiationCount > 0 || environmentCount > 0) {
+            // 如果两个队列都有数据,记录汇总日志
+            log.info("批量写入监测数据完成 - 辐射: {}条, 环境: {}条", radiationCount, environmentCount);
+        }
+    }
 
-            log.debug("批量写入辐射数据: count={}, duration={}ms", dataList.size(), duration);
+    /**
+     * 停止刷新线程
+     */
+    @PreDestroy
+    public void shutdown() {
+        checker.shutdownNow();
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(properties.getMaxCycleMs() + 5000, TimeUnit.MILLISECONDS)) {
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            workers.shutdownNow();
         }
+    }
 
-        return dataList.size();
+    /**
+     * 原子移动列表数据（MOVE_SCRIPT），count为0时移动全部
+     *
+     * @return 移动的元素（原始字节）
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private List<Object> move(String sourceKey, String targetKey, int count) {
+        List<Object> values = redisTemplate.execute(MOVE_SCRIPT, StringRedisSerializer.UTF_8,
+                (RedisSerializer) RedisSerializer.byteArray(), List.of(sourceKey, targetKey), String.valueOf(count));
+        return values != null ? values : List.of();
+    }
+
+    /**
+     * 读取整个列表（RANGE_SCRIPT）
+     *
+     * @return 列表元素（原始字节）
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private List<Object> range(String key) {
+        List<Object> values = redisTemplate.execute(RANGE_SCRIPT, StringRedisSerializer.UTF_8,
+                (RedisSerializer) RedisSerializer.byteArray(), List.of(key));
+        return values != null ? values : List.of();
+    }
+
+    /**
+     * 执行租约脚本，返回1表示成功
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private boolean lease(RedisScript<Long> script, List<String> keys, String... args) {
+        Long result = redisTemplate.execute(script, StringRedisSerializer.UTF_8,
+                (RedisSerializer) StringRedisSerializer.UTF_8, keys, (Object[]) args);
+        return result != null && result == 1;
+    }
+
+    /**
+     * 确认租约脚本（ACK_SCRIPT），参数按原始字节传入
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private boolean acknowledge(String leaseKey, String processingKey, String deadLetterKey, String owner,
+                                List<byte[]> deadLetters) {
+        Object[] args = new Object[deadLetters.size() + 1];
+        args[0] = owner.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < deadLetters.size(); i++) {
+            args[i + 1] = deadLetters.get(i);
+        }
+        Long result = redisTemplate.execute(ACK_SCRIPT, (RedisSerializer) RedisSerializer.byteArray(),
+                (RedisSerializer) StringRedisSerializer.UTF_8, List.of(leaseKey, processingKey, deadLetterKey), args);
+        return result != null && result == 1;
     }
 
     /**
-     * 批量写入环境设备数据
+     * 解码一个队列元素：打包帧展开为多条读数，其余字节按JSON反序列化
      *
-     * @return 写入的数据条数
+     * @return 解码后的读数，无法解码时返回null
      */
-    private long flushEnvironmentData() {
-        String queueKey = ENV_QUEUE;
-        Long size = redisTemplate.opsForList().size(queueKey);
+    private List<Object> decode(Object value) {
+        if (!(value instanceof byte[] bytes)) {
+            return value != null ? List.of(value) : List.of();
+        }
+        try {
+            if (MonitoringDataFrameCodec.isFrame(bytes)) {
+                return new ArrayList<>(MonitoringDataFrameCodec.decode(bytes));
+            }
+            Object reading = redisTemplate.getValueSerializer().deserialize(bytes);
+            return reading != null ? List.of(reading) : List.of();
+        } catch (Exception e) {
+            log.warn("⚠️ 无法解码的缓冲数据: bytes={}, error={}", bytes.length, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 单个分片队列的刷新状态与指标
+     */
+    private final class BufferQueue<T> {
+        private final String queueKey;
+        private final String queue;
+        private final String processingKey;
+        private final String leaseKey;
+        private final Class<T> type;
+        private final BatchPersister<T> persist;
+
+        private final Timer drainTimer;
+        private final Counter drainedCounter;
+        private final Timer persistTimer;
+        private final Counter replayedCounter;
+        private final Counter deadLetteredCounter;
+
+        /**
+         * 最近一次观察到的队列长度
+         */
+        private volatile long size;
+
+        /**
+         * 最近一次取空队列的时间（毫秒）
+         */
+        private volatile long drainedEmptyAt = System.currentTimeMillis();
+
+        /**
+         * 本线程持有的租约标识（nodeId:随机数），未持有时为null
+         */
+        private String leaseOwner;
+
+        /**
+         * 处理中列表连续写入失败的次数（本节点计数）
+         */
+        private int failedAttempts;
+
+        /**
+         * 本刷新周期写入的条数
+         */
+        private volatile long cycleCount;
 
-        if (size == null || size == 0) {
-            return 0;
+        /**
+         * 本刷新周期是否因超时留下积压
+         */
+        private volatile boolean unfinished;
+
+        private BufferQueue(String queue, int shard, Class<T> type, BatchPersister<T> persist,
+                            MeterRegistry meterRegistry) {
+            this.queueKey = MonitoringDataBufferService.queueKey(queue, shard);
+            this.queue = queue;
+            this.processingKey = PROCESSING_PREFIX + queue + ":" + shard;
+            this.leaseKey = LEASE_PREFIX + queue + ":" + shard;
+            this.type = type;
+            this.persist = persist;
+            this.drainTimer = Timer.builder("ems.buffer.drain")
+                    .description("从Redis缓冲队列批量取出数据的耗时")
+                    .tag("queue", queue)
+                    .register(meterRegistry);
+            this.drainedCounter = Counter.builder("ems.buffer.drained")
+                    .description("从Redis缓冲队列取出并写入MySQL的数据条数")
+                    .tag("queue", queue)
+                    .register(meterRegistry);
+            this.persistTimer = Timer.builder("ems.buffer.persist")
+                    .description("缓冲数据JDBC批量写入MySQL的耗时")
+                    .tag("queue", queue)
+                    .register(meterRegistry);
+            this.replayedCounter = Counter.builder("ems.buffer.replayed")
+                    .description("从处理中列表重放写入的数据条数")
+                    .tag("queue", queue)
+                    .register(meterRegistry);
+            this.deadLetteredCounter = Counter.builder("ems.buffer.dead.lettered")
+                    .description("重放失败次数超限或无法解码、移入死信列表的数据条数")
+                    .tag("queue", queue)
+                    .register(meterRegistry);
+            Gauge.builder("ems.buffer.backlog", this, q -> q.size)
+                    .description("Redis缓冲分片队列长度（最近一次观察值）")
+                    .tag("queue", queue)
+                    .tag("shard", String.valueOf(shard))
+                    .register(meterRegistry);
+            Gauge.builder("ems.buffer.backlog.age", this, BufferQueue::backlogAgeSeconds)
+                    .description("缓冲分片积压时长：距上次取空分片队列的秒数（队列为空时为0）")
+                    .tag("queue", queue)
+                    .tag("shard", String.valueOf(shard))
+                    .baseUnit("seconds")
+                    .register(meterRegistry);
+        }
+
+        private long observeSize() {
+            Long current = redisTemplate.opsForList().size(queueKey);
+            size = current != null ? current : 0;
+            if (size == 0) {
+                drainedEmptyAt = System.currentTimeMillis();
+            }
+            return size;
+        }
+
+        private double backlogAgeSeconds() {
+            return size == 0 ? 0 : (System.currentTimeMillis() - drainedEmptyAt) / 1000.0;
+        }
+
+        /**
+         * 在刷新线程中执行：获取租约后重放处理中列表并持续取批，最后释放租约
+         */
+        private void flush(long deadline) {
+            cycleCount = 0;
+            unfinished = false;
+            String owner = nodeId + ":" + UUID.randomUUID();
+            if (!lease(ACQUIRE_SCRIPT, List.of(leaseKey), owner, leaseMillis())) {
+                leaseSkippedCounter.increment();
+                log.debug("分片租约由其他线程持有，跳过: {}", leaseKey);
+                return;
+            }
+
+            leaseOwner = owner;
+            try {
+                if (!replayProcessing()) {
+                    return;
+                }
+                while (flushBatch()) {
+                    if (System.nanoTime() >= deadline) {
+                        unfinished = true;
+                        return;
+                    }
+                    if (!lease(RENEW_SCRIPT, List.of(leaseKey), leaseOwner, leaseMillis())) {
+                        log.warn("⚠️ 分片租约已失效，停止刷新: {}", leaseKey);
+                        return;
+                    }
+                }
+            } finally {
+                lease(RELEASE_SCRIPT, List.of(leaseKey), owner);
+                leaseOwner = null;
+            }
+        }
+
+        private String leaseMillis() {
+            return String.valueOf(TimeUnit.SECONDS.toMillis(properties.getLeaseSeconds()));
+        }
+
+        /**
+         * 重放分片处理中列表中未完成的批次
+         *
+         * @return 处理中列表是否已清空（可以继续取新数据）
+         */
+        private boolean replayProcessing() {
+            List<Object> values = range(processingKey);
+            if (values.isEmpty()) {
+                return true;
+            }
+
+            log.warn("♻️ 重放缓冲处理中列表: key={}, count={}, attempt={}", processingKey, values.size(),
+                failedAttempts + 1);
+            int written = persistAndAcknowledge(values);
+            if (written >= 0) {
+                replayedCounter.increment(written);
+                return true;
+            }
+            if (failedAttempts < properties.getMaxReplayAttempts()) {
+                return false;
+            }
+
+            // 重放次数超限：移入死信列表，避免一批无法写入的数据阻塞整个分片
+            List<Object> dead = move(processingKey, DEAD_LETTER_PREFIX + queue, 0);
+            deadLetteredCounter.increment(dead.size());
+            failedAttempts = 0;
+            log.error("❌ 缓冲数据重放失败{}次，已移入死信列表: key={}, count={}", properties.getMaxReplayAttempts(),
+                DEAD_LETTER_PREFIX + queue, dead.size());
+            return true;
         }
 
-        List<EnvironmentDeviceData> dataList = new ArrayList<>();
+        /**
+         * 取出一批数据并写入MySQL
+         *
+         * @return 本周期是否需要继续取下一批
+         */
+        private boolean flushBatch() {
+            int batchSize = Math.max(1, properties.getBatchSize());
 
-        // 批量取出数据(最多1000条)
-        int batchSize = Math.min(size.intValue(), MAX_BATCH_SIZE);
-        for (int i = 0; i < batchSize; i++) {
-            EnvironmentDeviceData data =
-                (EnvironmentDeviceData) redisTemplate.opsForList().leftPop(queueKey);
-            if (data != null) {
-                dataList.add(data);
+            long startTime = System.nanoTime();
+            List<Object> values = move(queueKey, processingKey, batchSize);
+            long duration = System.nanoTime() - startTime;
+            drainTimer.record(duration, TimeUnit.NANOSECONDS);
+            log.debug("取出{}: count={}, duration={}μs", queueKey, values.size(),
+                TimeUnit.NANOSECONDS.toMicros(duration));
+
+            if (!values.isEmpty() && persistAndAcknowledge(values) < 0) {
+                // 写入失败或租约已失效：数据留在处理中列表，由下一个持有租约的线程重放
+                return false;
             }
+
+            if (values.size() < batchSize) {
+                // 不满一批：分片已取空
+                size = 0;
+                drainedEmptyAt = System.currentTimeMillis();
+                return false;
+            }
+            return observeSize() > properties.getBacklogThreshold();
         }
 
-        if (!dataList.isEmpty()) {
-            // 批量写入MySQL
-            long startTime = System.currentTimeMillis();
-            environmentRepository.saveAll(dataList);
-            long duration = System.currentTimeMillis() - startTime;
+        /**
+         * 写入MySQL，事务提交后确认租约仍由本线程持有并删除处理中列表
+         * 无法解码或类型不符的元素在确认时按原始字节移入死信列表（与删除处理中列表原子执行），不写入MySQL
+         *
+         * @return 写入的条数，写入失败或租约已失效返回-1
+         */
+        private int persistAndAcknowledge(List<Object> values) {
+            List<T> dataList = new ArrayList<>(values.size());
+            List<byte[]> deadLetters = new ArrayList<>();
+            for (Object value : values) {
+                List<Object> readings = decode(value);
+                if (readings != null && readings.stream().allMatch(type::isInstance)) {
+                    readings.forEach(reading -> dataList.add(type.cast(reading)));
+                } else if (value instanceof byte[] bytes) {
+                    deadLetters.add(bytes);
+                } else {
+                    log.warn("⚠️ 丢弃无法识别的缓冲数据: queue={}, type={}", queueKey, value.getClass().getName());
+                }
+            }
+
+            if (!dataList.isEmpty()) {
+                // 批量写入MySQL，批次标识与数据在同一事务中记录
+                long startTime = System.nanoTime();
+                int written;
+                try {
+                    written = persist.persist(dataList, MonitoringDataBatchWriter.batchId(processingKey, values));
+                } catch (Exception e) {
+                    failedAttempts++;
+                    log.error("批量写入{}失败，数据保留在处理中列表: key={}, count={}", queueKey, processingKey,
+                        dataList.size(), e);
+                    return -1;
+                }
+                long duration = System.nanoTime() - startTime;
+                persistTimer.record(duration, TimeUnit.NANOSECONDS);
+                if (written == MonitoringDataBatchWriter.ALREADY_APPLIED) {
+                    // 上次提交后未确认的批次：只删除处理中列表
+                    log.warn("♻️ 处理中列表的批次已写入过，跳过: key={}, count={}", processingKey, dataList.size());
+                    dataList.clear();
+                    return acknowledge(deadLetters) ? 0 : -1;
+                }
+                drainedCounter.increment(dataList.size());
+                cycleCount += dataList.size();
 
-            log.debug("批量写入环境数据: count={}, duration={}ms", dataList.size(), duration);
+                log.debug("批量写入{}: count={}, duration={}ms", queueKey, dataList.size(),
+                    TimeUnit.NANOSECONDS.toMillis(duration));
+            }
+
+            return acknowledge(deadLetters) ? dataList.size() : -1;
+        }
+
+        /**
+         * 确认租约仍由本线程持有，把无法解码的元素移入死信列表并删除处理中列表
+         */
+        private boolean acknowledge(List<byte[]> deadLetters) {
+            failedAttempts = 0;
+            if (!MonitoringDataFlushScheduler.this.acknowledge(leaseKey, processingKey, DEAD_LETTER_PREFIX + queue,
+                    leaseOwner, deadLetters)) {
+                // 写入期间租约过期：处理中列表由新的持有者重放（按批次标识跳过，不会重复写入）
+                log.warn("⚠️ 分片租约已失效，处理中列表将由新的持有者重放: key={}", processingKey);
+                return false;
+            }
+            if (!deadLetters.isEmpty()) {
+                deadLetteredCounter.increment(deadLetters.size());
+                log.error("❌ 无法解码的缓冲数据已移入死信列表: key={}, count={}", DEAD_LETTER_PREFIX + queue,
+                    deadLetters.size());
+            }
+            return true;
         }
+    }
 
-        return dataList.size();
+    /**
+     * 按批次标识写入一批数据（MonitoringDataBatchWriter）
+     */
+    @FunctionalInterface
+    private interface BatchPersister<T> {
+        /**
+         * @return 写入的行数，批次已写入过时返回MonitoringDataBatchWriter.ALREADY_APPLIED
+         */
+        int persist(List<T> dataList, String batchId);
     }
 }
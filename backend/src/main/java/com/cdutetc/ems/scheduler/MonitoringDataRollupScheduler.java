@@ -0,0 +1,88 @@
+package com.cdutetc.ems.scheduler;
+
+import com.cdutetc.ems.config.MonitoringDataRollupProperties;
+import com.cdutetc.ems.entity.DeviceDataRollup.DataType;
+import com.cdutetc.ems.repository.MonitoringDataRollupRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * 监测数据汇总定时任务
+ *
+ * 功能：
+ * 1. 启动时记录汇总起点（原始表当前最大id），之后写入的读数在写入时汇总
+ * 2. 后台逐个设备补算起点之前的历史读数（小时/天桶）
+ * 3. 每天删除超出保留期的分钟桶
+ *
+ * @author EMS Team
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MonitoringDataRollupScheduler {
+
+    private static final int DELETE_CHUNK_SIZE = 10000;
+
+    private final MonitoringDataRollupRepository rollupRepository;
+    private final MonitoringDataRollupProperties properties;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        try {
+            for (DataType dataType : DataType.values()) {
+                rollupRepository.ensureState(dataType);
+            }
+        } catch (Exception e) {
+            log.error("❌ 初始化监测数据汇总状态失败", e);
+        }
+    }
+
+    /**
+     * 补算历史读数，每次最多backfillDevicesPerRun个设备
+     */
+    @Scheduled(initialDelay = 30000, fixedDelayString = "${app.ems.rollup.backfill-interval-ms:5000}")
+    public void backfill() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        for (DataType dataType : DataType.values()) {
+            try {
+                for (int i = 0; i < properties.getBackfillDevicesPerRun(); i++) {
+                    if (!rollupRepository.backfillNextDevice(dataType)) {
+                        break;
+                    }
+                }
+            } catch (Exception e) {
+                log.error("❌ 补算{}数据汇总失败", dataType, e);
+            }
+        }
+    }
+
+    /**
+     * 每天凌晨删除超出保留期的分钟桶（比统计查询使用的范围多保留一天）
+     */
+    @Scheduled(cron = "0 20 0 * * *")
+    public void purgeMinuteBuckets() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        LocalDateTime before = LocalDateTime.now().truncatedTo(ChronoUnit.DAYS)
+                .minusDays(properties.getMinuteRetentionDays() + 1L);
+        try {
+            int deleted = rollupRepository.deleteMinuteBucketsBefore(before, DELETE_CHUNK_SIZE);
+            log.info("🗑️ 删除{}之前的分钟汇总: {} 行", before, deleted);
+        } catch (Exception e) {
+            log.error("❌ 删除分钟汇总失败", e);
+        }
+    }
+}
@@ -31,6 +31,10 @@ public class BackupService {
     private final BackupProperties backupProperties;
     private final BackupLogRepository backupLogRepository;
     private final DataSource dataSource;
+    private final TimeSeriesPartitionManager partitionManager;
+
+    // 等待分区维护锁的秒数（其他节点正在维护分区或备份同一张表）
+    private static final int PARTITION_LOCK_WAIT_SECONDS = 300;
 
     /**
      * 执行时序数据备份
@@ -143,12 +147,25 @@ public class BackupService {
             for (String table : tables) {
                 log.info("备份表: {}", table);
 
+                // 分区表：截止日期对齐到分区边界，按record_time导出后整分区删除
+                // （跨越截止日期的分区留到下次备份，避免同一数据被重复导出）
+                // 汇总表的小时/天桶不随原始数据删除，统计保留期长于原始数据（见MonitoringDataRollupService）
+                if (partitionManager.isPartitioned(table)) {
+                    String outputFile = sqlFile;
+                    PartitionArchive archive = partitionManager.withMaintenanceLock(PARTITION_LOCK_WAIT_SECONDS,
+                            () -> archivePartitions(table, cutoffDateTime, outputFile))
+                        .orElseThrow(() -> new RuntimeException("等待分区维护锁超时: " + table));
+                    totalCount += archive.exported();
+                    deletedCount += archive.dropped();
+                    continue;
+                }
+
                 // 获取记录数
-                int count = countRecords(table, cutoffDate);
+                int count = countRecords(table, "created_at", cutoffDate);
                 totalCount += count;
 
                 // 执行mysqldump
-                boolean success = executeMysqldump(table, cutoffDate, sqlFile, false);
+                boolean success = executeMysqldump(table, "created_at", cutoffDate, sqlFile, false);
 
                 if (!success) {
                     throw new RuntimeException("备份表失败: " + table);
@@ -219,7 +236,7 @@ public class BackupService {
 
             // 备份系统表（包含表结构）
             for (String table : backupProperties.getSystem().getTables()) {
-                executeMysqldump(table, null, sqlFile, true);
+                executeMysqldump(table, null, null, sqlFile, true);
             }
 
             // 压缩文件
@@ -257,13 +274,43 @@ public class BackupService {
         return backupLogRepository.save(backupLog);
     }
 
+    /**
+     * 导出并删除分区表中早于截止日期的完整分区（调用方持有分区维护锁）
+     * 删除前按导出时的记录数校验，导出后有补传数据写入时放弃删除，下次备份重新导出
+     */
+    private PartitionArchive archivePartitions(String table, LocalDateTime cutoffDateTime, String sqlFile) {
+        LocalDateTime boundary = partitionManager.retentionBoundary(table, cutoffDateTime);
+        if (boundary == null) {
+            log.info("表 {} 没有早于截止日期的完整分区，跳过", table);
+            return new PartitionArchive(0, 0);
+        }
+        int count = partitionManager.countPartitionsBefore(table, boundary);
+        String partitionCutoff = boundary.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+        boolean success;
+        try {
+            success = executeMysqldump(table, TimeSeriesPartitionManager.TIME_COLUMN, partitionCutoff, sqlFile, false);
+        } catch (Exception e) {
+            throw new RuntimeException("备份表失败: " + table, e);
+        }
+        if (!success) {
+            throw new RuntimeException("备份表失败: " + table);
+        }
+        return new PartitionArchive(count, partitionManager.dropPartitionsBefore(table, boundary, count));
+    }
+
+    /**
+     * 分区导出结果：导出的记录数、删除的记录数
+     */
+    private record PartitionArchive(int exported, int dropped) {
+    }
+
     /**
      * 统计记录数
      */
-    private int countRecords(String table, String cutoffDate) {
+    private int countRecords(String table, String timeColumn, String cutoffDate) {
         String sql = String.format(
-            "SELECT COUNT(*) FROM %s WHERE created_at < '%s'",
-            table, cutoffDate
+            "SELECT COUNT(*) FROM %s WHERE %s < '%s'",
+            table, timeColumn, cutoffDate
         );
 
         try (var conn = dataSource.getConnection();
@@ -306,6 +353,7 @@ public class BackupService {
      */
     private boolean executeMysqldump(
         String table,
+        String timeColumn,
         String cutoffDate,
         String outputFile,
         boolean includeSchema
@@ -323,7 +371,7 @@ public class BackupService {
             command.add(table);
         } else {
             command.add("--no-create-info");
-            command.add("--where=created_at < '" + cutoffDate + "'");
+            command.add("--where=" + timeColumn + " < '" + cutoffDate + "'");
             command.add("--single-transaction");
             command.add("--quick");
             command.add("--lock-tables=false");
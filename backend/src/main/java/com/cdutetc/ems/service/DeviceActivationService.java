@@ -32,6 +32,7 @@ public class DeviceActivationService {
 
     private final DeviceRepository deviceRepository;
     private final DeviceActivationCodeRepository activationCodeRepository;
+    private final DeviceCacheService deviceCacheService;
 
     /**
      * 批量导入设备并生成激活码
@@ -245,6 +246,9 @@ public class DeviceActivationService {
 
         device = deviceRepository.save(device);
 
+        // 事务提交后清除设备信息缓存（激活状态和企业归属已变更）
+        deviceCacheService.evictDeviceAfterCommit(device.getDeviceCode());
+
         // 7. 更新激活码状态
         activationCode.setStatus(ActivationCodeStatus.USED);
         activationCode.setUsedAt(LocalDateTime.now());
@@ -6,6 +6,8 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.List;
 import java.util.concurrent.TimeUnit;
@@ -30,6 +32,11 @@ public class DeviceCacheService {
     private final DeviceRepository deviceRepository;
 
     private static final String CACHE_PREFIX = "device:info:";
+
+    /**
+     * 设备缓存失效通知频道（消息体为设备编码），由DeviceSnapshotCacheService订阅
+     */
+    public static final String INVALIDATION_CHANNEL = "device:info:invalidate";
     private static final long CACHE_TTL_MINUTES = 5;  // 缩短至5分钟,提升数据一致性
 
     /**
@@ -79,6 +86,7 @@ public class DeviceCacheService {
      * 清除设备缓存
      *
      * 使用场景: 设备信息更新、删除时调用
+     * 同时发布失效通知，清除各节点的本地设备快照
      *
      * @param deviceCode 设备编码
      */
@@ -91,6 +99,33 @@ public class DeviceCacheService {
         } catch (Exception e) {
             log.error("清除设备缓存失败: {}", deviceCode, e);
         }
+
+        try {
+            redisTemplate.convertAndSend(INVALIDATION_CHANNEL, deviceCode);
+        } catch (Exception e) {
+            log.error("发布设备缓存失效通知失败: {}", deviceCode, e);
+        }
+    }
+
+    /**
+     * 在当前事务提交后清除设备缓存
+     *
+     * 使用场景: 事务内修改设备后调用。提交前清除时，其他节点可能在提交前重新加载旧数据并缓存；
+     * 事务回滚时不清除。没有活动事务时立即清除。
+     *
+     * @param deviceCode 设备编码
+     */
+    public void evictDeviceAfterCommit(String deviceCode) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            evictDevice(deviceCode);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                evictDevice(deviceCode);
+            }
+        });
     }
 
     /**
@@ -0,0 +1,547 @@
+package com.cdutetc.ems.service;
+
+import com.cdutetc.ems.config.DeviceDataBatchProperties;
+import com.cdutetc.ems.dto.cache.DeviceSnapshot;
+import com.cdutetc.ems.dto.event.DeviceDataEvent;
+import com.cdutetc.ems.entity.EnvironmentDeviceData;
+import com.cdutetc.ems.entity.RadiationDeviceData;
+import com.cdutetc.ems.entity.enums.DeviceActivationStatus;
+import com.cdutetc.ems.mqtt.DuplicateReadingFilter;
+import com.cdutetc.ems.mqtt.IngestStageMetrics;
+import com.cdutetc.ems.mqtt.IngestStageMetrics.Stage;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * 设备数据接入服务
+ *
+ * MQTT监听器和HTTP接收接口共用的处理流程（数据已解码为实体之后）:
+ * 设备校验 → 状态缓存 → 重复过滤 → 写入Redis缓冲区 → 数据上报事件 → SSE推送 → 告警检查
+ *
+ * 数据不直接写MySQL，由MonitoringDataFlushScheduler批量持久化；
+ * 设备最后在线时间只写状态缓存，由DeviceStatusCacheService定时同步到数据库。
+ * 批量读数中只有实时读数（采集时间在realtimeWindowSeconds内）更新在线状态、上报、推送和检查告警，
+ * 历史补传的读数只写入缓冲区。
+ *
+ * @author EMS Team
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DeviceDataIngestService {
+
+    private static final String RADIATION = "RADIATION";
+    private static final String ENVIRONMENT = "ENVIRONMENT";
+
+    private final DeviceSnapshotCacheService deviceSnapshotCacheService;
+    private final DeviceOnlineStateTracker deviceOnlineStateTracker;
+    private final DeviceStatusCacheService deviceStatusCacheService;
+    private final MonitoringDataBufferService monitoringDataBufferService;
+    private final DuplicateReadingFilter duplicateFilter;
+    private final IngestStageMetrics stageMetrics;
+    private final SseEmitterService sseEmitterService;
+    private final AlertService alertService;
+    private final ApplicationEventPublisher applicationEventPublisher;
+    private final DeviceDataBatchProperties batchProperties;
+
+    /**
+     * 处理结果
+     */
+    public enum IngestResult {
+        /** 已写入缓冲区 */
+        BUFFERED,
+        /** 重复读数，已丢弃 */
+        DUPLICATE
+    }
+
+    /**
+     * 获取并验证设备
+     * 只处理已激活且归属企业的设备数据，通过校验时记录设备在线
+     *
+     * @param deviceCode 设备编码
+     * @param deviceType 设备类型（用于指标标签）
+     * @return 设备快照，校验未通过时返回null
+     */
+    public DeviceSnapshot validateDevice(String deviceCode, String deviceType) {
+        DeviceSnapshot device = checkDevice(deviceCode, deviceType);
+        if (device != null) {
+            // 记录在线状态，仅在离线→在线变化时解决离线告警（由DeviceOnlineStateEventListener处理）
+            deviceOnlineStateTracker.markOnline(deviceCode, device.getId(), device.getCompanyId());
+        }
+        return device;
+    }
+
+    /**
+     * 校验设备（不记录在线状态）
+     *
+     * @return 设备快照，校验未通过时返回null
+     */
+    private DeviceSnapshot checkDevice(String deviceCode, String deviceType) {
+        long start = stageMetrics.start();
+        try {
+            // 查找设备
+            DeviceSnapshot device = deviceSnapshotCacheService.getSnapshot(deviceCode);
+
+            if (device == null) {
+                log.warn("⚠️ 丢弃未录入设备 {} 的数据（设备不存在）", deviceCode);
+                return null;
+            }
+
+            // 检查设备激活状态
+            if (device.getActivationStatus() != DeviceActivationStatus.ACTIVE) {
+                log.warn("⚠️ 丢弃未激活设备 {} 的数据（当前状态: {}）",
+                    deviceCode, device.getActivationStatus());
+                return null;
+            }
+
+            // 检查设备是否已归属企业
+            if (device.getCompanyId() == null) {
+                log.error("❌ 丢弃设备 {} 的数据（未归属企业）", deviceCode);
+                return null;
+            }
+
+            return device;
+
+        } catch (Exception e) {
+            log.error("❌ 验证设备失败: {}", deviceCode, e);
+            stageMetrics.error(Stage.DEVICE_VALIDATION, deviceType);
+            return null;
+        } finally {
+            stageMetrics.record(Stage.DEVICE_VALIDATION, deviceType, start);
+        }
+    }
+
+    /**
+     * 只更新设备在线状态（未知类型等不产生数据的消息）
+     */
+    public void touch(DeviceSnapshot device) {
+        deviceStatusCacheService.update(device.getDeviceCode())
+            .lastMessageAt(LocalDateTime.now())
+            .status("ONLINE")
+            .apply();
+    }
+
+    /**
+     * 处理一条辐射设备读数
+     *
+     * @param device 已通过校验的设备
+     * @param data 解码后的读数
+     * @param readingKey 重复过滤标识（DuplicateReadingFilter.readingKey），为null时不过滤
+     * @param redelivery 是否为重新投递的消息（MQTT DUP标记）
+     * @param onBuffered 写入缓冲区后、推送和告警前执行（MQTT在此确认消息）
+     * @return 处理结果
+     * @throws RuntimeException 写入缓冲区失败
+     */
+    public IngestResult ingestRadiation(DeviceSnapshot device, RadiationDeviceData data, Long readingKey,
+                                        boolean redelivery, Runnable onBuffered) {
+        // 更新缓存：在线状态、CPM值和电池电压（一次Pipeline写入）
+        long statusStart = stageMetrics.start();
+        deviceStatusCacheService.update(device.getDeviceCode())
+            .lastMessageAt(LocalDateTime.now())
+            .status("ONLINE")
+            .lastCpm(data.getCpm())
+            .lastBattery(data.getBatvolt())
+            .apply();
+        stageMetrics.record(Stage.STATUS_UPDATE, RADIATION, statusStart);
+
+        // 丢弃重复读数（QoS 1重新投递、设备重试），不写入缓冲区、不上报、不检查告警
+        if (readingKey != null && duplicateFilter.isDuplicate(device.getDeviceCode(), readingKey, redelivery)) {
+            log.info("♻️ 丢弃重复的辐射设备数据: {}, time={}", device.getDeviceCode(), data.getTime());
+            return IngestResult.DUPLICATE;
+        }
+
+        // 保存数据到缓冲区(先写Redis,定时任务批量写MySQL)
+        long bufferStart = stageMetrics.start();
+        try {
+            monitoringDataBufferService.saveRadiationDataToBuffer(data);
+            stageMetrics.record(Stage.BUFFER_WRITE, RADIATION, bufferStart);
+        } catch (RuntimeException e) {
+            stageMetrics.error(Stage.BUFFER_WRITE, RADIATION);
+            if (readingKey != null) {
+                duplicateFilter.forget(device.getDeviceCode(), readingKey);  // 允许重新投递的读数通过
+            }
+            throw e;
+        }
+        onBuffered.run();
+        log.info("💾 辐射设备数据已写入缓冲区: {}", device.getDeviceCode());
+
+        reportRadiationData(device, data);
+        notifyRadiationData(device, data);
+        return IngestResult.BUFFERED;
+    }
+
+    /**
+     * 处理一条环境设备读数
+     *
+     * @param device 已通过校验的设备
+     * @param data 解码后的读数
+     * @param readingKey 重复过滤标识（DuplicateReadingFilter.readingKey），为null时不过滤
+     * @param redelivery 是否为重新投递的消息（MQTT DUP标记）
+     * @param onBuffered 写入缓冲区后、推送和告警前执行（MQTT在此确认消息）
+     * @return 处理结果
+     * @throws RuntimeException 写入缓冲区失败
+     */
+    public IngestResult ingestEnvironment(DeviceSnapshot device, EnvironmentDeviceData data, Long readingKey,
+                                          boolean redelivery, Runnable onBuffered) {
+        // 更新缓存：在线状态和电池电压（一次Pipeline写入）
+        long statusStart = stageMetrics.start();
+        deviceStatusCacheService.update(device.getDeviceCode())
+            .lastMessageAt(LocalDateTime.now())
+            .status("ONLINE")
+            .lastBattery(data.getBattery())
+            .apply();
+        stageMetrics.record(Stage.STATUS_UPDATE, ENVIRONMENT, statusStart);
+
+        // 丢弃重复读数（环境设备没有time字段，按消息内容识别）
+        if (readingKey != null && duplicateFilter.isDuplicate(device.getDeviceCode(), readingKey, redelivery)) {
+            log.info("♻️ 丢弃重复的环境设备数据: {}", device.getDeviceCode());
+            return IngestResult.DUPLICATE;
+        }
+
+        // 保存数据到缓冲区(先写Redis,定时任务批量写MySQL)
+        long bufferStart = stageMetrics.start();
+        try {
+            monitoringDataBufferService.saveEnvironmentDataToBuffer(data);
+            stageMetrics.record(Stage.BUFFER_WRITE, ENVIRONMENT, bufferStart);
+        } catch (RuntimeException e) {
+            stageMetrics.error(Stage.BUFFER_WRITE, ENVIRONMENT);
+            if (readingKey != null) {
+                duplicateFilter.forget(device.getDeviceCode(), readingKey);  // 允许重新投递的读数通过
+            }
+            throw e;
+        }
+        onBuffered.run();
+        log.info("💾 环境设备数据已写入缓冲区: {}", device.getDeviceCode());
+
+        notifyEnvironmentData(device, data);
+        return IngestResult.BUFFERED;
+    }
+
+    /**
+     * 处理辐射设备批量读数
+     * 所有读数一次写入缓冲区；实时读数逐条上报，在线状态、SSE推送和告警只使用每台设备的最新实时读数
+     *
+     * @param defaultDeviceCode 未指定deviceCode的读数所属设备（MQTT主题中的设备），可为null
+     * @param readings 读数，未通过校验的读数和重复读数会从列表中移除
+     * @param redelivery 是否为重新投递的消息（MQTT DUP标记）
+     * @param onBuffered 写入缓冲区后执行
+     * @return 写入缓冲区的读数条数
+     * @throws RuntimeException 写入缓冲区失败
+     */
+    public int ingestRadiationBatch(String defaultDeviceCode, List<RadiationDeviceData> readings,
+                                    boolean redelivery, Runnable onBuffered) {
+        Map<String, DeviceSnapshot> devices = new HashMap<>();
+        Map<String, RadiationDeviceData> latest = acceptBatch(defaultDeviceCode, RADIATION, readings, redelivery,
+                devices, RadiationDeviceData::getDeviceCode, RadiationDeviceData::setDeviceCode,
+                RadiationDeviceData::getRecordTime, RadiationDeviceData::setRecordTime,
+                data -> duplicateFilter.readingKey(data.getTime(), data.getRawData()));
+        if (readings.isEmpty()) {
+            return 0;
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        long statusStart = stageMetrics.start();
+        markOnline(defaultDeviceCode, latest.keySet(), devices);
+        latest.forEach((deviceCode, data) -> deviceStatusCacheService.update(deviceCode)
+                .lastMessageAt(now)
+                .status("ONLINE")
+                .lastCpm(data.getCpm())
+                .lastBattery(data.getBatvolt())
+                .apply());
+        stageMetrics.record(Stage.STATUS_UPDATE, RADIATION, statusStart);
+
+        long bufferStart = stageMetrics.start();
+        try {
+            monitoringDataBufferService.saveRadiationDataBatchToBuffer(readings);
+            stageMetrics.record(Stage.BUFFER_WRITE, RADIATION, bufferStart);
+        } catch (RuntimeException e) {
+            stageMetrics.error(Stage.BUFFER_WRITE, RADIATION);
+            readings.forEach(data -> duplicateFilter.forget(data.getDeviceCode(),
+                    duplicateFilter.readingKey(data.getTime(), data.getRawData())));
+            throw e;
+        }
+        onBuffered.run();
+        log.info("💾 辐射设备批量数据已写入缓冲区: {}条, 设备{}台", readings.size(), devices.size());
+
+        LocalDateTime realtimeSince = realtimeSince();
+        for (RadiationDeviceData data : readings) {
+            if (!data.getRecordTime().isBefore(realtimeSince)) {
+                reportRadiationData(devices.get(data.getDeviceCode()), data);
+            }
+        }
+        latest.forEach((deviceCode, data) -> notifyRadiationData(devices.get(deviceCode), data));
+        return readings.size();
+    }
+
+    /**
+     * 处理环境设备批量读数
+     * 所有读数一次写入缓冲区；在线状态、SSE推送和告警只使用每台设备的最新实时读数
+     *
+     * @param defaultDeviceCode 未指定deviceCode的读数所属设备（MQTT主题中的设备），可为null
+     * @param readings 读数，未通过校验的读数和重复读数会从列表中移除
+     * @param redelivery 是否为重新投递的消息（MQTT DUP标记）
+     * @param onBuffered 写入缓冲区后执行
+     * @return 写入缓冲区的读数条数
+     * @throws RuntimeException 写入缓冲区失败
+     */
+    public int ingestEnvironmentBatch(String defaultDeviceCode, List<EnvironmentDeviceData> readings,
+                                      boolean redelivery, Runnable onBuffered) {
+        Map<String, DeviceSnapshot> devices = new HashMap<>();
+        Map<String, EnvironmentDeviceData> latest = acceptBatch(defaultDeviceCode, ENVIRONMENT, readings, redelivery,
+                devices, EnvironmentDeviceData::getDeviceCode, EnvironmentDeviceData::setDeviceCode,
+                EnvironmentDeviceData::getRecordTime, EnvironmentDeviceData::setRecordTime,
+                data -> duplicateFilter.readingKey(null, data.getRawData()));
+        if (readings.isEmpty()) {
+            return 0;
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        long statusStart = stageMetrics.start();
+        markOnline(defaultDeviceCode, latest.keySet(), devices);
+        latest.forEach((deviceCode, data) -> deviceStatusCacheService.update(deviceCode)
+                .lastMessageAt(now)
+                .status("ONLINE")
+                .lastBattery(data.getBattery())
+                .apply());
+        stageMetrics.record(Stage.STATUS_UPDATE, ENVIRONMENT, statusStart);
+
+        long bufferStart = stageMetrics.start();
+        try {
+            monitoringDataBufferService.saveEnvironmentDataBatchToBuffer(readings);
+            stageMetrics.record(Stage.BUFFER_WRITE, ENVIRONMENT, bufferStart);
+        } catch (RuntimeException e) {
+            stageMetrics.error(Stage.BUFFER_WRITE, ENVIRONMENT);
+            readings.forEach(data -> duplicateFilter.forget(data.getDeviceCode(),
+                    duplicateFilter.readingKey(null, data.getRawData())));
+            throw e;
+        }
+        onBuffered.run();
+        log.info("💾 环境设备批量数据已写入缓冲区: {}条, 设备{}台", readings.size(), devices.size());
+
+        latest.forEach((deviceCode, data) -> notifyEnvironmentData(devices.get(deviceCode), data));
+        return readings.size();
+    }
+
+    // ==================== 内部辅助方法 ====================
+
+    /**
+     * 校验批量读数所属设备，移除未通过校验的读数和重复读数
+     * 未指定deviceCode的读数归属defaultDeviceCode；未携带设备时间的读数使用接收时间
+     * 校验时不记录在线状态，只有包含实时读数的设备由调用方标记在线
+     *
+     * @param devices 输出：通过校验的设备快照（每台设备只校验一次）
+     * @return 每台设备采集时间最新的实时读数（时间相同时取靠后的），只有历史读数的设备不包含在内
+     */
+    private <T> Map<String, T> acceptBatch(String defaultDeviceCode, String deviceType, List<T> readings,
+                                           boolean redelivery, Map<String, DeviceSnapshot> devices,
+                                           Function<T, String> deviceCodeOf, BiConsumer<T, String> setDeviceCode,
+                                           Function<T, LocalDateTime> recordTimeOf,
+                                           BiConsumer<T, LocalDateTime> setRecordTime,
+                                           ToLongFunction<T> readingKeyOf) {
+        LocalDateTime receivedAt = LocalDateTime.now();
+        LocalDateTime realtimeSince = realtimeSince();
+        Map<String, Boolean> validated = new HashMap<>();
+        Map<String, T> latest = new LinkedHashMap<>();
+
+        readings.removeIf(data -> {
+            String deviceCode = deviceCodeOf.apply(data) != null ? deviceCodeOf.apply(data) : defaultDeviceCode;
+            if (deviceCode == null) {
+                log.warn("⚠️ 丢弃未指定设备编码的批量读数");
+                return true;
+            }
+            boolean valid = validated.computeIfAbsent(deviceCode, code -> {
+                DeviceSnapshot device = checkDevice(code, deviceType);
+                if (device != null) {
+                    devices.put(code, device);
+                }
+                return device != null;
+            });
+            if (!valid || duplicateFilter.isDuplicate(deviceCode, readingKeyOf.applyAsLong(data), redelivery)) {
+                return true;
+            }
+
+            setDeviceCode.accept(data, deviceCode);
+            if (recordTimeOf.apply(data) == null) {
+                setRecordTime.accept(data, receivedAt);
+            }
+            if (recordTimeOf.apply(data).isBefore(realtimeSince)) {
+                return false;  // 历史补传
+            }
+            latest.merge(deviceCode, data,
+                    (current, candidate) -> recordTimeOf.apply(candidate).isBefore(recordTimeOf.apply(current))
+                            ? current : candidate);
+            return false;
+        });
+        return latest;
+    }
+
+    /**
+     * 实时读数的最早采集时间
+     */
+    private LocalDateTime realtimeSince() {
+        return LocalDateTime.now().minusSeconds(batchProperties.getRealtimeWindowSeconds());
+    }
+
+    /**
+     * 标记包含实时读数的设备在线
+     * 发送消息的设备（defaultDeviceCode，MQTT主题中的设备）即使只补传历史读数也在线
+     */
+    private void markOnline(String defaultDeviceCode, Set<String> realtimeDevices,
+                            Map<String, DeviceSnapshot> devices) {
+        for (String deviceCode : realtimeDevices) {
+            DeviceSnapshot device = devices.get(deviceCode);
+            deviceOnlineStateTracker.markOnline(deviceCode, device.getId(), device.getCompanyId());
+        }
+        DeviceSnapshot sender = defaultDeviceCode != null ? devices.get(defaultDeviceCode) : null;
+        if (sender != null && !realtimeDevices.contains(defaultDeviceCode)) {
+            deviceOnlineStateTracker.markOnline(defaultDeviceCode, sender.getId(), sender.getCompanyId());
+            touch(sender);
+        }
+    }
+
+    /**
+     * 发布DeviceDataEvent事件（用于数据上报）
+     */
+    private void reportRadiationData(DeviceSnapshot device, RadiationDeviceData savedData) {
+        long start = stageMetrics.start();
+        try {
+            DeviceDataEvent event = new DeviceDataEvent(
+                "radiation-data",
+                device.getDeviceCode(),
+                "RADIATION_MONITOR",
+                savedData  // 传递完整的RadiationDeviceData对象
+            );
+            applicationEventPublisher.publishEvent(event);
+            log.debug("📤 DeviceDataEvent发布成功: {}", device.getDeviceCode());
+        } catch (Exception e) {
+            log.warn("⚠️ 发布DeviceDataEvent失败: {}", e.getMessage());
+            stageMetrics.error(Stage.EVENT_PUBLISH, RADIATION);
+        } finally {
+            stageMetrics.record(Stage.EVENT_PUBLISH, RADIATION, start);
+        }
+    }
+
+    /**
+     * SSE推送辐射数据并检查告警条件
+     */
+    private void notifyRadiationData(DeviceSnapshot device, RadiationDeviceData savedData) {
+        // SSE推送实时数据（使用简化的Map格式）
+        long sseStart = stageMetrics.start();
+        try {
+            DeviceDataEvent sseEvent = new DeviceDataEvent(
+                "radiation-data",
+                device.getDeviceCode(),
+                "RADIATION_MONITOR",
+                java.util.Map.of(
+                    "cpm", savedData.getCpm(),
+                    "batVolt", savedData.getBatvolt(),
+                    "recordTime", savedData.getRecordTime().toString()
+                )
+            );
+            sseEmitterService.broadcastDeviceData(device.getCompanyId(), sseEvent);
+            log.debug("📡 SSE推送辐射数据成功: {}", device.getDeviceCode());
+        } catch (Exception e) {
+            log.warn("⚠️ SSE推送辐射数据失败: {}", e.getMessage());
+            stageMetrics.error(Stage.SSE_BROADCAST, RADIATION);
+        }
+        stageMetrics.record(Stage.SSE_BROADCAST, RADIATION, sseStart);
+
+        // 检查告警条件
+        long alertStart = stageMetrics.start();
+        try {
+            // CPM上升率告警（辐射设备）
+            alertService.checkRadiationDataAndAlert(
+                device.getDeviceCode(),
+                savedData.getCpm(),
+                "RADIATION",  // 辐射设备类型
+                device.getId(),
+                device.getCompanyId()
+            );
+
+            // 电压告警（辐射设备）
+            if (savedData.getBatvolt() != null) {
+                alertService.checkEnvironmentDataAndAlert(
+                    device.getDeviceCode(),
+                    savedData.getBatvolt(),
+                    "RADIATION",  // 辐射设备类型
+                    device.getId(),
+                    device.getCompanyId()
+                );
+            }
+        } catch (Exception e) {
+            log.warn("⚠️ 辐射数据告警检查失败: {}", e.getMessage());
+            stageMetrics.error(Stage.ALERT_EVALUATION, RADIATION);
+        }
+        stageMetrics.record(Stage.ALERT_EVALUATION, RADIATION, alertStart);
+    }
+
+    /**
+     * SSE推送环境数据并检查告警条件
+     */
+    private void notifyEnvironmentData(DeviceSnapshot device, EnvironmentDeviceData savedData) {
+        // SSE推送实时数据
+        long sseStart = stageMetrics.start();
+        try {
+            DeviceDataEvent event = new DeviceDataEvent(
+                "environment-data",
+                device.getDeviceCode(),
+                "ENVIRONMENT_STATION",
+                java.util.Map.of(
+                    "cpm", savedData.getCpm(),
+                    "temperature", savedData.getTemperature(),
+                    "wetness", savedData.getWetness(),
+                    "windspeed", savedData.getWindspeed(),
+                    "recordTime", savedData.getRecordTime().toString()
+                )
+            );
+            sseEmitterService.broadcastDeviceData(device.getCompanyId(), event);
+            log.debug("📡 SSE推送环境数据成功: {}", device.getDeviceCode());
+        } catch (Exception e) {
+            log.warn("⚠️ SSE推送环境数据失败: {}", e.getMessage());
+            stageMetrics.error(Stage.SSE_BROADCAST, ENVIRONMENT);
+        }
+        stageMetrics.record(Stage.SSE_BROADCAST, ENVIRONMENT, sseStart);
+
+        // 检查告警条件
+        long alertStart = stageMetrics.start();
+        try {
+            // CPM上升率告警（环境设备）
+            if (savedData.getCpm() != null) {
+                alertService.checkRadiationDataAndAlert(
+                    device.getDeviceCode(),
+                    savedData.getCpm(),
+                    "ENVIRONMENT",  // 环境设备类型
+                    device.getId(),
+                    device.getCompanyId()
+                );
+            }
+
+            // 电压告警（环境设备）
+            if (savedData.getBattery() != null) {
+                alertService.checkEnvironmentDataAndAlert(
+                    device.getDeviceCode(),
+                    savedData.getBattery(),
+                    "ENVIRONMENT",  // 环境设备类型
+                    device.getId(),
+                    device.getCompanyId()
+                );
+            }
+        } catch (Exception e) {
+            log.warn("⚠️ 环境数据告警检查失败: {}", e.getMessage());
+            stageMetrics.error(Stage.ALERT_EVALUATION, ENVIRONMENT);
+        }
+        stageMetrics.record(Stage.ALERT_EVALUATION, ENVIRONMENT, alertStart);
+    }
+}
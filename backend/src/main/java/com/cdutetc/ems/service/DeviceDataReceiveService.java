@@ -0,0 +1,356 @@
+package com.cdutetc.ems.service;
+
+import com.cdutetc.ems.config.CpmConversionProperties;
+import com.cdutetc.ems.config.DeviceDataBatchProperties;
+import com.cdutetc.ems.dto.request.EnvironmentDataReceiveRequest;
+import com.cdutetc.ems.dto.request.RadiationDataReceiveRequest;
+import com.cdutetc.ems.dto.response.DeviceDataBatchReceiveResponse;
+import com.cdutetc.ems.dto.response.DeviceDataBatchReceiveResponse.DeviceCount;
+import com.cdutetc.ems.entity.EnvironmentDeviceData;
+import com.cdutetc.ems.entity.RadiationDeviceData;
+import com.cdutetc.ems.mqtt.DevicePayloadDecoder;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 设备数据HTTP接收服务
+ *
+ * 功能:
+ * 1. 请求DTO转换为数据实体（CPM转换系数、电压mV→V、GPS来源选择），采集时间使用设备时间（ts/time），缺省时使用接收时间
+ * 2. 批量接收: 流式解析NDJSON或JSON数组请求体，按chunkSize分块交给DeviceDataIngestService写入缓冲区，
+ *    内存中最多保留一个分块，适用于百万级历史数据补传
+ * 3. 限制同时处理的批量请求数，避免大批量导入占满Servlet线程池
+ *
+ * @author EMS Team
+ */
+@Slf4j
+@Service
+public class DeviceDataReceiveService {
+
+    private final DeviceDataIngestService ingestService;
+    private final CpmConversionProperties cpmConversionProperties;
+    private final DeviceDataBatchProperties batchProperties;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+
+    private final Semaphore batchPermits;
+
+    public DeviceDataReceiveService(DeviceDataIngestService ingestService,
+                                    CpmConversionProperties cpmConversionProperties,
+                                    DeviceDataBatchProperties batchProperties,
+                                    ObjectMapper objectMapper,
+                                    Validator validator) {
+        this.ingestService = ingestService;
+        this.cpmConversionProperties = cpmConversionProperties;
+        this.batchProperties = batchProperties;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.batchPermits = new Semaphore(Math.max(1, batchProperties.getMaxConcurrentRequests()));
+    }
+
+    /**
+     * 辐射设备请求转换为数据实体
+     */
+    public RadiationDeviceData toRadiationData(RadiationDataReceiveRequest request) {
+        RadiationDeviceData data = new RadiationDeviceData();
+        data.setDeviceCode(request.getDeviceCode());
+        data.setRawData(request.getRawData());
+        data.setSrc(request.getSrc());
+        data.setMsgtype(request.getMsgtype());
+
+        // 应用CPM转换系数
+        Double rawCpm = request.getCpm();
+        if (rawCpm != null) {
+            double convertedCpm = cpmConversionProperties.isEnabled()
+                ? rawCpm / cpmConversionProperties.getRadiationConversionFactor()
+                : rawCpm;
+            data.setCpm(convertedCpm);
+            if (cpmConversionProperties.isEnabled()) {
+                log.debug("🔄 REST API辐射设备CPM转换: 设备={}, 原始值={}, 转换系数={}, 转换后值={}",
+                    request.getDeviceCode(), rawCpm,
+                    cpmConversionProperties.getRadiationConversionFactor(), convertedCpm);
+            }
+        }
+
+        // 辐射设备发送的是毫伏mV，需要转换为伏V存储
+        Double rawBatvolt = request.getBatvolt();
+        if (rawBatvolt != null) {
+            data.setBatvolt(rawBatvolt / 1000.0); // mV转V：原始值(mV) ÷ 1000 = 电压(V)
+            log.debug("🔄 REST API辐射设备电压转换: 设备={}, 原始值={}mV, 转换后值={}V",
+                request.getDeviceCode(), rawBatvolt, data.getBatvolt());
+        }
+        data.setTime(request.getTime());
+        LocalDateTime deviceTime = toDeviceTime(request.getTs());
+        if (deviceTime == null) {
+            deviceTime = DevicePayloadDecoder.parseDeviceTime(request.getTime());
+        }
+        data.setRecordTime(deviceTime != null ? deviceTime : LocalDateTime.now());
+        data.setDataTrigger(request.getTrigger());
+        data.setMulti(request.getMulti());
+        data.setWay(request.getWay());
+
+        // GPS数据选择（根据useful字段自动选择BDS或LBS）
+        if (request.getBdsUseful() != null && request.getBdsUseful() == 1
+            && request.getBdsLongitude() != null && request.getBdsLatitude() != null) {
+            // BDS可用，使用北斗
+            data.setGpsType("BDS");
+            data.setGpsLongitude(request.getBdsLongitude());
+            data.setGpsLatitude(request.getBdsLatitude());
+            data.setGpsUtc(request.getBdsUtc());
+        } else if (request.getLbsLongitude() != null && request.getLbsLatitude() != null) {
+            // BDS不可用，使用LBS
+            data.setGpsType("LBS");
+            data.setGpsLongitude(request.getLbsLongitude());
+            data.setGpsLatitude(request.getLbsLatitude());
+            data.setGpsUtc(null);
+        }
+        return data;
+    }
+
+    /**
+     * 环境设备请求转换为数据实体
+     */
+    public EnvironmentDeviceData toEnvironmentData(EnvironmentDataReceiveRequest request) {
+        EnvironmentDeviceData data = new EnvironmentDeviceData();
+        data.setDeviceCode(request.getDeviceCode());
+        data.setRawData(request.getRawData());
+        data.setSrc(request.getSrc());
+
+        // 应用CPM转换系数
+        Double rawCpm = request.getCpm();
+        if (rawCpm != null) {
+            double convertedCpm = cpmConversionProperties.isEnabled()
+                ? rawCpm / cpmConversionProperties.getEnvironmentConversionFactor()
+                : rawCpm;
+            data.setCpm(convertedCpm);
+            if (cpmConversionProperties.isEnabled()) {
+                log.debug("🔄 REST API环境设备CPM转换: 设备={}, 原始值={}, 转换系数={}, 转换后值={}",
+                    request.getDeviceCode(), rawCpm,
+                    cpmConversionProperties.getEnvironmentConversionFactor(), convertedCpm);
+            }
+        }
+
+        data.setTemperature(request.getTemperature());
+        data.setWetness(request.getWetness());
+        data.setWindspeed(request.getWindspeed());
+        data.setTotal(request.getTotal());
+        data.setBattery(request.getBattery());
+        LocalDateTime deviceTime = toDeviceTime(request.getTs());
+        data.setRecordTime(deviceTime != null ? deviceTime : LocalDateTime.now());
+        return data;
+    }
+
+    /**
+     * 设备采集时间戳（毫秒）转换为本地时间，与MQTT批量消息的ts字段一致
+     */
+    private static LocalDateTime toDeviceTime(Long ts) {
+        return ts != null ? LocalDateTime.ofInstant(Instant.ofEpochMilli(ts), ZoneId.systemDefault()) : null;
+    }
+
+    /**
+     * 占用一个批量请求名额
+     *
+     * @return 已达到并发上限时返回false
+     */
+    public boolean tryBeginBatch() {
+        return batchPermits.tryAcquire();
+    }
+
+    /**
+     * 释放批量请求名额（与tryBeginBatch成对调用）
+     */
+    public void endBatch() {
+        batchPermits.release();
+    }
+
+    /**
+     * 批量接收辐射设备数据
+     *
+     * @param body 请求体：NDJSON（每行一个JSON对象）或JSON数组
+     */
+    public DeviceDataBatchReceiveResponse receiveRadiationBatch(InputStream body) {
+        return receiveBatch(body, "RADIATION", RadiationDataReceiveRequest.class,
+                this::toRadiationData, RadiationDeviceData::getDeviceCode,
+                chunk -> ingestService.ingestRadiationBatch(null, chunk, false, () -> { }));
+    }
+
+    /**
+     * 批量接收环境设备数据
+     *
+     * @param body 请求体：NDJSON（每行一个JSON对象）或JSON数组
+     */
+    public DeviceDataBatchReceiveResponse receiveEnvironmentBatch(InputStream body) {
+        return receiveBatch(body, "ENVIRONMENT", EnvironmentDataReceiveRequest.class,
+                this::toEnvironmentData, EnvironmentDeviceData::getDeviceCode,
+                chunk -> ingestService.ingestEnvironmentBatch(null, chunk, false, () -> { }));
+    }
+
+    /**
+     * 流式解析请求体并分块写入缓冲区
+     * 请求体格式错误或写入缓冲区失败时停止处理，已写入的读数保留，响应中success为false
+     *
+     * @param ingest 写入一个分块，未通过设备校验的读数和重复读数从分块中移除
+     */
+    private <R, T> DeviceDataBatchReceiveResponse receiveBatch(InputStream body, String deviceType,
+                                                               Class<R> requestType,
+                                                               Function<R, T> toEntity,
+                                                               Function<T, String> deviceCodeOf,
+                                                               Consumer<List<T>> ingest) {
+        int chunkSize = Math.max(1, batchProperties.getChunkSize());
+        BatchTally tally = new BatchTally();
+        List<T> chunk = new ArrayList<>(chunkSize);
+        String failure = null;
+
+        try (JsonParser parser = objectMapper.createParser(body)) {
+            JsonToken token = parser.nextToken();
+            boolean array = token == JsonToken.START_ARRAY;
+            if (array) {
+                token = parser.nextToken();
+            }
+
+            // NDJSON为多个顶层对象，JSON数组为数组元素，逐条读取
+            while (token != null && !(array && token == JsonToken.END_ARRAY)) {
+                tally.total++;
+                JsonNode node = parser.readValueAsTree();
+                R request = toRequest(node, requestType, tally.total);
+                if (request == null) {
+                    tally.invalid++;
+                } else {
+                    chunk.add(toEntity.apply(request));
+                    if (chunk.size() >= chunkSize) {
+                        ingestChunk(chunk, deviceCodeOf, ingest, tally);
+                    }
+                }
+                token = parser.nextToken();
+            }
+        } catch (JsonProcessingException e) {
+            failure = "请求体解析失败（第" + tally.total + "条读数附近）: " + e.getOriginalMessage();
+        } catch (IOException e) {
+            failure = "读取请求体失败: " + e.getMessage();
+        } catch (RuntimeException e) {
+            failure = "写入缓冲区失败: " + e.getMessage();
+        }
+
+        // 解析中断前已读取的读数照常写入
+        if (!chunk.isEmpty()) {
+            try {
+                ingestChunk(chunk, deviceCodeOf, ingest, tally);
+            } catch (RuntimeException e) {
+                failure = "写入缓冲区失败: " + e.getMessage();
+            }
+        }
+
+        if (failure != null) {
+            log.warn("⚠️ {}设备批量数据接收中断 - 读取: {}, 接收: {}, 原因: {}",
+                deviceType, tally.total, tally.accepted, failure);
+        } else {
+            log.info("📦 {}设备批量数据接收完成 - 读取: {}, 接收: {}, 拒绝: {}, 无效: {}, 设备: {}台",
+                deviceType, tally.total, tally.accepted, tally.rejected, tally.invalid, tally.devices.size());
+        }
+
+        return DeviceDataBatchReceiveResponse.builder()
+                .success(failure == null)
+                .message(failure != null ? failure : "数据接收成功")
+                .deviceType(deviceType)
+                .totalCount(tally.total)
+                .acceptedCount(tally.accepted)
+                .rejectedCount(tally.rejected)
+                .invalidCount(tally.invalid)
+                .devices(tally.devices)
+                .receiveTime(LocalDateTime.now())
+                .build();
+    }
+
+    /**
+     * 单条读数转换为请求DTO并校验字段
+     *
+     * @return 格式或字段校验不通过时返回null
+     */
+    private <R> R toRequest(JsonNode node, Class<R> requestType, long index) {
+        if (!node.isObject()) {
+            log.debug("批量数据第{}条不是JSON对象，已跳过", index);
+            return null;
+        }
+        try {
+            R request = objectMapper.treeToValue(node, requestType);
+            var violations = validator.validate(request);
+            if (!violations.isEmpty()) {
+                log.debug("批量数据第{}条字段校验失败: {}", index, violations.iterator().next().getMessage());
+                return null;
+            }
+            return request;
+        } catch (JsonProcessingException e) {
+            log.debug("批量数据第{}条格式错误: {}", index, e.getOriginalMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 写入一个分块并按设备统计接收/拒绝条数，写入后清空分块
+     * 写入失败时分块中的读数计为拒绝
+     */
+    private <T> void ingestChunk(List<T> chunk, Function<T, String> deviceCodeOf,
+                                 Consumer<List<T>> ingest, BatchTally tally) {
+        Map<String, Long> submitted = new HashMap<>();
+        for (T data : chunk) {
+            submitted.merge(deviceCodeOf.apply(data), 1L, Long::sum);
+        }
+
+        try {
+            ingest.accept(chunk);
+        } catch (RuntimeException e) {
+            submitted.forEach((deviceCode, count) -> tally.add(deviceCode, 0, count));
+            chunk.clear();
+            throw e;
+        }
+
+        Map<String, Long> accepted = new HashMap<>();
+        for (T data : chunk) {
+            accepted.merge(deviceCodeOf.apply(data), 1L, Long::sum);
+        }
+        submitted.forEach((deviceCode, count) -> {
+            long acceptedCount = accepted.getOrDefault(deviceCode, 0L);
+            tally.add(deviceCode, acceptedCount, count - acceptedCount);
+        });
+        chunk.clear();
+    }
+
+    /**
+     * 批量请求的累计统计
+     */
+    private static final class BatchTally {
+        private long total;
+        private long accepted;
+        private long rejected;
+        private long invalid;
+        private final Map<String, DeviceCount> devices = new LinkedHashMap<>();
+
+        private void add(String deviceCode, long acceptedCount, long rejectedCount) {
+            DeviceCount count = devices.computeIfAbsent(deviceCode, code -> new DeviceCount());
+            count.setAccepted(count.getAccepted() + acceptedCount);
+            count.setRejected(count.getRejected() + rejectedCount);
+            accepted += acceptedCount;
+            rejected += rejectedCount;
+        }
+    }
+}
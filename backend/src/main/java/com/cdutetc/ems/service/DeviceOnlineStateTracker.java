@@ -0,0 +1,109 @@
+package com.cdutetc.ems.service;
+
+import com.cdutetc.ems.dto.event.DeviceOnlineStateEvent;
+import com.cdutetc.ems.entity.enums.DeviceStatus;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 设备在线状态跟踪服务
+ *
+ * 功能:
+ * 1. 在线状态（ONLINE / OFFLINE）保存在共享的Redis状态缓存（device:status:{code}的status字段），
+ *    通过原子比较并设置识别状态变化，集群中只有一个节点发布同一次变化
+ * 2. 只在状态实际变化时发布DeviceOnlineStateEvent，由监听器处理告警解决和SSE推送
+ * 3. 本节点在确认窗口内已确认在线的设备跳过Redis比较，设备持续在线时大部分消息只做一次内存查找
+ *
+ * 确认窗口远小于离线超时（分钟级）：窗口内收到过消息的设备不会被任何节点判定离线。
+ *
+ * @author EMS Team
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DeviceOnlineStateTracker {
+
+    private static final long DEFAULT_CONFIRM_WINDOW_MS = 30_000;
+
+    private final ApplicationEventPublisher applicationEventPublisher;
+    private final DeviceStatusCacheService deviceStatusCacheService;
+
+    /**
+     * 本节点最近一次确认设备在线的时间（System.nanoTime）
+     */
+    private final Map<String, Long> confirmedOnline = new ConcurrentHashMap<>();
+
+    private long confirmWindowNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_CONFIRM_WINDOW_MS);
+
+    /**
+     * 标记设备在线（每条消息调用）
+     *
+     * @return 是否发生了上线变化
+     */
+    public boolean markOnline(String deviceCode, Long deviceId, Long companyId) {
+        long now = System.nanoTime();
+        Long confirmedAt = confirmedOnline.get(deviceCode);
+        if (confirmedAt != null && now - confirmedAt < confirmWindowNanos) {
+            return false;
+        }
+
+        boolean changed = transition(deviceCode, deviceId, companyId, DeviceStatus.ONLINE);
+        confirmedOnline.put(deviceCode, now);
+        return changed;
+    }
+
+    /**
+     * 标记设备离线（离线检查任务调用，所有节点均可调用，只有一个节点发布变化）
+     *
+     * @return 是否发生了离线变化
+     */
+    public boolean markOffline(String deviceCode, Long deviceId, Long companyId) {
+        confirmedOnline.remove(deviceCode);
+        return transition(deviceCode, deviceId, companyId, DeviceStatus.OFFLINE);
+    }
+
+    /**
+     * 获取设备当前在线状态（共享状态缓存）
+     *
+     * @return 尚未记录时返回null
+     */
+    public DeviceStatus getStatus(String deviceCode) {
+        return parseStatus(deviceStatusCacheService.getStatus(deviceCode));
+    }
+
+    /**
+     * 设置确认窗口（测试用）
+     */
+    void setConfirmWindowMs(long confirmWindowMs) {
+        this.confirmWindowNanos = TimeUnit.MILLISECONDS.toNanos(confirmWindowMs);
+    }
+
+    private boolean transition(String deviceCode, Long deviceId, Long companyId, DeviceStatus status) {
+        DeviceStatus previous = parseStatus(deviceStatusCacheService.swapStatus(deviceCode, status.name()));
+        if (previous == status) {
+            return false;
+        }
+
+        log.info("🔄 设备在线状态变化: {} {} -> {}", deviceCode, previous, status);
+        applicationEventPublisher.publishEvent(
+            new DeviceOnlineStateEvent(this, deviceCode, deviceId, companyId, previous, status));
+        return true;
+    }
+
+    private static DeviceStatus parseStatus(String status) {
+        if (status == null) {
+            return null;
+        }
+        try {
+            return DeviceStatus.valueOf(status);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -164,8 +164,8 @@ public class DeviceService {
 
         deviceRepository.delete(device);
 
-        // 清除设备信息缓存
-        deviceCacheService.evictDevice(deviceCode);
+        // 事务提交后清除设备信息缓存
+        deviceCacheService.evictDeviceAfterCommit(deviceCode);
         log.debug("已清除设备信息缓存: deviceCode={}", deviceCode);
 
         log.info("Device deleted successfully: {} with ID: {}", deviceCode, id);
@@ -0,0 +1,185 @@
+package com.cdutetc.ems.service;
+
+import com.cdutetc.ems.config.DeviceSnapshotCacheProperties;
+import com.cdutetc.ems.dto.cache.DeviceSnapshot;
+import com.cdutetc.ems.entity.Device;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 设备快照本地缓存服务
+ *
+ * 功能:
+ * 1. 在JVM内缓存DeviceSnapshot，MQTT消息校验设备时无需访问Redis
+ * 2. 订阅Redis失效通知（DeviceCacheService.INVALIDATION_CHANNEL），多节点同步失效
+ * 3. TTL兜底，失效通知丢失时最多延迟ttlSeconds生效
+ * 4. 容量上限，超出时优先淘汰已过期条目
+ *
+ * 缓存层级: 本地快照 → Redis(device:info:) → MySQL
+ *
+ * @author EMS Team
+ */
+@Slf4j
+@Service
+public class DeviceSnapshotCacheService implements MessageListener {
+
+    private final DeviceService deviceService;
+    private final DeviceSnapshotCacheProperties properties;
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+
+    private final Map<String, CacheEntry> cache = new ConcurrentHashMap<>();
+
+    /**
+     * 失效版本号：加载期间发生失效时，不写入加载结果，避免旧数据覆盖失效
+     */
+    private final AtomicLong invalidationVersion = new AtomicLong();
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+
+    public DeviceSnapshotCacheService(DeviceService deviceService,
+                                      DeviceSnapshotCacheProperties properties,
+                                      RedisTemplate<String, Object> redisTemplate,
+                                      RedisMessageListenerContainer listenerContainer,
+                                      MeterRegistry meterRegistry) {
+        this.deviceService = deviceService;
+        this.properties = properties;
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.hitCounter = meterRegistry.counter("ems.device.snapshot.cache", "result", "hit");
+        this.missCounter = meterRegistry.counter("ems.device.snapshot.cache", "result", "miss");
+        Gauge.builder("ems.device.snapshot.cache.size", cache, Map::size).register(meterRegistry);
+    }
+
+    /**
+     * 订阅设备缓存失效通知
+     */
+    @PostConstruct
+    public void subscribe() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(DeviceCacheService.INVALIDATION_CHANNEL));
+        log.info("📡 设备快照缓存已订阅失效通知: {}", DeviceCacheService.INVALIDATION_CHANNEL);
+    }
+
+    /**
+     * 获取设备快照
+     *
+     * @param deviceCode 设备编码
+     * @return 设备快照，设备不存在时返回null（不缓存）
+     */
+    public DeviceSnapshot getSnapshot(String deviceCode) {
+        if (!properties.isEnabled()) {
+            return load(deviceCode);
+        }
+
+        long now = System.nanoTime();
+        CacheEntry entry = cache.get(deviceCode);
+        if (entry != null && entry.expiresAt - now > 0) {
+            hitCounter.increment();
+            return entry.snapshot;
+        }
+
+        missCounter.increment();
+        long version = invalidationVersion.get();
+        DeviceSnapshot snapshot = load(deviceCode);
+
+        if (snapshot != null && version == invalidationVersion.get()) {
+            makeRoom(now);
+            cache.put(deviceCode, new CacheEntry(snapshot,
+                now + TimeUnit.SECONDS.toNanos(properties.getTtlSeconds())));
+        }
+        return snapshot;
+    }
+
+    /**
+     * 清除本节点的设备快照
+     *
+     * @param deviceCode 设备编码
+     */
+    public void invalidate(String deviceCode) {
+        invalidationVersion.incrementAndGet();
+        if (cache.remove(deviceCode) != null) {
+            log.debug("清除设备快照: {}", deviceCode);
+        }
+    }
+
+    /**
+     * 清除本节点全部设备快照
+     */
+    public void invalidateAll() {
+        invalidationVersion.incrementAndGet();
+        cache.clear();
+        log.debug("清除全部设备快照");
+    }
+
+    /**
+     * 当前缓存的设备数
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    /**
+     * 处理Redis失效通知（消息体为设备编码）
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            Object deviceCode = redisTemplate.getValueSerializer().deserialize(message.getBody());
+            if (deviceCode != null) {
+                invalidate(deviceCode.toString());
+            } else {
+                invalidateAll();
+            }
+        } catch (Exception e) {
+            log.warn("解析设备缓存失效通知失败，清除全部设备快照: {}", e.getMessage());
+            invalidateAll();
+        }
+    }
+
+    private DeviceSnapshot load(String deviceCode) {
+        Device device = deviceService.findByDeviceCode(deviceCode);
+        return device != null ? DeviceSnapshot.of(device) : null;
+    }
+
+    /**
+     * 达到容量上限时淘汰条目：先淘汰已过期的，仍不足时淘汰任意条目
+     */
+    private void makeRoom(long now) {
+        if (cache.size() < properties.getMaxSize()) {
+            return;
+        }
+        cache.values().removeIf(e -> e.expiresAt - now <= 0);
+
+        Iterator<String> iterator = cache.keySet().iterator();
+        while (cache.size() >= properties.getMaxSize() && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private static final class CacheEntry {
+        private final DeviceSnapshot snapshot;
+        private final long expiresAt;
+
+        private CacheEntry(DeviceSnapshot snapshot, long expiresAt) {
+            this.snapshot = snapshot;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -1,16 +1,30 @@
 package com.cdutetc.ems.service;
 
+import com.cdutetc.ems.config.DeviceStatusCacheProperties;
 import com.cdutetc.ems.dto.cache.DeviceStatusCache;
 import com.cdutetc.ems.entity.Device;
 import com.cdutetc.ems.repository.DeviceRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -20,6 +34,9 @@ import java.util.concurrent.TimeUnit;
  * 1. 缓存设备实时状态（高频更新）
  * 2. 定时同步到数据库（低频持久化）
  * 3. 启动时预热（从数据库加载）
+ * 4. 单条消息涉及的字段合并为一次HSET + EXPIRE，通过Pipeline一次往返写入
+ * 5. 可选微批模式：跨设备合并，按固定间隔批量写入
+ * 6. status字段的原子比较并设置（集群内共享的在线状态，DeviceOnlineStateTracker）
  *
  * @author EMS Team
  */
@@ -30,24 +47,78 @@ public class DeviceStatusCacheService {
 
     private final RedisTemplate<String, Object> redisTemplate;
     private final DeviceRepository deviceRepository;
+    private final DeviceStatusCacheProperties properties;
 
     private static final String CACHE_KEY_PREFIX = "device:status:";
     private static final long CACHE_TTL_SECONDS = 600;  // 10分钟
     private static final DateTimeFormatter ISO_FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
 
+    /**
+     * 把KEYS[1]的status字段设置为ARGV[1]并返回原值，同时刷新过期时间
+     * （离线设备由离线检查任务持续刷新，缓存不会过期后被误判为新的状态变化）
+     */
+    static final RedisScript<Object> SWAP_STATUS_SCRIPT = new DefaultRedisScript<>(
+            "local previous = redis.call('HGET', KEYS[1], 'status')\n"
+            + "if previous ~= ARGV[1] then redis.call('HSET', KEYS[1], 'status', ARGV[1]) end\n"
+            + "redis.call('EXPIRE', KEYS[1], " + CACHE_TTL_SECONDS + ")\n"
+            + "return previous", Object.class);
+
+    /**
+     * 微批模式下待写入的状态字段（按设备合并，后写覆盖先写）
+     */
+    private final Map<String, Map<String, Object>> pendingUpdates = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService batchFlushExecutor;
+
+    /**
+     * 启动微批写入线程（仅batchEnabled时）
+     */
+    @PostConstruct
+    public void startBatching() {
+        if (!properties.isBatchEnabled()) {
+            return;
+        }
+        long interval = Math.max(1, properties.getBatchIntervalMs());
+        batchFlushExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "device-status-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        batchFlushExecutor.scheduleWithFixedDelay(this::flushPendingUpdates, interval, interval, TimeUnit.MILLISECONDS);
+        log.info("🚀 设备状态微批写入已启用，间隔: {}ms", interval);
+    }
+
+    /**
+     * 停止微批写入线程并写入剩余状态
+     */
+    @PreDestroy
+    public void stopBatching() {
+        if (batchFlushExecutor == null) {
+            return;
+        }
+        batchFlushExecutor.shutdown();
+        try {
+            batchFlushExecutor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushPendingUpdates();
+    }
+
+    /**
+     * 创建设备状态更新
+     * 用法: update(deviceCode).lastMessageAt(now).status("ONLINE").lastCpm(cpm).apply()
+     */
+    public StatusUpdate update(String deviceCode) {
+        return new StatusUpdate(deviceCode);
+    }
+
     /**
      * 更新设备最后消息时间
      * 每次收到MQTT消息时调用
      */
     public void updateLastMessageTime(String deviceCode, LocalDateTime messageTime) {
-        String key = buildCacheKey(deviceCode);
-
-        // 使用Hash存储，支持部分字段更新
-        redisTemplate.opsForHash().put(key, "lastMessageAt",
-            messageTime.format(ISO_FORMATTER));
-
-        // 刷新TTL
-        redisTemplate.expire(key, CACHE_TTL_SECONDS, TimeUnit.SECONDS);
+        update(deviceCode).lastMessageAt(messageTime).apply();
 
         log.debug("更新设备最后消息时间: {} -> {}", deviceCode, messageTime);
     }
@@ -57,10 +128,7 @@ public class DeviceStatusCacheService {
      * 每次收到辐射数据时调用
      */
     public void updateLastCpm(String deviceCode, Double cpm) {
-        String key = buildCacheKey(deviceCode);
-
-        redisTemplate.opsForHash().put(key, "lastCpm", String.valueOf(cpm));
-        redisTemplate.expire(key, CACHE_TTL_SECONDS, TimeUnit.SECONDS);
+        update(deviceCode).lastCpm(cpm).apply();
 
         log.debug("更新设备CPM值: {} -> {}", deviceCode, cpm);
     }
@@ -70,10 +138,7 @@ public class DeviceStatusCacheService {
      * 每次收到环境数据时调用
      */
     public void updateLastBattery(String deviceCode, Double battery) {
-        String key = buildCacheKey(deviceCode);
-
-        redisTemplate.opsForHash().put(key, "lastBattery", String.valueOf(battery));
-        redisTemplate.expire(key, CACHE_TTL_SECONDS, TimeUnit.SECONDS);
+        update(deviceCode).lastBattery(battery).apply();
 
         log.debug("更新设备电压值: {} -> {}", deviceCode, battery);
     }
@@ -82,14 +147,28 @@ public class DeviceStatusCacheService {
      * 更新设备状态
      */
     public void updateStatus(String deviceCode, String status) {
-        String key = buildCacheKey(deviceCode);
-
-        redisTemplate.opsForHash().put(key, "status", status);
-        redisTemplate.expire(key, CACHE_TTL_SECONDS, TimeUnit.SECONDS);
+        update(deviceCode).status(status).apply();
 
         log.debug("更新设备状态: {} -> {}", deviceCode, status);
     }
 
+    /**
+     * 原子地设置设备状态并返回原状态（不经过微批，所有节点看到同一个状态）
+     *
+     * @return 设置前的状态，缓存中没有时返回null
+     */
+    public String swapStatus(String deviceCode, String status) {
+        Object previous = redisTemplate.execute(SWAP_STATUS_SCRIPT, List.of(buildCacheKey(deviceCode)), status);
+        return previous != null ? previous.toString() : null;
+    }
+
+    /**
+     * 获取设备状态
+     */
+    public String getStatus(String deviceCode) {
+        return getStringValue(buildCacheKey(deviceCode), "status");
+    }
+
     /**
      * 获取设备最后消息时间
      */
@@ -158,28 +237,30 @@ public class DeviceStatusCacheService {
      * 用于启动时预热
      */
     public void setDeviceStatus(DeviceStatusCache status) {
-        String key = buildCacheKey(status.getDeviceCode());
+        Map<String, Object> fields = new LinkedHashMap<>();
 
         if (status.getLastMessageAt() != null) {
-            redisTemplate.opsForHash().put(key, "lastMessageAt", status.getLastMessageAt());
+            fields.put("lastMessageAt", status.getLastMessageAt());
         }
         if (status.getLastCpm() != null) {
-            redisTemplate.opsForHash().put(key, "lastCpm", String.valueOf(status.getLastCpm()));
+            fields.put("lastCpm", String.valueOf(status.getLastCpm()));
         }
         if (status.getLastBattery() != null) {
-            redisTemplate.opsForHash().put(key, "lastBattery", String.valueOf(status.getLastBattery()));
+            fields.put("lastBattery", String.valueOf(status.getLastBattery()));
         }
         if (status.getStatus() != null) {
-            redisTemplate.opsForHash().put(key, "status", status.getStatus());
+            fields.put("status", status.getStatus());
         }
         if (status.getCompanyId() != null) {
-            redisTemplate.opsForHash().put(key, "companyId", String.valueOf(status.getCompanyId()));
+            fields.put("companyId", String.valueOf(status.getCompanyId()));
         }
         if (status.getDeviceId() != null) {
-            redisTemplate.opsForHash().put(key, "deviceId", String.valueOf(status.getDeviceId()));
+            fields.put("deviceId", String.valueOf(status.getDeviceId()));
         }
 
-        redisTemplate.expire(key, CACHE_TTL_SECONDS, TimeUnit.SECONDS);
+        if (!fields.isEmpty()) {
+            writeUpdates(Map.of(status.getDeviceCode(), fields));
+        }
 
         log.debug("设置设备状态缓存: {}", status.getDeviceCode());
     }
@@ -277,6 +358,121 @@ public class DeviceStatusCacheService {
         }
     }
 
+    // ==================== 合并写入 ====================
+
+    /**
+     * 提交一个设备的状态字段
+     * 微批模式下合并到待写入队列，否则立即写入
+     */
+    void applyUpdate(String deviceCode, Map<String, Object> fields) {
+        if (fields.isEmpty()) {
+            return;
+        }
+        if (batchFlushExecutor != null) {
+            pendingUpdates.merge(deviceCode, new HashMap<>(fields), (pending, latest) -> {
+                pending.putAll(latest);
+                return pending;
+            });
+            return;
+        }
+        writeUpdates(Map.of(deviceCode, fields));
+    }
+
+    /**
+     * 写入微批队列中累积的全部设备状态
+     */
+    void flushPendingUpdates() {
+        if (pendingUpdates.isEmpty()) {
+            return;
+        }
+
+        Map<String, Map<String, Object>> batch = new HashMap<>();
+        for (String deviceCode : pendingUpdates.keySet()) {
+            Map<String, Object> fields = pendingUpdates.remove(deviceCode);
+            if (fields != null) {
+                batch.put(deviceCode, fields);
+            }
+        }
+
+        try {
+            writeUpdates(batch);
+            log.debug("设备状态微批写入完成，设备数: {}", batch.size());
+        } catch (Exception e) {
+            log.error("设备状态微批写入失败，设备数: {}", batch.size(), e);
+        }
+    }
+
+    /**
+     * 通过一个Pipeline写入：每个设备一条HSET（多字段）+ 一条EXPIRE
+     */
+    void writeUpdates(Map<String, Map<String, Object>> updates) {
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+                updates.forEach((deviceCode, fields) -> {
+                    String key = buildCacheKey(deviceCode);
+                    ops.opsForHash().putAll(key, fields);
+                    ops.expire(key, CACHE_TTL_SECONDS, TimeUnit.SECONDS);
+                });
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 设备状态更新构建器
+     * 收集一条消息涉及的全部字段，apply()时合并为一次HSET + EXPIRE
+     */
+    public final class StatusUpdate {
+
+        private final String deviceCode;
+        private final Map<String, Object> fields = new LinkedHashMap<>();
+
+        private StatusUpdate(String deviceCode) {
+            this.deviceCode = deviceCode;
+        }
+
+        public StatusUpdate lastMessageAt(LocalDateTime messageTime) {
+            fields.put("lastMessageAt", messageTime.format(ISO_FORMATTER));
+            return this;
+        }
+
+        public StatusUpdate status(String status) {
+            fields.put("status", status);
+            return this;
+        }
+
+        public StatusUpdate lastCpm(Double cpm) {
+            if (cpm != null) {
+                fields.put("lastCpm", String.valueOf(cpm));
+            }
+            return this;
+        }
+
+        public StatusUpdate lastBattery(Double battery) {
+            if (battery != null) {
+                fields.put("lastBattery", String.valueOf(battery));
+            }
+            return this;
+        }
+
+        /**
+         * 已收集的字段（只读）
+         */
+        public Map<String, Object> getFields() {
+            return Collections.unmodifiableMap(fields);
+        }
+
+        /**
+         * 提交更新
+         */
+        public void apply() {
+            applyUpdate(deviceCode, fields);
+        }
+    }
+
     // ==================== 辅助方法 ====================
 
     private String buildCacheKey(String deviceCode) {
@@ -321,10 +517,9 @@ public class DeviceStatusCacheService {
      * 用于告警去重，记录本次告警时间
      */
     public void updateLastCpmRiseAlertTime(String deviceCode, LocalDateTime alertTime) {
-        String key = buildCacheKey(deviceCode);
-        redisTemplate.opsForHash().put(key, "lastCpmRiseAlertAt",
-            alertTime.format(ISO_FORMATTER));
-        redisTemplate.expire(key, CACHE_TTL_SECONDS, TimeUnit.SECONDS);
+        // 告警去重依赖该字段，直接写入（不经过微批）
+        Map<String, Object> fields = Map.of("lastCpmRiseAlertAt", alertTime.format(ISO_FORMATTER));
+        writeUpdates(Map.of(deviceCode, fields));
 
         log.debug("更新CPM上升率告警时间: {} -> {}", deviceCode, alertTime);
     }
@@ -3,14 +3,20 @@ package com.cdutetc.ems.service;
 import com.cdutetc.ems.entity.Device;
 import com.cdutetc.ems.entity.EnvironmentDeviceData;
 import com.cdutetc.ems.entity.enums.DeviceType;
+import com.cdutetc.ems.entity.DeviceDataRollup.DataType;
 import com.cdutetc.ems.repository.DeviceRepository;
+import com.cdutetc.ems.repository.MonitoringDataRollupRepository;
 import com.cdutetc.ems.repository.EnvironmentDeviceDataRepository;
+import com.cdutetc.ems.util.RecordCursor;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -29,8 +35,21 @@ import java.util.Optional;
 @RequiredArgsConstructor
 public class EnvironmentDeviceDataService {
 
+    /**
+     * 汇总指标与统计结果字段的对应关系
+     */
+    private static final Map<String, String> STATISTICS_METRICS = Map.of(
+            "cpm", "cpmStatistics",
+            "temperature", "temperatureStatistics",
+            "wetness", "humidityStatistics",
+            "windspeed", "windSpeedStatistics",
+            "battery", "batteryStatistics"
+    );
+
     private final EnvironmentDeviceDataRepository environmentDeviceDataRepository;
     private final DeviceRepository deviceRepository;
+    private final MonitoringDataRollupRepository rollupRepository;
+    private final MonitoringDataRollupService rollupService;
 
     /**
      * 保存环境监测数据（不限企业）
@@ -46,6 +65,7 @@ public class EnvironmentDeviceDataService {
         }
 
         EnvironmentDeviceData savedData = environmentDeviceDataRepository.save(data);
+        rollupRepository.applyEnvironment(List.of(savedData));
         log.debug("Environment data saved successfully with ID: {}", savedData.getId());
 
         return savedData;
@@ -66,6 +86,7 @@ public class EnvironmentDeviceDataService {
         }
 
         EnvironmentDeviceData savedData = environmentDeviceDataRepository.save(data);
+        rollupRepository.applyEnvironment(List.of(savedData));
         log.debug("Environment data saved successfully with ID: {}", savedData.getId());
 
         return savedData;
@@ -86,6 +107,7 @@ public class EnvironmentDeviceDataService {
         }
 
         List<EnvironmentDeviceData> savedData = environmentDeviceDataRepository.saveAll(dataList);
+        rollupRepository.applyEnvironment(savedData);
         log.info("Batch environment data saved successfully: {} records", savedData.size());
 
         return savedData;
@@ -135,6 +157,44 @@ public class EnvironmentDeviceDataService {
                 companyId, startTime, endTime, pageable);
     }
 
+    /**
+     * 根据设备编码游标分页获取数据（按记录时间、ID降序，不统计总数，深分页不变慢）
+     *
+     * @param cursor 上一页返回的位置，null = 第一页
+     */
+    @Transactional(readOnly = true)
+    public Slice<EnvironmentDeviceData> getDataSliceByDeviceCode(
+            String deviceCode, LocalDateTime startTime, LocalDateTime endTime, RecordCursor cursor, int size) {
+        log.debug("Getting environment data slice for device: {} after {}", deviceCode, cursor);
+
+        RecordCursor position = cursor != null ? cursor : RecordCursor.first(endTime);
+        return environmentDeviceDataRepository.findSliceByDeviceCode(deviceCode,
+                startTime != null ? startTime : RecordCursor.EARLIEST,
+                endTime != null ? endTime : RecordCursor.LATEST,
+                position.recordTime(), position.id(), PageRequest.of(0, size));
+    }
+
+    /**
+     * 游标分页获取企业数据（按企业设备编码查询，不关联设备表）
+     *
+     * @param cursor 上一页返回的位置，null = 第一页
+     */
+    @Transactional(readOnly = true)
+    public Slice<EnvironmentDeviceData> getDataSlice(
+            Long companyId, LocalDateTime startTime, LocalDateTime endTime, RecordCursor cursor, int size) {
+        log.debug("Getting environment data slice for company: {} after {}", companyId, cursor);
+
+        List<String> deviceCodes = deviceRepository.findDeviceCodesByCompanyId(companyId);
+        if (deviceCodes.isEmpty()) {
+            return new SliceImpl<>(List.of(), PageRequest.of(0, size), false);
+        }
+        RecordCursor position = cursor != null ? cursor : RecordCursor.first(endTime);
+        return environmentDeviceDataRepository.findSliceByDeviceCodes(deviceCodes,
+                startTime != null ? startTime : RecordCursor.EARLIEST,
+                endTime != null ? endTime : RecordCursor.LATEST,
+                position.recordTime(), position.id(), PageRequest.of(0, size));
+    }
+
     /**
      * 获取数据详情
      */
@@ -214,6 +274,14 @@ public class EnvironmentDeviceDataService {
 
         Map<String, Object> statistics = new HashMap<>();
 
+        // 从汇总表统计，只有范围两端不足一分钟的部分查询原始数据
+        if (rollupService.isEnabled()) {
+            statistics.putAll(rollupService.statistics(DataType.ENVIRONMENT,
+                    deviceRepository.findDeviceCodesByCompanyId(companyId), startTime, endTime, STATISTICS_METRICS));
+            statistics.put("deviceCount", environmentDeviceDataRepository.countDistinctDeviceCodeByCompanyId(companyId));
+            return statistics;
+        }
+
         // 总记录数
         long totalRecords;
         if (startTime != null && endTime != null) {
@@ -309,6 +377,10 @@ public class EnvironmentDeviceDataService {
     public Map<String, Object> getStatisticsByDeviceCode(String deviceCode, LocalDateTime startTime, LocalDateTime endTime) {
         log.debug("Getting environment data statistics for device: {} between {} and {}", deviceCode, startTime, endTime);
 
+        if (rollupService.isEnabled()) {
+            return rollupService.statistics(DataType.ENVIRONMENT, List.of(deviceCode), startTime, endTime, STATISTICS_METRICS);
+        }
+
         Map<String, Object> statistics = new HashMap<>();
 
         // 总记录数
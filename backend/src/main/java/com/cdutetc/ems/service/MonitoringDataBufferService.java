@@ -1,13 +1,32 @@
 package com.cdutetc.ems.service;
 
+import com.cdutetc.ems.config.BufferFrameProperties;
+import com.cdutetc.ems.config.BufferWalProperties;
+import com.cdutetc.ems.config.MonitoringDataFlushProperties;
 import com.cdutetc.ems.entity.EnvironmentDeviceData;
 import com.cdutetc.ems.entity.RadiationDeviceData;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * 监测数据缓冲服务
@@ -24,16 +43,30 @@ import java.util.concurrent.TimeUnit;
  * - 支持实时查询(Redis中始终有最新数据)
  *
  * 数据流转:
- * MQTT消息 → Redis缓存(10分钟TTL) + Redis队列 → 定时任务批量写MySQL
+ * MQTT消息 → Redis缓存(10分钟TTL) + Redis分片队列 → 定时任务批量写MySQL
+ * 分片队列: 按deviceCode哈希写入buffer:queue:{type}:{shard}（分片0为buffer:queue:{type}），
+ * 同一设备的读数始终进入同一分片
+ * Redis不可用时（或WAL PRIMARY模式）: MQTT消息 → 本地WAL → 定时重放写MySQL
+ *
+ * 打包帧模式（app.ems.buffer.frame.enabled）:
+ * - 队列元素是包含多条读数的二进制帧（MonitoringDataFrameCodec），代替每条读数一个带类名的JSON对象
+ * - 批量写入直接按maxReadings分帧；单条写入采用组提交：同一时刻到达的读数由一个线程合并成帧一次写入，
+ *   其余线程等待该帧写入完成后返回（MQTT确认仍在数据写入Redis之后）
  *
  * @author EMS Team
  */
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class MonitoringDataBufferService {
 
     private final RedisTemplate<String, Object> redisTemplate;
+    private final MonitoringDataWal monitoringDataWal;
+    private final BufferWalProperties walProperties;
+    private final BufferFrameProperties frameProperties;
+    private final MonitoringDataFlushProperties flushProperties;
+
+    private final FrameGroup<RadiationDeviceData> radiationFrames;
+    private final FrameGroup<EnvironmentDeviceData> environmentFrames;
 
     // Redis缓存前缀(用于实时查询)
     private static final String RADIATION_DATA_PREFIX = "monitoring:radiation:";
@@ -45,32 +78,39 @@ public class MonitoringDataBufferService {
     // 缓存TTL(10分钟)
     private static final long CACHE_TTL_MINUTES = 10;
 
+    /**
+     * Redis写入失败后，到该时间（毫秒）之前直接写本地WAL；0表示Redis可用
+     */
+    private volatile long redisRetryAt;
+
+    public MonitoringDataBufferService(RedisTemplate<String, Object> redisTemplate,
+                                       MonitoringDataWal monitoringDataWal,
+                                       BufferWalProperties walProperties,
+                                       BufferFrameProperties frameProperties,
+                                       MonitoringDataFlushProperties flushProperties) {
+        this.redisTemplate = redisTemplate;
+        this.monitoringDataWal = monitoringDataWal;
+        this.walProperties = walProperties;
+        this.frameProperties = frameProperties;
+        this.flushProperties = flushProperties;
+        this.radiationFrames = new FrameGroup<>(RADIATION_DATA_PREFIX, "radiation",
+                RadiationDeviceData::getDeviceCode, MonitoringDataFrameCodec::encodeRadiation);
+        this.environmentFrames = new FrameGroup<>(ENV_DATA_PREFIX, "environment",
+                EnvironmentDeviceData::getDeviceCode, MonitoringDataFrameCodec::encodeEnvironment);
+    }
+
     /**
      * 写入辐射设备监测数据到缓冲区
      *
      * 执行流程:
      * 1. 写入Redis缓存(用于实时查询,TTL 10分钟)
      * 2. 写入Redis批量队列(用于定时任务批量写MySQL)
+     * Redis不可用时写入本地WAL（MonitoringDataWal），由WAL重放到MySQL
      *
      * @param data 辐射设备监测数据
      */
     public void saveRadiationDataToBuffer(RadiationDeviceData data) {
-        String deviceCode = data.getDeviceCode();
-
-        try {
-            // 1. 写入Redis缓存(用于实时查询)
-            String cacheKey = RADIATION_DATA_PREFIX + deviceCode;
-            redisTemplate.opsForValue().set(cacheKey, data, CACHE_TTL_MINUTES, TimeUnit.MINUTES);
-
-            // 2. 写入批量队列(用于MySQL持久化)
-            String queueKey = BUFFER_QUEUE_PREFIX + "radiation";
-            redisTemplate.opsForList().rightPush(queueKey, data);
-
-            log.debug("辐射数据已写入缓冲: deviceCode={}", deviceCode);
-        } catch (Exception e) {
-            log.error("写入辐射数据到缓冲区失败: deviceCode={}", deviceCode, e);
-            throw new RuntimeException("写入辐射数据到缓冲区失败", e);
-        }
+        saveBatchToBuffer(List.of(data), radiationFrames, monitoringDataWal::appendRadiation);
     }
 
     /**
@@ -79,26 +119,177 @@ public class MonitoringDataBufferService {
      * 执行流程:
      * 1. 写入Redis缓存(用于实时查询,TTL 10分钟)
      * 2. 写入Redis批量队列(用于定时任务批量写MySQL)
+     * Redis不可用时写入本地WAL（MonitoringDataWal），由WAL重放到MySQL
      *
      * @param data 环境设备监测数据
      */
     public void saveEnvironmentDataToBuffer(EnvironmentDeviceData data) {
-        String deviceCode = data.getDeviceCode();
+        saveBatchToBuffer(List.of(data), environmentFrames, monitoringDataWal::appendEnvironment);
+    }
 
-        try {
-            // 1. 写入Redis缓存(用于实时查询)
-            String cacheKey = ENV_DATA_PREFIX + deviceCode;
-            redisTemplate.opsForValue().set(cacheKey, data, CACHE_TTL_MINUTES, TimeUnit.MINUTES);
+    /**
+     * 批量写入辐射设备监测数据到缓冲区（批量消息/断线补传）
+     *
+     * 执行流程（一次Pipeline）:
+     * 1. 所有读数一次RPUSH写入批量队列
+     * 2. 每台设备只将最后一条读数写入实时查询缓存
+     *
+     * @param dataList 辐射设备监测数据，按时间先后排列
+     */
+    public void saveRadiationDataBatchToBuffer(List<RadiationDeviceData> dataList) {
+        saveBatchToBuffer(dataList, radiationFrames, monitoringDataWal::appendRadiation);
+    }
 
-            // 2. 写入批量队列(用于MySQL持久化)
-            String queueKey = BUFFER_QUEUE_PREFIX + "environment";
-            redisTemplate.opsForList().rightPush(queueKey, data);
+    /**
+     * 批量写入环境设备监测数据到缓冲区（批量消息/断线补传）
+     *
+     * @param dataList 环境设备监测数据，按时间先后排列
+     * @see #saveRadiationDataBatchToBuffer(List)
+     */
+    public void saveEnvironmentDataBatchToBuffer(List<EnvironmentDeviceData> dataList) {
+        saveBatchToBuffer(dataList, environmentFrames, monitoringDataWal::appendEnvironment);
+    }
 
-            log.debug("环境数据已写入缓冲: deviceCode={}", deviceCode);
-        } catch (Exception e) {
-            log.error("写入环境数据到缓冲区失败: deviceCode={}", deviceCode, e);
-            throw new RuntimeException("写入环境数据到缓冲区失败", e);
+    private <T> void saveBatchToBuffer(List<T> dataList, FrameGroup<T> frames, Consumer<List<T>> walAppend) {
+        if (dataList == null || dataList.isEmpty()) {
+            return;
+        }
+        String cachePrefix = frames.cachePrefix;
+        String dataType = frames.dataType;
+
+        // 每台设备的最后一条读数
+        Map<String, T> latest = frames.latestByDevice(dataList);
+
+        // PRIMARY模式：只写WAL，Redis可用时仍更新实时查询缓存
+        if (monitoringDataWal.isPrimary()) {
+            walAppend.accept(dataList);
+            if (System.currentTimeMillis() >= redisRetryAt) {
+                try {
+                    latest.forEach((deviceCode, data) -> redisTemplate.opsForValue()
+                            .set(cachePrefix + deviceCode, data, CACHE_TTL_MINUTES, TimeUnit.MINUTES));
+                } catch (Exception e) {
+                    markRedisUnavailable(e);
+                }
+            }
+            log.debug("{}数据已写入本地WAL: count={}", dataType, dataList.size());
+            return;
+        }
+
+        if (!monitoringDataWal.isEnabled() || System.currentTimeMillis() >= redisRetryAt) {
+            try {
+                if (!frameProperties.isEnabled()) {
+                    pushReadings(dataList, latest, frames);
+                } else if (dataList.size() == 1) {
+                    frames.push(dataList.get(0));
+                } else {
+                    pushFrames(frames, dataList, latest);
+                }
+                if (redisRetryAt > 0) {
+                    redisRetryAt = 0;
+                    log.info("✅ Redis已恢复，监测数据重新写入Redis缓冲队列");
+                }
+
+                log.debug("{}数据已写入缓冲: count={}, devices={}", dataType, dataList.size(), latest.size());
+                return;
+            } catch (Exception e) {
+                if (!monitoringDataWal.isEnabled()) {
+                    log.error("写入{}数据到缓冲区失败: count={}", dataType, dataList.size(), e);
+                    throw new RuntimeException("写入" + dataType + "数据到缓冲区失败", e);
+                }
+                markRedisUnavailable(e);
+            }
+        }
+
+        // Redis不可用：写入本地WAL
+        walAppend.accept(dataList);
+        log.debug("Redis不可用，{}数据已写入本地WAL: count={}", dataType, dataList.size());
+    }
+
+    /**
+     * 分片队列键，分片0沿用未分片时的键名（与旧版本兼容，调大分片数无需迁移）
+     */
+    public static String queueKey(String dataType, int shard) {
+        return shard == 0 ? BUFFER_QUEUE_PREFIX + dataType : BUFFER_QUEUE_PREFIX + dataType + ":" + shard;
+    }
+
+    /**
+     * 设备所属分片
+     */
+    public static int shardOf(String deviceCode, int shards) {
+        if (shards <= 1) {
+            return 0;
         }
+        int h = deviceCode != null ? deviceCode.hashCode() : 0;
+        h ^= (h >>> 16);
+        return Math.floorMod(h, shards);
+    }
+
+    /**
+     * 按分片队列分组，组内保持原有顺序
+     */
+    private <T> Map<String, List<T>> groupByQueue(List<T> dataList, FrameGroup<T> frames) {
+        int shards = Math.max(1, flushProperties.getShards());
+        Map<String, List<T>> grouped = new LinkedHashMap<>();
+        for (T data : dataList) {
+            String queueKey = queueKey(frames.dataType, shardOf(frames.deviceCodeOf.apply(data), shards));
+            grouped.computeIfAbsent(queueKey, key -> new ArrayList<>()).add(data);
+        }
+        return grouped;
+    }
+
+    /**
+     * 每条读数一个JSON元素，一次Pipeline写入分片队列并更新实时查询缓存
+     */
+    private <T> void pushReadings(List<T> dataList, Map<String, T> latest, FrameGroup<T> frames) {
+        Map<String, List<T>> grouped = groupByQueue(dataList, frames);
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                grouped.forEach((queueKey, readings) ->
+                        operations.opsForList().rightPushAll(queueKey, readings.toArray()));
+                latest.forEach((deviceCode, data) -> operations.opsForValue()
+                        .set(frames.cachePrefix + deviceCode, data, CACHE_TTL_MINUTES, TimeUnit.MINUTES));
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 按分片、maxReadings分帧，一次Pipeline写入分片队列并更新实时查询缓存
+     */
+    private <T> void pushFrames(FrameGroup<T> frames, List<T> dataList, Map<String, T> latest) {
+        int maxReadings = Math.max(1, frameProperties.getMaxReadings());
+        Map<byte[], byte[][]> encoded = new LinkedHashMap<>();
+        groupByQueue(dataList, frames).forEach((queueKey, readings) -> {
+            byte[][] queueFrames = new byte[(readings.size() + maxReadings - 1) / maxReadings][];
+            for (int i = 0; i < queueFrames.length; i++) {
+                List<T> chunk = readings.subList(i * maxReadings, Math.min((i + 1) * maxReadings, readings.size()));
+                queueFrames[i] = frames.encoder.apply(chunk, frameProperties.isCompress());
+            }
+            encoded.put(StringRedisSerializer.UTF_8.serialize(queueKey), queueFrames);
+        });
+
+        @SuppressWarnings("unchecked")
+        RedisSerializer<Object> valueSerializer = (RedisSerializer<Object>) redisTemplate.getValueSerializer();
+        Expiration cacheTtl = Expiration.from(CACHE_TTL_MINUTES, TimeUnit.MINUTES);
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            encoded.forEach((queueKey, queueFrames) -> connection.listCommands().rPush(queueKey, queueFrames));
+            latest.forEach((deviceCode, data) -> connection.stringCommands().set(
+                    StringRedisSerializer.UTF_8.serialize(frames.cachePrefix + deviceCode),
+                    valueSerializer.serialize(data), cacheTtl, RedisStringCommands.SetOption.upsert()));
+            return null;
+        });
+    }
+
+    /**
+     * Redis写入失败后redisRetryIntervalMs内直接写WAL，避免每条数据都等待Redis超时
+     */
+    private void markRedisUnavailable(Exception e) {
+        if (redisRetryAt == 0) {
+            log.warn("⚠️ Redis不可用，监测数据改为写入本地WAL: {}", e.getMessage());
+        }
+        redisRetryAt = System.currentTimeMillis() + walProperties.getRedisRetryIntervalMs();
     }
 
     /**
@@ -159,11 +350,105 @@ public class MonitoringDataBufferService {
      * 用途: 监控队列积压情况
      *
      * @param dataType 数据类型("radiation" 或 "environment")
-     * @return 队列大小
+     * @return 所有分片的队列大小之和（元素数，打包帧模式下一个元素包含多条读数）
      */
     public long getQueueSize(String dataType) {
-        String queueKey = BUFFER_QUEUE_PREFIX + dataType;
-        Long size = redisTemplate.opsForList().size(queueKey);
-        return size != null ? size : 0;
+        long total = 0;
+        for (int shard = 0; shard < Math.max(1, flushProperties.getShards()); shard++) {
+            Long size = redisTemplate.opsForList().size(queueKey(dataType, shard));
+            total += size != null ? size : 0;
+        }
+        return total;
+    }
+
+    /**
+     * 单个数据类型的打包帧组提交
+     *
+     * 没有写入进行中时，到达的线程立即把当前组（包括自己的读数）打包写入；
+     * 写入进行中到达的读数进入下一组，等待上一组完成后由其中一个线程写入。
+     * 组的大小随并发自然增长，空闲时不增加延迟。
+     */
+    private final class FrameGroup<T> {
+        private final String cachePrefix;
+        private final String dataType;
+        private final Function<T, String> deviceCodeOf;
+        private final BiFunction<List<T>, Boolean, byte[]> encoder;
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition groupDone = lock.newCondition();
+        private Group<T> current = new Group<>();
+        private boolean pushing;
+
+        private FrameGroup(String cachePrefix, String dataType, Function<T, String> deviceCodeOf,
+                           BiFunction<List<T>, Boolean, byte[]> encoder) {
+            this.cachePrefix = cachePrefix;
+            this.dataType = dataType;
+            this.deviceCodeOf = deviceCodeOf;
+            this.encoder = encoder;
+        }
+
+        private Map<String, T> latestByDevice(List<T> dataList) {
+            Map<String, T> latest = new LinkedHashMap<>();
+            for (T data : dataList) {
+                latest.put(deviceCodeOf.apply(data), data);
+            }
+            return latest;
+        }
+
+        /**
+         * 加入当前组并等待该组写入Redis
+         *
+         * @throws RuntimeException 该组写入失败
+         */
+        private void push(T data) {
+            Group<T> group;
+            lock.lock();
+            try {
+                group = current;
+                group.readings.add(data);
+                while (pushing && !group.done) {
+                    groupDone.awaitUninterruptibly();
+                }
+                if (group.done) {
+                    group.rethrow();
+                    return;
+                }
+                // 由本线程写入当前组，之后到达的读数进入下一组
+                pushing = true;
+                current = new Group<>();
+            } finally {
+                lock.unlock();
+            }
+
+            RuntimeException error = null;
+            try {
+                pushFrames(this, group.readings, latestByDevice(group.readings));
+            } catch (RuntimeException e) {
+                error = e;
+            }
+
+            lock.lock();
+            try {
+                group.done = true;
+                group.error = error;
+                pushing = false;
+                groupDone.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            group.rethrow();
+        }
+    }
+
+    private static final class Group<T> {
+        private final List<T> readings = new ArrayList<>();
+        private boolean done;
+        private RuntimeException error;
+
+        private void rethrow() {
+            if (error != null) {
+                throw error;
+            }
+        }
     }
 }
@@ -0,0 +1,288 @@
+package com.cdutetc.ems.service;
+
+import com.cdutetc.ems.config.MonitoringDataExportProperties;
+import com.cdutetc.ems.entity.DeviceDataRollup.DataType;
+import com.cdutetc.ems.repository.DeviceRepository;
+import com.cdutetc.ems.repository.MonitoringDataExportRepository;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 监测数据流式导出
+ *
+ * 从数据库游标逐行读取，逐行写入CSV或NDJSON（可选gzip），内存占用与行数无关:
+ * 只有JDBC取数缓冲（fetchSize行）和输出缓冲（BUFFER_SIZE字节）。
+ * 设备访问检查由调用方在开始输出前完成，导出过程中不再逐行检查。
+ *
+ * @author EMS Team
+ */
+@Slf4j
+@Service
+public class MonitoringDataExportService {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final JsonFactory JSON_FACTORY = new JsonFactory()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    private static final DateTimeFormatter FILENAME_TIME = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+
+    /**
+     * 导出格式
+     */
+    @Getter
+    public enum Format {
+        CSV("text/csv;charset=UTF-8", "csv"),
+        NDJSON("application/x-ndjson", "ndjson");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public static Format of(String name) {
+            try {
+                return valueOf(name.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("不支持的导出格式: " + name);
+            }
+        }
+    }
+
+    private final MonitoringDataExportRepository exportRepository;
+    private final DeviceRepository deviceRepository;
+    private final Semaphore exportPermits;
+
+    public MonitoringDataExportService(MonitoringDataExportRepository exportRepository,
+                                       DeviceRepository deviceRepository,
+                                       MonitoringDataExportProperties properties) {
+        this.exportRepository = exportRepository;
+        this.deviceRepository = deviceRepository;
+        this.exportPermits = new Semaphore(Math.max(1, properties.getMaxConcurrentExports()));
+    }
+
+    /**
+     * 尝试开始一个导出，超出并发上限时返回null；导出结束后须释放返回的名额
+     */
+    public ExportPermit tryBeginExport() {
+        return exportPermits.tryAcquire() ? new ExportPermit(exportPermits) : null;
+    }
+
+    /**
+     * 企业的全部设备编码（导出企业数据时一次性确定范围）
+     */
+    public List<String> companyDeviceCodes(Long companyId) {
+        return deviceRepository.findDeviceCodesByCompanyId(companyId);
+    }
+
+    public String contentType(Format format, boolean gzip) {
+        return gzip ? "application/gzip" : format.getContentType();
+    }
+
+    public String filename(String prefix, Format format, boolean gzip) {
+        return prefix + "-" + LocalDateTime.now().format(FILENAME_TIME) + "." + format.getExtension()
+                + (gzip ? ".gz" : "");
+    }
+
+    /**
+     * 导出指定设备在[startTime, endTime]内的数据到out（不关闭out）
+     *
+     * @return 导出的行数
+     */
+    public long export(DataType dataType, List<String> deviceCodes, LocalDateTime startTime, LocalDateTime endTime,
+                       Format format, boolean gzip, OutputStream out) throws IOException {
+        long startNanos = System.nanoTime();
+        GZIPOutputStream gzipStream = gzip ? new GZIPOutputStream(out, BUFFER_SIZE) : null;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(gzipStream != null ? gzipStream : out,
+                StandardCharsets.UTF_8), BUFFER_SIZE);
+        List<String> columns = MonitoringDataExportRepository.columnNames(dataType);
+        RowWriter rowWriter = format == Format.CSV ? new CsvRowWriter(writer, columns) : new NdjsonRowWriter(writer, columns);
+
+        long[] rows = new long[1];
+        try {
+            rowWriter.writeHeader();
+            exportRepository.streamRows(dataType, deviceCodes, startTime, endTime, rs -> {
+                try {
+                    rowWriter.writeRow(rs);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                rows[0]++;
+            });
+            rowWriter.flush();
+            writer.flush();
+            if (gzipStream != null) {
+                gzipStream.finish();
+            }
+            out.flush();
+        } catch (UncheckedIOException e) {
+            log.warn("⚠️ 导出{}数据中断: rows={}, {}", dataType, rows[0], e.getCause().getMessage());
+            throw e.getCause();
+        }
+        log.info("📤 导出{}数据完成: devices={}, rows={}, format={}, gzip={}, 耗时{}ms", dataType,
+                deviceCodes.size(), rows[0], format, gzip, (System.nanoTime() - startNanos) / 1_000_000);
+        return rows[0];
+    }
+
+    /**
+     * 读取一列的值: 时间转为ISO-8601字符串（秒始终输出），其余保持JDBC类型
+     */
+    private static Object value(ResultSet rs, int column) throws SQLException {
+        Object value = rs.getObject(column);
+        if (value instanceof Timestamp timestamp) {
+            return timestamp.toLocalDateTime().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+        }
+        if (value instanceof LocalDateTime time) {
+            return time.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+        }
+        return value;
+    }
+
+    private interface RowWriter {
+
+        void writeHeader() throws IOException;
+
+        void writeRow(ResultSet rs) throws IOException, SQLException;
+
+        default void flush() throws IOException {
+        }
+    }
+
+    /**
+     * CSV: 首行为字段名，含逗号、引号或换行的值用双引号包裹
+     */
+    private static final class CsvRowWriter implements RowWriter {
+
+        private final Writer writer;
+        private final List<String> columns;
+
+        CsvRowWriter(Writer writer, List<String> columns) {
+            this.writer = writer;
+            this.columns = columns;
+        }
+
+        @Override
+        public void writeHeader() throws IOException {
+            writer.write(String.join(",", columns));
+            writer.write('\n');
+        }
+
+        @Override
+        public void writeRow(ResultSet rs) throws IOException, SQLException {
+            for (int i = 1; i <= columns.size(); i++) {
+                if (i > 1) {
+                    writer.write(',');
+                }
+                Object value = value(rs, i);
+                if (value != null) {
+                    writeField(value.toString());
+                }
+            }
+            writer.write('\n');
+        }
+
+        private void writeField(String field) throws IOException {
+            boolean quote = false;
+            for (int i = 0; i < field.length() && !quote; i++) {
+                char c = field.charAt(i);
+                quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!quote) {
+                writer.write(field);
+                return;
+            }
+            writer.write('"');
+            writer.write(field.replace("\"", "\"\""));
+            writer.write('"');
+        }
+    }
+
+    /**
+     * NDJSON: 每行一个JSON对象，数值保持数值类型，时间为ISO-8601字符串
+     */
+    private static final class NdjsonRowWriter implements RowWriter {
+
+        private final JsonGenerator generator;
+        private final List<String> columns;
+
+        NdjsonRowWriter(Writer writer, List<String> columns) throws IOException {
+            this.generator = JSON_FACTORY.createGenerator(writer);
+            this.generator.setRootValueSeparator(null);
+            this.columns = columns;
+        }
+
+        @Override
+        public void writeHeader() {
+        }
+
+        @Override
+        public void writeRow(ResultSet rs) throws IOException, SQLException {
+            generator.writeStartObject();
+            for (int i = 1; i <= columns.size(); i++) {
+                generator.writeFieldName(columns.get(i - 1));
+                Object value = value(rs, i);
+                if (value == null) {
+                    generator.writeNull();
+                } else if (value instanceof Double || value instanceof Float) {
+                    generator.writeNumber(((Number) value).doubleValue());
+                } else if (value instanceof BigDecimal decimal) {
+                    generator.writeNumber(decimal);
+                } else if (value instanceof Number number) {
+                    generator.writeNumber(number.longValue());
+                } else {
+                    generator.writeString(value.toString());
+                }
+            }
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        }
+
+        @Override
+        public void flush() throws IOException {
+            generator.flush();
+        }
+    }
+
+    /**
+     * 导出名额
+     * 输出结束和异步请求结束（超时、出错、客户端断开，输出可能从未执行）时都会释放，只有第一次释放生效
+     */
+    public static final class ExportPermit {
+
+        private final Semaphore permits;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        private ExportPermit(Semaphore permits) {
+            this.permits = permits;
+        }
+
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                permits.release();
+            }
+        }
+    }
+}
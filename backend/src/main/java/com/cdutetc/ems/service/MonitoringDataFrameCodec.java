@@ -0,0 +1,330 @@
+package com.cdutetc.ems.service;
+
+import com.cdutetc.ems.entity.EnvironmentDeviceData;
+import com.cdutetc.ems.entity.RadiationDeviceData;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 监测数据打包帧编解码
+ *
+ * 缓冲队列启用打包帧（app.ems.buffer.frame.enabled）后，一个列表元素是一帧二进制数据，包含多条读数，
+ * 代替每条读数一个带类名的JSON对象。
+ *
+ * 帧格式:
+ * - 帧头: 魔数0xFB(1) + 版本(1) + 类型(1, 1=辐射 2=环境) + 标志(1, bit0=Deflate压缩) + 条数(4)
+ * - 帧体（可整体Deflate压缩）: 每条读数 = 非空字段位图(4) + 按实体字段顺序写入的非空字段
+ *   Integer写4字节，Double写8字节，String写长度(4)+UTF-8，LocalDateTime写微秒数(8)
+ *
+ * JSON元素以'{'或'['开头，魔数0xFB不是合法的UTF-8首字节，两种元素可以在同一队列中共存。
+ *
+ * @author EMS Team
+ */
+public final class MonitoringDataFrameCodec {
+
+    static final byte MAGIC = (byte) 0xFB;
+    private static final byte VERSION = 1;
+    private static final byte RADIATION = 1;
+    private static final byte ENVIRONMENT = 2;
+    private static final byte FLAG_DEFLATE = 1;
+    private static final int HEADER_BYTES = 8;
+
+    private MonitoringDataFrameCodec() {
+    }
+
+    /**
+     * 是否为打包帧（否则为JSON元素）
+     */
+    public static boolean isFrame(byte[] element) {
+        return element != null && element.length >= HEADER_BYTES && element[0] == MAGIC;
+    }
+
+    /**
+     * 把辐射设备读数打包为一帧
+     */
+    public static byte[] encodeRadiation(List<RadiationDeviceData> dataList, boolean compress) {
+        FrameWriter out = new FrameWriter(RADIATION, dataList.size());
+        for (RadiationDeviceData data : dataList) {
+            out.startReading();
+            out.string(data.getDeviceCode());
+            out.string(data.getRawData());
+            out.integer(data.getSrc());
+            out.integer(data.getMsgtype());
+            out.decimal(data.getCpm());
+            out.decimal(data.getBatvolt());
+            out.string(data.getTime());
+            out.integer(data.getDataTrigger());
+            out.integer(data.getMulti());
+            out.integer(data.getWay());
+            out.string(data.getGpsLongitude());
+            out.string(data.getGpsLatitude());
+            out.string(data.getGpsType());
+            out.string(data.getGpsUtc());
+            out.dateTime(data.getRecordTime());
+        }
+        return out.finish(compress);
+    }
+
+    /**
+     * 把环境设备读数打包为一帧
+     */
+    public static byte[] encodeEnvironment(List<EnvironmentDeviceData> dataList, boolean compress) {
+        FrameWriter out = new FrameWriter(ENVIRONMENT, dataList.size());
+        for (EnvironmentDeviceData data : dataList) {
+            out.startReading();
+            out.string(data.getDeviceCode());
+            out.string(data.getRawData());
+            out.integer(data.getSrc());
+            out.decimal(data.getCpm());
+            out.decimal(data.getTemperature());
+            out.decimal(data.getWetness());
+            out.decimal(data.getWindspeed());
+            out.decimal(data.getTotal());
+            out.decimal(data.getBattery());
+            out.dateTime(data.getRecordTime());
+        }
+        return out.finish(compress);
+    }
+
+    /**
+     * 解码一帧
+     *
+     * @return RadiationDeviceData或EnvironmentDeviceData列表
+     * @throws IllegalArgumentException 帧格式错误
+     */
+    public static List<Object> decode(byte[] frame) {
+        if (!isFrame(frame) || frame[1] != VERSION) {
+            throw new IllegalArgumentException("不支持的缓冲帧");
+        }
+        ByteBuffer header = ByteBuffer.wrap(frame);
+        byte type = frame[2];
+        int count = header.getInt(4);
+        ByteBuffer in = (frame[3] & FLAG_DEFLATE) != 0
+                ? ByteBuffer.wrap(inflate(frame))
+                : ByteBuffer.wrap(frame, HEADER_BYTES, frame.length - HEADER_BYTES);
+
+        List<Object> readings = new ArrayList<>(count);
+        try {
+            for (int i = 0; i < count; i++) {
+                int presence = in.getInt();
+                if (type == RADIATION) {
+                    RadiationDeviceData data = new RadiationDeviceData();
+                    data.setDeviceCode(string(in, presence, 0));
+                    data.setRawData(string(in, presence, 1));
+                    data.setSrc(integer(in, presence, 2));
+                    data.setMsgtype(integer(in, presence, 3));
+                    data.setCpm(decimal(in, presence, 4));
+                    data.setBatvolt(decimal(in, presence, 5));
+                    data.setTime(string(in, presence, 6));
+                    data.setDataTrigger(integer(in, presence, 7));
+                    data.setMulti(integer(in, presence, 8));
+                    data.setWay(integer(in, presence, 9));
+                    data.setGpsLongitude(string(in, presence, 10));
+                    data.setGpsLatitude(string(in, presence, 11));
+                    data.setGpsType(string(in, presence, 12));
+                    data.setGpsUtc(string(in, presence, 13));
+                    data.setRecordTime(dateTime(in, presence, 14));
+                    readings.add(data);
+                } else if (type == ENVIRONMENT) {
+                    EnvironmentDeviceData data = new EnvironmentDeviceData();
+                    data.setDeviceCode(string(in, presence, 0));
+                    data.setRawData(string(in, presence, 1));
+                    data.setSrc(integer(in, presence, 2));
+                    data.setCpm(decimal(in, presence, 3));
+                    data.setTemperature(decimal(in, presence, 4));
+                    data.setWetness(decimal(in, presence, 5));
+                    data.setWindspeed(decimal(in, presence, 6));
+                    data.setTotal(decimal(in, presence, 7));
+                    data.setBattery(decimal(in, presence, 8));
+                    data.setRecordTime(dateTime(in, presence, 9));
+                    readings.add(data);
+                } else {
+                    throw new IllegalArgumentException("未知的缓冲帧类型: " + type);
+                }
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("缓冲帧数据不完整", e);
+        }
+        return readings;
+    }
+
+    private static byte[] inflate(byte[] frame) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(frame, HEADER_BYTES, frame.length - HEADER_BYTES);
+            byte[] body = new byte[Math.max(64, (frame.length - HEADER_BYTES) * 4)];
+            int length = 0;
+            while (!inflater.finished()) {
+                if (length == body.length) {
+                    body = Arrays.copyOf(body, body.length * 2);
+                }
+                int inflated = inflater.inflate(body, length, body.length - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("缓冲帧数据不完整");
+                }
+                length += inflated;
+            }
+            return length == body.length ? body : Arrays.copyOf(body, length);
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("缓冲帧压缩数据错误", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static boolean present(int presence, int field) {
+        return (presence & (1 << field)) != 0;
+    }
+
+    private static String string(ByteBuffer in, int presence, int field) {
+        if (!present(presence, field)) {
+            return null;
+        }
+        int length = in.getInt();
+        String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    private static Integer integer(ByteBuffer in, int presence, int field) {
+        return present(presence, field) ? in.getInt() : null;
+    }
+
+    private static Double decimal(ByteBuffer in, int presence, int field) {
+        return present(presence, field) ? in.getDouble() : null;
+    }
+
+    private static LocalDateTime dateTime(ByteBuffer in, int presence, int field) {
+        if (!present(presence, field)) {
+            return null;
+        }
+        long micros = in.getLong();
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000L),
+                (int) Math.floorMod(micros, 1_000_000L) * 1_000, ZoneOffset.UTC);
+    }
+
+    /**
+     * 帧写入缓冲：每条读数先预留非空字段位图，写完字段后回填
+     */
+    private static final class FrameWriter {
+        private byte[] buffer;
+        private int position;
+        private int presenceOffset;
+        private int presence;
+        private int field;
+
+        private FrameWriter(byte type, int count) {
+            this.buffer = new byte[HEADER_BYTES + Math.max(1, count) * 256];
+            buffer[0] = MAGIC;
+            buffer[1] = VERSION;
+            buffer[2] = type;
+            position = 4;
+            putInt(count);
+        }
+
+        private void startReading() {
+            finishReading();
+            presenceOffset = position;
+            presence = 0;
+            field = 0;
+            putInt(0);
+        }
+
+        private void finishReading() {
+            if (presenceOffset > 0) {
+                ByteBuffer.wrap(buffer).putInt(presenceOffset, presence);
+            }
+        }
+
+        private void string(String value) {
+            if (next(value)) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                putInt(bytes.length);
+                ensure(bytes.length);
+                System.arraycopy(bytes, 0, buffer, position, bytes.length);
+                position += bytes.length;
+            }
+        }
+
+        private void integer(Integer value) {
+            if (next(value)) {
+                putInt(value);
+            }
+        }
+
+        private void decimal(Double value) {
+            if (next(value)) {
+                putLong(Double.doubleToRawLongBits(value));
+            }
+        }
+
+        private void dateTime(LocalDateTime value) {
+            if (next(value)) {
+                putLong(value.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + value.getNano() / 1_000);
+            }
+        }
+
+        private boolean next(Object value) {
+            boolean present = value != null;
+            if (present) {
+                presence |= 1 << field;
+            }
+            field++;
+            return present;
+        }
+
+        private void putInt(int value) {
+            ensure(4);
+            ByteBuffer.wrap(buffer, position, 4).putInt(value);
+            position += 4;
+        }
+
+        private void putLong(long value) {
+            ensure(8);
+            ByteBuffer.wrap(buffer, position, 8).putLong(value);
+            position += 8;
+        }
+
+        private void ensure(int bytes) {
+            if (position + bytes > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + bytes));
+            }
+        }
+
+        private byte[] finish(boolean compress) {
+            finishReading();
+            if (!compress) {
+                return Arrays.copyOf(buffer, position);
+            }
+
+            buffer[3] = FLAG_DEFLATE;
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try {
+                deflater.setInput(buffer, HEADER_BYTES, position - HEADER_BYTES);
+                deflater.finish();
+                byte[] frame = new byte[HEADER_BYTES + (position - HEADER_BYTES) / 2 + 64];
+                System.arraycopy(buffer, 0, frame, 0, HEADER_BYTES);
+                int length = HEADER_BYTES;
+                while (!deflater.finished()) {
+                    if (length == frame.length) {
+                        frame = Arrays.copyOf(frame, frame.length * 2);
+                    }
+                    length += deflater.deflate(frame, length, frame.length - length);
+                }
+                return Arrays.copyOf(frame, length);
+            } finally {
+                deflater.end();
+            }
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.cdutetc.ems.service;
+
+import com.cdutetc.ems.config.MonitoringDataRollupProperties;
+import com.cdutetc.ems.entity.DeviceDataRollup.DataType;
+import com.cdutetc.ems.entity.DeviceDataRollup.Resolution;
+import com.cdutetc.ems.entity.DeviceDataRollupState;
+import com.cdutetc.ems.repository.MonitoringDataRollupRepository;
+import com.cdutetc.ems.repository.MonitoringDataRollupRepository.Aggregate;
+import com.cdutetc.ems.repository.MonitoringDataRollupRepository.BucketRange;
+import com.cdutetc.ems.repository.MonitoringDataRollupRepository.RawRange;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 监测数据统计（基于汇总表）
+ *
+ * 查询范围按"天桶 → 小时桶 → 分钟桶 → 原始数据"逐级拆分: 中间完整的天用天桶，两端不足一天的部分用小时桶，
+ * 再不足一小时的部分用分钟桶，只有不足一分钟的两端查询原始数据（按设备+record_time索引）。
+ * 汇总不完整的时间段（历史数据补算完成前、分钟桶保留期之前）对应查询原始数据。
+ *
+ * 原始数据保留期内，结果与直接对原始数据做AVG/MIN/MAX/COUNT一致（record_time BETWEEN startTime AND endTime）。
+ *
+ * 汇总表不随原始数据归档删除：BackupService导出后逐行删除或整分区DROP原始数据，小时/天桶保留，
+ * 统计的保留期长于原始数据。查询范围早于原始数据保留期时，中间部分仍由小时/天桶给出，
+ * 落在分钟桶保留期之前、需要查询原始数据的两端零头已随原始数据删除，不再计入；
+ * 这部分统计与原始表（已删除）不再一一对应，需要原始读数时从备份文件恢复。
+ *
+ * @author EMS Team
+ */
+@Slf4j
+@Service
+public class MonitoringDataRollupService {
+
+    private static final Resolution[] LEVELS = {Resolution.DAY, Resolution.HOUR, Resolution.MINUTE};
+
+    private final MonitoringDataRollupRepository rollupRepository;
+    private final MonitoringDataRollupProperties properties;
+
+    public MonitoringDataRollupService(MonitoringDataRollupRepository rollupRepository,
+                                       MonitoringDataRollupProperties properties) {
+        this.rollupRepository = rollupRepository;
+        this.properties = properties;
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * 汇总指定设备在[startTime, endTime]内的读数，startTime或endTime为null时汇总全部数据
+     */
+    public Aggregate aggregate(DataType dataType, Collection<String> deviceCodes,
+                               LocalDateTime startTime, LocalDateTime endTime) {
+        if (startTime == null || endTime == null) {
+            startTime = null;
+            endTime = null;
+        }
+        DeviceDataRollupState state = rollupRepository.findState(dataType);
+        List<Segment> segments;
+        if (state == null) {
+            segments = List.of(new Segment(null, startTime, endTime, true));
+        } else {
+            segments = plan(startTime, endTime, rollupFloor(state), minuteFloor(state));
+        }
+
+        List<BucketRange> bucketRanges = new ArrayList<>();
+        List<RawRange> rawRanges = new ArrayList<>();
+        for (Segment segment : segments) {
+            if (segment.resolution() != null) {
+                bucketRanges.add(new BucketRange(segment.resolution(), segment.from(), segment.to()));
+            } else {
+                rawRanges.add(new RawRange(segment.from(), segment.to(), segment.inclusiveEnd()));
+            }
+        }
+        log.debug("汇总统计: type={}, devices={}, buckets={}, raw={}", dataType, deviceCodes.size(),
+                bucketRanges, rawRanges);
+        return rollupRepository.aggregateRollups(dataType, deviceCodes, bucketRanges)
+                .merge(rollupRepository.aggregateRaw(dataType, deviceCodes, rawRanges));
+    }
+
+    /**
+     * 该分辨率的桶是否完整覆盖from之后的全部读数
+     */
+    public boolean covers(DataType dataType, Resolution resolution, LocalDateTime from) {
+        if (!properties.isEnabled()) {
+            return false;
+        }
+        DeviceDataRollupState state = rollupRepository.findState(dataType);
+        if (state == null) {
+            return false;
+        }
+        LocalDateTime floor = resolution == Resolution.MINUTE ? minuteFloor(state) : rollupFloor(state);
+        return floor == null || !from.isBefore(floor);
+    }
+
+    /**
+     * 小时/天桶完整的起点: 补算完成前为启用汇总后的第一个整点，补算完成后为null（全部完整）
+     */
+    private static LocalDateTime rollupFloor(DeviceDataRollupState state) {
+        return state.isBackfillDone() ? null : ceil(state.getEnabledAt(), Resolution.HOUR);
+    }
+
+    /**
+     * 分钟桶完整的起点: 启用汇总后的第一个整分与保留期起点中较晚的一个
+     */
+    private LocalDateTime minuteFloor(DeviceDataRollupState state) {
+        return max(ceil(state.getEnabledAt(), Resolution.MINUTE),
+                LocalDateTime.now().truncatedTo(ChronoUnit.DAYS).minusDays(properties.getMinuteRetentionDays()));
+    }
+
+    /**
+     * 按数据类型生成统计结果: totalRecords + 各指标统计
+     */
+    public Map<String, Object> statistics(DataType dataType, Collection<String> deviceCodes,
+                                          LocalDateTime startTime, LocalDateTime endTime,
+                                          Map<String, String> metricKeys) {
+        Aggregate aggregate = aggregate(dataType, deviceCodes, startTime, endTime);
+        Map<String, Object> statistics = new HashMap<>();
+        statistics.put("totalRecords", aggregate.getSampleCount());
+        metricKeys.forEach((metric, key) -> statistics.put(key, metricStatistics(aggregate, metric)));
+        return statistics;
+    }
+
+    /**
+     * 统计结果中一个指标的平均值、最小值、最大值（与原统计接口格式一致）
+     */
+    public static Map<String, Object> metricStatistics(Aggregate aggregate, String metric) {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("average", aggregate.getAverage(metric));
+        statistics.put("minimum", aggregate.getMinimum(metric));
+        statistics.put("maximum", aggregate.getMaximum(metric));
+        return statistics;
+    }
+
+    /**
+     * 把[start, end]拆分为汇总桶范围和原始数据范围
+     *
+     * @param start       起点（含），null = 不限
+     * @param end         终点（含），null = 不限
+     * @param rollupFloor 小时/天桶完整的起点，null = 全部完整
+     * @param minuteFloor 分钟桶完整的起点
+     */
+    static List<Segment> plan(LocalDateTime start, LocalDateTime end,
+                              LocalDateTime rollupFloor, LocalDateTime minuteFloor) {
+        List<Segment> segments = new ArrayList<>();
+        LocalDateTime from = start;
+        if (rollupFloor != null && (from == null || from.isBefore(rollupFloor))) {
+            if (end != null && !end.isAfter(rollupFloor)) {
+                segments.add(new Segment(null, from, end, true));
+                return segments;
+            }
+            segments.add(new Segment(null, from, rollupFloor, false));
+            from = rollupFloor;
+        }
+        decompose(from, end, 0, minuteFloor, segments);
+
+        // BETWEEN包含终点: 最后一段原始数据改为包含终点，终点恰好在桶边界时单独查询该时刻
+        if (end != null) {
+            Segment last = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+            if (last != null && last.resolution() == null && end.equals(last.to())) {
+                segments.set(segments.size() - 1, new Segment(null, last.from(), end, true));
+            } else {
+                segments.add(new Segment(null, end, end, true));
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * [from, to)按LEVELS[level]对齐: 中间完整的桶用该分辨率，两端交给下一级
+     */
+    private static void decompose(LocalDateTime from, LocalDateTime to, int level,
+                                  LocalDateTime minuteFloor, List<Segment> segments) {
+        if (from != null && to != null && !from.isBefore(to)) {
+            return;
+        }
+        if (level == LEVELS.length) {
+            segments.add(new Segment(null, from, to, false));
+            return;
+        }
+        Resolution resolution = LEVELS[level];
+        if (resolution == Resolution.MINUTE && from.isBefore(minuteFloor)) {
+            // 分钟桶保留期之前只能查询原始数据
+            LocalDateTime rawEnd = to.isBefore(minuteFloor) ? to : minuteFloor;
+            segments.add(new Segment(null, from, rawEnd, false));
+            decompose(rawEnd, to, level, minuteFloor, segments);
+            return;
+        }
+        LocalDateTime first = from != null ? ceil(from, resolution) : null;
+        LocalDateTime last = to != null ? MonitoringDataRollupRepository.bucketStart(to, resolution) : null;
+        if (first != null && last != null && !first.isBefore(last)) {
+            decompose(from, to, level + 1, minuteFloor, segments);
+            return;
+        }
+        if (from != null) {
+            decompose(from, first, level + 1, minuteFloor, segments);
+        }
+        segments.add(new Segment(resolution, first, last, false));
+        if (to != null) {
+            decompose(last, to, level + 1, minuteFloor, segments);
+        }
+    }
+
+    private static LocalDateTime ceil(LocalDateTime time, Resolution resolution) {
+        LocalDateTime start = MonitoringDataRollupRepository.bucketStart(time, resolution);
+        if (start.equals(time)) {
+            return start;
+        }
+        return switch (resolution) {
+            case MINUTE -> start.plusMinutes(1);
+            case HOUR -> start.plusHours(1);
+            case DAY -> start.plusDays(1);
+        };
+    }
+
+    private static LocalDateTime max(LocalDateTime a, LocalDateTime b) {
+        return a.isAfter(b) ? a : b;
+    }
+
+    /**
+     * 查询范围的一段: resolution为null时查询原始数据[from, to)（inclusiveEnd时含to），否则查询该分辨率的桶
+     */
+    record Segment(Resolution resolution, LocalDateTime from, LocalDateTime to, boolean inclusiveEnd) {
+    }
+}
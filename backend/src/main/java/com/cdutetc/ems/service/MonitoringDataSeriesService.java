@@ -0,0 +1,110 @@
+package com.cdutetc.ems.service;
+
+import com.cdutetc.ems.config.MonitoringDataSeriesProperties;
+import com.cdutetc.ems.dto.response.TimeSeriesResponse;
+import com.cdutetc.ems.entity.DeviceDataRollup.DataType;
+import com.cdutetc.ems.entity.DeviceDataRollup.Resolution;
+import com.cdutetc.ems.repository.MonitoringDataRollupRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * 监测数据降采样曲线
+ *
+ * 数据源按时间范围自动选择，每次请求最多读取maxSourceRows行:
+ * 1. 范围内原始读数不超过maxSourceRows时直接读取原始数据（只数到maxSourceRows + 1行）
+ * 2. 否则使用桶数不超过maxSourceRows且已完整汇总的最细分辨率（分钟 → 小时 → 天），
+ *    LTTB使用桶平均值，MINMAX使用桶最小值和最大值
+ * 3. 汇总不完整时（历史补算未完成、分钟桶超出保留期）读取原始数据，返回点数仍受限
+ *
+ * 读取过程中逐行交给SeriesDownsampler，不在内存中保存全部读数。
+ *
+ * @author EMS Team
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MonitoringDataSeriesService {
+
+    private static final Resolution[] RESOLUTIONS = {Resolution.MINUTE, Resolution.HOUR, Resolution.DAY};
+
+    private final MonitoringDataRollupRepository rollupRepository;
+    private final MonitoringDataRollupService rollupService;
+    private final MonitoringDataSeriesProperties properties;
+
+    /**
+     * 获取设备在[startTime, endTime]内某个指标的降采样曲线
+     *
+     * @param points 期望的点数（不超过maxPoints）
+     */
+    public TimeSeriesResponse series(DataType dataType, String deviceCode, String metric,
+                                     LocalDateTime startTime, LocalDateTime endTime,
+                                     int points, SeriesDownsampler.Mode mode) {
+        MonitoringDataRollupRepository.rawColumn(dataType, metric);
+        if (startTime.isAfter(endTime)) {
+            throw new IllegalArgumentException("开始时间不能晚于结束时间");
+        }
+        int targetPoints = Math.min(points, properties.getMaxPoints());
+        SeriesDownsampler downsampler = SeriesDownsampler.create(mode, startTime, endTime, targetPoints);
+
+        Resolution resolution = selectResolution(dataType, deviceCode, metric, startTime, endTime);
+        if (resolution == null) {
+            rollupRepository.streamRawReadings(dataType, deviceCode, metric, startTime, endTime, downsampler::add);
+        } else {
+            rollupRepository.streamBuckets(dataType, deviceCode, metric, resolution, startTime, endTime,
+                    (bucketStart, average, minimum, maximum) -> {
+                        if (mode == SeriesDownsampler.Mode.MINMAX) {
+                            downsampler.add(bucketStart, minimum);
+                            downsampler.add(bucketStart, maximum);
+                        } else {
+                            downsampler.add(bucketStart, average);
+                        }
+                    });
+        }
+
+        return TimeSeriesResponse.builder()
+                .deviceCode(deviceCode)
+                .metric(metric)
+                .startTime(startTime)
+                .endTime(endTime)
+                .source(resolution != null ? resolution.name() : "RAW")
+                .mode(mode.name())
+                .points(downsampler.finish().stream()
+                        .map(point -> new TimeSeriesResponse.Point(point.time(), point.value()))
+                        .toList())
+                .build();
+    }
+
+    /**
+     * 选择数据源: null = 原始数据
+     */
+    private Resolution selectResolution(DataType dataType, String deviceCode, String metric,
+                                        LocalDateTime startTime, LocalDateTime endTime) {
+        int maxRows = properties.getMaxSourceRows();
+        if (rollupRepository.countRawReadings(dataType, deviceCode, metric, startTime, endTime, maxRows + 1) <= maxRows) {
+            return null;
+        }
+        for (Resolution resolution : RESOLUTIONS) {
+            if (bucketCount(startTime, endTime, resolution) <= maxRows
+                    && rollupService.covers(dataType, resolution, startTime)) {
+                return resolution;
+            }
+        }
+        log.debug("汇总不完整，降采样曲线读取原始数据: type={}, device={}, {} ~ {}",
+                dataType, deviceCode, startTime, endTime);
+        return null;
+    }
+
+    private static long bucketCount(LocalDateTime startTime, LocalDateTime endTime, Resolution resolution) {
+        ChronoUnit unit = switch (resolution) {
+            case MINUTE -> ChronoUnit.MINUTES;
+            case HOUR -> ChronoUnit.HOURS;
+            case DAY -> ChronoUnit.DAYS;
+        };
+        return unit.between(startTime, endTime) + 1;
+    }
+}
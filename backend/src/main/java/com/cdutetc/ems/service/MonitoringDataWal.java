@@ -0,0 +1,559 @@
+package com.cdutetc.ems.service;
+
+import com.cdutetc.ems.config.BufferWalProperties;
+import com.cdutetc.ems.entity.EnvironmentDeviceData;
+import com.cdutetc.ems.entity.RadiationDeviceData;
+import com.cdutetc.ems.repository.MonitoringDataBatchWriter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * 监测数据本地预写日志（WAL）
+ *
+ * Redis不可用时（或PRIMARY模式下始终）监测数据追加写入本地分段日志，定时重放到MySQL:
+ * - 分段文件 {序号}.wal，通过FileChannel映射为MappedByteBuffer顺序追加，写满后切换到新分段
+ * - 记录格式: 长度(4) + 类型(1) + CRC32(4) + JSON；长度最后写入，进程中途退出不会留下看似完整的记录
+ * - 每replayIntervalMs刷盘一次并重放：读出最多replayBatchSize条，MonitoringDataBatchWriter写入MySQL后
+ *   推进检查点（checkpoint文件），已确认的分段立即删除
+ * - 写入MySQL前先把本批的结束位置记入检查点文件，失败或退出后按同一范围重放，批次内容不变；
+ *   批次标识（内容哈希）与数据在同一事务中记录，写入MySQL后、推进检查点前退出的批次重放时跳过
+ * - 启动时扫描已有分段（CRC校验，截断不完整的尾部记录），从检查点继续重放
+ *
+ * 刷盘前数据位于页缓存，进程崩溃不丢失；主机掉电最多丢失一个刷盘间隔的数据。
+ *
+ * @author EMS Team
+ */
+@Slf4j
+@Service
+public class MonitoringDataWal {
+
+    private static final byte RADIATION = 1;
+    private static final byte ENVIRONMENT = 2;
+
+    /**
+     * 记录头: 长度(4) + 类型(1) + CRC32(4)
+     */
+    private static final int HEADER_BYTES = 9;
+    private static final String SEGMENT_SUFFIX = ".wal";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+
+    /**
+     * WAL批次标识的来源前缀（MonitoringDataBatchWriter.batchId）
+     */
+    private static final String WAL_SCOPE = "wal:";
+
+    private final BufferWalProperties properties;
+    private final MonitoringDataBatchWriter batchWriter;
+    private final ObjectMapper objectMapper;
+
+    private final Counter radiationAppended;
+    private final Counter environmentAppended;
+    private final Counter radiationReplayed;
+    private final Counter environmentReplayed;
+
+    private final Object lock = new Object();
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private Segment active;
+    private long nextSeq = 1;
+
+    /**
+     * 重放位置（下一条未重放的记录）: 分段序号 + 分段内偏移
+     */
+    private long checkpointSeq = 1;
+    private int checkpointOffset;
+
+    /**
+     * 正在重放的批次的结束位置（写入MySQL前记录，确认后清除），0表示没有
+     */
+    private long pendingEndSeq;
+    private int pendingEndOffset;
+
+    public MonitoringDataWal(BufferWalProperties properties,
+                             MonitoringDataBatchWriter batchWriter,
+                             ObjectMapper objectMapper,
+                             MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.batchWriter = batchWriter;
+        this.objectMapper = objectMapper;
+        this.radiationAppended = appendedCounter(meterRegistry, "radiation");
+        this.environmentAppended = appendedCounter(meterRegistry, "environment");
+        this.radiationReplayed = replayedCounter(meterRegistry, "radiation");
+        this.environmentReplayed = replayedCounter(meterRegistry, "environment");
+        Gauge.builder("ems.buffer.wal.pending", this, MonitoringDataWal::pendingBytes)
+                .description("本地WAL中尚未重放到MySQL的数据量")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * 是否以WAL作为主缓冲（不使用Redis缓冲队列）
+     */
+    public boolean isPrimary() {
+        return properties.isEnabled() && properties.getMode() == BufferWalProperties.Mode.PRIMARY;
+    }
+
+    /**
+     * 启动时恢复已有分段和检查点
+     */
+    @PostConstruct
+    public void open() throws IOException {
+        Path dir = Path.of(properties.getDir());
+        if (!properties.isEnabled() || !Files.isDirectory(dir)) {
+            return;
+        }
+
+        synchronized (lock) {
+            readCheckpoint(dir);
+
+            List<Long> seqs = new ArrayList<>();
+            try (Stream<Path> files = Files.list(dir)) {
+                files.map(path -> path.getFileName().toString())
+                        .filter(name -> name.endsWith(SEGMENT_SUFFIX))
+                        .forEach(name -> seqs.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()))));
+            }
+            seqs.sort(null);
+
+            for (long seq : seqs) {
+                Path path = segmentPath(seq);
+                nextSeq = Math.max(nextSeq, seq + 1);
+                if (seq < checkpointSeq) {
+                    Files.deleteIfExists(path);
+                    continue;
+                }
+                Segment segment = Segment.open(path, seq, 0);
+                segment.recover();
+                segments.put(seq, segment);
+            }
+
+            if (!segments.isEmpty()) {
+                active = segments.lastEntry().getValue();
+                if (checkpointSeq < segments.firstKey()) {
+                    checkpointSeq = segments.firstKey();
+                    checkpointOffset = 0;
+                }
+                if (pendingEndSeq < checkpointSeq) {
+                    pendingEndSeq = 0;
+                    pendingEndOffset = 0;
+                }
+                log.warn("♻️ 本地WAL中有未重放的监测数据: 分段{}个, {}字节", segments.size(), pendingBytes());
+            } else {
+                checkpointSeq = nextSeq;
+                checkpointOffset = 0;
+                pendingEndSeq = 0;
+                pendingEndOffset = 0;
+            }
+        }
+    }
+
+    /**
+     * 追加辐射设备数据
+     *
+     * @throws UncheckedIOException 写入本地日志失败
+     */
+    public void appendRadiation(List<RadiationDeviceData> dataList) {
+        append(RADIATION, dataList);
+        radiationAppended.increment(dataList.size());
+    }
+
+    /**
+     * 追加环境设备数据
+     *
+     * @throws UncheckedIOException 写入本地日志失败
+     */
+    public void appendEnvironment(List<EnvironmentDeviceData> dataList) {
+        append(ENVIRONMENT, dataList);
+        environmentAppended.increment(dataList.size());
+    }
+
+    private void append(byte type, List<?> dataList) {
+        List<byte[]> payloads = new ArrayList<>(dataList.size());
+        try {
+            for (Object data : dataList) {
+                payloads.add(objectMapper.writeValueAsBytes(data));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("序列化监测数据失败", e);
+        }
+
+        int capacity = segmentCapacity();
+        synchronized (lock) {
+            for (byte[] payload : payloads) {
+                int size = HEADER_BYTES + payload.length;
+                if (size > capacity) {
+                    throw new IllegalArgumentException("监测数据超过WAL分段大小: " + size + " > " + capacity);
+                }
+                if (active == null || active.remaining() < size) {
+                    roll(capacity);
+                }
+                active.write(type, payload);
+            }
+        }
+    }
+
+    /**
+     * 封存当前分段，创建新分段
+     */
+    private void roll(int capacity) {
+        try {
+            if (active != null) {
+                active.seal();
+            }
+            Files.createDirectories(Path.of(properties.getDir()));
+            long seq = nextSeq++;
+            active = Segment.open(segmentPath(seq), seq, capacity);
+            segments.put(seq, active);
+            log.debug("本地WAL切换分段: {}", active.path);
+        } catch (IOException e) {
+            throw new UncheckedIOException("创建WAL分段失败", e);
+        }
+    }
+
+    /**
+     * 刷盘并把WAL中的数据重放到MySQL
+     *
+     * 执行频率: 每replayIntervalMs执行一次；每批写入成功后推进检查点，直到没有待重放数据或写入失败
+     */
+    @Scheduled(fixedDelayString = "${app.ems.buffer.wal.replay-interval-ms:1000}")
+    public void replay() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        try {
+            synchronized (lock) {
+                if (active != null) {
+                    active.buffer.force();
+                }
+            }
+            boolean more;
+            do {
+                more = replayBatch();
+            } while (more);
+        } catch (Exception e) {
+            log.error("本地WAL重放失败，稍后重试", e);
+        }
+    }
+
+    /**
+     * 重放一批记录
+     * 有未确认的批次时按其结束位置读取（与上次相同的记录），否则读取最多replayBatchSize条并先记录结束位置
+     *
+     * @return 是否可能还有待重放的记录（本批读满，或本批是上次未确认的批次）
+     */
+    private boolean replayBatch() throws IOException {
+        int batchSize = Math.max(1, properties.getReplayBatchSize());
+        List<byte[]> payloads = new ArrayList<>();
+        List<Byte> types = new ArrayList<>();
+        long endSeq;
+        int endOffset;
+        boolean pending;
+
+        synchronized (lock) {
+            pending = pendingEndSeq > 0;
+            endSeq = checkpointSeq;
+            endOffset = checkpointOffset;
+            for (Segment segment : segments.tailMap(checkpointSeq, true).values()) {
+                if (pending && segment.seq > pendingEndSeq) {
+                    break;
+                }
+                int position = segment.seq == checkpointSeq ? checkpointOffset : 0;
+                int limit = pending && segment.seq == pendingEndSeq
+                        ? Math.min(pendingEndOffset, segment.writePosition) : segment.writePosition;
+                while ((pending || payloads.size() < batchSize) && position < limit) {
+                    int length = segment.buffer.getInt(position);
+                    byte[] payload = new byte[length];
+                    segment.buffer.get(position + HEADER_BYTES, payload);
+                    types.add(segment.buffer.get(position + 4));
+                    payloads.add(payload);
+                    position += HEADER_BYTES + length;
+                }
+                endSeq = segment.seq;
+                endOffset = position;
+                if (!pending && payloads.size() >= batchSize) {
+                    break;
+                }
+            }
+            if (payloads.isEmpty()) {
+                if (pending) {
+                    // 未确认批次的记录已不存在（分段被截断）
+                    pendingEndSeq = 0;
+                    pendingEndOffset = 0;
+                    writeCheckpoint();
+                }
+                return false;
+            }
+            if (!pending) {
+                pendingEndSeq = endSeq;
+                pendingEndOffset = endOffset;
+                writeCheckpoint();
+            }
+        }
+
+        List<RadiationDeviceData> radiation = new ArrayList<>();
+        List<EnvironmentDeviceData> environment = new ArrayList<>();
+        List<byte[]> radiationPayloads = new ArrayList<>();
+        List<byte[]> environmentPayloads = new ArrayList<>();
+        for (int i = 0; i < payloads.size(); i++) {
+            try {
+                if (types.get(i) == RADIATION) {
+                    radiation.add(objectMapper.readValue(payloads.get(i), RadiationDeviceData.class));
+                    radiationPayloads.add(payloads.get(i));
+                } else if (types.get(i) == ENVIRONMENT) {
+                    environment.add(objectMapper.readValue(payloads.get(i), EnvironmentDeviceData.class));
+                    environmentPayloads.add(payloads.get(i));
+                } else {
+                    log.warn("⚠️ 丢弃无法识别的WAL记录: type={}", types.get(i));
+                }
+            } catch (IOException e) {
+                log.warn("⚠️ 丢弃无法解析的WAL记录: {}", e.getMessage());
+            }
+        }
+
+        // 写入MySQL（失败时检查点不变，下次按同一范围重放；已提交的部分按批次标识跳过）
+        if (!radiation.isEmpty() && batchWriter.insertRadiationData(radiation,
+                MonitoringDataBatchWriter.batchId(WAL_SCOPE + "radiation", radiationPayloads))
+                != MonitoringDataBatchWriter.ALREADY_APPLIED) {
+            radiationReplayed.increment(radiation.size());
+        }
+        if (!environment.isEmpty() && batchWriter.insertEnvironmentData(environment,
+                MonitoringDataBatchWriter.batchId(WAL_SCOPE + "environment", environmentPayloads))
+                != MonitoringDataBatchWriter.ALREADY_APPLIED) {
+            environmentReplayed.increment(environment.size());
+        }
+
+        synchronized (lock) {
+            checkpointSeq = endSeq;
+            checkpointOffset = endOffset;
+            pendingEndSeq = 0;
+            pendingEndOffset = 0;
+            deleteAcknowledged();
+            writeCheckpoint();
+        }
+        log.info("♻️ 本地WAL数据已重放到MySQL - 辐射: {}条, 环境: {}条", radiation.size(), environment.size());
+        return pending || payloads.size() >= batchSize;
+    }
+
+    /**
+     * 删除已全部重放的分段（包括已全部重放的当前分段，下次写入时重新创建）
+     */
+    private void deleteAcknowledged() throws IOException {
+        while (!segments.isEmpty()) {
+            Segment first = segments.firstEntry().getValue();
+            boolean acknowledged = first.seq < checkpointSeq
+                    || (first.seq == checkpointSeq && checkpointOffset >= first.writePosition);
+            if (!acknowledged) {
+                return;
+            }
+            segments.remove(first.seq);
+            first.delete();
+            if (first == active) {
+                active = null;
+            }
+            if (first.seq == checkpointSeq) {
+                checkpointSeq = segments.isEmpty() ? nextSeq : segments.firstKey();
+                checkpointOffset = 0;
+            }
+        }
+    }
+
+    private void readCheckpoint(Path dir) throws IOException {
+        Path file = dir.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(file)) {
+            return;
+        }
+        String[] parts = Files.readString(file, StandardCharsets.UTF_8).trim().split(" ");
+        checkpointSeq = Long.parseLong(parts[0]);
+        checkpointOffset = Integer.parseInt(parts[1]);
+        if (parts.length >= 4) {
+            pendingEndSeq = Long.parseLong(parts[2]);
+            pendingEndOffset = Integer.parseInt(parts[3]);
+        }
+        nextSeq = checkpointSeq;
+    }
+
+    /**
+     * 检查点先写临时文件再原子替换
+     * 格式: 检查点分段序号 检查点偏移 [未确认批次的结束分段序号 结束偏移]
+     */
+    private void writeCheckpoint() throws IOException {
+        Path dir = Path.of(properties.getDir());
+        Path temp = dir.resolve(CHECKPOINT_FILE + ".tmp");
+        String checkpoint = checkpointSeq + " " + checkpointOffset
+                + (pendingEndSeq > 0 ? " " + pendingEndSeq + " " + pendingEndOffset : "");
+        Files.writeString(temp, checkpoint, StandardCharsets.UTF_8);
+        Files.move(temp, dir.resolve(CHECKPOINT_FILE), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 待重放的数据量（字节）
+     */
+    long pendingBytes() {
+        synchronized (lock) {
+            long pending = 0;
+            for (Segment segment : segments.tailMap(checkpointSeq, true).values()) {
+                pending += segment.writePosition - (segment.seq == checkpointSeq ? checkpointOffset : 0);
+            }
+            return pending;
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        synchronized (lock) {
+            for (Segment segment : segments.values()) {
+                try {
+                    if (segment == active) {
+                        segment.buffer.force();
+                    }
+                    segment.channel.close();
+                } catch (IOException e) {
+                    log.warn("关闭WAL分段失败: {}", segment.path, e);
+                }
+            }
+            segments.clear();
+            active = null;
+        }
+    }
+
+    private Path segmentPath(long seq) {
+        return Path.of(properties.getDir()).resolve(String.format("%020d%s", seq, SEGMENT_SUFFIX));
+    }
+
+    private int segmentCapacity() {
+        return (int) Math.min(Integer.MAX_VALUE, properties.getSegmentSize().toBytes());
+    }
+
+    private static Counter appendedCounter(MeterRegistry meterRegistry, String queue) {
+        return Counter.builder("ems.buffer.wal.appended")
+                .description("写入本地WAL的监测数据条数")
+                .tag("queue", queue)
+                .register(meterRegistry);
+    }
+
+    private static Counter replayedCounter(MeterRegistry meterRegistry, String queue) {
+        return Counter.builder("ems.buffer.wal.replayed")
+                .description("从本地WAL重放到MySQL的监测数据条数")
+                .tag("queue", queue)
+                .register(meterRegistry);
+    }
+
+    /**
+     * WAL分段文件
+     */
+    private static final class Segment {
+        private final long seq;
+        private final Path path;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+
+        /**
+         * 下一条记录的写入位置（之前的记录均完整有效）
+         */
+        private int writePosition;
+
+        private Segment(long seq, Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.seq = seq;
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        /**
+         * 打开分段文件并映射到内存
+         *
+         * @param capacity 新建分段的大小，为0时按已有文件大小映射
+         */
+        private static Segment open(Path path, long seq, int capacity) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            long size = capacity > 0 ? capacity : channel.size();
+            return new Segment(seq, path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        }
+
+        private int remaining() {
+            return buffer.capacity() - writePosition;
+        }
+
+        private void write(byte type, byte[] payload) {
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+
+            int position = writePosition;
+            buffer.put(position + 4, type);
+            buffer.putInt(position + 5, (int) crc.getValue());
+            buffer.put(position + HEADER_BYTES, payload);
+            // 长度最后写入：写入中途退出时该位置仍为0，恢复时视为日志结尾
+            buffer.putInt(position, payload.length);
+
+            writePosition = position + HEADER_BYTES + payload.length;
+            if (remaining() >= 4) {
+                buffer.putInt(writePosition, 0);
+            }
+        }
+
+        /**
+         * 扫描分段，找到最后一条完整有效记录的结尾
+         */
+        private void recover() {
+            int position = 0;
+            while (buffer.capacity() - position >= HEADER_BYTES) {
+                int length = buffer.getInt(position);
+                if (length <= 0) {
+                    break;
+                }
+                if (length > buffer.capacity() - position - HEADER_BYTES) {
+                    log.warn("⚠️ WAL分段{}在偏移{}处记录不完整，已截断", path, position);
+                    break;
+                }
+                byte[] payload = new byte[length];
+                buffer.get(position + HEADER_BYTES, payload);
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if ((int) crc.getValue() != buffer.getInt(position + 5)) {
+                    log.warn("⚠️ WAL分段{}在偏移{}处校验失败，已截断", path, position);
+                    break;
+                }
+                position += HEADER_BYTES + length;
+            }
+            writePosition = position;
+            if (remaining() >= 4) {
+                buffer.putInt(writePosition, 0);
+            }
+        }
+
+        private void seal() {
+            buffer.force();
+        }
+
+        private void delete() throws IOException {
+            channel.close();
+            Files.deleteIfExists(path);
+        }
+    }
+}
@@ -2,12 +2,18 @@ package com.cdutetc.ems.service;
 
 import com.cdutetc.ems.entity.Device;
 import com.cdutetc.ems.entity.RadiationDeviceData;
+import com.cdutetc.ems.entity.DeviceDataRollup.DataType;
 import com.cdutetc.ems.repository.DeviceRepository;
+import com.cdutetc.ems.repository.MonitoringDataRollupRepository;
 import com.cdutetc.ems.repository.RadiationDeviceDataRepository;
+import com.cdutetc.ems.util.RecordCursor;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -26,8 +32,17 @@ import java.util.Optional;
 @RequiredArgsConstructor
 public class RadiationDeviceDataService {
 
+    /**
+     * 汇总指标与统计结果字段的对应关系
+     */
+    private static final Map<String, String> STATISTICS_METRICS = Map.of(
+            "cpm", "cpmStatistics"
+    );
+
     private final RadiationDeviceDataRepository radiationDeviceDataRepository;
     private final DeviceRepository deviceRepository;
+    private final MonitoringDataRollupRepository rollupRepository;
+    private final MonitoringDataRollupService rollupService;
 
     /**
      * 保存辐射监测数据（不限企业）
@@ -41,6 +56,7 @@ public class RadiationDeviceDataService {
         }
 
         RadiationDeviceData savedData = radiationDeviceDataRepository.save(data);
+        rollupRepository.applyRadiation(List.of(savedData));
         log.debug("Radiation data saved successfully with ID: {}", savedData.getId());
 
         return savedData;
@@ -61,6 +77,7 @@ public class RadiationDeviceDataService {
         }
 
         RadiationDeviceData savedData = radiationDeviceDataRepository.save(data);
+        rollupRepository.applyRadiation(List.of(savedData));
         log.debug("Radiation data saved successfully with ID: {}", savedData.getId());
 
         return savedData;
@@ -81,6 +98,7 @@ public class RadiationDeviceDataService {
         }
 
         List<RadiationDeviceData> savedData = radiationDeviceDataRepository.saveAll(dataList);
+        rollupRepository.applyRadiation(savedData);
         log.info("Batch radiation data saved successfully: {} records", savedData.size());
 
         return savedData;
@@ -129,6 +147,44 @@ public class RadiationDeviceDataService {
                 companyId, startTime, endTime, pageable);
     }
 
+    /**
+     * 根据设备编码游标分页获取数据（按记录时间、ID降序，不统计总数，深分页不变慢）
+     *
+     * @param cursor 上一页返回的位置，null = 第一页
+     */
+    @Transactional(readOnly = true)
+    public Slice<RadiationDeviceData> getDataSliceByDeviceCode(
+            String deviceCode, LocalDateTime startTime, LocalDateTime endTime, RecordCursor cursor, int size) {
+        log.debug("Getting radiation data slice for device: {} after {}", deviceCode, cursor);
+
+        RecordCursor position = cursor != null ? cursor : RecordCursor.first(endTime);
+        return radiationDeviceDataRepository.findSliceByDeviceCode(deviceCode,
+                startTime != null ? startTime : RecordCursor.EARLIEST,
+                endTime != null ? endTime : RecordCursor.LATEST,
+                position.recordTime(), position.id(), PageRequest.of(0, size));
+    }
+
+    /**
+     * 游标分页获取企业数据（按企业设备编码查询，不关联设备表）
+     *
+     * @param cursor 上一页返回的位置，null = 第一页
+     */
+    @Transactional(readOnly = true)
+    public Slice<RadiationDeviceData> getDataSlice(
+            Long companyId, LocalDateTime startTime, LocalDateTime endTime, RecordCursor cursor, int size) {
+        log.debug("Getting radiation data slice for company: {} after {}", companyId, cursor);
+
+        List<String> deviceCodes = deviceRepository.findDeviceCodesByCompanyId(companyId);
+        if (deviceCodes.isEmpty()) {
+            return new SliceImpl<>(List.of(), PageRequest.of(0, size), false);
+        }
+        RecordCursor position = cursor != null ? cursor : RecordCursor.first(endTime);
+        return radiationDeviceDataRepository.findSliceByDeviceCodes(deviceCodes,
+                startTime != null ? startTime : RecordCursor.EARLIEST,
+                endTime != null ? endTime : RecordCursor.LATEST,
+                position.recordTime(), position.id(), PageRequest.of(0, size));
+    }
+
     /**
      * 获取数据详情
      */
@@ -205,6 +261,14 @@ public class RadiationDeviceDataService {
 
         Map<String, Object> statistics = new HashMap<>();
 
+        // 从汇总表统计，只有范围两端不足一分钟的部分查询原始数据
+        if (rollupService.isEnabled()) {
+            statistics.putAll(rollupService.statistics(DataType.RADIATION,
+                    deviceRepository.findDeviceCodesByCompanyId(companyId), startTime, endTime, STATISTICS_METRICS));
+            statistics.put("deviceCount", radiationDeviceDataRepository.countDistinctDeviceCodeByCompanyId(companyId));
+            return statistics;
+        }
+
         // 总记录数
         long totalRecords;
         if (startTime != null && endTime != null) {
@@ -245,6 +309,10 @@ public class RadiationDeviceDataService {
     public Map<String, Object> getStatisticsByDeviceCode(String deviceCode, LocalDateTime startTime, LocalDateTime endTime) {
         log.debug("Getting radiation data statistics for device: {} between {} and {}", deviceCode, startTime, endTime);
 
+        if (rollupService.isEnabled()) {
+            return rollupService.statistics(DataType.RADIATION, List.of(deviceCode), startTime, endTime, STATISTICS_METRICS);
+        }
+
         Map<String, Object> statistics = new HashMap<>();
 
         // 总记录数
@@ -0,0 +1,223 @@
+package com.cdutetc.ems.service;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 时间序列流式降采样
+ *
+ * 按时间把[start, end]等分为若干桶，读数须按时间升序逐个add，finish后返回不超过points个点:
+ * - LTTB（Largest-Triangle-Three-Buckets）: 首尾两点 + 每桶一个点，选与上一个选中点、下一桶均值构成三角形面积最大的读数，
+ *   保留曲线形状；只缓存当前桶和下一桶的读数
+ * - MINMAX: 每桶保留最小值和最大值两个点（按时间先后），不丢失尖峰；每桶只保存两个点
+ *
+ * 空桶不输出点。
+ *
+ * @author EMS Team
+ */
+public abstract class SeriesDownsampler {
+
+    /**
+     * 降采样算法
+     */
+    public enum Mode {
+        LTTB,
+        MINMAX;
+
+        public static Mode of(String name) {
+            try {
+                return valueOf(name.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("不支持的降采样算法: " + name);
+            }
+        }
+    }
+
+    /**
+     * 降采样结果中的一个点
+     */
+    public record Point(LocalDateTime time, double value) {
+    }
+
+    private final LocalDateTime start;
+    private final double bucketWidth;
+    private final int bucketCount;
+
+    protected final List<Point> output = new ArrayList<>();
+
+    private SeriesDownsampler(LocalDateTime start, LocalDateTime end, int bucketCount) {
+        this.start = start;
+        this.bucketCount = Math.max(1, bucketCount);
+        this.bucketWidth = Math.max(1, ChronoUnit.MILLIS.between(start, end) + 1) / (double) this.bucketCount;
+    }
+
+    /**
+     * @param points 最多返回的点数（LTTB至少3个，MINMAX至少2个）
+     */
+    public static SeriesDownsampler create(Mode mode, LocalDateTime start, LocalDateTime end, int points) {
+        return switch (mode) {
+            case LTTB -> new Lttb(start, end, Math.max(3, points));
+            case MINMAX -> new MinMax(start, end, Math.max(2, points));
+        };
+    }
+
+    /**
+     * 添加一个读数（按时间升序）
+     */
+    public abstract void add(LocalDateTime time, double value);
+
+    /**
+     * 处理完剩余的桶，返回降采样结果
+     */
+    public abstract List<Point> finish();
+
+    protected final double offset(LocalDateTime time) {
+        return ChronoUnit.MILLIS.between(start, time);
+    }
+
+    protected final int bucketIndex(double offset) {
+        return (int) Math.max(0, Math.min(bucketCount - 1, Math.floor(offset / bucketWidth)));
+    }
+
+    private record Sample(LocalDateTime time, double x, double y) {
+
+        Point toPoint() {
+            return new Point(time, y);
+        }
+    }
+
+    private static final class Lttb extends SeriesDownsampler {
+
+        private Sample first;
+        private Sample previous;
+        private List<Sample> pending;
+        private List<Sample> current;
+        private int currentIndex;
+
+        Lttb(LocalDateTime start, LocalDateTime end, int points) {
+            super(start, end, points - 2);
+        }
+
+        @Override
+        public void add(LocalDateTime time, double value) {
+            Sample sample = new Sample(time, offset(time), value);
+            if (first == null) {
+                first = sample;
+                previous = sample;
+                output.add(sample.toPoint());
+                return;
+            }
+            int index = bucketIndex(sample.x());
+            if (current == null) {
+                current = new ArrayList<>();
+                currentIndex = index;
+            } else if (index > currentIndex) {
+                if (pending != null) {
+                    select(pending, average(current));
+                }
+                pending = current;
+                current = new ArrayList<>();
+                currentIndex = index;
+            }
+            current.add(sample);
+        }
+
+        @Override
+        public List<Point> finish() {
+            if (current == null) {
+                return output;
+            }
+            // 最后一个读数单独作为终点
+            Sample last = current.remove(current.size() - 1);
+            if (pending != null) {
+                select(pending, current.isEmpty() ? last : average(current));
+            }
+            if (!current.isEmpty()) {
+                select(current, last);
+            }
+            output.add(last.toPoint());
+            return output;
+        }
+
+        /**
+         * 选出与previous、next构成三角形面积最大的读数
+         */
+        private void select(List<Sample> bucket, Sample next) {
+            Sample selected = null;
+            double maxArea = -1;
+            for (Sample sample : bucket) {
+                double area = Math.abs((previous.x() - next.x()) * (sample.y() - previous.y())
+                        - (previous.x() - sample.x()) * (next.y() - previous.y()));
+                if (area > maxArea) {
+                    maxArea = area;
+                    selected = sample;
+                }
+            }
+            output.add(selected.toPoint());
+            previous = selected;
+        }
+
+        private static Sample average(List<Sample> bucket) {
+            double x = 0;
+            double y = 0;
+            for (Sample sample : bucket) {
+                x += sample.x();
+                y += sample.y();
+            }
+            return new Sample(null, x / bucket.size(), y / bucket.size());
+        }
+    }
+
+    private static final class MinMax extends SeriesDownsampler {
+
+        private Sample min;
+        private Sample max;
+        private int currentIndex = -1;
+
+        MinMax(LocalDateTime start, LocalDateTime end, int points) {
+            super(start, end, points / 2);
+        }
+
+        @Override
+        public void add(LocalDateTime time, double value) {
+            Sample sample = new Sample(time, offset(time), value);
+            int index = bucketIndex(sample.x());
+            if (index > currentIndex) {
+                flush();
+                currentIndex = index;
+            }
+            if (min == null || value < min.y()) {
+                min = sample;
+            }
+            if (max == null || value > max.y()) {
+                max = sample;
+            }
+        }
+
+        @Override
+        public List<Point> finish() {
+            flush();
+            return output;
+        }
+
+        private void flush() {
+            if (min == null) {
+                return;
+            }
+            if (min == max) {
+                output.add(min.toPoint());
+            } else if (min.x() <= max.x()) {
+                output.add(min.toPoint());
+                output.add(max.toPoint());
+            } else {
+                output.add(max.toPoint());
+                output.add(min.toPoint());
+            }
+            min = null;
+            max = null;
+        }
+    }
+}
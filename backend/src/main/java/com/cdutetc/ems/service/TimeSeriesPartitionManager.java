@@ -0,0 +1,349 @@
+package com.cdutetc.ems.service;
+
+import com.cdutetc.ems.config.TimeSeriesPartitionProperties;
+import com.cdutetc.ems.config.TimeSeriesPartitionProperties.Granularity;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.StringJoiner;
+import java.util.function.Supplier;
+
+/**
+ * 时序数据表分区管理
+ *
+ * 辐射/环境监测数据表按record_time做RANGE COLUMNS分区（仅MySQL/MariaDB，其他数据库不做处理）:
+ * - 未分区的表转换为分区表：主键改为(id, record_time)（分区列必须包含在每个唯一键中），
+ *   按已有数据的最早月份/日期建分区，最后一个分区pmax为MAXVALUE兜底
+ * - 每天提前创建当前周期之后premake个分区（拆分pmax，pmax为空时只修改元数据）
+ * - 过期数据由BackupService导出后整分区DROP，代替逐行DELETE
+ *
+ * 带record_time范围条件的查询（按设备查历史、统计、导出）只扫描命中的分区。
+ *
+ * 集群部署时每个节点都会触发维护：分区变更在MySQL命名锁（GET_LOCK）内执行，同一时刻只有一个节点修改分区，
+ * 其他节点拿不到锁时跳过本次维护；BackupService导出并删除分区时持有同一把锁。
+ *
+ * @author EMS Team
+ */
+@Slf4j
+@Service
+public class TimeSeriesPartitionManager {
+
+    static final String TIME_COLUMN = "record_time";
+    static final String CATCH_ALL = "pmax";
+
+    private static final String PARTITIONS_SQL = "SELECT PARTITION_NAME, PARTITION_DESCRIPTION "
+            + "FROM information_schema.PARTITIONS "
+            + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND PARTITION_NAME IS NOT NULL "
+            + "ORDER BY PARTITION_ORDINAL_POSITION";
+    private static final DateTimeFormatter BOUND_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final DateTimeFormatter MONTH_NAME = DateTimeFormatter.ofPattern("'p'yyyyMM");
+    private static final DateTimeFormatter DAY_NAME = DateTimeFormatter.ofPattern("'p'yyyyMMdd");
+
+    // 命名锁按库区分，同一MySQL实例上的多个库互不影响
+    private static final String LOCK_NAME = "CONCAT(DATABASE(), '.ems_partition_maintenance')";
+    private static final String GET_LOCK_SQL = "SELECT GET_LOCK(" + LOCK_NAME + ", ?)";
+    private static final String RELEASE_LOCK_SQL = "SELECT RELEASE_LOCK(" + LOCK_NAME + ")";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TimeSeriesPartitionProperties properties;
+
+    private volatile Boolean mySql;
+
+    public TimeSeriesPartitionManager(JdbcTemplate jdbcTemplate, TimeSeriesPartitionProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.properties = properties;
+    }
+
+    /**
+     * 启动时转换新建的空表、补齐分区（Hibernate ddl-auto已建表）
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        maintain();
+    }
+
+    /**
+     * 每天提前创建分区
+     */
+    @Scheduled(cron = "${app.ems.partition.cron:0 10 0 * * *}")
+    public void maintain() {
+        maintain(LocalDateTime.now());
+    }
+
+    void maintain(LocalDateTime now) {
+        if (!properties.isEnabled() || !isMySql()) {
+            return;
+        }
+        Optional<Boolean> maintained = withMaintenanceLock(0, () -> {
+            for (String table : properties.getTables()) {
+                try {
+                    maintainTable(table, now);
+                } catch (Exception e) {
+                    log.error("❌ 维护时序表分区失败: {}", table, e);
+                }
+            }
+            return true;
+        });
+        if (maintained.isEmpty()) {
+            log.info("其他节点正在维护时序表分区，跳过本次维护");
+        }
+    }
+
+    /**
+     * 持有分区维护锁执行操作（MySQL命名锁，绑定在执行期间占用的连接上，其他数据库直接执行）
+     *
+     * @param waitSeconds 等待锁的秒数，0表示不等待
+     * @return 操作结果，未获取到锁时返回空
+     */
+    public <T> Optional<T> withMaintenanceLock(int waitSeconds, Supplier<T> action) {
+        if (!isMySql()) {
+            return Optional.ofNullable(action.get());
+        }
+        return jdbcTemplate.execute((ConnectionCallback<Optional<T>>) connection -> {
+            if (queryInt(connection, GET_LOCK_SQL, waitSeconds) != 1) {
+                return Optional.empty();
+            }
+            try {
+                return Optional.ofNullable(action.get());
+            } finally {
+                queryInt(connection, RELEASE_LOCK_SQL);
+            }
+        });
+    }
+
+    /**
+     * 表是否已分区
+     */
+    public boolean isPartitioned(String table) {
+        return isMySql() && !listPartitions(table).isEmpty();
+    }
+
+    /**
+     * 截止时间之前最近的分区边界：边界之前的分区可以整体删除
+     *
+     * @return 分区边界，没有完整早于截止时间的分区时返回null
+     */
+    public LocalDateTime retentionBoundary(String table, LocalDateTime cutoff) {
+        LocalDateTime boundary = null;
+        for (Partition partition : listPartitions(table)) {
+            if (partition.upperBound() != null && !partition.upperBound().isAfter(cutoff)) {
+                boundary = partition.upperBound();
+            }
+        }
+        return boundary;
+    }
+
+    /**
+     * 上界不晚于boundary的分区中的记录数
+     */
+    public int countPartitionsBefore(String table, LocalDateTime boundary) {
+        List<String> expired = expiredPartitions(listPartitions(table), boundary);
+        return expired.isEmpty() ? 0 : countPartitions(table, String.join(", ", expired));
+    }
+
+    /**
+     * 删除上界不晚于boundary的分区（即record_time < boundary的全部数据）
+     * 删除前重新统计记录数，与导出时的记录数不一致（导出后有补传数据写入）时放弃删除，避免丢失未导出的数据
+     *
+     * @param expectedCount 已导出的记录数
+     * @return 删除的记录数
+     * @throws IllegalStateException 记录数与导出时不一致
+     */
+    public int dropPartitionsBefore(String table, LocalDateTime boundary, int expectedCount) {
+        List<String> expired = expiredPartitions(listPartitions(table), boundary);
+        if (expired.isEmpty()) {
+            return 0;
+        }
+        String names = String.join(", ", expired);
+        int count = countPartitions(table, names);
+        if (count != expectedCount) {
+            throw new IllegalStateException("表 " + table + " 的过期分区在导出后有数据变化（导出" + expectedCount
+                    + "条，当前" + count + "条），放弃删除分区: " + names);
+        }
+        jdbcTemplate.execute("ALTER TABLE " + table + " DROP PARTITION " + names);
+        log.info("🗑️ 删除表 {} 的过期分区: {}, 记录数: {}", table, names, count);
+        return count;
+    }
+
+    private int countPartitions(String table, String names) {
+        Integer count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM " + table + " PARTITION (" + names + ")", Integer.class);
+        return count != null ? count : 0;
+    }
+
+    private void maintainTable(String table, LocalDateTime now) {
+        Granularity granularity = properties.getGranularity();
+        LocalDateTime horizon = periodStart(now, granularity);
+        for (int i = 0; i <= properties.getPremake(); i++) {
+            horizon = nextPeriod(horizon, granularity);
+        }
+
+        List<Partition> partitions = listPartitions(table);
+        if (partitions.isEmpty()) {
+            if (hasRows(table) && !properties.isConvertExisting()) {
+                log.warn("⚠️ 时序表 {} 未分区且已有数据，跳过自动转换（需在维护窗口开启app.ems.partition.convert-existing）", table);
+                return;
+            }
+            LocalDateTime earliest = jdbcTemplate.queryForObject(
+                    "SELECT MIN(" + TIME_COLUMN + ") FROM " + table, LocalDateTime.class);
+            LocalDateTime from = periodStart(earliest != null && earliest.isBefore(now) ? earliest : now, granularity);
+            jdbcTemplate.execute(partitionTableSql(table, from, horizon, granularity));
+            log.info("✅ 时序表 {} 已转换为分区表: {} ~ {}", table, from, horizon);
+            return;
+        }
+
+        LocalDateTime last = lastBound(partitions);
+        if (last != null && last.isBefore(horizon)) {
+            jdbcTemplate.execute(reorganizeSql(table, last, horizon, granularity));
+            log.info("✅ 时序表 {} 新建分区: {} ~ {}", table, last, horizon);
+        }
+    }
+
+    private boolean hasRows(String table) {
+        Integer rows = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM (SELECT 1 FROM " + table + " LIMIT 1) probe", Integer.class);
+        return rows != null && rows > 0;
+    }
+
+    private List<Partition> listPartitions(String table) {
+        return jdbcTemplate.query(PARTITIONS_SQL, (rs, rowNum) -> new Partition(
+                rs.getString("PARTITION_NAME"), parseBound(rs.getString("PARTITION_DESCRIPTION"))), table);
+    }
+
+    private static int queryInt(Connection connection, String sql, Object... args) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < args.length; i++) {
+                statement.setObject(i + 1, args[i]);
+            }
+            try (ResultSet rs = statement.executeQuery()) {
+                // GET_LOCK出错时返回NULL，getInt为0
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    private boolean isMySql() {
+        Boolean cached = mySql;
+        if (cached == null) {
+            try {
+                String product = jdbcTemplate.execute(
+                        (ConnectionCallback<String>) connection -> connection.getMetaData().getDatabaseProductName());
+                cached = product != null && (product.contains("MySQL") || product.contains("MariaDB"));
+                mySql = cached;
+            } catch (Exception e) {
+                log.warn("⚠️ 无法识别数据库类型，跳过分区维护: {}", e.getMessage());
+                return false;
+            }
+        }
+        return cached;
+    }
+
+    /**
+     * 把未分区的表转换为分区表，分区覆盖[from, to)，另加pmax
+     */
+    public static String partitionTableSql(String table, LocalDateTime from, LocalDateTime to, Granularity granularity) {
+        StringJoiner partitions = new StringJoiner(", ", " (", ")");
+        rangePartitions(from, to, granularity).forEach(partitions::add);
+        partitions.add(catchAll());
+        return "ALTER TABLE " + table + " DROP PRIMARY KEY, ADD PRIMARY KEY (id, " + TIME_COLUMN + ") "
+                + "PARTITION BY RANGE COLUMNS(" + TIME_COLUMN + ")" + partitions;
+    }
+
+    /**
+     * 从pmax拆出[from, to)的分区
+     */
+    static String reorganizeSql(String table, LocalDateTime from, LocalDateTime to, Granularity granularity) {
+        StringJoiner partitions = new StringJoiner(", ", " (", ")");
+        rangePartitions(from, to, granularity).forEach(partitions::add);
+        partitions.add(catchAll());
+        return "ALTER TABLE " + table + " REORGANIZE PARTITION " + CATCH_ALL + " INTO" + partitions;
+    }
+
+    /**
+     * 上界不晚于boundary的分区名
+     */
+    static List<String> expiredPartitions(List<Partition> partitions, LocalDateTime boundary) {
+        List<String> expired = new ArrayList<>();
+        for (Partition partition : partitions) {
+            if (partition.upperBound() != null && !partition.upperBound().isAfter(boundary)) {
+                expired.add(partition.name());
+            }
+        }
+        return expired;
+    }
+
+    static LocalDateTime periodStart(LocalDateTime time, Granularity granularity) {
+        LocalDateTime day = time.truncatedTo(ChronoUnit.DAYS);
+        return granularity == Granularity.MONTH ? day.withDayOfMonth(1) : day;
+    }
+
+    static LocalDateTime nextPeriod(LocalDateTime start, Granularity granularity) {
+        return granularity == Granularity.MONTH ? start.plusMonths(1) : start.plusDays(1);
+    }
+
+    static String partitionName(LocalDateTime start, Granularity granularity) {
+        return start.format(granularity == Granularity.MONTH ? MONTH_NAME : DAY_NAME);
+    }
+
+    /**
+     * [from, to)范围内按粒度划分的分区定义；from不在周期起点时（粒度调整过）第一个分区到下一个周期起点为止
+     */
+    private static List<String> rangePartitions(LocalDateTime from, LocalDateTime to, Granularity granularity) {
+        List<String> partitions = new ArrayList<>();
+        LocalDateTime lower = from;
+        while (lower.isBefore(to)) {
+            LocalDateTime start = periodStart(lower, granularity);
+            LocalDateTime upper = nextPeriod(start, granularity);
+            partitions.add("PARTITION " + partitionName(start, granularity)
+                    + " VALUES LESS THAN ('" + upper.format(BOUND_FORMAT) + "')");
+            lower = upper;
+        }
+        return partitions;
+    }
+
+    private static String catchAll() {
+        return "PARTITION " + CATCH_ALL + " VALUES LESS THAN (MAXVALUE)";
+    }
+
+    private static LocalDateTime lastBound(List<Partition> partitions) {
+        LocalDateTime last = null;
+        for (Partition partition : partitions) {
+            if (partition.upperBound() != null) {
+                last = partition.upperBound();
+            }
+        }
+        return last;
+    }
+
+    /**
+     * 解析information_schema中的分区上界（'2025-02-01 00:00:00'或MAXVALUE）
+     */
+    static LocalDateTime parseBound(String description) {
+        if (description == null || "MAXVALUE".equalsIgnoreCase(description.trim())) {
+            return null;
+        }
+        String value = description.replace("'", "").trim();
+        return LocalDateTime.parse(value.length() > 19 ? value.substring(0, 19) : value, BOUND_FORMAT);
+    }
+
+    /**
+     * 分区名和上界（MAXVALUE为null）
+     */
+    record Partition(String name, LocalDateTime upperBound) {
+    }
+}
@@ -0,0 +1,50 @@
+package com.cdutetc.ems.util;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * 监测数据游标分页的位置: 上一页最后一条的(recordTime, id)
+ *
+ * 按(record_time DESC, id DESC)排序时，下一页为 record_time < recordTime OR (record_time = recordTime AND id < id)，
+ * 走(device_code, record_time)索引定位，不随页数变慢。
+ * 对外编码为URL安全的Base64字符串，客户端原样传回。
+ *
+ * @author EMS Team
+ */
+public record RecordCursor(LocalDateTime recordTime, Long id) {
+
+    /**
+     * 未指定时间范围时使用的起止时间（MySQL DATETIME的取值范围内）
+     */
+    public static final LocalDateTime EARLIEST = LocalDateTime.of(1970, 1, 1, 0, 0);
+    public static final LocalDateTime LATEST = LocalDateTime.of(9999, 12, 31, 23, 59, 59);
+
+    /**
+     * 第一页: endTime（含）之前的全部数据，endTime为null时不限
+     */
+    public static RecordCursor first(LocalDateTime endTime) {
+        return new RecordCursor(endTime != null ? endTime : LATEST, Long.MAX_VALUE);
+    }
+
+    public String encode() {
+        String value = recordTime + "," + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws IllegalArgumentException 游标格式不正确
+     */
+    public static RecordCursor decode(String cursor) {
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = value.lastIndexOf(',');
+            return new RecordCursor(LocalDateTime.parse(value.substring(0, separator)),
+                    Long.parseLong(value.substring(separator + 1)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeParseException e) {
+            throw new IllegalArgumentException("无效的分页游标: " + cursor);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.cdutetc.ems.benchmark;
+
+import com.cdutetc.ems.config.CpmConversionProperties;
+import com.cdutetc.ems.entity.EnvironmentDeviceData;
+import com.cdutetc.ems.entity.RadiationDeviceData;
+import com.cdutetc.ems.mqtt.DevicePayloadDecoder;
+import com.cdutetc.ems.mqtt.RadiationBinaryFormat;
+import com.cdutetc.ems.util.JsonParserUtil;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MQTT消息解析基准测试
+ *
+ * 对比两种解析路径（样例消息取自JsonParserUtilTest）:
+ * 1. legacy: new String → ObjectMapper.readTree → JsonParserUtil.parseX（旧MqttMessageListener实现）
+ * 2. streaming: DevicePayloadDecoder直接在byte[]上流式解析
+ * 3. binary: 辐射设备二进制格式（RadiationBinaryFormat，与RADIATION_JSON内容相同）
+ *
+ * 运行方式（需先执行 mvn test-compile）:
+ * mvn exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.cdutetc.ems.benchmark.PayloadDecodeBenchmark \
+ *     -Dexec.args="PayloadDecodeBenchmark -f 0"
+ * （exec:java的类路径不会传给JMH子进程，需用-f 0在当前JVM中运行）
+ *
+ * 观察每次解析的分配字节数:
+ * ... -Dexec.args="PayloadDecodeBenchmark -f 0 -prof gc"
+ *
+ * @author EMS Team
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PayloadDecodeBenchmark {
+
+    static final String RADIATION_JSON = "{\"src\":1,\"msgtype\":1,\"CPM\":123.5,\"Batvolt\":3989,"
+            + "\"time\":\"2025/01/15 14:30:45\",\"trigger\":1,\"multi\":1,\"way\":1,"
+            + "\"BDS\":{\"longitude\":\"103°59'\",\"latitude\":\"30°33'\",\"UTC\":\"14:30:45\",\"useful\":1},"
+            + "\"LBS\":{\"longitude\":\"103.98\",\"latitude\":\"30.55\"}}";
+
+    static final String ENVIRONMENT_JSON = "{\"src\":1,\"CPM\":4,\"temperature\":10.5,\"wetness\":95.0,"
+            + "\"windspeed\":0.2,\"total\":144.1,\"battery\":11.9}";
+
+    private byte[] radiationPayload;
+    private byte[] radiationBinaryPayload;
+    private byte[] environmentPayload;
+    private ObjectMapper objectMapper;
+    private CpmConversionProperties cpmProperties;
+    private DevicePayloadDecoder decoder;
+
+    @Setup
+    public void setUp() {
+        radiationPayload = RADIATION_JSON.getBytes(StandardCharsets.UTF_8);
+        environmentPayload = ENVIRONMENT_JSON.getBytes(StandardCharsets.UTF_8);
+        radiationBinaryPayload = RadiationBinaryFormat.Frame.builder()
+                .src(1).msgtype(1).trigger(1).multi(1).way(1)
+                .batvoltMv(3989).cpm(123.5f).epochSeconds(1736922645L)
+                .gpsType(RadiationBinaryFormat.GPS_BDS)
+                .longitudeMicros(103_983_333).latitudeMicros(30_550_000).utcSecondOfDay(52245)
+                .build().toBytes();
+        objectMapper = new ObjectMapper();
+        cpmProperties = new CpmConversionProperties();
+        decoder = new DevicePayloadDecoder(cpmProperties);
+    }
+
+    @Benchmark
+    public RadiationDeviceData radiationLegacy() throws Exception {
+        return legacyDecodeRadiation(objectMapper, cpmProperties, radiationPayload);
+    }
+
+    @Benchmark
+    public RadiationDeviceData radiationStreaming() throws Exception {
+        RadiationDeviceData data = new RadiationDeviceData();
+        decoder.decodeRadiation(radiationPayload, data);
+        return data;
+    }
+
+    @Benchmark
+    public RadiationDeviceData radiationBinary() throws Exception {
+        RadiationDeviceData data = new RadiationDeviceData();
+        decoder.decodeRadiationBinary(radiationBinaryPayload, data);
+        return data;
+    }
+
+    @Benchmark
+    public EnvironmentDeviceData environmentLegacy() throws Exception {
+        return legacyDecodeEnvironment(objectMapper, cpmProperties, environmentPayload);
+    }
+
+    @Benchmark
+    public EnvironmentDeviceData environmentStreaming() throws Exception {
+        EnvironmentDeviceData data = new EnvironmentDeviceData();
+        decoder.decodeEnvironment(environmentPayload, data);
+        return data;
+    }
+
+    /**
+     * 旧版MqttMessageListener的辐射数据解析流程
+     */
+    static RadiationDeviceData legacyDecodeRadiation(ObjectMapper objectMapper, CpmConversionProperties cpm,
+                                                     byte[] bytes) throws Exception {
+        RadiationDeviceData data = new RadiationDeviceData();
+        JsonNode rootNode = objectMapper.readTree(new String(bytes));
+
+        JsonParserUtil.parseInt(rootNode, "src").ifPresent(data::setSrc);
+        JsonParserUtil.parseInt(rootNode, "msgtype").ifPresent(data::setMsgtype);
+        JsonParserUtil.parseDouble(rootNode, "CPM").ifPresent(rawCpm -> data.setCpm(
+                cpm.isEnabled() ? rawCpm / cpm.getRadiationConversionFactor() : rawCpm));
+        JsonParserUtil.parseDouble(rootNode, "Batvolt").ifPresent(rawBatvolt -> data.setBatvolt(rawBatvolt / 1000.0));
+        JsonParserUtil.parseString(rootNode, "time").ifPresent(data::setTime);
+        JsonParserUtil.parseInt(rootNode, "trigger").ifPresent(data::setDataTrigger);
+        JsonParserUtil.parseInt(rootNode, "multi").ifPresent(data::setMulti);
+        JsonParserUtil.parseInt(rootNode, "way").ifPresent(data::setWay);
+
+        final String[] bdsData = new String[3];
+        final Integer[] bdsUseful = {0};
+        final String[] lbsData = new String[2];
+        JsonParserUtil.parseObject(rootNode, "BDS").ifPresent(bds -> {
+            JsonParserUtil.parseString(bds, "longitude").ifPresent(v -> bdsData[0] = v);
+            JsonParserUtil.parseString(bds, "latitude").ifPresent(v -> bdsData[1] = v);
+            JsonParserUtil.parseString(bds, "UTC").ifPresent(v -> bdsData[2] = v);
+            JsonParserUtil.parseInt(bds, "useful").ifPresent(v -> bdsUseful[0] = v);
+        });
+        JsonParserUtil.parseObject(rootNode, "LBS").ifPresent(lbs -> {
+            JsonParserUtil.parseString(lbs, "longitude").ifPresent(v -> lbsData[0] = v);
+            JsonParserUtil.parseString(lbs, "latitude").ifPresent(v -> lbsData[1] = v);
+        });
+        if (bdsUseful[0] != null && bdsUseful[0] == 1 && bdsData[0] != null && bdsData[1] != null) {
+            data.setGpsType("BDS");
+            data.setGpsLongitude(bdsData[0]);
+            data.setGpsLatitude(bdsData[1]);
+            data.setGpsUtc(bdsData[2]);
+        } else if (lbsData[0] != null && lbsData[1] != null) {
+            data.setGpsType("LBS");
+            data.setGpsLongitude(lbsData[0]);
+            data.setGpsLatitude(lbsData[1]);
+        }
+        return data;
+    }
+
+    /**
+     * 旧版MqttMessageListener的环境数据解析流程
+     */
+    static EnvironmentDeviceData legacyDecodeEnvironment(ObjectMapper objectMapper, CpmConversionProperties cpm,
+                                                         byte[] bytes) throws Exception {
+        EnvironmentDeviceData data = new EnvironmentDeviceData();
+        JsonNode rootNode = objectMapper.readTree(new String(bytes));
+
+        JsonParserUtil.parseInt(rootNode, "src").ifPresent(data::setSrc);
+        JsonParserUtil.parseDouble(rootNode, "CPM").ifPresent(rawCpm -> data.setCpm(
+                cpm.isEnabled() ? rawCpm / cpm.getEnvironmentConversionFactor() : rawCpm));
+        JsonParserUtil.parseDouble(rootNode, "temperature").ifPresent(data::setTemperature);
+        JsonParserUtil.parseDouble(rootNode, "wetness").ifPresent(data::setWetness);
+        JsonParserUtil.parseDouble(rootNode, "windspeed").ifPresent(data::setWindspeed);
+        JsonParserUtil.parseDouble(rootNode, "total").ifPresent(data::setTotal);
+        JsonParserUtil.parseDouble(rootNode, "battery").ifPresent(data::setBattery);
+        return data;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Main.main(args.length > 0 ? args : new String[]{PayloadDecodeBenchmark.class.getSimpleName()});
+    }
+}
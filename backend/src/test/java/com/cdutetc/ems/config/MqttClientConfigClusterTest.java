@@ -0,0 +1,192 @@
+package com.cdutetc.ems.config;
+
+import com.hivemq.embedded.EmbeddedHiveMQ;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MqttClientConfig集群订阅测试（嵌入式HiveMQ CE Broker）
+ *
+ * 测试目标:
+ * 1. 多节点、多连接的客户端ID互不冲突
+ * 2. 共享订阅下每条消息只被一个连接接收，并分摊到多个节点
+ * 3. 未启用共享订阅时只建立1个连接
+ * 4. 持久会话必须显式配置节点标识，不回退到主机名或随机值
+ *
+ * @author EMS Team
+ */
+class MqttClientConfigClusterTest {
+
+    @TempDir
+    Path brokerDir;
+
+    private EmbeddedHiveMQ broker;
+    private int port;
+    private final List<MqttClientConfig> nodes = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        Path configDir = Files.createDirectories(brokerDir.resolve("conf"));
+        Files.writeString(configDir.resolve("config.xml"), """
+                <hivemq>
+                    <listeners>
+                        <tcp-listener>
+                            <port>%d</port>
+                            <bind-address>127.0.0.1</bind-address>
+                        </tcp-listener>
+                    </listeners>
+                    <persistence>
+                        <mode>in-memory</mode>
+                    </persistence>
+                    <anonymous-usage-statistics>
+                        <enabled>false</enabled>
+                    </anonymous-usage-statistics>
+                </hivemq>
+                """.formatted(port));
+
+        broker = EmbeddedHiveMQ.builder()
+                .withConfigurationFolder(configDir)
+                .withDataFolder(Files.createDirectories(brokerDir.resolve("data")))
+                .withExtensionsFolder(Files.createDirectories(brokerDir.resolve("extensions")))
+                .build();
+        broker.start().get(30, TimeUnit.SECONDS);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        nodes.forEach(MqttClientConfig::stop);
+        if (broker != null) {
+            broker.stop().get(30, TimeUnit.SECONDS);
+            broker.close();
+        }
+    }
+
+    @Test
+    void testSharedSubscriptionBalancesAcrossNodes() throws Exception {
+        AtomicInteger node1Count = new AtomicInteger();
+        AtomicInteger node2Count = new AtomicInteger();
+        MqttClientConfig node1 = startNode("node-1", 2, true, node1Count);
+        MqttClientConfig node2 = startNode("node-2", 2, true, node2Count);
+
+        Set<String> clientIds = new HashSet<>();
+        node1.getMqttClients().forEach(c -> clientIds.add(c.getClientId()));
+        node2.getMqttClients().forEach(c -> clientIds.add(c.getClientId()));
+        assertEquals(Set.of("ems-test-node-1-0", "ems-test-node-1-1", "ems-test-node-2-0", "ems-test-node-2-1"),
+                clientIds);
+
+        int total = 200;
+        publish(total);
+
+        assertTrue(waitFor(() -> node1Count.get() + node2Count.get() >= total), "所有消息应被接收");
+        Thread.sleep(200);
+        assertEquals(total, node1Count.get() + node2Count.get(), "共享订阅下每条消息只应被接收一次");
+        assertTrue(node1Count.get() > 0 && node2Count.get() > 0, "消息应分摊到两个节点");
+    }
+
+    @Test
+    void testWithoutSharedSubscriptionSingleConnection() throws Exception {
+        AtomicInteger received = new AtomicInteger();
+        MqttClientConfig node = startNode("node-1", 3, false, received);
+
+        assertEquals(1, node.getMqttClients().size());
+
+        publish(10);
+        assertTrue(waitFor(() -> received.get() >= 10));
+        Thread.sleep(200);
+        assertEquals(10, received.get());
+    }
+
+    @Test
+    void testPersistentSessionRequiresNodeId() {
+        MqttConfig config = new MqttConfig();
+        config.setCleanSession(false);
+
+        assertThrows(IllegalStateException.class, config::validate);
+        assertThrows(IllegalStateException.class, config::resolveNodeId);
+
+        config.setNodeId("node-1");
+        config.validate();
+        assertEquals("node-1", config.resolveNodeId());
+
+        MqttConfig cleanSession = new MqttConfig();
+        cleanSession.validate();
+        assertFalse(cleanSession.resolveNodeId().isBlank(), "清除会话可回退到主机名");
+    }
+
+    private MqttClientConfig startNode(String nodeId, int connections, boolean shared,
+                                       AtomicInteger counter) throws Exception {
+        MqttConfig config = new MqttConfig();
+        config.setHost("127.0.0.1");
+        config.setPort(port);
+        config.setClientId("ems-test");
+        config.setNodeId(nodeId);
+        config.setConnections(connections);
+        config.setAutoReconnect(false);
+        config.setManualAck(false);
+        config.getSharedSubscription().setEnabled(shared);
+
+        MqttClientConfig node = new MqttClientConfig(config, client -> new MqttCallback() {
+            @Override
+            public void connectionLost(Throwable cause) {
+            }
+
+            @Override
+            public void messageArrived(String topic, MqttMessage message) {
+                counter.incrementAndGet();
+            }
+
+            @Override
+            public void deliveryComplete(IMqttDeliveryToken token) {
+            }
+        });
+        nodes.add(node);
+        node.start();
+        node.initializeMqttClient();
+        return node;
+    }
+
+    private void publish(int count) throws Exception {
+        MqttClient publisher = new MqttClient("tcp://127.0.0.1:" + port, "device-simulator", new MemoryPersistence());
+        publisher.connect();
+        for (int i = 0; i < count; i++) {
+            String topic = "ems/device/RAD" + (i % 20) + "/data/RADIATION";
+            publisher.publish(topic, ("{\"CPM\":" + i + "}").getBytes(StandardCharsets.UTF_8), 1, false);
+        }
+        publisher.disconnect();
+        publisher.close();
+    }
+
+    private boolean waitFor(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (System.nanoTime() < deadline) {
+            if (condition.getAsBoolean()) {
+                return true;
+            }
+            Thread.sleep(20);
+        }
+        return false;
+    }
+}
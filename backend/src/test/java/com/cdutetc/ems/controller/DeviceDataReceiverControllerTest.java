@@ -4,6 +4,7 @@ import com.cdutetc.ems.BaseIntegrationTest;
 import com.cdutetc.ems.entity.Company;
 import com.cdutetc.ems.entity.Device;
 import com.cdutetc.ems.entity.enums.CompanyStatus;
+import com.cdutetc.ems.entity.enums.DeviceActivationStatus;
 import com.cdutetc.ems.entity.enums.DeviceType;
 import com.cdutetc.ems.repository.CompanyRepository;
 import com.cdutetc.ems.repository.DeviceRepository;
@@ -44,10 +45,12 @@ class DeviceDataReceiverControllerTest extends BaseIntegrationTest {
 
         // 创建测试辐射设备
         radiationDevice = TestDataBuilder.buildTestRadiationDevice(testCompany.getId());
+        radiationDevice.setActivationStatus(DeviceActivationStatus.ACTIVE);
         radiationDevice = deviceRepository.save(radiationDevice);
 
         // 创建测试环境设备
         environmentDevice = TestDataBuilder.buildTestEnvironmentDevice(testCompany.getId());
+        environmentDevice.setActivationStatus(DeviceActivationStatus.ACTIVE);
         environmentDevice = deviceRepository.save(environmentDevice);
     }
 
@@ -81,7 +84,7 @@ class DeviceDataReceiverControllerTest extends BaseIntegrationTest {
                 .andExpect(status().isBadRequest())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$.status").value(400))
-                .andExpect(jsonPath("$.message").value("设备不存在: NONEXISTENT-DEVICE"));
+                .andExpect(jsonPath("$.message").value("设备不存在或未激活: NONEXISTENT-DEVICE"));
     }
 
     @Test
@@ -127,7 +130,7 @@ class DeviceDataReceiverControllerTest extends BaseIntegrationTest {
                 .andExpect(status().isBadRequest())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$.status").value(400))
-                .andExpect(jsonPath("$.message").value("设备不存在: NONEXISTENT-DEVICE"));
+                .andExpect(jsonPath("$.message").value("设备不存在或未激活: NONEXISTENT-DEVICE"));
     }
 
     @Test
@@ -136,6 +139,7 @@ class DeviceDataReceiverControllerTest extends BaseIntegrationTest {
         var request1 = TestDataBuilder.buildRadiationDataRequest(radiationDevice.getDeviceCode());
         var request2 = TestDataBuilder.buildRadiationDataRequest(radiationDevice.getDeviceCode());
         request2.setCpm(15.5);
+        request2.setTime("2025-12-21 01:01:00");
 
         var requests = java.util.List.of(request1, request2);
 
@@ -145,8 +149,8 @@ class DeviceDataReceiverControllerTest extends BaseIntegrationTest {
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$.status").value(200))
-                .andExpect(jsonPath("$.data").isArray())
-                .andExpect(jsonPath("$.data", hasSize(2)));
+                .andExpect(jsonPath("$.data.totalCount").value(2))
+                .andExpect(jsonPath("$.data.acceptedCount").value(2));
     }
 
     @Test
@@ -164,8 +168,8 @@ class DeviceDataReceiverControllerTest extends BaseIntegrationTest {
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$.status").value(200))
-                .andExpect(jsonPath("$.data").isArray())
-                .andExpect(jsonPath("$.data", hasSize(2)));
+                .andExpect(jsonPath("$.data.totalCount").value(2))
+                .andExpect(jsonPath("$.data.acceptedCount").value(2));
     }
 
     @Test
@@ -2,6 +2,7 @@ package com.cdutetc.ems.integration;
 
 import com.cdutetc.ems.entity.Company;
 import com.cdutetc.ems.entity.Device;
+import com.cdutetc.ems.entity.enums.DeviceActivationStatus;
 import com.cdutetc.ems.entity.enums.DeviceType;
 import com.cdutetc.ems.repository.CompanyRepository;
 import com.cdutetc.ems.repository.DeviceRepository;
@@ -79,6 +80,7 @@ public class NodeRedDeviceSimulatorTest {
             device.setDeviceName(deviceName);
             device.setDeviceType(deviceType);
             device.setCompany(company);
+            device.setActivationStatus(DeviceActivationStatus.ACTIVE);
             deviceRepository.save(device);
         }
     }
@@ -0,0 +1,275 @@
+package com.cdutetc.ems.mqtt;
+
+import com.cdutetc.ems.config.CpmConversionProperties;
+import com.cdutetc.ems.entity.EnvironmentDeviceData;
+import com.cdutetc.ems.entity.RadiationDeviceData;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * DevicePayloadDecoder单元测试
+ *
+ * @author EMS Team
+ */
+class DevicePayloadDecoderTest {
+
+    private CpmConversionProperties cpmProperties;
+    private DevicePayloadDecoder decoder;
+
+    @BeforeEach
+    void setUp() {
+        cpmProperties = new CpmConversionProperties();
+        decoder = new DevicePayloadDecoder(cpmProperties);
+    }
+
+    @Test
+    void testDecodeRadiation_AllFields() throws Exception {
+        String json = "{\"src\":1,\"msgtype\":1,\"CPM\":123.5,\"Batvolt\":3989,\"time\":\"2025/01/15 14:30:45\","
+                + "\"trigger\":1,\"multi\":2,\"way\":3}";
+        RadiationDeviceData data = decodeRadiation(json);
+
+        assertEquals(1, data.getSrc());
+        assertEquals(1, data.getMsgtype());
+        assertEquals(12.35, data.getCpm(), 0.0001);   // 123.5 ÷ 10
+        assertEquals(3.989, data.getBatvolt(), 0.0001); // 3989mV → 3.989V
+        assertEquals("2025/01/15 14:30:45", data.getTime());
+        assertEquals(1, data.getDataTrigger());
+        assertEquals(2, data.getMulti());
+        assertEquals(3, data.getWay());
+        assertNull(data.getGpsType());
+    }
+
+    @Test
+    void testDecodeRadiation_BdsPreferredWhenUseful() throws Exception {
+        String json = "{\"CPM\":100,\"BDS\":{\"longitude\":\"103°59'\",\"latitude\":\"30°33'\",\"UTC\":\"14:30:45\",\"useful\":1},"
+                + "\"LBS\":{\"longitude\":\"103.98\",\"latitude\":\"30.55\"}}";
+        RadiationDeviceData data = decodeRadiation(json);
+
+        assertEquals("BDS", data.getGpsType());
+        assertEquals("103°59'", data.getGpsLongitude());
+        assertEquals("30°33'", data.getGpsLatitude());
+        assertEquals("14:30:45", data.getGpsUtc());
+    }
+
+    @Test
+    void testDecodeRadiation_FallbackToLbs() throws Exception {
+        String json = "{\"LBS\":{\"longitude\":\"103.98\",\"latitude\":\"30.55\"},"
+                + "\"BDS\":{\"longitude\":\"103°59'\",\"latitude\":\"30°33'\",\"useful\":0}}";
+        RadiationDeviceData data = decodeRadiation(json);
+
+        assertEquals("LBS", data.getGpsType());
+        assertEquals("103.98", data.getGpsLongitude());
+        assertEquals("30.55", data.getGpsLatitude());
+        assertNull(data.getGpsUtc());
+    }
+
+    @Test
+    void testDecodeRadiation_LenientValues() throws Exception {
+        // 字符串数字、浮点转整数、null值、未知嵌套字段
+        String json = "{\"src\":\"2\",\"msgtype\":1.9,\"CPM\":\"50\",\"Batvolt\":null,\"time\":12345,"
+                + "\"extra\":{\"a\":[1,2,{\"b\":3}]},\"way\":\"bad\"}";
+        RadiationDeviceData data = decodeRadiation(json);
+
+        assertEquals(2, data.getSrc());
+        assertEquals(1, data.getMsgtype());
+        assertEquals(5.0, data.getCpm(), 0.0001);
+        assertNull(data.getBatvolt());
+        assertEquals("12345", data.getTime());
+        assertNull(data.getWay());
+    }
+
+    @Test
+    void testDecodeRadiation_ConversionDisabled() throws Exception {
+        cpmProperties.setEnabled(false);
+        RadiationDeviceData data = decodeRadiation("{\"CPM\":123}");
+
+        assertEquals(123.0, data.getCpm(), 0.0001);
+    }
+
+    @Test
+    void testDecodeRadiation_MalformedKeepsParsedFields() {
+        RadiationDeviceData data = new RadiationDeviceData();
+        byte[] payload = "{\"src\":1,\"CPM\":100,".getBytes(StandardCharsets.UTF_8);
+
+        assertThrows(IOException.class, () -> decoder.decodeRadiation(payload, data));
+        assertEquals(1, data.getSrc());
+        assertEquals(10.0, data.getCpm(), 0.0001);
+    }
+
+    @Test
+    void testDecodeRadiation_NotAnObject() {
+        RadiationDeviceData data = new RadiationDeviceData();
+        assertThrows(IOException.class,
+                () -> decoder.decodeRadiation("[1,2]".getBytes(StandardCharsets.UTF_8), data));
+    }
+
+    @Test
+    void testDecodeEnvironment_AllFields() throws Exception {
+        String json = "{\"src\":1,\"CPM\":634,\"temperature\":10.5,\"wetness\":95.0,\"windspeed\":0.2,"
+                + "\"total\":144.1,\"battery\":11.9}";
+        EnvironmentDeviceData data = new EnvironmentDeviceData();
+        decoder.decodeEnvironment(json.getBytes(StandardCharsets.UTF_8), data);
+
+        assertEquals(1, data.getSrc());
+        assertEquals(1.0, data.getCpm(), 0.0001);       // 634 ÷ 634
+        assertEquals(10.5, data.getTemperature(), 0.0001);
+        assertEquals(95.0, data.getWetness(), 0.0001);
+        assertEquals(0.2, data.getWindspeed(), 0.0001);
+        assertEquals(144.1, data.getTotal(), 0.0001);
+        assertEquals(11.9, data.getBattery(), 0.0001);
+    }
+
+    @Test
+    void testDecodeRadiationBatch_ArrayWithDeviceTime() throws Exception {
+        long ts = 1736951445000L;
+        String json = "[{\"CPM\":100,\"ts\":" + ts + "},"
+                + "{\"CPM\":200,\"time\":\"2025/01/15 14:31:45\",\"LBS\":{\"longitude\":\"103.98\",\"latitude\":\"30.55\"}},"
+                + "{\"CPM\":300}]";
+        List<RadiationDeviceData> readings = decoder.decodeRadiationBatch(json.getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(3, readings.size());
+        assertEquals(10.0, readings.get(0).getCpm(), 0.0001);
+        assertEquals(LocalDateTime.ofInstant(Instant.ofEpochMilli(ts), ZoneId.systemDefault()),
+                readings.get(0).getRecordTime());
+        assertEquals(LocalDateTime.of(2025, 1, 15, 14, 31, 45), readings.get(1).getRecordTime());
+        assertEquals("LBS", readings.get(1).getGpsType());
+        assertNull(readings.get(2).getRecordTime());
+        assertEquals("{\"CPM\":300}", readings.get(2).getRawData());
+        assertNull(readings.get(0).getDeviceCode());
+    }
+
+    @Test
+    void testDecodeEnvironmentBatch_ReadingsEnvelope() throws Exception {
+        String json = "{\"gateway\":\"GW1\",\"readings\":[{\"deviceCode\":\"ENV1\",\"CPM\":634,\"temperature\":\"20.5\"},"
+                + "5,{\"deviceCode\":\"ENV2\",\"battery\":11.9,\"extra\":[1,{\"a\":2}]}]}";
+        List<EnvironmentDeviceData> readings = decoder.decodeEnvironmentBatch(json.getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(2, readings.size(), "非对象读数应被跳过");
+        assertEquals("ENV1", readings.get(0).getDeviceCode());
+        assertEquals(1.0, readings.get(0).getCpm(), 0.0001);
+        assertEquals(20.5, readings.get(0).getTemperature(), 0.0001);
+        assertEquals("ENV2", readings.get(1).getDeviceCode());
+        assertEquals(11.9, readings.get(1).getBattery(), 0.0001);
+    }
+
+    @Test
+    void testDecodeBatch_Invalid() {
+        assertThrows(IOException.class,
+                () -> decoder.decodeRadiationBatch("{\"CPM\":1}".getBytes(StandardCharsets.UTF_8)));
+        assertThrows(IOException.class,
+                () -> decoder.decodeRadiationBatch("[{\"CPM\":1},".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void testSingleMessageIgnoresBatchFields() throws Exception {
+        RadiationDeviceData data = new RadiationDeviceData();
+        data.setDeviceCode("RAD1");
+        decoder.decodeRadiation("{\"deviceCode\":\"OTHER\",\"ts\":1,\"CPM\":10}".getBytes(StandardCharsets.UTF_8), data);
+
+        assertEquals("RAD1", data.getDeviceCode(), "单条消息不允许覆盖主题中的设备编码");
+        assertNull(data.getRecordTime());
+    }
+
+    @Test
+    void testDecodeRadiationBinary_RoundTripMatchesJson() throws Exception {
+        long epochSeconds = LocalDateTime.of(2025, 1, 15, 14, 30, 45).atZone(ZoneId.systemDefault()).toEpochSecond();
+        byte[] binary = RadiationBinaryFormat.Frame.builder()
+                .src(1).msgtype(1).trigger(1).multi(2).way(3)
+                .batvoltMv(3989).cpm(123.5f).epochSeconds(epochSeconds)
+                .gpsType(RadiationBinaryFormat.GPS_BDS)
+                .longitudeMicros(103_980_000).latitudeMicros(30_550_000).utcSecondOfDay(14 * 3600 + 30 * 60 + 45)
+                .build().toBytes();
+        String json = "{\"src\":1,\"msgtype\":1,\"CPM\":123.5,\"Batvolt\":3989,\"time\":\"2025/01/15 14:30:45\","
+                + "\"trigger\":1,\"multi\":2,\"way\":3,"
+                + "\"BDS\":{\"longitude\":\"103.98\",\"latitude\":\"30.55\",\"UTC\":\"14:30:45\",\"useful\":1}}";
+
+        assertEquals(29, binary.length);
+        assertSameReading(decodeRadiation(json), decodeRadiationBinary(binary));
+    }
+
+    @Test
+    void testDecodeRadiationBinary_LbsAndNoLocation() throws Exception {
+        byte[] lbs = RadiationBinaryFormat.Frame.builder()
+                .cpm(50f).batvoltMv(4100).gpsType(RadiationBinaryFormat.GPS_LBS)
+                .longitudeMicros(-103_000_001).latitudeMicros(30_500_000)
+                .build().toBytes();
+        RadiationDeviceData data = decodeRadiationBinary(lbs);
+
+        assertEquals(25, lbs.length);
+        assertEquals("LBS", data.getGpsType());
+        assertEquals("-103.000001", data.getGpsLongitude());
+        assertEquals("30.5", data.getGpsLatitude());
+        assertNull(data.getGpsUtc());
+        assertNull(data.getTime(), "time为0表示未上报");
+
+        byte[] none = RadiationBinaryFormat.Frame.builder().cpm(50f).src(255).build().toBytes();
+        data = decodeRadiationBinary(none);
+        assertEquals(17, none.length);
+        assertEquals(255, data.getSrc());
+        assertEquals(5.0, data.getCpm(), 0.0001);
+        assertNull(data.getGpsType());
+    }
+
+    @Test
+    void testDecodeRadiationBinary_Invalid() {
+        byte[] valid = RadiationBinaryFormat.Frame.builder().gpsType(RadiationBinaryFormat.GPS_BDS).build().toBytes();
+
+        byte[] truncated = Arrays.copyOf(valid, valid.length - 1);
+        assertThrows(IOException.class, () -> decodeRadiationBinary(truncated));
+        assertThrows(IOException.class, () -> decodeRadiationBinary(new byte[5]));
+
+        byte[] wrongVersion = valid.clone();
+        wrongVersion[0] = 9;
+        assertThrows(IOException.class, () -> decodeRadiationBinary(wrongVersion));
+    }
+
+    @Test
+    void testBinaryTextFormatting() {
+        assertEquals("103.98", DevicePayloadDecoder.formatMicroDegrees(103_980_000));
+        assertEquals("0.000001", DevicePayloadDecoder.formatMicroDegrees(1));
+        assertEquals("-0.05", DevicePayloadDecoder.formatMicroDegrees(-50_000));
+        assertEquals("12", DevicePayloadDecoder.formatMicroDegrees(12_000_000));
+        assertEquals("-2147.483648", DevicePayloadDecoder.formatMicroDegrees(Integer.MIN_VALUE));
+        assertEquals("2025/01/05 04:03:02",
+                DevicePayloadDecoder.formatDeviceTime(LocalDateTime.of(2025, 1, 5, 4, 3, 2)));
+        assertEquals("00:00:09", DevicePayloadDecoder.formatSecondOfDay(9));
+        assertEquals("23:59:59", DevicePayloadDecoder.formatSecondOfDay(86399));
+    }
+
+    private RadiationDeviceData decodeRadiationBinary(byte[] payload) throws IOException {
+        RadiationDeviceData data = new RadiationDeviceData();
+        decoder.decodeRadiationBinary(payload, data);
+        return data;
+    }
+
+    private static void assertSameReading(RadiationDeviceData expected, RadiationDeviceData actual) {
+        assertEquals(expected.getSrc(), actual.getSrc());
+        assertEquals(expected.getMsgtype(), actual.getMsgtype());
+        assertEquals(expected.getCpm(), actual.getCpm(), 0.0001);
+        assertEquals(expected.getBatvolt(), actual.getBatvolt(), 0.0001);
+        assertEquals(expected.getTime(), actual.getTime());
+        assertEquals(expected.getDataTrigger(), actual.getDataTrigger());
+        assertEquals(expected.getMulti(), actual.getMulti());
+        assertEquals(expected.getWay(), actual.getWay());
+        assertEquals(expected.getGpsType(), actual.getGpsType());
+        assertEquals(expected.getGpsLongitude(), actual.getGpsLongitude());
+        assertEquals(expected.getGpsLatitude(), actual.getGpsLatitude());
+        assertEquals(expected.getGpsUtc(), actual.getGpsUtc());
+    }
+
+    private RadiationDeviceData decodeRadiation(String json) throws IOException {
+        RadiationDeviceData data = new RadiationDeviceData();
+        decoder.decodeRadiation(json.getBytes(StandardCharsets.UTF_8), data);
+        return data;
+    }
+}
@@ -0,0 +1,129 @@
+package com.cdutetc.ems.mqtt;
+
+import com.cdutetc.ems.config.MqttDedupProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * DuplicateReadingFilter单元测试
+ *
+ * 测试目标:
+ * 1. time相同即视为重复；没有time的读数按内容识别，只有重新投递时视为重复
+ * 2. 滑动窗口、过期、撤销和停用
+ *
+ * @author EMS Team
+ */
+class DuplicateReadingFilterTest {
+
+    private MqttDedupProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+    private DuplicateReadingFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        properties = new MqttDedupProperties();
+        properties.setWindowSize(3);
+        meterRegistry = new SimpleMeterRegistry();
+        filter = new DuplicateReadingFilter(properties, meterRegistry);
+    }
+
+    @Test
+    void testSameTimeIsDuplicatePerDevice() {
+        long key = filter.readingKey("2025/01/15 14:30:45", bytes("{\"CPM\":1}"));
+        // time相同即视为同一读数，与消息内容无关
+        long retry = filter.readingKey("2025/01/15 14:30:45", bytes("{\"CPM\":1 }"));
+
+        assertFalse(filter.isDuplicate("RAD1", key));
+        assertTrue(filter.isDuplicate("RAD1", retry));
+        assertFalse(filter.isDuplicate("RAD2", key), "不同设备的窗口相互独立");
+        assertEquals(1.0, meterRegistry.get("ems.ingest.duplicates.suppressed").counter().count());
+        assertEquals(2, filter.size());
+    }
+
+    @Test
+    void testPayloadHashWithoutTime() {
+        long first = filter.readingKey(null, bytes("{\"CPM\":4,\"battery\":11.9}"));
+        long same = filter.readingKey(null, "{\"CPM\":4,\"battery\":11.9}");
+        long other = filter.readingKey(null, bytes("{\"CPM\":5,\"battery\":11.9}"));
+
+        assertEquals(first, same);
+        assertFalse(filter.isDuplicate("ENV1", first));
+        assertTrue(filter.isDuplicate("ENV1", same, true), "重新投递的相同内容视为重复");
+        assertFalse(filter.isDuplicate("ENV1", other, true));
+    }
+
+    @Test
+    void testIdenticalReadingsWithoutTimeAccepted() throws Exception {
+        // 设备读数不变时，间隔发送的两条内容相同的消息都是有效样本
+        long key = filter.readingKey(null, bytes("{\"CPM\":4,\"temperature\":10,\"wetness\":95,\"battery\":11.9}"));
+
+        assertFalse(filter.isDuplicate("ENV1", key, false));
+        Thread.sleep(20);
+        assertFalse(filter.isDuplicate("ENV1", key, false), "首次投递的相同内容不应视为重复");
+        assertTrue(filter.isDuplicate("ENV1", key, true), "第二条消息的重新投递仍应被识别");
+        assertEquals(1.0, meterRegistry.get("ems.ingest.duplicates.suppressed").counter().count());
+    }
+
+    @Test
+    void testTimeKeyDuplicateWithoutRedelivery() {
+        long key = filter.readingKey("2025/01/15 14:30:45", bytes("{\"CPM\":1}"));
+        long content = filter.readingKey(null, bytes("{\"CPM\":1}"));
+
+        assertNotEquals(key, content);
+        assertFalse(filter.isDuplicate("RAD1", key, false));
+        assertTrue(filter.isDuplicate("RAD1", key, false), "time相同的设备重试不依赖DUP标记");
+    }
+
+    @Test
+    void testWindowSlides() {
+        for (int i = 0; i < 4; i++) {
+            assertFalse(filter.isDuplicate("RAD1", i));
+        }
+        assertFalse(filter.isDuplicate("RAD1", 0), "超出窗口的读数不再视为重复");
+        assertTrue(filter.isDuplicate("RAD1", 3));
+    }
+
+    @Test
+    void testExpiredKeyNotDuplicate() {
+        properties.setWindowSeconds(0);
+        assertFalse(filter.isDuplicate("RAD1", 42));
+        assertFalse(filter.isDuplicate("RAD1", 42));
+    }
+
+    @Test
+    void testForgetAllowsRedelivery() {
+        assertFalse(filter.isDuplicate("RAD1", 7));
+        filter.forget("RAD1", 7);
+        filter.forget("UNKNOWN", 7);
+        assertFalse(filter.isDuplicate("RAD1", 7), "撤销后重新投递的读数应通过");
+        assertTrue(filter.isDuplicate("RAD1", 7));
+    }
+
+    @Test
+    void testDisabled() {
+        properties.setEnabled(false);
+        assertFalse(filter.isDuplicate("RAD1", 1));
+        assertFalse(filter.isDuplicate("RAD1", 1));
+        assertEquals(0, filter.size());
+    }
+
+    @Test
+    void testEvictIdleWindows() {
+        filter.isDuplicate("RAD1", 1);
+        filter.evictIdleWindows();
+        assertEquals(1, filter.size());
+
+        properties.setWindowSeconds(0);
+        filter.evictIdleWindows();
+        assertEquals(0, filter.size());
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
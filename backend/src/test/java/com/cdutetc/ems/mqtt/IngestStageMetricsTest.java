@@ -0,0 +1,53 @@
+package com.cdutetc.ems.mqtt;
+
+import com.cdutetc.ems.mqtt.IngestStageMetrics.Stage;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * IngestStageMetrics单元测试
+ *
+ * @author EMS Team
+ */
+class IngestStageMetricsTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final IngestStageMetrics metrics = new IngestStageMetrics(meterRegistry);
+
+    @Test
+    void testAllStagesPreRegistered() {
+        int types = 3;
+        assertEquals(Stage.values().length * types, meterRegistry.find("ems.ingest.stage").timers().size());
+        assertEquals(Stage.values().length * types, meterRegistry.find("ems.ingest.stage.errors").counters().size());
+    }
+
+    @Test
+    void testRecordTaggedByStageAndType() {
+        long start = metrics.start() - TimeUnit.MILLISECONDS.toNanos(5);
+        metrics.record(Stage.DECODE, "radiation", start);
+        metrics.record(Stage.DECODE, "RADIATION", start);
+        metrics.record(Stage.BUFFER_WRITE, "ENVIRONMENT", metrics.start());
+        metrics.record(Stage.TOPIC_PARSE, null, metrics.start());
+
+        Timer decode = meterRegistry.get("ems.ingest.stage").tags("stage", "decode", "type", "radiation").timer();
+        assertEquals(2, decode.count());
+        assertTrue(decode.totalTime(TimeUnit.MILLISECONDS) >= 10);
+        assertEquals(1, meterRegistry.get("ems.ingest.stage")
+                .tags("stage", "buffer_write", "type", "environment").timer().count());
+        assertEquals(1, meterRegistry.get("ems.ingest.stage")
+                .tags("stage", "topic_parse", "type", "unknown").timer().count());
+    }
+
+    @Test
+    void testErrorCounted() {
+        metrics.error(Stage.ALERT_EVALUATION, "ENVIRONMENT");
+
+        assertEquals(1.0, meterRegistry.get("ems.ingest.stage.errors")
+                .tags("stage", "alert_evaluation", "type", "environment").counter().count());
+    }
+}
@@ -0,0 +1,176 @@
+package com.cdutetc.ems.mqtt;
+
+import com.cdutetc.ems.config.MqttConfig;
+import com.cdutetc.ems.config.MqttIngestProperties;
+import com.hivemq.embedded.EmbeddedHiveMQ;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MqttAckTracker重新投递测试（嵌入式HiveMQ CE Broker，持久会话 + 手动确认）
+ *
+ * 测试目标:
+ * 1. 被拒绝的消息由Broker重新投递（DUP标记），不依赖外部重连
+ * 2. 确认重新投递的消息后，该连接继续接收新消息
+ *
+ * @author EMS Team
+ */
+class MqttAckRedeliveryTest {
+
+    @TempDir
+    Path brokerDir;
+
+    private EmbeddedHiveMQ broker;
+    private int port;
+    private MqttClient subscriber;
+    private MqttAckTracker tracker;
+
+    /**
+     * 收到的消息：[payload, isDuplicate]
+     */
+    private final List<Object[]> deliveries = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        Path configDir = Files.createDirectories(brokerDir.resolve("conf"));
+        Files.writeString(configDir.resolve("config.xml"), """
+                <hivemq>
+                    <listeners>
+                        <tcp-listener>
+                            <port>%d</port>
+                            <bind-address>127.0.0.1</bind-address>
+                        </tcp-listener>
+                    </listeners>
+                    <persistence>
+                        <mode>in-memory</mode>
+                    </persistence>
+                    <anonymous-usage-statistics>
+                        <enabled>false</enabled>
+                    </anonymous-usage-statistics>
+                </hivemq>
+                """.formatted(port));
+
+        broker = EmbeddedHiveMQ.builder()
+                .withConfigurationFolder(configDir)
+                .withDataFolder(Files.createDirectories(brokerDir.resolve("data")))
+                .withExtensionsFolder(Files.createDirectories(brokerDir.resolve("extensions")))
+                .build();
+        broker.start().get(30, TimeUnit.SECONDS);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (subscriber != null) {
+            if (subscriber.isConnected()) {
+                subscriber.disconnect();
+            }
+            subscriber.close();
+        }
+        if (tracker != null) {
+            tracker.shutdown();
+        }
+        if (broker != null) {
+            broker.stop().get(30, TimeUnit.SECONDS);
+            broker.close();
+        }
+    }
+
+    @Test
+    void testRejectedMessageRedelivered() throws Exception {
+        MqttConfig config = new MqttConfig();
+        config.setHost("127.0.0.1");
+        config.setPort(port);
+        config.setNodeId("node-1");
+        config.setCleanSession(false);
+        config.validate();
+
+        tracker = new MqttAckTracker(new MqttIngestProperties(), config, new SimpleMeterRegistry());
+
+        // 与MqttClientConfig一致：持久会话、手动确认
+        subscriber = new MqttClient(config.getBrokerUrl(), config.getClientId("node-1", 0), new MemoryPersistence());
+        subscriber.setManualAcks(true);
+        MqttClient client = subscriber;
+
+        // 第一次投递拒绝，之后的投递确认
+        subscriber.setCallback(new MqttCallback() {
+            @Override
+            public void connectionLost(Throwable cause) {
+            }
+
+            @Override
+            public void messageArrived(String topic, MqttMessage message) {
+                MqttAckTracker.MqttAck ack = tracker.begin(client, message);
+                deliveries.add(new Object[]{new String(message.getPayload(), StandardCharsets.UTF_8),
+                        message.isDuplicate()});
+                if (deliveries.size() == 1) {
+                    ack.reject();
+                } else {
+                    ack.ack();
+                }
+            }
+
+            @Override
+            public void deliveryComplete(IMqttDeliveryToken token) {
+            }
+        });
+        MqttConnectOptions options = new MqttConnectOptions();
+        options.setCleanSession(false);
+        subscriber.connect(options);
+        subscriber.subscribe(config.getRadiationTopicPattern(), 1);
+
+        publish("{\"CPM\":1}");
+
+        assertTrue(waitFor(() -> deliveries.size() >= 2), "拒绝的消息应被重新投递");
+        assertEquals("{\"CPM\":1}", deliveries.get(1)[0]);
+        assertEquals(true, deliveries.get(1)[1], "重新投递的消息应带DUP标记");
+
+        // 连接未被占满，新消息可以继续接收
+        publish("{\"CPM\":2}");
+        assertTrue(waitFor(() -> deliveries.size() >= 3), "确认后应继续接收新消息");
+        assertEquals("{\"CPM\":2}", deliveries.get(2)[0]);
+        Thread.sleep(200);
+        assertEquals(3, deliveries.size(), "确认过的消息不应再次投递");
+        assertEquals(0, tracker.getInFlightCount());
+    }
+
+    private void publish(String payload) throws Exception {
+        MqttClient publisher = new MqttClient("tcp://127.0.0.1:" + port, "device-simulator", new MemoryPersistence());
+        publisher.connect();
+        publisher.publish("ems/device/RAD001/data/RADIATION", payload.getBytes(StandardCharsets.UTF_8), 1, false);
+        publisher.disconnect();
+        publisher.close();
+    }
+
+    private boolean waitFor(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (System.nanoTime() < deadline) {
+            if (condition.getAsBoolean()) {
+                return true;
+            }
+            Thread.sleep(20);
+        }
+        return false;
+    }
+}
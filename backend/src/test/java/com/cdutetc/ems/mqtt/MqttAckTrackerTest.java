@@ -0,0 +1,263 @@
+package com.cdutetc.ems.mqtt;
+
+import com.cdutetc.ems.config.MqttConfig;
+import com.cdutetc.ems.config.MqttIngestProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.eclipse.paho.client.mqttv3.IMqttClient;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MqttAckTracker单元测试
+ *
+ * 测试目标:
+ * 1. ack/reject只生效一次，并释放在途窗口
+ * 2. 手动确认时ack发送PUBACK
+ * 3. 持久会话下reject不发送PUBACK并重连（同一会话只重连一次），重连前接收的消息不再确认
+ * 4. 清除会话下reject确认并丢弃
+ * 5. 在途窗口已满时阻塞等待确认，不拒绝；每个连接的窗口独立
+ *
+ * @author EMS Team
+ */
+class MqttAckTrackerTest {
+
+    private MqttIngestProperties properties;
+    private MqttConfig mqttConfig;
+    private SimpleMeterRegistry meterRegistry;
+    private MqttAckTracker tracker;
+
+    /**
+     * 记录messageArrivedComplete调用的客户端桩：[messageId, qos]
+     */
+    private final List<int[]> completed = new ArrayList<>();
+
+    /**
+     * 记录disconnect/reconnect调用
+     */
+    private final List<String> connectionCalls = new CopyOnWriteArrayList<>();
+    private IMqttClient client;
+
+    @BeforeEach
+    void setUp() {
+        properties = new MqttIngestProperties();
+        properties.setMaxInFlight(2);
+        properties.setInFlightWaitWarnMs(20);
+        mqttConfig = new MqttConfig();
+        mqttConfig.setCleanSession(false);
+        mqttConfig.setNodeId("node-1");
+        meterRegistry = new SimpleMeterRegistry();
+
+        client = newClient();
+    }
+
+    private IMqttClient newClient() {
+        return (IMqttClient) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{IMqttClient.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "messageArrivedComplete" -> completed.add(new int[]{(Integer) args[0], (Integer) args[1]});
+                        case "disconnect", "reconnect" -> connectionCalls.add(method.getName());
+                        case "isConnected" -> {
+                            return true;
+                        }
+                        case "hashCode" -> {
+                            return System.identityHashCode(proxy);
+                        }
+                        case "equals" -> {
+                            return proxy == args[0];
+                        }
+                        default -> {
+                        }
+                    }
+                    return null;
+                });
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (tracker != null) {
+            tracker.shutdown();
+        }
+    }
+
+    @Test
+    void testAckSendsPubackOnceAndReleasesPermit() {
+        tracker = newTracker();
+        MqttAckTracker.MqttAck ack = tracker.begin(client, message(7, 1, false));
+        assertEquals(1, tracker.getInFlightCount());
+        assertEquals(1.0, meterRegistry.get("ems.ingest.inflight").gauge().value());
+
+        ack.ack();
+        ack.ack();
+        ack.reject();
+
+        assertTrue(ack.isCompleted());
+        assertEquals(0, tracker.getInFlightCount());
+        assertEquals(1, completed.size());
+        assertArrayEquals(new int[]{7, 1}, completed.get(0));
+        assertEquals(1.0, meterRegistry.get("ems.ingest.ack").tag("outcome", "acked").counter().count());
+        assertEquals(0.0, meterRegistry.get("ems.ingest.ack").tag("outcome", "rejected").counter().count());
+        assertEquals(1L, meterRegistry.get("ems.ingest.ack.latency").timer().count());
+    }
+
+    @Test
+    void testRejectReconnectsForRedelivery() throws Exception {
+        tracker = newTracker();
+        MqttAckTracker.MqttAck ack = tracker.begin(client, message(8, 1, false));
+
+        ack.reject();
+        ack.ack();
+
+        assertTrue(completed.isEmpty(), "拒绝的消息不应发送PUBACK");
+        assertEquals(0, tracker.getInFlightCount());
+        assertEquals(1.0, meterRegistry.get("ems.ingest.ack").tag("outcome", "rejected").counter().count());
+        assertTrue(waitFor(() -> connectionCalls.size() >= 2), "拒绝后应重连该连接");
+        assertEquals(List.of("disconnect", "reconnect"), connectionCalls);
+    }
+
+    @Test
+    void testRejectReconnectsOncePerSession() throws Exception {
+        tracker = newTracker();
+        MqttAckTracker.MqttAck first = tracker.begin(client, message(1, 1, false));
+        MqttAckTracker.MqttAck second = tracker.begin(client, message(2, 1, false));
+
+        first.reject();
+        second.reject();
+        assertTrue(waitFor(() -> connectionCalls.size() >= 2));
+        Thread.sleep(50);
+        assertEquals(2, connectionCalls.size(), "同一会话的多次拒绝只重连一次");
+        assertEquals(1.0, meterRegistry.get("ems.ingest.redelivery.reconnect").counter().count());
+
+        // 重连后接收的消息正常确认
+        tracker.begin(client, message(3, 1, false)).ack();
+        assertEquals(1, completed.size());
+        assertArrayEquals(new int[]{3, 1}, completed.get(0));
+    }
+
+    @Test
+    void testAcksFromReconnectedSessionSkipped() throws Exception {
+        tracker = newTracker();
+        MqttAckTracker.MqttAck pending = tracker.begin(client, message(1, 1, false));
+        tracker.begin(client, message(2, 1, false)).reject();
+
+        pending.ack();
+
+        assertTrue(completed.isEmpty(), "重连前接收的消息会被重新投递，不再确认");
+        assertEquals(1.0, meterRegistry.get("ems.ingest.ack").tag("outcome", "acked").counter().count());
+        assertEquals(0, tracker.getInFlightCount());
+    }
+
+    @Test
+    void testCleanSessionRejectAcksAndDrops() throws Exception {
+        mqttConfig.setCleanSession(true);
+        tracker = newTracker();
+
+        tracker.begin(client, message(4, 1, false)).reject();
+
+        assertEquals(1, completed.size(), "清除会话无法重新投递，应确认以释放Broker窗口");
+        assertEquals(1.0, meterRegistry.get("ems.ingest.ack").tag("outcome", "dropped").counter().count());
+        Thread.sleep(50);
+        assertTrue(connectionCalls.isEmpty());
+    }
+
+    @Test
+    void testQos0AndNullClientSkipPuback() {
+        tracker = newTracker();
+        tracker.begin(client, message(0, 0, false)).ack();
+        tracker.begin(null, message(9, 1, false)).ack();
+
+        assertTrue(completed.isEmpty());
+        assertEquals(2.0, meterRegistry.get("ems.ingest.ack").tag("outcome", "acked").counter().count());
+    }
+
+    @Test
+    void testWindowFullBlocksUntilAck() throws Exception {
+        tracker = newTracker();
+        MqttAckTracker.MqttAck first = tracker.begin(client, message(1, 1, false));
+        MqttAckTracker.MqttAck second = tracker.begin(client, message(2, 1, false));
+
+        AtomicReference<MqttAckTracker.MqttAck> overflow = new AtomicReference<>();
+        Thread callback = new Thread(() -> overflow.set(tracker.begin(client, message(3, 1, false))));
+        callback.start();
+
+        // 超过告警时间仍继续等待，不拒绝、不重连
+        assertTrue(waitFor(() -> meterRegistry.get("ems.ingest.inflight.stalled").counter().count() >= 2));
+        assertNull(overflow.get(), "窗口已满时应阻塞回调线程");
+        assertEquals(0.0, meterRegistry.get("ems.ingest.ack").tag("outcome", "rejected").counter().count());
+        assertTrue(connectionCalls.isEmpty(), "窗口等待不应触发重连");
+
+        first.ack();
+        callback.join(5000);
+        assertNotNull(overflow.get(), "有消息确认后应继续接收");
+        assertFalse(overflow.get().isCompleted());
+        assertEquals(2, tracker.getInFlightCount());
+
+        second.ack();
+        overflow.get().ack();
+        assertEquals(3, completed.size());
+        assertEquals(0, tracker.getInFlightCount());
+    }
+
+    @Test
+    void testWindowPerConnection() throws Exception {
+        tracker = newTracker();
+        IMqttClient other = newClient();
+
+        tracker.begin(client, message(1, 1, false));
+        tracker.begin(client, message(2, 1, false));
+
+        // 一个连接窗口已满不影响其他连接
+        AtomicReference<MqttAckTracker.MqttAck> next = new AtomicReference<>();
+        Thread callback = new Thread(() -> next.set(tracker.begin(other, message(3, 1, false))));
+        callback.start();
+        callback.join(5000);
+        assertNotNull(next.get(), "每个连接的在途窗口独立");
+        assertEquals(3, tracker.getInFlightCount());
+    }
+
+    @Test
+    void testDuplicateCounted() {
+        tracker = newTracker();
+        tracker.begin(null, message(5, 1, true)).ack();
+        tracker.begin(null, message(6, 1, false)).ack();
+
+        assertEquals(1.0, meterRegistry.get("ems.ingest.redelivered").counter().count());
+    }
+
+    private MqttAckTracker newTracker() {
+        return new MqttAckTracker(properties, mqttConfig, meterRegistry);
+    }
+
+    private boolean waitFor(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline) {
+            if (condition.getAsBoolean()) {
+                return true;
+            }
+            Thread.sleep(10);
+        }
+        return false;
+    }
+
+    private static MqttMessage message(int id, int qos, boolean duplicate) {
+        MqttMessage message = new MqttMessage(new byte[0]) {
+            @Override
+            public boolean isDuplicate() {
+                return duplicate;
+            }
+        };
+        message.setId(id);
+        message.setQos(qos);
+        return message;
+    }
+}
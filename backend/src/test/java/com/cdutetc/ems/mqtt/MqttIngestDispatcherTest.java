@@ -0,0 +1,154 @@
+package com.cdutetc.ems.mqtt;
+
+import com.cdutetc.ems.config.MqttIngestProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MqttIngestDispatcher单元测试
+ *
+ * 测试目标:
+ * 1. 同一设备的消息按提交顺序处理
+ * 2. 不同设备的消息分散到多个通道并行处理
+ * 3. 队列已满时拒绝并计数
+ *
+ * @author EMS Team
+ */
+class MqttIngestDispatcherTest {
+
+    private MqttIngestProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+    private MqttIngestDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() {
+        properties = new MqttIngestProperties();
+        properties.setLanes(4);
+        properties.setQueueCapacity(100);
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (dispatcher != null) {
+            dispatcher.stop();
+        }
+    }
+
+    @Test
+    void testPerDeviceOrderingPreserved() throws Exception {
+        dispatcher = new MqttIngestDispatcher(properties, meterRegistry);
+        dispatcher.start();
+
+        int devices = 8;
+        int messagesPerDevice = 50;
+        Map<String, List<Integer>> received = new ConcurrentHashMap<>();
+        CountDownLatch latch = new CountDownLatch(devices * messagesPerDevice);
+
+        for (int seq = 0; seq < messagesPerDevice; seq++) {
+            for (int d = 0; d < devices; d++) {
+                String deviceCode = "RAD" + d;
+                int value = seq;
+                dispatcher.dispatch(deviceCode, () -> {
+                    received.computeIfAbsent(deviceCode, k -> Collections.synchronizedList(new ArrayList<>()))
+                            .add(value);
+                    latch.countDown();
+                });
+            }
+        }
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS), "所有消息应在超时前处理完成");
+        for (int d = 0; d < devices; d++) {
+            List<Integer> values = received.get("RAD" + d);
+            assertEquals(messagesPerDevice, values.size());
+            for (int i = 0; i < messagesPerDevice; i++) {
+                assertEquals(i, values.get(i), "设备消息应保持提交顺序");
+            }
+        }
+    }
+
+    @Test
+    void testDevicesSpreadAcrossLanes() throws Exception {
+        dispatcher = new MqttIngestDispatcher(properties, meterRegistry);
+        dispatcher.start();
+
+        Set<String> threadNames = ConcurrentHashMap.newKeySet();
+        CountDownLatch latch = new CountDownLatch(64);
+        for (int d = 0; d < 64; d++) {
+            dispatcher.dispatch("ENV" + d, () -> {
+                threadNames.add(Thread.currentThread().getName());
+                latch.countDown();
+            });
+        }
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(threadNames.size() > 1, "不同设备应分布到多个通道");
+        assertEquals(64.0, meterRegistry.get("ems.ingest.dispatched").counter().count());
+    }
+
+    @Test
+    void testRejectWhenLaneFull() throws Exception {
+        properties.setLanes(1);
+        properties.setQueueCapacity(1);
+        properties.setOfferTimeoutMs(10);
+        dispatcher = new MqttIngestDispatcher(properties, meterRegistry);
+        dispatcher.start();
+
+        CountDownLatch blocker = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        dispatcher.dispatch("RAD1", () -> {
+            started.countDown();
+            try {
+                blocker.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(2, TimeUnit.SECONDS));
+
+        assertTrue(dispatcher.dispatch("RAD1", () -> { }), "第一条排队消息应入队成功");
+        assertEquals(1, dispatcher.getQueueDepth(0));
+        assertFalse(dispatcher.dispatch("RAD1", () -> { }), "队列已满时应拒绝");
+        assertEquals(1.0, meterRegistry.get("ems.ingest.rejected").counter().count());
+        assertEquals(1.0, meterRegistry.get("ems.ingest.lane.queue.depth").tag("lane", "0").gauge().value());
+
+        blocker.countDown();
+    }
+
+    @Test
+    void testDisabledRunsInline() {
+        properties.setEnabled(false);
+        dispatcher = new MqttIngestDispatcher(properties, meterRegistry);
+        dispatcher.start();
+
+        String caller = Thread.currentThread().getName();
+        String[] executedOn = new String[1];
+        dispatcher.dispatch("RAD1", () -> executedOn[0] = Thread.currentThread().getName());
+
+        assertEquals(0, dispatcher.getLaneCount());
+        assertEquals(caller, executedOn[0]);
+    }
+
+    @Test
+    void testLaneIndexStable() {
+        int first = MqttIngestDispatcher.laneIndex("RAD-000123", 8);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(first, MqttIngestDispatcher.laneIndex("RAD-000123", 8));
+        }
+        assertTrue(first >= 0 && first < 8);
+        assertEquals(0, MqttIngestDispatcher.laneIndex(null, 8));
+    }
+}
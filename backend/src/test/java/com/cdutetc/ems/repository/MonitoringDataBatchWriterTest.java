@@ -0,0 +1,146 @@
+package com.cdutetc.ems.repository;
+
+import com.cdutetc.ems.config.MonitoringDataRollupProperties;
+import com.cdutetc.ems.entity.EnvironmentDeviceData;
+import com.cdutetc.ems.entity.RadiationDeviceData;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MonitoringDataBatchWriter单元测试（H2 MySQL兼容模式）
+ *
+ * 测试目标:
+ * 1. 超过JDBC批大小的数据全部写入
+ * 2. 字段与实体@Column映射一致，空值写为NULL
+ * 3. 未设置采集时间时使用写入时间
+ * 4. 指定批次标识时，已写入过的批次跳过；批次标识由来源和内容决定
+ *
+ * @author EMS Team
+ */
+class MonitoringDataBatchWriterTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private MonitoringDataBatchWriter writer;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(
+                "jdbc:h2:mem:batch-writer-" + System.nanoTime() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", ""));
+        createTables(jdbcTemplate);
+        writer = new MonitoringDataBatchWriter(jdbcTemplate, disabledRollups(jdbcTemplate));
+    }
+
+    @Test
+    void testInsertRadiationData() {
+        LocalDateTime recordTime = LocalDateTime.of(2025, 1, 15, 14, 30, 45);
+        List<RadiationDeviceData> dataList = new ArrayList<>();
+        for (int i = 0; i < 1200; i++) {
+            RadiationDeviceData data = new RadiationDeviceData();
+            data.setDeviceCode("RAD" + (i % 3));
+            data.setRawData("{\"CPM\":" + i + "}");
+            data.setSrc(1);
+            data.setMsgtype(1);
+            data.setCpm(i / 10.0);
+            data.setBatvolt(3.9);
+            data.setTime("2025/01/15 14:30:45");
+            data.setGpsType(i == 0 ? "BDS" : null);
+            data.setRecordTime(recordTime);
+            dataList.add(data);
+        }
+
+        assertEquals(1200, writer.insertRadiationData(dataList));
+
+        assertEquals(1200, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM ems_radiation_device_data", Long.class));
+        Map<String, Object> first = jdbcTemplate.queryForMap(
+                "SELECT * FROM ems_radiation_device_data WHERE raw_data = '{\"CPM\":0}'");
+        assertEquals("RAD0", first.get("DEVICE_CODE"));
+        assertEquals("BDS", first.get("GPS_TYPE"));
+        assertNull(first.get("DATA_TRIGGER"));
+        assertEquals(recordTime, jdbcTemplate.queryForObject(
+                "SELECT record_time FROM ems_radiation_device_data WHERE raw_data = '{\"CPM\":0}'",
+                LocalDateTime.class));
+        assertNotNull(first.get("CREATED_AT"));
+    }
+
+    @Test
+    void testInsertEnvironmentDataDefaultsRecordTime() {
+        EnvironmentDeviceData data = new EnvironmentDeviceData();
+        data.setDeviceCode("ENV001");
+        data.setCpm(0.5);
+        data.setTemperature(20.5);
+        data.setBattery(11.9);
+
+        assertEquals(1, writer.insertEnvironmentData(List.of(data)));
+        assertEquals(0, writer.insertEnvironmentData(List.of()));
+
+        Map<String, Object> row = jdbcTemplate.queryForMap("SELECT * FROM ems_environment_device_data");
+        assertEquals(20.5, (Double) row.get("TEMPERATURE"), 1e-9);
+        assertNull(row.get("WETNESS"));
+        assertNotNull(row.get("RECORD_TIME"));
+    }
+
+    @Test
+    void testAppliedBatchSkipped() {
+        RadiationDeviceData data = new RadiationDeviceData();
+        data.setDeviceCode("RAD001");
+        String batchId = MonitoringDataBatchWriter.batchId("buffer:processing:radiation:0",
+                List.of("{\"deviceCode\":\"RAD001\"}".getBytes()));
+
+        assertEquals(1, writer.insertRadiationData(List.of(data), batchId));
+        assertEquals(MonitoringDataBatchWriter.ALREADY_APPLIED, writer.insertRadiationData(List.of(data), batchId));
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM ems_radiation_device_data", Long.class));
+
+        assertEquals(1, writer.purgeAppliedBatches(LocalDateTime.now().plusMinutes(1)));
+        assertEquals(1, writer.insertRadiationData(List.of(data), batchId));
+    }
+
+    @Test
+    void testBatchIdDependsOnScopeAndContent() {
+        List<byte[]> values = List.of("a".getBytes(), "bc".getBytes());
+
+        assertEquals(MonitoringDataBatchWriter.batchId("q", values),
+                MonitoringDataBatchWriter.batchId("q", List.of("a".getBytes(), "bc".getBytes())));
+        assertNotEquals(MonitoringDataBatchWriter.batchId("q", values),
+                MonitoringDataBatchWriter.batchId("q", List.of("ab".getBytes(), "c".getBytes())));
+        assertNotEquals(MonitoringDataBatchWriter.batchId("q", values),
+                MonitoringDataBatchWriter.batchId("r", values));
+        assertTrue(MonitoringDataBatchWriter.batchId("buffer:processing:environment:15", values).length() <= 128);
+    }
+
+    /**
+     * 与实体映射一致的表结构（ddl-auto在MySQL中生成的列）
+     */
+    static void createTables(JdbcTemplate jdbcTemplate) {
+        jdbcTemplate.execute("CREATE TABLE ems_radiation_device_data ("
+                + "id BIGINT AUTO_INCREMENT PRIMARY KEY, device_code VARCHAR(255) NOT NULL, raw_data TEXT, "
+                + "src INT, msgtype INT, CPM DOUBLE, Batvolt DOUBLE, time VARCHAR(20), data_trigger INT, "
+                + "multi INT, way INT, gps_longitude VARCHAR(50), gps_latitude VARCHAR(50), gps_type VARCHAR(20), "
+                + "gps_utc VARCHAR(50), record_time DATETIME(6) NOT NULL, created_at DATETIME(6) NOT NULL, "
+                + "updated_at DATETIME(6))");
+        jdbcTemplate.execute("CREATE TABLE ems_environment_device_data ("
+                + "id BIGINT AUTO_INCREMENT PRIMARY KEY, device_code VARCHAR(255) NOT NULL, raw_data TEXT, "
+                + "src INT, CPM DOUBLE, temperature DOUBLE, wetness DOUBLE, windspeed DOUBLE, total DOUBLE, "
+                + "battery DOUBLE, record_time DATETIME(6) NOT NULL, created_at DATETIME(6) NOT NULL, "
+                + "updated_at DATETIME(6))");
+        jdbcTemplate.execute("CREATE TABLE ems_buffer_applied_batch ("
+                + "batch_id VARCHAR(128) PRIMARY KEY, applied_at DATETIME(6) NOT NULL)");
+    }
+
+    /**
+     * 关闭汇总的汇总表仓库（不写汇总表，不使用事务管理器）
+     */
+    private static MonitoringDataRollupRepository disabledRollups(JdbcTemplate jdbcTemplate) {
+        MonitoringDataRollupProperties properties = new MonitoringDataRollupProperties();
+        properties.setEnabled(false);
+        return new MonitoringDataRollupRepository(jdbcTemplate, null, properties);
+    }
+}
@@ -0,0 +1,419 @@
+package com.cdutetc.ems.scheduler;
+
+import com.cdutetc.ems.config.MonitoringDataFlushProperties;
+import com.cdutetc.ems.config.MonitoringDataRollupProperties;
+import com.cdutetc.ems.config.MqttConfig;
+import com.cdutetc.ems.entity.EnvironmentDeviceData;
+import com.cdutetc.ems.entity.RadiationDeviceData;
+import com.cdutetc.ems.repository.MonitoringDataBatchWriter;
+import com.cdutetc.ems.repository.MonitoringDataRollupRepository;
+import com.cdutetc.ems.service.MonitoringDataBufferService;
+import com.cdutetc.ems.service.MonitoringDataFrameCodec;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.ListOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MonitoringDataFlushScheduler单元测试
+ *
+ * 测试目标:
+ * 1. 每批最多batchSize条，原子移入分片处理中列表，写入成功后删除
+ * 2. 刷新周期内持续取批，直到队列取空或剩余不超过积压阈值；周期超时后停止
+ * 3. 分片达到高水位时提前刷新，未到常规间隔且未达高水位时不刷新
+ * 4. 写入失败的批次保留在处理中列表并在下一周期重放，超过重放次数后移入死信列表
+ * 5. 无法解码或类型不符的原始数据在确认时移入死信列表，其余无法识别的数据被丢弃；记录取出条数、队列长度指标
+ * 6. 打包帧展开为多条读数写入，与单条读数元素可以共存
+ * 7. 多个刷新线程通过租约并行刷新所有分片；其他节点持有租约的分片跳过；租约失效后不删除处理中列表
+ * 8. 已提交但未确认的批次重放时按批次标识跳过，不重复写入
+ *
+ * @author EMS Team
+ */
+class MonitoringDataFlushSchedulerTest {
+
+    private static final String RADIATION_PROCESSING = "buffer:processing:radiation:0";
+    private static final String RADIATION_LEASE = "buffer:lease:radiation:0";
+
+    private final Map<String, Deque<Object>> queues = new ConcurrentHashMap<>();
+    private final Map<String, Object> values = new ConcurrentHashMap<>();
+    private final List<String> commands = Collections.synchronizedList(new ArrayList<>());
+    private final List<List<?>> savedRadiation = Collections.synchronizedList(new ArrayList<>());
+    private final List<List<?>> savedEnvironment = Collections.synchronizedList(new ArrayList<>());
+    private final Set<String> appliedBatches = ConcurrentHashMap.newKeySet();
+
+    private MonitoringDataFlushProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+    private MonitoringDataFlushScheduler scheduler;
+    private int writeFailures;
+    private Runnable beforeWrite = () -> { };
+
+    @BeforeEach
+    void setUp() {
+        properties = new MonitoringDataFlushProperties();
+        properties.setBatchSize(3);
+        properties.setHighWaterMark(5);
+        properties.setShards(1);
+        properties.setWorkers(1);
+        scheduler = newScheduler();
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdown();
+    }
+
+    private MonitoringDataFlushScheduler newScheduler() {
+        meterRegistry = new SimpleMeterRegistry();
+
+        // 模拟批次标识与数据在同一事务中记录：写入失败时不记录
+        MonitoringDataBatchWriter batchWriter = new MonitoringDataBatchWriter(null, disabledRollups(null)) {
+            @Override
+            public int insertRadiationData(List<RadiationDeviceData> dataList, String batchId) {
+                beforeWrite.run();
+                if (writeFailures-- > 0) {
+                    throw new IllegalStateException("database unavailable");
+                }
+                if (!appliedBatches.add(batchId)) {
+                    return ALREADY_APPLIED;
+                }
+                savedRadiation.add(new ArrayList<>(dataList));
+                return dataList.size();
+            }
+
+            @Override
+            public int insertEnvironmentData(List<EnvironmentDeviceData> dataList, String batchId) {
+                if (!appliedBatches.add(batchId)) {
+                    return ALREADY_APPLIED;
+                }
+                savedEnvironment.add(new ArrayList<>(dataList));
+                return dataList.size();
+            }
+        };
+
+        MqttConfig mqttConfig = new MqttConfig();
+        mqttConfig.setNodeId("node-a");
+
+        return new MonitoringDataFlushScheduler(batchWriter, redisTemplate(), properties, mqttConfig, meterRegistry);
+    }
+
+    @Test
+    void testDrainsBacklogUntilEmpty() {
+        Deque<Object> radiation = radiationQueue(7);
+
+        scheduler.flushMonitoringDataToMySQL();
+
+        assertEquals(List.of(
+                "MOVE buffer:queue:radiation 3", "LLEN buffer:queue:radiation",
+                "MOVE buffer:queue:radiation 3", "LLEN buffer:queue:radiation",
+                "MOVE buffer:queue:radiation 3", "MOVE buffer:queue:environment 3"),
+                commands.stream().filter(c -> c.startsWith("MOVE") || c.startsWith("LLEN")).toList());
+        assertEquals(List.of(3, 3, 1), savedRadiation.stream().map(List::size).toList());
+        assertTrue(radiation.isEmpty());
+        assertTrue(queue(RADIATION_PROCESSING).isEmpty());
+        assertTrue(savedEnvironment.isEmpty());
+        assertEquals(7.0, meterRegistry.get("ems.buffer.drained").tag("queue", "radiation").counter().count());
+        assertEquals(0.0, meterRegistry.get("ems.buffer.backlog").tag("queue", "radiation").gauge().value());
+    }
+
+    @Test
+    void testStopsAtBacklogThreshold() {
+        properties.setBacklogThreshold(3);
+        Deque<Object> radiation = radiationQueue(7);
+
+        scheduler.flushMonitoringDataToMySQL();
+
+        assertEquals(2, savedRadiation.size());
+        assertEquals(1, radiation.size());
+    }
+
+    @Test
+    void testCycleBoundedByTime() {
+        properties.setMaxCycleMs(0);
+        Deque<Object> radiation = radiationQueue(7);
+
+        scheduler.flushMonitoringDataToMySQL();
+
+        // 超时后每个队列仍至少取一批
+        assertEquals(1, savedRadiation.size());
+        assertEquals(4, radiation.size());
+        assertEquals(4.0, meterRegistry.get("ems.buffer.backlog").tag("queue", "radiation").gauge().value());
+    }
+
+    @Test
+    void testHighWaterMarkTriggersEarlyFlush() {
+        Deque<Object> radiation = radiationQueue(4);
+
+        // 未到常规间隔且未达高水位：只检查队列长度
+        scheduler.checkBacklog();
+        assertEquals(List.of("LLEN buffer:queue:radiation", "LLEN buffer:queue:environment"), commands);
+        assertTrue(savedRadiation.isEmpty());
+        assertEquals(4.0, meterRegistry.get("ems.buffer.backlog").tag("queue", "radiation").gauge().value());
+
+        radiationQueue(1);
+        scheduler.checkBacklog();
+        assertEquals(2, savedRadiation.size());
+        assertTrue(radiation.isEmpty());
+    }
+
+    @Test
+    void testRegularIntervalFlush() {
+        properties.setIntervalMs(0);
+        radiationQueue(1);
+
+        scheduler.checkBacklog();
+
+        assertEquals(1, savedRadiation.size());
+    }
+
+    @Test
+    void testFailedBatchReplayedFromProcessingList() {
+        writeFailures = 1;
+        Deque<Object> radiation = radiationQueue(4);
+
+        scheduler.flushMonitoringDataToMySQL();
+
+        // 写入失败：该批保留在处理中列表，本周期不再取新数据
+        assertTrue(savedRadiation.isEmpty());
+        assertEquals(3, queue(RADIATION_PROCESSING).size());
+        assertEquals(1, radiation.size());
+
+        scheduler.flushMonitoringDataToMySQL();
+
+        assertEquals(List.of(3, 1), savedRadiation.stream().map(List::size).toList());
+        assertEquals("RAD0", ((RadiationDeviceData) savedRadiation.get(0).get(0)).getDeviceCode());
+        assertTrue(queue(RADIATION_PROCESSING).isEmpty());
+        assertTrue(radiation.isEmpty());
+        assertEquals(3.0, meterRegistry.get("ems.buffer.replayed").tag("queue", "radiation").counter().count());
+        assertEquals(4.0, meterRegistry.get("ems.buffer.drained").tag("queue", "radiation").counter().count());
+    }
+
+    @Test
+    void testDeadLetterAfterMaxReplayAttempts() {
+        properties.setMaxReplayAttempts(2);
+        writeFailures = 2;
+        radiationQueue(2);
+
+        scheduler.flushMonitoringDataToMySQL();
+        scheduler.flushMonitoringDataToMySQL();
+
+        assertEquals(2, queue("buffer:dead:radiation").size());
+        assertTrue(queue(RADIATION_PROCESSING).isEmpty());
+        assertTrue(savedRadiation.isEmpty());
+        assertEquals(2.0, meterRegistry.get("ems.buffer.dead.lettered").tag("queue", "radiation").counter().count());
+    }
+
+    @Test
+    void testSkipsShardLeasedByAnotherNode() {
+        values.put(RADIATION_LEASE, "node-b:1");
+        Deque<Object> radiation = radiationQueue(2);
+
+        scheduler.flushMonitoringDataToMySQL();
+
+        assertTrue(savedRadiation.isEmpty());
+        assertEquals(2, radiation.size());
+        assertEquals("node-b:1", values.get(RADIATION_LEASE));
+        assertEquals(1.0, meterRegistry.get("ems.buffer.lease.skipped").counter().count());
+    }
+
+    @Test
+    void testLeaseLostDuringWriteKeepsProcessingList() {
+        beforeWrite = () -> values.put(RADIATION_LEASE, "node-b:1");
+        radiationQueue(2);
+
+        scheduler.flushMonitoringDataToMySQL();
+
+        // 已写入，但租约已被其他节点取得：处理中列表留给新的持有者重放，不释放对方的租约
+        assertEquals(1, savedRadiation.size());
+        assertEquals(2, queue(RADIATION_PROCESSING).size());
+        assertEquals("node-b:1", values.get(RADIATION_LEASE));
+    }
+
+    @Test
+    void testCommittedBatchSkippedOnReplay() {
+        beforeWrite = () -> values.put(RADIATION_LEASE, "node-b:1");
+        radiationQueue(2);
+        scheduler.flushMonitoringDataToMySQL();
+        assertEquals(1, savedRadiation.size());
+
+        // 原持有者的租约过期后重放处理中列表：该批已提交，跳过写入并删除处理中列表
+        beforeWrite = () -> { };
+        values.remove(RADIATION_LEASE);
+        scheduler.flushMonitoringDataToMySQL();
+
+        assertEquals(1, savedRadiation.size());
+        assertTrue(queue(RADIATION_PROCESSING).isEmpty());
+        assertEquals(2.0, meterRegistry.get("ems.buffer.drained").tag("queue", "radiation").counter().count());
+    }
+
+    @Test
+    void testParallelWorkersFlushAllShards() {
+        scheduler.shutdown();
+        properties.setShards(4);
+        properties.setWorkers(3);
+        scheduler = newScheduler();
+        Set<String> expected = new HashSet<>();
+        for (int i = 0; i < 40; i++) {
+            RadiationDeviceData data = new RadiationDeviceData();
+            data.setDeviceCode("RAD" + i);
+            queue(MonitoringDataBufferService.queueKey("radiation", MonitoringDataBufferService.shardOf("RAD" + i, 4)))
+                    .add(data);
+            expected.add("RAD" + i);
+        }
+
+        scheduler.flushMonitoringDataToMySQL();
+
+        List<String> saved = savedRadiation.stream().flatMap(List::stream)
+                .map(data -> ((RadiationDeviceData) data).getDeviceCode()).toList();
+        assertEquals(40, saved.size());
+        assertEquals(expected, new HashSet<>(saved));
+        assertTrue(queues.values().stream().allMatch(Deque::isEmpty));
+        assertTrue(values.keySet().stream().noneMatch(key -> key.startsWith("buffer:lease:")));
+        assertEquals(4.0, meterRegistry.get("ems.buffer.shards").gauge().value());
+        assertEquals(0.0, meterRegistry.get("ems.buffer.backlog").tags("queue", "radiation", "shard", "3")
+                .gauge().value());
+    }
+
+    @Test
+    void testUndecodableValuesDeadLettered() {
+        Deque<Object> environment = queue("buffer:queue:environment");
+        byte[] garbage = "not-a-reading".getBytes(StandardCharsets.UTF_8);
+        byte[] radiationFrame = MonitoringDataFrameCodec.encodeRadiation(List.of(new RadiationDeviceData()), true);
+        environment.add(new EnvironmentDeviceData());
+        environment.add(garbage);
+        environment.add(radiationFrame);
+        environment.add("unknown");
+
+        scheduler.flushMonitoringDataToMySQL();
+
+        assertEquals(1, savedEnvironment.size());
+        assertEquals(1, savedEnvironment.get(0).size());
+        assertTrue(environment.isEmpty());
+        assertTrue(queue("buffer:processing:environment").isEmpty());
+        assertEquals(List.of(garbage, radiationFrame), new ArrayList<>(queue("buffer:dead:environment")));
+        assertEquals(2.0, meterRegistry.get("ems.buffer.dead.lettered").tag("queue", "environment")
+                .counter().count());
+    }
+
+    @Test
+    void testExpandsPackedFrames() {
+        Deque<Object> radiation = radiationQueue(1);
+        RadiationDeviceData framed1 = new RadiationDeviceData();
+        framed1.setDeviceCode("FRAME1");
+        RadiationDeviceData framed2 = new RadiationDeviceData();
+        framed2.setDeviceCode("FRAME2");
+        radiation.add(MonitoringDataFrameCodec.encodeRadiation(List.of(framed1, framed2), true));
+
+        scheduler.flushMonitoringDataToMySQL();
+
+        assertEquals(1, savedRadiation.size());
+        assertEquals(List.of("RAD0", "FRAME1", "FRAME2"), savedRadiation.get(0).stream()
+                .map(data -> ((RadiationDeviceData) data).getDeviceCode()).toList());
+        assertEquals(3.0, meterRegistry.get("ems.buffer.drained").tag("queue", "radiation").counter().count());
+    }
+
+    private Deque<Object> radiationQueue(int count) {
+        Deque<Object> radiation = queue("buffer:queue:radiation");
+        for (int i = 0; i < count; i++) {
+            RadiationDeviceData data = new RadiationDeviceData();
+            data.setDeviceCode("RAD" + i);
+            radiation.add(data);
+        }
+        return radiation;
+    }
+
+    private Deque<Object> queue(String key) {
+        return queues.computeIfAbsent(key, k -> new ConcurrentLinkedDeque<>());
+    }
+
+    @SuppressWarnings("unchecked")
+    private RedisTemplate<String, Object> redisTemplate() {
+        ListOperations<String, Object> listOperations = (ListOperations<String, Object>) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[]{ListOperations.class}, (proxy, method, args) -> {
+                    if ("size".equals(method.getName())) {
+                        commands.add("LLEN " + args[0]);
+                        return (long) queue((String) args[0]).size();
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+
+        return new RedisTemplate<>() {
+            {
+                setValueSerializer(RedisSerializer.json());
+            }
+
+            @Override
+            public ListOperations<String, Object> opsForList() {
+                return listOperations;
+            }
+
+            /**
+             * 模拟租约脚本（ACQUIRE/RENEW/ACK/RELEASE）与RANGE_SCRIPT，ACK的持有者参数为字节、其余参数追加到死信列表；
+             * 模拟MOVE_SCRIPT：源列表头部最多count条移到目标列表尾部（count为0时全部）
+             */
+            @Override
+            public <T> T execute(RedisScript<T> script, RedisSerializer<?> argsSerializer,
+                                 RedisSerializer<T> resultSerializer, List<String> keys, Object... args) {
+                if (script == MonitoringDataFlushScheduler.RANGE_SCRIPT) {
+                    return (T) new ArrayList<>(queue(keys.get(0)));
+                }
+                if (script == MonitoringDataFlushScheduler.ACQUIRE_SCRIPT) {
+                    return (T) Long.valueOf(values.putIfAbsent(keys.get(0), args[0]) == null ? 1L : 0L);
+                }
+                Object holder = args[0] instanceof byte[] bytes ? new String(bytes, StandardCharsets.UTF_8) : args[0];
+                boolean owner = holder.equals(values.get(keys.get(0)));
+                if (script == MonitoringDataFlushScheduler.RENEW_SCRIPT) {
+                    return (T) Long.valueOf(owner ? 1L : 0L);
+                }
+                if (script == MonitoringDataFlushScheduler.ACK_SCRIPT) {
+                    if (owner) {
+                        queue(keys.get(2)).addAll(Arrays.asList(args).subList(1, args.length));
+                        commands.add("DEL " + keys.get(1));
+                        queues.remove(keys.get(1));
+                    }
+                    return (T) Long.valueOf(owner ? 1L : 0L);
+                }
+                if (script == MonitoringDataFlushScheduler.RELEASE_SCRIPT) {
+                    return (T) Long.valueOf(owner && values.remove(keys.get(0)) != null ? 1L : 0L);
+                }
+                int count = Integer.parseInt((String) args[0]);
+                commands.add("MOVE " + keys.get(0) + " " + count);
+                Deque<Object> source = queue(keys.get(0));
+                List<Object> moved = new ArrayList<>();
+                while ((count == 0 || moved.size() < count) && !source.isEmpty()) {
+                    moved.add(source.poll());
+                }
+                queue(keys.get(1)).addAll(moved);
+                return (T) moved;
+            }
+        };
+    }
+
+    /**
+     * 关闭汇总的汇总表仓库（不写汇总表，不使用事务管理器）
+     */
+    private static MonitoringDataRollupRepository disabledRollups(JdbcTemplate jdbcTemplate) {
+        MonitoringDataRollupProperties properties = new MonitoringDataRollupProperties();
+        properties.setEnabled(false);
+        return new MonitoringDataRollupRepository(jdbcTemplate, null, properties);
+    }
+}
@@ -0,0 +1,174 @@
+package com.cdutetc.ems.service;
+
+import com.cdutetc.ems.config.CpmConversionProperties;
+import com.cdutetc.ems.config.DeviceDataBatchProperties;
+import com.cdutetc.ems.dto.request.EnvironmentDataReceiveRequest;
+import com.cdutetc.ems.dto.response.DeviceDataBatchReceiveResponse;
+import com.cdutetc.ems.entity.EnvironmentDeviceData;
+import com.cdutetc.ems.entity.RadiationDeviceData;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * DeviceDataReceiveService批量接收单元测试
+ *
+ * 测试目标:
+ * 1. NDJSON和JSON数组请求体逐条解析，按chunkSize分块写入
+ * 2. 未通过设备校验/重复的读数计为拒绝，字段校验失败的读数计为无效
+ * 3. 请求体中途格式错误时，之前的读数照常写入
+ * 4. 采集时间使用设备时间（ts/recordTime或辐射设备的time字段），缺省时使用接收时间
+ *
+ * @author EMS Team
+ */
+class DeviceDataReceiveServiceTest {
+
+    private final List<Integer> chunkSizes = new ArrayList<>();
+    private final List<RadiationDeviceData> buffered = new ArrayList<>();
+    private DeviceDataReceiveService service;
+
+    @BeforeEach
+    void setUp() {
+        DeviceDataBatchProperties properties = new DeviceDataBatchProperties();
+        properties.setChunkSize(2);
+
+        // 只接收RAD001的读数，模拟设备校验
+        DeviceDataIngestService ingestService = new DeviceDataIngestService(
+                null, null, null, null, null, null, null, null, null, null) {
+            @Override
+            public int ingestRadiationBatch(String defaultDeviceCode, List<RadiationDeviceData> readings,
+                                            boolean redelivery, Runnable onBuffered) {
+                chunkSizes.add(readings.size());
+                readings.removeIf(data -> !"RAD001".equals(data.getDeviceCode()));
+                buffered.addAll(readings);
+                return readings.size();
+            }
+
+            @Override
+            public int ingestEnvironmentBatch(String defaultDeviceCode, List<EnvironmentDeviceData> readings,
+                                              boolean redelivery, Runnable onBuffered) {
+                throw new IllegalStateException("Redis不可用");
+            }
+        };
+
+        service = new DeviceDataReceiveService(ingestService, new CpmConversionProperties(), properties,
+                new ObjectMapper(), Validation.buildDefaultValidatorFactory().getValidator());
+    }
+
+    @Test
+    void testNdjsonChunkedWithPerDeviceCounts() {
+        String body = radiation("RAD001", 100) + "\n"
+                + radiation("RAD001", 200) + "\n"
+                + radiation("RAD404", 300) + "\n"
+                + radiation("RAD001", 400) + "\n";
+
+        DeviceDataBatchReceiveResponse response = service.receiveRadiationBatch(stream(body));
+
+        assertTrue(response.getSuccess());
+        assertEquals(4, response.getTotalCount());
+        assertEquals(3, response.getAcceptedCount());
+        assertEquals(1, response.getRejectedCount());
+        assertEquals(List.of(2, 2), chunkSizes);
+        assertEquals(3, response.getDevices().get("RAD001").getAccepted());
+        assertEquals(1, response.getDevices().get("RAD404").getRejected());
+
+        // CPM转换系数和电压mV→V照常应用
+        assertEquals(10.0, buffered.get(0).getCpm(), 1e-9);
+        assertEquals(3.9, buffered.get(0).getBatvolt(), 1e-9);
+    }
+
+    @Test
+    void testJsonArrayWithInvalidItems() {
+        String body = "[" + radiation("RAD001", 100) + ", {\"deviceCode\":\"RAD001\"}, 42, "
+                + radiation("RAD001", 200) + "]";
+
+        DeviceDataBatchReceiveResponse response = service.receiveRadiationBatch(stream(body));
+
+        assertTrue(response.getSuccess());
+        assertEquals(4, response.getTotalCount());
+        assertEquals(2, response.getAcceptedCount());
+        assertEquals(2, response.getInvalidCount());
+        assertEquals(2, buffered.size());
+    }
+
+    @Test
+    void testMalformedBodyKeepsEarlierReadings() {
+        String body = radiation("RAD001", 100) + "\n{\"deviceCode\": RAD001";
+
+        DeviceDataBatchReceiveResponse response = service.receiveRadiationBatch(stream(body));
+
+        assertFalse(response.getSuccess());
+        assertEquals(1, response.getAcceptedCount());
+        assertEquals(1, buffered.size());
+    }
+
+    @Test
+    void testBufferFailureCountsChunkAsRejected() {
+        String body = "{\"deviceCode\":\"ENV001\",\"rawData\":\"{}\",\"src\":1,\"cpm\":634,\"temperature\":20,"
+                + "\"wetness\":50,\"windspeed\":1,\"total\":1,\"battery\":12}";
+
+        DeviceDataBatchReceiveResponse response = service.receiveEnvironmentBatch(stream(body));
+
+        assertFalse(response.getSuccess());
+        assertEquals(0, response.getAcceptedCount());
+        assertEquals(1, response.getRejectedCount());
+        assertEquals(1, response.getDevices().get("ENV001").getRejected());
+    }
+
+    @Test
+    void testRecordTimeFromDeviceTime() {
+        String body = radiation("RAD001", 100) + "\n"
+                + withField(radiation("RAD001", 200), "\"ts\":1736922600000") + "\n"
+                + withField(radiation("RAD001", 300), "\"recordTime\":1736922660000") + "\n"
+                + radiation("RAD001", 301).replace("\"time\":\"2025/01/15 14:30:1\"", "\"time\":\"invalid\"");
+
+        LocalDateTime before = LocalDateTime.now();
+        service.receiveRadiationBatch(stream(body));
+
+        assertEquals(LocalDateTime.of(2025, 1, 15, 14, 30, 40), buffered.get(0).getRecordTime());
+        assertEquals(toLocal(1736922600000L), buffered.get(1).getRecordTime());
+        assertEquals(toLocal(1736922660000L), buffered.get(2).getRecordTime());
+        assertFalse(buffered.get(3).getRecordTime().isBefore(before), "设备时间无效时使用接收时间");
+    }
+
+    @Test
+    void testEnvironmentRecordTimeFromTs() {
+        EnvironmentDataReceiveRequest request = new EnvironmentDataReceiveRequest();
+        request.setDeviceCode("ENV001");
+        request.setTs(1736922600000L);
+        assertEquals(toLocal(1736922600000L), service.toEnvironmentData(request).getRecordTime());
+
+        request.setTs(null);
+        LocalDateTime before = LocalDateTime.now();
+        assertFalse(service.toEnvironmentData(request).getRecordTime().isBefore(before));
+    }
+
+    private static LocalDateTime toLocal(long epochMilli) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMilli), ZoneId.systemDefault());
+    }
+
+    private static String radiation(String deviceCode, int cpm) {
+        return "{\"deviceCode\":\"" + deviceCode + "\",\"rawData\":\"{}\",\"src\":1,\"msgtype\":1,"
+                + "\"cpm\":" + cpm + ",\"batvolt\":3900,\"time\":\"2025/01/15 14:30:" + (cpm % 60) + "\","
+                + "\"trigger\":1,\"multi\":1,\"way\":1}";
+    }
+
+    private static String withField(String json, String field) {
+        return json.substring(0, json.length() - 1) + "," + field + "}";
+    }
+
+    private static ByteArrayInputStream stream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,142 @@
+package com.cdutetc.ems.service;
+
+import com.cdutetc.ems.config.DeviceStatusCacheProperties;
+import com.cdutetc.ems.dto.event.DeviceOnlineStateEvent;
+import com.cdutetc.ems.entity.enums.DeviceStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * DeviceOnlineStateTracker单元测试
+ *
+ * 测试目标:
+ * 1. 持续在线的设备不重复发布事件
+ * 2. OFFLINE→ONLINE、ONLINE→OFFLINE变化各发布一次事件
+ * 3. 状态在节点间共享：一个节点标记离线后，另一个节点收到消息时发布上线变化
+ * 4. 确认窗口内跳过共享状态比较
+ *
+ * @author EMS Team
+ */
+class DeviceOnlineStateTrackerTest {
+
+    private final List<DeviceOnlineStateEvent> events = new ArrayList<>();
+
+    /**
+     * 模拟共享的Redis状态缓存（status字段）
+     */
+    private final Map<String, String> sharedStatus = new ConcurrentHashMap<>();
+    private final List<String> swaps = new ArrayList<>();
+    private DeviceOnlineStateTracker tracker;
+
+    @BeforeEach
+    void setUp() {
+        tracker = newNode();
+        tracker.setConfirmWindowMs(0);
+    }
+
+    @Test
+    void testFirstMessageIsTransition() {
+        assertTrue(tracker.markOnline("RAD001", 1L, 10L));
+
+        assertEquals(1, events.size());
+        DeviceOnlineStateEvent event = events.get(0);
+        assertEquals("RAD001", event.getDeviceCode());
+        assertEquals(1L, event.getDeviceId());
+        assertEquals(10L, event.getCompanyId());
+        assertNull(event.getPreviousStatus());
+        assertTrue(event.isOnline());
+    }
+
+    @Test
+    void testRepeatedOnlineNoEvent() {
+        tracker.markOnline("RAD001", 1L, 10L);
+        for (int i = 0; i < 100; i++) {
+            assertFalse(tracker.markOnline("RAD001", 1L, 10L));
+        }
+
+        assertEquals(1, events.size());
+        assertEquals(DeviceStatus.ONLINE, tracker.getStatus("RAD001"));
+    }
+
+    @Test
+    void testOfflineThenOnlineTransitions() {
+        tracker.markOnline("RAD001", 1L, 10L);
+        assertTrue(tracker.markOffline("RAD001", 1L, 10L));
+        assertFalse(tracker.markOffline("RAD001", 1L, 10L));
+        assertTrue(tracker.markOnline("RAD001", 1L, 10L));
+
+        assertEquals(3, events.size());
+        assertEquals(DeviceStatus.OFFLINE, events.get(1).getCurrentStatus());
+        assertEquals(DeviceStatus.OFFLINE, events.get(2).getPreviousStatus());
+        assertEquals(DeviceStatus.ONLINE, events.get(2).getCurrentStatus());
+    }
+
+    @Test
+    void testOfflineMarkedOnOtherNodeSeenAsTransition() {
+        DeviceOnlineStateTracker nodeB = newNode();
+        nodeB.setConfirmWindowMs(0);
+
+        tracker.markOnline("RAD001", 1L, 10L);
+        assertFalse(nodeB.markOnline("RAD001", 1L, 10L), "其他节点已记录在线");
+
+        // 两个节点的离线检查任务都会标记离线，只有一个发布变化
+        assertTrue(tracker.markOffline("RAD001", 1L, 10L));
+        assertFalse(nodeB.markOffline("RAD001", 1L, 10L));
+
+        assertTrue(nodeB.markOnline("RAD001", 1L, 10L), "下一条消息由其他节点接收时也应识别上线");
+        assertFalse(tracker.markOnline("RAD001", 1L, 10L));
+
+        assertEquals(3, events.size());
+        assertEquals(DeviceStatus.ONLINE, events.get(2).getCurrentStatus());
+        assertEquals(DeviceStatus.ONLINE, tracker.getStatus("RAD001"));
+    }
+
+    @Test
+    void testConfirmWindowSkipsSharedState() {
+        tracker.setConfirmWindowMs(60_000);
+
+        tracker.markOnline("RAD001", 1L, 10L);
+        for (int i = 0; i < 100; i++) {
+            tracker.markOnline("RAD001", 1L, 10L);
+        }
+        assertEquals(1, swaps.size(), "确认窗口内不访问共享状态");
+
+        // 本节点标记离线后立即失效
+        tracker.markOffline("RAD001", 1L, 10L);
+        assertTrue(tracker.markOnline("RAD001", 1L, 10L));
+        assertEquals(3, swaps.size());
+    }
+
+    @Test
+    void testDevicesTrackedIndependently() {
+        tracker.markOnline("RAD001", 1L, 10L);
+        tracker.markOnline("ENV001", 2L, 10L);
+
+        assertEquals(2, events.size());
+        assertNull(tracker.getStatus("RAD002"));
+    }
+
+    private DeviceOnlineStateTracker newNode() {
+        DeviceStatusCacheService cacheService = new DeviceStatusCacheService(null, null,
+                new DeviceStatusCacheProperties()) {
+            @Override
+            public String swapStatus(String deviceCode, String status) {
+                swaps.add(deviceCode);
+                return sharedStatus.put(deviceCode, status);
+            }
+
+            @Override
+            public String getStatus(String deviceCode) {
+                return sharedStatus.get(deviceCode);
+            }
+        };
+        return new DeviceOnlineStateTracker(event -> events.add((DeviceOnlineStateEvent) event), cacheService);
+    }
+}
@@ -0,0 +1,139 @@
+package com.cdutetc.ems.service;
+
+import com.cdutetc.ems.config.DeviceSnapshotCacheProperties;
+import com.cdutetc.ems.dto.cache.DeviceSnapshot;
+import com.cdutetc.ems.entity.Company;
+import com.cdutetc.ems.entity.Device;
+import com.cdutetc.ems.entity.enums.DeviceActivationStatus;
+import com.cdutetc.ems.entity.enums.DeviceType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * DeviceSnapshotCacheService单元测试
+ *
+ * 测试目标:
+ * 1. 命中本地缓存时不再访问DeviceService
+ * 2. 失效后重新加载最新设备信息
+ * 3. 容量上限和TTL生效
+ *
+ * @author EMS Team
+ */
+class DeviceSnapshotCacheServiceTest {
+
+    private final Map<String, Device> devices = new HashMap<>();
+    private final AtomicInteger loadCount = new AtomicInteger();
+
+    private DeviceSnapshotCacheProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+    private DeviceSnapshotCacheService cacheService;
+
+    @BeforeEach
+    void setUp() {
+        properties = new DeviceSnapshotCacheProperties();
+        meterRegistry = new SimpleMeterRegistry();
+
+        // 使用内存Map代替Redis/MySQL
+        DeviceService deviceService = new DeviceService(null, null, null, null, null, null) {
+            @Override
+            public Device findByDeviceCode(String deviceCode) {
+                loadCount.incrementAndGet();
+                return devices.get(deviceCode);
+            }
+        };
+        cacheService = new DeviceSnapshotCacheService(deviceService, properties, null, null, meterRegistry);
+
+        devices.put("RAD001", createDevice(1L, "RAD001", DeviceActivationStatus.ACTIVE, 10L));
+    }
+
+    @Test
+    void testSnapshotFieldsAndCacheHit() {
+        DeviceSnapshot first = cacheService.getSnapshot("RAD001");
+        DeviceSnapshot second = cacheService.getSnapshot("RAD001");
+
+        assertEquals(1L, first.getId());
+        assertEquals("RAD001", first.getDeviceCode());
+        assertEquals(DeviceType.RADIATION_MONITOR, first.getDeviceType());
+        assertEquals(DeviceActivationStatus.ACTIVE, first.getActivationStatus());
+        assertEquals(10L, first.getCompanyId());
+        assertSame(first, second);
+        assertEquals(1, loadCount.get(), "第二次查询应命中本地缓存");
+        assertEquals(1.0, meterRegistry.get("ems.device.snapshot.cache").tag("result", "hit").counter().count());
+    }
+
+    @Test
+    void testInvalidateReloadsLatest() {
+        devices.put("RAD002", createDevice(2L, "RAD002", DeviceActivationStatus.PENDING, null));
+        assertEquals(DeviceActivationStatus.PENDING, cacheService.getSnapshot("RAD002").getActivationStatus());
+
+        // 设备激活后发布失效
+        devices.put("RAD002", createDevice(2L, "RAD002", DeviceActivationStatus.ACTIVE, 10L));
+        cacheService.invalidate("RAD002");
+
+        DeviceSnapshot reloaded = cacheService.getSnapshot("RAD002");
+        assertEquals(DeviceActivationStatus.ACTIVE, reloaded.getActivationStatus());
+        assertEquals(10L, reloaded.getCompanyId());
+        assertEquals(2, loadCount.get());
+    }
+
+    @Test
+    void testMissingDeviceNotCached() {
+        assertNull(cacheService.getSnapshot("UNKNOWN"));
+        assertNull(cacheService.getSnapshot("UNKNOWN"));
+
+        assertEquals(2, loadCount.get());
+        assertEquals(0, cacheService.size());
+    }
+
+    @Test
+    void testMaxSizeBounded() {
+        properties.setMaxSize(3);
+        for (int i = 0; i < 10; i++) {
+            String code = "ENV" + i;
+            devices.put(code, createDevice((long) i, code, DeviceActivationStatus.ACTIVE, 10L));
+            assertNotNull(cacheService.getSnapshot(code));
+        }
+
+        assertTrue(cacheService.size() <= 3);
+    }
+
+    @Test
+    void testExpiredEntryReloaded() {
+        properties.setTtlSeconds(0);
+        cacheService.getSnapshot("RAD001");
+        cacheService.getSnapshot("RAD001");
+
+        assertEquals(2, loadCount.get());
+    }
+
+    @Test
+    void testDisabledAlwaysLoads() {
+        properties.setEnabled(false);
+        cacheService.getSnapshot("RAD001");
+        cacheService.getSnapshot("RAD001");
+
+        assertEquals(2, loadCount.get());
+        assertEquals(0, cacheService.size());
+    }
+
+    private Device createDevice(Long id, String code, DeviceActivationStatus status, Long companyId) {
+        Device device = new Device();
+        device.setId(id);
+        device.setDeviceCode(code);
+        device.setDeviceType(DeviceType.RADIATION_MONITOR);
+        device.setActivationStatus(status);
+        if (companyId != null) {
+            Company company = new Company();
+            company.setId(companyId);
+            device.setCompany(company);
+        }
+        return device;
+    }
+}
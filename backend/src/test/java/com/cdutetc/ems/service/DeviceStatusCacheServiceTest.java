@@ -0,0 +1,120 @@
+package com.cdutetc.ems.service;
+
+import com.cdutetc.ems.config.DeviceStatusCacheProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * DeviceStatusCacheService合并写入单元测试
+ *
+ * 测试目标:
+ * 1. 一条消息的多个字段合并为一次写入
+ * 2. 微批模式下跨设备合并，同一设备后写覆盖先写
+ *
+ * @author EMS Team
+ */
+class DeviceStatusCacheServiceTest {
+
+    private DeviceStatusCacheProperties properties;
+    private List<Map<String, Map<String, Object>>> writes;
+    private DeviceStatusCacheService service;
+
+    @BeforeEach
+    void setUp() {
+        properties = new DeviceStatusCacheProperties();
+        writes = new CopyOnWriteArrayList<>();
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.stopBatching();
+    }
+
+    @Test
+    void testSingleMessageCoalescedIntoOneWrite() {
+        createService();
+
+        service.update("RAD001")
+            .lastMessageAt(LocalDateTime.of(2025, 1, 15, 14, 30, 45))
+            .status("ONLINE")
+            .lastCpm(12.5)
+            .lastBattery(null)
+            .apply();
+
+        assertEquals(1, writes.size());
+        Map<String, Object> fields = writes.get(0).get("RAD001");
+        assertEquals("2025-01-15T14:30:45", fields.get("lastMessageAt"));
+        assertEquals("ONLINE", fields.get("status"));
+        assertEquals("12.5", fields.get("lastCpm"));
+        assertFalse(fields.containsKey("lastBattery"), "null值不写入");
+    }
+
+    @Test
+    void testEmptyUpdateSkipped() {
+        createService();
+
+        service.update("RAD001").lastCpm(null).apply();
+
+        assertTrue(writes.isEmpty());
+    }
+
+    @Test
+    void testMicroBatchMergesAcrossDevices() throws Exception {
+        properties.setBatchEnabled(true);
+        properties.setBatchIntervalMs(10_000);  // 手动触发写入
+        createService();
+
+        service.update("RAD001").status("ONLINE").lastCpm(10.0).apply();
+        service.update("ENV001").status("ONLINE").lastBattery(11.9).apply();
+        service.update("RAD001").lastCpm(20.0).apply();
+        assertTrue(writes.isEmpty(), "微批模式下不应立即写入");
+
+        service.flushPendingUpdates();
+
+        assertEquals(1, writes.size());
+        Map<String, Map<String, Object>> batch = writes.get(0);
+        assertEquals(2, batch.size());
+        assertEquals("20.0", batch.get("RAD001").get("lastCpm"));
+        assertEquals("ONLINE", batch.get("RAD001").get("status"));
+        assertEquals("11.9", batch.get("ENV001").get("lastBattery"));
+
+        service.flushPendingUpdates();
+        assertEquals(1, writes.size(), "无待写入数据时不写入");
+    }
+
+    @Test
+    void testStopFlushesPending() {
+        properties.setBatchEnabled(true);
+        properties.setBatchIntervalMs(10_000);
+        createService();
+
+        service.update("RAD001").status("ONLINE").apply();
+        service.stopBatching();
+
+        assertEquals(1, writes.size());
+        assertEquals("ONLINE", writes.get(0).get("RAD001").get("status"));
+    }
+
+    private void createService() {
+        // 记录写入内容代替Redis Pipeline
+        service = new DeviceStatusCacheService(null, null, properties) {
+            @Override
+            void writeUpdates(Map<String, Map<String, Object>> updates) {
+                Map<String, Map<String, Object>> copy = new HashMap<>();
+                updates.forEach((code, fields) -> copy.put(code, new HashMap<>(fields)));
+                writes.add(copy);
+            }
+        };
+        service.startBatching();
+    }
+}
@@ -1,5 +1,6 @@
 package com.cdutetc.ems.service;
 
+import com.cdutetc.ems.config.MonitoringDataFlushProperties;
 import com.cdutetc.ems.entity.EnvironmentDeviceData;
 import com.cdutetc.ems.entity.RadiationDeviceData;
 import org.junit.jupiter.api.BeforeEach;
@@ -20,7 +21,7 @@ import static org.junit.jupiter.api.Assertions.*;
  * 1. 验证辐射数据写入缓冲区
  * 2. 验证环境数据写入缓冲区
  * 3. 验证Redis实时查询功能
- * 4. 验证批量队列功能
+ * 4. 验证批量队列功能（按设备编码分片，断言设备所属的分片队列）
  *
  * @author EMS Team
  */
@@ -33,15 +34,20 @@ public class MonitoringDataBufferServiceTest {
     @Autowired
     private RedisTemplate<String, Object> redisTemplate;
 
+    @Autowired
+    private MonitoringDataFlushProperties flushProperties;
+
     private static final String TEST_DEVICE_CODE = "TEST_RAD_001";
 
     @BeforeEach
     public void setUp() {
         // 清理测试数据
         redisTemplate.delete("monitoring:radiation:" + TEST_DEVICE_CODE);
-        redisTemplate.delete("buffer:queue:radiation");
         redisTemplate.delete("monitoring:env:" + TEST_DEVICE_CODE);
-        redisTemplate.delete("buffer:queue:environment");
+        for (int shard = 0; shard < shards(); shard++) {
+            redisTemplate.delete(MonitoringDataBufferService.queueKey("radiation", shard));
+            redisTemplate.delete(MonitoringDataBufferService.queueKey("environment", shard));
+        }
     }
 
     /**
@@ -63,7 +69,7 @@ public class MonitoringDataBufferServiceTest {
         assertEquals(3.7, cached.getBatvolt());
 
         // 验证2: 批量队列中有数据
-        Long queueSize = redisTemplate.opsForList().size("buffer:queue:radiation");
+        Long queueSize = redisTemplate.opsForList().size(deviceQueueKey("radiation"));
         assertNotNull(queueSize);
         assertEquals(1, queueSize, "批量队列中应该有1条数据");
 
@@ -89,7 +95,7 @@ public class MonitoringDataBufferServiceTest {
         assertEquals(11.2, cached.getBattery());
 
         // 验证2: 批量队列中有数据
-        Long queueSize = redisTemplate.opsForList().size("buffer:queue:environment");
+        Long queueSize = redisTemplate.opsForList().size(deviceQueueKey("environment"));
         assertNotNull(queueSize);
         assertEquals(1, queueSize, "批量队列中应该有1条数据");
 
@@ -158,6 +164,18 @@ public class MonitoringDataBufferServiceTest {
 
     // ========== 辅助方法 ==========
 
+    private int shards() {
+        return Math.max(1, flushProperties.getShards());
+    }
+
+    /**
+     * 测试设备所属的分片队列键
+     */
+    private String deviceQueueKey(String dataType) {
+        return MonitoringDataBufferService.queueKey(dataType,
+                MonitoringDataBufferService.shardOf(TEST_DEVICE_CODE, shards()));
+    }
+
     private RadiationDeviceData createTestRadiationData(String deviceCode, double cpm, double batvolt) {
         RadiationDeviceData data = new RadiationDeviceData();
         data.setDeviceCode(deviceCode);
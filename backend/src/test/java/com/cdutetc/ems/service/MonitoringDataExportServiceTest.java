@@ -0,0 +1,159 @@
+package com.cdutetc.ems.service;
+
+import com.cdutetc.ems.config.MonitoringDataExportProperties;
+import com.cdutetc.ems.config.MonitoringDataRollupProperties;
+import com.cdutetc.ems.entity.DeviceDataRollup.DataType;
+import com.cdutetc.ems.entity.RadiationDeviceData;
+import com.cdutetc.ems.repository.MonitoringDataBatchWriter;
+import com.cdutetc.ems.repository.MonitoringDataExportRepository;
+import com.cdutetc.ems.repository.MonitoringDataRollupRepository;
+import com.cdutetc.ems.service.MonitoringDataExportService.Format;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MonitoringDataExportService单元测试（H2 MySQL兼容模式）
+ *
+ * 测试目标:
+ * 1. CSV首行为字段名，按记录时间升序输出指定设备和时间范围内的数据，特殊字符按CSV规则转义
+ * 2. NDJSON每行一个JSON对象，数值保持数值类型
+ * 3. gzip输出可解压为相同内容
+ * 4. 并发导出数受限，导出名额只释放一次
+ *
+ * @author EMS Team
+ */
+class MonitoringDataExportServiceTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2025, 1, 1, 0, 0);
+
+    private MonitoringDataExportService exportService;
+
+    @BeforeEach
+    void setUp() {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(
+                "jdbc:h2:mem:export-" + System.nanoTime() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", ""));
+        jdbcTemplate.execute("CREATE TABLE ems_radiation_device_data ("
+                + "id BIGINT AUTO_INCREMENT PRIMARY KEY, device_code VARCHAR(255) NOT NULL, raw_data TEXT, "
+                + "src INT, msgtype INT, CPM DOUBLE, Batvolt DOUBLE, time VARCHAR(20), data_trigger INT, "
+                + "multi INT, way INT, gps_longitude VARCHAR(50), gps_latitude VARCHAR(50), gps_type VARCHAR(20), "
+                + "gps_utc VARCHAR(50), record_time DATETIME(6) NOT NULL, created_at DATETIME(6) NOT NULL, "
+                + "updated_at DATETIME(6))");
+
+        List<RadiationDeviceData> dataList = new ArrayList<>();
+        for (int i = 9; i >= 0; i--) {
+            dataList.add(reading(i % 2 == 0 ? "RAD001" : "RAD002", START.plusMinutes(i), 10.0 + i));
+        }
+        RadiationDeviceData special = reading("RAD001", START.plusHours(1), 99.5);
+        special.setGpsUtc("12:00:00, \"UTC\"");
+        dataList.add(special);
+        dataList.add(reading("RAD003", START.plusMinutes(3), 50.0));
+        new MonitoringDataBatchWriter(jdbcTemplate, disabledRollups(jdbcTemplate)).insertRadiationData(dataList);
+
+        MonitoringDataExportProperties properties = new MonitoringDataExportProperties();
+        properties.setMaxConcurrentExports(1);
+        exportService = new MonitoringDataExportService(
+                new MonitoringDataExportRepository(jdbcTemplate, properties), null, properties);
+    }
+
+    @Test
+    void testCsvExport() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long rows = exportService.export(DataType.RADIATION, List.of("RAD001", "RAD002"),
+                START.plusMinutes(2), START.plusHours(1), Format.CSV, false, out);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(9, rows);
+        assertEquals(10, lines.length);
+        assertEquals("id,deviceCode,recordTime,CPM,Batvolt,src,msgtype,time,trigger,multi,way,"
+                + "gpsType,gpsLongitude,gpsLatitude,gpsUtc", lines[0]);
+        assertTrue(lines[1].matches("\\d+,RAD001,2025-01-01T00:02:00,12.0,3.9,,,,,,,,,,"), lines[1]);
+        assertTrue(lines[8].contains(",RAD002,2025-01-01T00:09:00,19.0,"), lines[8]);
+        assertTrue(lines[9].endsWith(",RAD001,2025-01-01T01:00:00,99.5,3.9,,,,,,,,,,\"12:00:00, \"\"UTC\"\"\""),
+                lines[9]);
+    }
+
+    @Test
+    void testNdjsonGzipExport() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long rows = exportService.export(DataType.RADIATION, List.of("RAD002"), null, null,
+                Format.NDJSON, true, out);
+
+        String content;
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            content = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        String[] lines = content.split("\n");
+        assertEquals(5, rows);
+        assertEquals(5, lines.length);
+        ObjectMapper objectMapper = new ObjectMapper();
+        for (int i = 0; i < lines.length; i++) {
+            JsonNode node = objectMapper.readTree(lines[i]);
+            assertEquals("RAD002", node.get("deviceCode").asText());
+            assertEquals(START.plusMinutes(2L * i + 1).toString() + ":00", node.get("recordTime").asText());
+            assertTrue(node.get("CPM").isDouble());
+            assertEquals(11.0 + 2 * i, node.get("CPM").asDouble());
+            assertTrue(node.get("id").isIntegralNumber());
+            assertTrue(node.get("gpsUtc").isNull());
+        }
+    }
+
+    @Test
+    void testEmptyDeviceListWritesHeaderOnly() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertEquals(0, exportService.export(DataType.RADIATION, List.of(), null, null, Format.CSV, false, out));
+        assertEquals(1, out.toString(StandardCharsets.UTF_8).split("\n").length);
+    }
+
+    @Test
+    void testConcurrentExportLimit() {
+        MonitoringDataExportService.ExportPermit permit = exportService.tryBeginExport();
+        assertNotNull(permit);
+        assertNull(exportService.tryBeginExport());
+
+        // 输出结束和异步请求结束都会释放，重复释放不会多出名额
+        permit.release();
+        permit.release();
+        MonitoringDataExportService.ExportPermit next = exportService.tryBeginExport();
+        assertNotNull(next);
+        assertNull(exportService.tryBeginExport());
+        next.release();
+
+        assertEquals(Format.NDJSON, Format.of("ndjson"));
+        assertThrows(IllegalArgumentException.class, () -> Format.of("xlsx"));
+    }
+
+    private static RadiationDeviceData reading(String deviceCode, LocalDateTime recordTime, double cpm) {
+        RadiationDeviceData data = new RadiationDeviceData();
+        data.setDeviceCode(deviceCode);
+        data.setCpm(cpm);
+        data.setBatvolt(3.9);
+        data.setRecordTime(recordTime);
+        return data;
+    }
+
+    /**
+     * 关闭汇总的汇总表仓库（不写汇总表，不使用事务管理器）
+     */
+    private static MonitoringDataRollupRepository disabledRollups(JdbcTemplate jdbcTemplate) {
+        MonitoringDataRollupProperties properties = new MonitoringDataRollupProperties();
+        properties.setEnabled(false);
+        return new MonitoringDataRollupRepository(jdbcTemplate, null, properties);
+    }
+}
@@ -0,0 +1,210 @@
+package com.cdutetc.ems.service;
+
+import com.cdutetc.ems.config.BufferFrameProperties;
+import com.cdutetc.ems.config.BufferWalProperties;
+import com.cdutetc.ems.config.MonitoringDataFlushProperties;
+import com.cdutetc.ems.entity.EnvironmentDeviceData;
+import com.cdutetc.ems.entity.RadiationDeviceData;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisListCommands;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MonitoringDataFrameCodec单元测试
+ *
+ * 测试目标:
+ * 1. 辐射/环境读数编码后解码，所有字段（包括空字段）不变，压缩与不压缩均可
+ * 2. JSON元素不被识别为打包帧；不完整的帧解码失败
+ * 3. 打包帧模式下MonitoringDataBufferService把并发到达的单条读数合并成帧写入
+ *
+ * @author EMS Team
+ */
+class MonitoringDataFrameCodecTest {
+
+    @Test
+    void testRadiationRoundTrip() {
+        RadiationDeviceData full = radiation("RAD001", 1);
+        full.setRawData("{\"src\":1,\"CPM\":123}");
+        full.setSrc(1);
+        full.setMsgtype(1);
+        full.setBatvolt(3.7);
+        full.setTime("2025/01/15 14:30:01");
+        full.setDataTrigger(2);
+        full.setMulti(1);
+        full.setWay(3);
+        full.setGpsLongitude("104.06");
+        full.setGpsLatitude("30.67");
+        full.setGpsType("BDS");
+        full.setGpsUtc("成都");
+        full.setRecordTime(LocalDateTime.of(2025, 1, 15, 14, 30, 1, 123_456_000));
+        RadiationDeviceData sparse = new RadiationDeviceData();
+        sparse.setDeviceCode("RAD002");
+
+        for (boolean compress : new boolean[]{false, true}) {
+            byte[] frame = MonitoringDataFrameCodec.encodeRadiation(List.of(full, sparse), compress);
+            assertTrue(MonitoringDataFrameCodec.isFrame(frame));
+
+            List<Object> decoded = MonitoringDataFrameCodec.decode(frame);
+            assertEquals(2, decoded.size());
+            RadiationDeviceData first = (RadiationDeviceData) decoded.get(0);
+            assertEquals(full.getRawData(), first.getRawData());
+            assertEquals(123.0, first.getCpm());
+            assertEquals(3.7, first.getBatvolt());
+            assertEquals(3, first.getWay());
+            assertEquals("成都", first.getGpsUtc());
+            assertEquals(full.getRecordTime(), first.getRecordTime());
+            RadiationDeviceData second = (RadiationDeviceData) decoded.get(1);
+            assertEquals("RAD002", second.getDeviceCode());
+            assertNull(second.getCpm());
+            assertNull(second.getRecordTime());
+        }
+    }
+
+    @Test
+    void testEnvironmentRoundTrip() {
+        EnvironmentDeviceData data = new EnvironmentDeviceData();
+        data.setDeviceCode("ENV001");
+        data.setSrc(1);
+        data.setCpm(45.0);
+        data.setTemperature(-3.5);
+        data.setWetness(60.0);
+        data.setWindspeed(2.1);
+        data.setTotal(1234.5);
+        data.setBattery(11.8);
+        data.setRecordTime(LocalDateTime.of(2025, 1, 15, 14, 30));
+
+        List<Object> decoded = MonitoringDataFrameCodec.decode(
+                MonitoringDataFrameCodec.encodeEnvironment(List.of(data), true));
+
+        EnvironmentDeviceData result = (EnvironmentDeviceData) decoded.get(0);
+        assertEquals("ENV001", result.getDeviceCode());
+        assertEquals(-3.5, result.getTemperature());
+        assertEquals(11.8, result.getBattery());
+        assertEquals(data.getRecordTime(), result.getRecordTime());
+        assertNull(result.getRawData());
+    }
+
+    @Test
+    void testRejectsJsonAndTruncatedFrames() {
+        assertFalse(MonitoringDataFrameCodec.isFrame("{\"@class\":\"x\"}".getBytes(StandardCharsets.UTF_8)));
+
+        byte[] frame = MonitoringDataFrameCodec.encodeRadiation(List.of(radiation("RAD001", 1)), false);
+        byte[] truncated = Arrays.copyOf(frame, frame.length - 4);
+        assertThrows(IllegalArgumentException.class, () -> MonitoringDataFrameCodec.decode(truncated));
+    }
+
+    @Test
+    void testBufferServiceGroupsConcurrentReadings() throws Exception {
+        List<byte[]> pushed = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch firstPushStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirstPush = new CountDownLatch(1);
+        RedisTemplate<String, Object> redisTemplate = new RedisTemplate<>() {
+            @Override
+            public List<Object> executePipelined(RedisCallback<?> action) {
+                action.doInRedis(connection(pushed));
+                if (firstPushStarted.getCount() > 0) {
+                    firstPushStarted.countDown();
+                    await(releaseFirstPush);
+                }
+                return List.of();
+            }
+        };
+        redisTemplate.setValueSerializer(
+                new GenericJackson2JsonRedisSerializer(new ObjectMapper().findAndRegisterModules()));
+
+        BufferWalProperties walProperties = new BufferWalProperties();
+        walProperties.setEnabled(false);
+        MonitoringDataWal wal = new MonitoringDataWal(walProperties, null, new ObjectMapper(), new SimpleMeterRegistry());
+        BufferFrameProperties frameProperties = new BufferFrameProperties();
+        frameProperties.setEnabled(true);
+        MonitoringDataFlushProperties flushProperties = new MonitoringDataFlushProperties();
+        flushProperties.setShards(1);
+        MonitoringDataBufferService bufferService =
+                new MonitoringDataBufferService(redisTemplate, wal, walProperties, frameProperties, flushProperties);
+
+        // 第一条读数写入进行中，其余4条读数等待并合并为下一帧
+        Thread first = new Thread(() -> bufferService.saveRadiationDataToBuffer(radiation("RAD000", 0)));
+        first.start();
+        assertTrue(firstPushStarted.await(5, TimeUnit.SECONDS));
+        List<Thread> waiting = new ArrayList<>();
+        for (int i = 1; i <= 4; i++) {
+            RadiationDeviceData data = radiation("RAD00" + i, i);
+            Thread thread = new Thread(() -> bufferService.saveRadiationDataToBuffer(data));
+            thread.start();
+            waiting.add(thread);
+        }
+        for (Thread thread : waiting) {
+            while (thread.getState() != Thread.State.WAITING) {
+                Thread.sleep(1);
+            }
+        }
+        releaseFirstPush.countDown();
+        first.join(5000);
+        for (Thread thread : waiting) {
+            thread.join(5000);
+        }
+
+        assertEquals(2, pushed.size());
+        assertEquals(1, MonitoringDataFrameCodec.decode(pushed.get(0)).size());
+        assertEquals(List.of("RAD001", "RAD002", "RAD003", "RAD004"), MonitoringDataFrameCodec.decode(pushed.get(1))
+                .stream().map(data -> ((RadiationDeviceData) data).getDeviceCode()).sorted().toList());
+    }
+
+    private RedisConnection connection(List<byte[]> pushed) {
+        RedisListCommands listCommands = (RedisListCommands) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{RedisListCommands.class}, (proxy, method, args) -> {
+                    if ("rPush".equals(method.getName())) {
+                        pushed.addAll(Arrays.asList((byte[][]) args[1]));
+                        return (long) pushed.size();
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        RedisStringCommands stringCommands = (RedisStringCommands) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[]{RedisStringCommands.class}, (proxy, method, args) -> {
+                    if ("set".equals(method.getName())) {
+                        return true;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        return (RedisConnection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{RedisConnection.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "listCommands" -> listCommands;
+                    case "stringCommands" -> stringCommands;
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private RadiationDeviceData radiation(String deviceCode, int second) {
+        RadiationDeviceData data = new RadiationDeviceData();
+        data.setDeviceCode(deviceCode);
+        data.setCpm(123.0);
+        data.setRecordTime(LocalDateTime.of(2025, 1, 15, 14, 30, second));
+        return data;
+    }
+}
@@ -0,0 +1,226 @@
+package com.cdutetc.ems.service;
+
+import com.cdutetc.ems.config.MonitoringDataRollupProperties;
+import com.cdutetc.ems.entity.DeviceDataRollup.DataType;
+import com.cdutetc.ems.entity.DeviceDataRollup.Resolution;
+import com.cdutetc.ems.entity.EnvironmentDeviceData;
+import com.cdutetc.ems.repository.MonitoringDataBatchWriter;
+import com.cdutetc.ems.repository.MonitoringDataRollupRepository;
+import com.cdutetc.ems.service.MonitoringDataRollupService.Segment;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MonitoringDataRollupService单元测试（H2 MySQL兼容模式）
+ *
+ * 测试目标:
+ * 1. 查询范围按天/小时/分钟桶拆分，两端不足一分钟的部分查询原始数据（含终点）
+ * 2. 写入时增量汇总 + 历史数据补算后，统计结果与直接查询原始数据一致
+ * 3. 补算完成前，启用汇总之前的时间段查询原始数据，结果同样一致
+ *
+ * @author EMS Team
+ */
+class MonitoringDataRollupServiceTest {
+
+    private static final List<String> DEVICES = List.of("ENV001", "ENV002", "ENV003");
+    private static final Map<String, String> METRICS = Map.of(
+            "cpm", "cpmStatistics",
+            "temperature", "temperatureStatistics",
+            "wetness", "humidityStatistics",
+            "windspeed", "windSpeedStatistics",
+            "battery", "batteryStatistics"
+    );
+    private static final Map<String, String> COLUMNS = Map.of(
+            "cpm", "CPM",
+            "temperature", "temperature",
+            "wetness", "wetness",
+            "windspeed", "windspeed",
+            "battery", "battery"
+    );
+
+    private final Random random = new Random(42);
+    private final LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+
+    private JdbcTemplate jdbcTemplate;
+    private MonitoringDataRollupRepository rollupRepository;
+    private MonitoringDataRollupService rollupService;
+    private MonitoringDataBatchWriter writer;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:rollup-" + System.nanoTime() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        createTables(jdbcTemplate);
+        MonitoringDataRollupProperties properties = new MonitoringDataRollupProperties();
+        rollupRepository = new MonitoringDataRollupRepository(jdbcTemplate,
+                new DataSourceTransactionManager(dataSource), properties);
+        rollupService = new MonitoringDataRollupService(rollupRepository, properties);
+        writer = new MonitoringDataBatchWriter(jdbcTemplate, rollupRepository);
+    }
+
+    @Test
+    void testPlanSplitsRangeIntoBuckets() {
+        LocalDateTime start = LocalDateTime.of(2025, 1, 15, 10, 20, 30);
+        LocalDateTime end = LocalDateTime.of(2025, 1, 18, 3, 4, 5);
+
+        List<Segment> segments = MonitoringDataRollupService.plan(start, end, null, LocalDateTime.of(2025, 1, 1, 0, 0));
+
+        assertEquals(List.of(
+                new Segment(null, start, LocalDateTime.of(2025, 1, 15, 10, 21), false),
+                new Segment(Resolution.MINUTE, LocalDateTime.of(2025, 1, 15, 10, 21), LocalDateTime.of(2025, 1, 15, 11, 0), false),
+                new Segment(Resolution.HOUR, LocalDateTime.of(2025, 1, 15, 11, 0), LocalDateTime.of(2025, 1, 16, 0, 0), false),
+                new Segment(Resolution.DAY, LocalDateTime.of(2025, 1, 16, 0, 0), LocalDateTime.of(2025, 1, 18, 0, 0), false),
+                new Segment(Resolution.HOUR, LocalDateTime.of(2025, 1, 18, 0, 0), LocalDateTime.of(2025, 1, 18, 3, 0), false),
+                new Segment(Resolution.MINUTE, LocalDateTime.of(2025, 1, 18, 3, 0), LocalDateTime.of(2025, 1, 18, 3, 4), false),
+                new Segment(null, LocalDateTime.of(2025, 1, 18, 3, 4), end, true)
+        ), segments);
+
+        // 终点在天边界: 单独查询终点时刻；分钟桶保留期之前改查原始数据；汇总起点之前查询原始数据
+        assertEquals(List.of(
+                new Segment(null, LocalDateTime.of(2025, 1, 10, 0, 0), LocalDateTime.of(2025, 1, 12, 0, 0), false),
+                new Segment(Resolution.DAY, LocalDateTime.of(2025, 1, 12, 0, 0), LocalDateTime.of(2025, 1, 14, 0, 0), false),
+                new Segment(null, LocalDateTime.of(2025, 1, 14, 0, 0), LocalDateTime.of(2025, 1, 14, 0, 0), true)
+        ), MonitoringDataRollupService.plan(LocalDateTime.of(2025, 1, 10, 0, 0), LocalDateTime.of(2025, 1, 14, 0, 0),
+                LocalDateTime.of(2025, 1, 12, 0, 0), LocalDateTime.of(2025, 1, 13, 0, 0)));
+        assertEquals(List.of(
+                new Segment(null, LocalDateTime.of(2025, 1, 12, 23, 59, 30), LocalDateTime.of(2025, 1, 13, 0, 0), false),
+                new Segment(Resolution.MINUTE, LocalDateTime.of(2025, 1, 13, 0, 0), LocalDateTime.of(2025, 1, 13, 0, 2), false),
+                new Segment(null, LocalDateTime.of(2025, 1, 13, 0, 2), LocalDateTime.of(2025, 1, 13, 0, 2, 10), true)
+        ), MonitoringDataRollupService.plan(LocalDateTime.of(2025, 1, 12, 23, 59, 30), LocalDateTime.of(2025, 1, 13, 0, 2, 10),
+                null, LocalDateTime.of(2025, 1, 13, 0, 0)));
+
+        // 不限范围: 汇总起点之前查询原始数据，之后全部用天桶
+        assertEquals(List.of(
+                new Segment(null, null, LocalDateTime.of(2025, 1, 12, 0, 0), false),
+                new Segment(Resolution.DAY, LocalDateTime.of(2025, 1, 12, 0, 0), null, false)
+        ), MonitoringDataRollupService.plan(null, null, LocalDateTime.of(2025, 1, 12, 0, 0), LocalDateTime.of(2025, 1, 13, 0, 0)));
+    }
+
+    @Test
+    void testStatisticsMatchRawData() {
+        // 启用汇总之前已有的历史数据（超出分钟桶保留期）
+        for (int i = 0; i < 300; i++) {
+            EnvironmentDeviceData data = reading(now.minusDays(10).plusSeconds(random.nextInt(2 * 86400)));
+            jdbcTemplate.update("INSERT INTO ems_environment_device_data (device_code, CPM, temperature, wetness, "
+                            + "windspeed, battery, record_time, created_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?)",
+                    data.getDeviceCode(), data.getCpm(), data.getTemperature(), data.getWetness(),
+                    data.getWindspeed(), data.getBattery(), Timestamp.valueOf(data.getRecordTime()), Timestamp.valueOf(now));
+        }
+
+        // 启用汇总后写入的数据，时间与历史数据交错，包含整分/整点/零点的读数
+        for (int batch = 0; batch < 20; batch++) {
+            List<EnvironmentDeviceData> dataList = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                LocalDateTime time = now.minusDays(10).plusSeconds(random.nextInt(10 * 86400));
+                if (i % 10 == 0) {
+                    time = time.truncatedTo(i % 20 == 0 ? ChronoUnit.DAYS : ChronoUnit.MINUTES);
+                }
+                dataList.add(reading(time));
+            }
+            writer.insertEnvironmentData(dataList);
+        }
+        assertStatisticsMatch();
+
+        while (rollupRepository.backfillNextDevice(DataType.ENVIRONMENT)) {
+            // 逐个设备补算
+        }
+        assertTrue(rollupRepository.findState(DataType.ENVIRONMENT).isBackfillDone());
+        assertStatisticsMatch();
+
+        // 运行一段时间后: 分钟桶覆盖保留期内的全部数据
+        jdbcTemplate.update("UPDATE ems_device_data_rollup_state SET enabled_at = ?",
+                Timestamp.valueOf(now.minusDays(9)));
+        assertStatisticsMatch();
+    }
+
+    private void assertStatisticsMatch() {
+        List<LocalDateTime[]> ranges = new ArrayList<>();
+        ranges.add(new LocalDateTime[]{null, null});
+        ranges.add(new LocalDateTime[]{now.minusDays(9).truncatedTo(ChronoUnit.DAYS), now.minusDays(2).truncatedTo(ChronoUnit.DAYS)});
+        for (int i = 0; i < 30; i++) {
+            LocalDateTime start = now.minusDays(11).plusSeconds(random.nextInt(11 * 86400));
+            LocalDateTime end = start.plusSeconds(random.nextInt(i % 2 == 0 ? 6 * 3600 : 5 * 86400));
+            ranges.add(new LocalDateTime[]{start, end});
+        }
+
+        for (LocalDateTime[] range : ranges) {
+            List<String> devices = range[0] == null || random.nextBoolean() ? DEVICES : List.of(DEVICES.get(1));
+            Map<String, Object> statistics = rollupService.statistics(DataType.ENVIRONMENT, devices,
+                    range[0], range[1], METRICS);
+
+            String where = " WHERE device_code IN (" + String.join(", ", devices.stream().map(d -> "'" + d + "'").toList()) + ")"
+                    + (range[0] != null ? " AND record_time BETWEEN ? AND ?" : "");
+            Object[] args = range[0] != null
+                    ? new Object[]{Timestamp.valueOf(range[0]), Timestamp.valueOf(range[1])} : new Object[0];
+            String message = "range " + range[0] + " ~ " + range[1] + " " + devices;
+
+            assertEquals(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM ems_environment_device_data" + where,
+                    Long.class, args), statistics.get("totalRecords"), message);
+            for (Map.Entry<String, String> metric : METRICS.entrySet()) {
+                String column = COLUMNS.get(metric.getKey());
+                Map<String, Object> expected = jdbcTemplate.queryForMap("SELECT AVG(" + column + ") average, MIN("
+                        + column + ") minimum, MAX(" + column + ") maximum FROM ems_environment_device_data" + where, args);
+                @SuppressWarnings("unchecked")
+                Map<String, Object> actual = (Map<String, Object>) statistics.get(metric.getValue());
+                for (String key : List.of("average", "minimum", "maximum")) {
+                    Number expectedValue = (Number) expected.get(key);
+                    Double actualValue = (Double) actual.get(key);
+                    if (expectedValue == null) {
+                        assertNull(actualValue, message + " " + metric.getKey() + "." + key);
+                    } else {
+                        assertNotNull(actualValue, message + " " + metric.getKey() + "." + key);
+                        assertEquals(expectedValue.doubleValue(), actualValue, 1e-9, message + " " + metric.getKey() + "." + key);
+                    }
+                }
+            }
+        }
+    }
+
+    private EnvironmentDeviceData reading(LocalDateTime time) {
+        EnvironmentDeviceData data = new EnvironmentDeviceData();
+        data.setDeviceCode(DEVICES.get(random.nextInt(DEVICES.size())));
+        data.setCpm((double) random.nextInt(100));
+        data.setTemperature(random.nextInt(5) == 0 ? null : random.nextInt(400) / 10.0);
+        data.setWetness((double) random.nextInt(100));
+        data.setWindspeed(random.nextInt(50) / 10.0);
+        data.setBattery(11.0 + random.nextInt(20) / 10.0);
+        data.setRecordTime(time);
+        return data;
+    }
+
+    private static void createTables(JdbcTemplate jdbcTemplate) {
+        jdbcTemplate.execute("CREATE TABLE ems_environment_device_data ("
+                + "id BIGINT AUTO_INCREMENT PRIMARY KEY, device_code VARCHAR(255) NOT NULL, raw_data TEXT, "
+                + "src INT, CPM DOUBLE, temperature DOUBLE, wetness DOUBLE, windspeed DOUBLE, total DOUBLE, "
+                + "battery DOUBLE, record_time DATETIME(6) NOT NULL, created_at DATETIME(6) NOT NULL, "
+                + "updated_at DATETIME(6))");
+        StringBuilder metrics = new StringBuilder();
+        for (String metric : MonitoringDataRollupRepository.METRICS) {
+            metrics.append(", ").append(metric).append("_count BIGINT NOT NULL, ")
+                    .append(metric).append("_sum DOUBLE, ").append(metric).append("_min DOUBLE, ")
+                    .append(metric).append("_max DOUBLE, ").append(metric).append("_last DOUBLE");
+        }
+        jdbcTemplate.execute("CREATE TABLE ems_device_data_rollup ("
+                + "id BIGINT AUTO_INCREMENT PRIMARY KEY, data_type VARCHAR(20) NOT NULL, resolution VARCHAR(10) NOT NULL, "
+                + "device_code VARCHAR(255) NOT NULL, bucket_start DATETIME(6) NOT NULL, sample_count BIGINT NOT NULL, "
+                + "last_time DATETIME(6)" + metrics + ", "
+                + "CONSTRAINT uk_rollup_bucket UNIQUE (data_type, resolution, device_code, bucket_start))");
+        jdbcTemplate.execute("CREATE TABLE ems_device_data_rollup_state ("
+                + "data_type VARCHAR(20) PRIMARY KEY, backfill_max_id BIGINT NOT NULL, enabled_at DATETIME(6) NOT NULL, "
+                + "backfill_cursor VARCHAR(255), backfill_done BOOLEAN NOT NULL)");
+    }
+}
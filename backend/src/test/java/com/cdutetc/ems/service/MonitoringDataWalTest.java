@@ -0,0 +1,267 @@
+package com.cdutetc.ems.service;
+
+import com.cdutetc.ems.config.BufferFrameProperties;
+import com.cdutetc.ems.config.BufferWalProperties;
+import com.cdutetc.ems.config.MonitoringDataFlushProperties;
+import com.cdutetc.ems.config.MonitoringDataRollupProperties;
+import com.cdutetc.ems.entity.EnvironmentDeviceData;
+import com.cdutetc.ems.entity.RadiationDeviceData;
+import com.cdutetc.ems.repository.MonitoringDataBatchWriter;
+import com.cdutetc.ems.repository.MonitoringDataRollupRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MonitoringDataWal单元测试
+ *
+ * 测试目标:
+ * 1. 追加的数据重放到MySQL后删除分段文件
+ * 2. 分段写满后切换到新分段，重放顺序不变
+ * 3. 重启后从检查点继续重放，已重放的数据不重复写入
+ * 4. 写入MySQL失败时数据保留，下次按同一范围重放；已提交的批次按批次标识跳过，不重复写入
+ * 5. Redis不可用时MonitoringDataBufferService改为写入WAL
+ *
+ * @author EMS Team
+ */
+class MonitoringDataWalTest {
+
+    @TempDir
+    Path dir;
+
+    private final List<RadiationDeviceData> savedRadiation = new ArrayList<>();
+    private final List<EnvironmentDeviceData> savedEnvironment = new ArrayList<>();
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    private BufferWalProperties properties;
+    private MonitoringDataWal wal;
+    private final Set<String> appliedBatches = new HashSet<>();
+    private int writeFailures;
+    private int environmentFailures;
+    private int acceptLimit = Integer.MAX_VALUE;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        properties = new BufferWalProperties();
+        properties.setDir(dir.toString());
+        properties.setSegmentSize(DataSize.ofKilobytes(4));
+        properties.setReplayBatchSize(10);
+        wal = newWal();
+    }
+
+    @AfterEach
+    void tearDown() {
+        wal.close();
+    }
+
+    @Test
+    void testReplayWritesToDatabaseAndDeletesSegments() throws IOException {
+        wal.appendRadiation(List.of(radiation("RAD001", 1), radiation("RAD002", 2)));
+        EnvironmentDeviceData environment = new EnvironmentDeviceData();
+        environment.setDeviceCode("ENV001");
+        environment.setTemperature(20.5);
+        wal.appendEnvironment(List.of(environment));
+        assertTrue(wal.pendingBytes() > 0);
+
+        wal.replay();
+
+        assertEquals(List.of("RAD001", "RAD002"), savedRadiation.stream().map(RadiationDeviceData::getDeviceCode).toList());
+        assertEquals(1.0, savedRadiation.get(0).getCpm());
+        assertEquals(LocalDateTime.of(2025, 1, 15, 14, 30, 1), savedRadiation.get(0).getRecordTime());
+        assertEquals(20.5, savedEnvironment.get(0).getTemperature());
+        assertEquals(0, wal.pendingBytes());
+        assertEquals(0, segmentFiles());
+    }
+
+    @Test
+    void testRollsSegmentsInOrder() throws IOException {
+        List<RadiationDeviceData> dataList = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            dataList.add(radiation("RAD" + i, i));
+        }
+        wal.appendRadiation(dataList);
+        assertTrue(segmentFiles() > 1);
+
+        wal.replay();
+
+        assertEquals(50, savedRadiation.size());
+        for (int i = 0; i < 50; i++) {
+            assertEquals("RAD" + i, savedRadiation.get(i).getDeviceCode());
+        }
+        assertEquals(0, segmentFiles());
+    }
+
+    @Test
+    void testRecoversFromCheckpointAfterRestart() throws IOException {
+        properties.setReplayBatchSize(2);
+        writeFailures = 1;
+        wal.appendRadiation(List.of(radiation("RAD001", 1), radiation("RAD002", 2)));
+        wal.replay();
+        wal.appendRadiation(List.of(radiation("RAD003", 3), radiation("RAD004", 4)));
+        assertTrue(savedRadiation.isEmpty());
+
+        // 失败的批次按原范围重放（不合并之后追加的数据）；写入成功一批后MySQL再次失败，然后重启
+        acceptLimit = 2;
+        wal.replay();
+        assertEquals(List.of("RAD001", "RAD002"), savedRadiation.stream().map(RadiationDeviceData::getDeviceCode).toList());
+
+        wal.close();
+        savedRadiation.clear();
+        acceptLimit = Integer.MAX_VALUE;
+        properties.setReplayBatchSize(10);
+        wal = newWal();
+        wal.appendRadiation(List.of(radiation("RAD005", 5)));
+        wal.replay();
+
+        // 只重放检查点之后的数据
+        assertEquals(List.of("RAD003", "RAD004", "RAD005"),
+                savedRadiation.stream().map(RadiationDeviceData::getDeviceCode).toList());
+        assertEquals(0, segmentFiles());
+    }
+
+    @Test
+    void testCommittedBatchSkippedOnReplay() throws IOException {
+        wal.appendRadiation(List.of(radiation("RAD001", 1), radiation("RAD002", 2)));
+        EnvironmentDeviceData environment = new EnvironmentDeviceData();
+        environment.setDeviceCode("ENV001");
+        wal.appendEnvironment(List.of(environment));
+
+        // 辐射数据已提交，环境数据写入失败：检查点不推进
+        environmentFailures = 1;
+        wal.replay();
+        assertEquals(2, savedRadiation.size());
+        assertTrue(savedEnvironment.isEmpty());
+
+        // 重启后按同一范围重放：已提交的辐射数据跳过，不重复写入
+        wal.appendRadiation(List.of(radiation("RAD003", 3)));
+        wal.close();
+        wal = newWal();
+        wal.replay();
+
+        assertEquals(List.of("RAD001", "RAD002", "RAD003"),
+                savedRadiation.stream().map(RadiationDeviceData::getDeviceCode).toList());
+        assertEquals(List.of("ENV001"), savedEnvironment.stream().map(EnvironmentDeviceData::getDeviceCode).toList());
+        assertEquals(0, segmentFiles());
+    }
+
+    @Test
+    void testTruncatesIncompleteTailOnRecovery() throws IOException {
+        wal.appendRadiation(List.of(radiation("RAD001", 1), radiation("RAD002", 2)));
+        wal.close();
+
+        // 模拟第二条记录写入中途退出：长度已写入但内容不完整（校验失败）
+        Path segment = segmentPaths().get(0);
+        byte[] bytes = Files.readAllBytes(segment);
+        int second = 9 + ByteBuffer.wrap(bytes).getInt(0);
+        bytes[second + 9] ^= 0x7F;
+        Files.write(segment, bytes);
+
+        wal = newWal();
+        wal.replay();
+
+        assertEquals(List.of("RAD001"), savedRadiation.stream().map(RadiationDeviceData::getDeviceCode).toList());
+    }
+
+    @Test
+    void testBufferServiceFallsBackToWalWhenRedisDown() {
+        List<String> redisCalls = new ArrayList<>();
+        RedisTemplate<String, Object> redisTemplate = new RedisTemplate<>() {
+            @Override
+            public List<Object> executePipelined(SessionCallback<?> session) {
+                redisCalls.add("pipeline");
+                throw new RedisConnectionFailureException("Unable to connect to Redis");
+            }
+        };
+        MonitoringDataBufferService bufferService = new MonitoringDataBufferService(redisTemplate, wal, properties,
+                new BufferFrameProperties(), new MonitoringDataFlushProperties());
+
+        bufferService.saveRadiationDataToBuffer(radiation("RAD001", 1));
+        bufferService.saveRadiationDataBatchToBuffer(List.of(radiation("RAD002", 2), radiation("RAD003", 3)));
+
+        // 失败后redisRetryIntervalMs内不再尝试Redis
+        assertEquals(1, redisCalls.size());
+        wal.replay();
+        assertEquals(List.of("RAD001", "RAD002", "RAD003"),
+                savedRadiation.stream().map(RadiationDeviceData::getDeviceCode).toList());
+    }
+
+    private MonitoringDataWal newWal() throws IOException {
+        // 模拟批次标识与数据在同一事务中记录：写入失败时不记录
+        MonitoringDataBatchWriter batchWriter = new MonitoringDataBatchWriter(null, disabledRollups(null)) {
+            @Override
+            public int insertRadiationData(List<RadiationDeviceData> dataList, String batchId) {
+                if (writeFailures-- > 0 || savedRadiation.size() + dataList.size() > acceptLimit) {
+                    throw new IllegalStateException("database unavailable");
+                }
+                if (!appliedBatches.add(batchId)) {
+                    return ALREADY_APPLIED;
+                }
+                savedRadiation.addAll(dataList);
+                return dataList.size();
+            }
+
+            @Override
+            public int insertEnvironmentData(List<EnvironmentDeviceData> dataList, String batchId) {
+                if (environmentFailures-- > 0) {
+                    throw new IllegalStateException("database unavailable");
+                }
+                if (!appliedBatches.add(batchId)) {
+                    return ALREADY_APPLIED;
+                }
+                savedEnvironment.addAll(dataList);
+                return dataList.size();
+            }
+        };
+        MonitoringDataWal newWal = new MonitoringDataWal(properties, batchWriter, objectMapper, new SimpleMeterRegistry());
+        newWal.open();
+        return newWal;
+    }
+
+    private RadiationDeviceData radiation(String deviceCode, int second) {
+        RadiationDeviceData data = new RadiationDeviceData();
+        data.setDeviceCode(deviceCode);
+        data.setCpm((double) second);
+        data.setRecordTime(LocalDateTime.of(2025, 1, 15, 14, 30, second));
+        return data;
+    }
+
+    private long segmentFiles() throws IOException {
+        return segmentPaths().size();
+    }
+
+    private List<Path> segmentPaths() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(path -> path.toString().endsWith(".wal")).sorted().toList();
+        }
+    }
+
+    /**
+     * 关闭汇总的汇总表仓库（不写汇总表，不使用事务管理器）
+     */
+    private static MonitoringDataRollupRepository disabledRollups(JdbcTemplate jdbcTemplate) {
+        MonitoringDataRollupProperties properties = new MonitoringDataRollupProperties();
+        properties.setEnabled(false);
+        return new MonitoringDataRollupRepository(jdbcTemplate, null, properties);
+    }
+}
@@ -0,0 +1,109 @@
+package com.cdutetc.ems.service;
+
+import com.cdutetc.ems.service.SeriesDownsampler.Mode;
+import com.cdutetc.ems.service.SeriesDownsampler.Point;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * SeriesDownsampler单元测试
+ *
+ * 测试目标:
+ * 1. 返回点数不超过points，时间升序
+ * 2. LTTB保留首尾读数和尖峰
+ * 3. MINMAX保留全局最小值和最大值
+ * 4. 读数少于桶数时原样返回
+ *
+ * @author EMS Team
+ */
+class SeriesDownsamplerTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2025, 1, 1, 0, 0);
+    private static final LocalDateTime END = START.plusDays(30);
+    private static final int READINGS = 43200;
+
+    @Test
+    void testLttbKeepsEndpointsAndSpike() {
+        SeriesDownsampler downsampler = SeriesDownsampler.create(Mode.LTTB, START, END, 200);
+        feed(downsampler);
+
+        List<Point> points = downsampler.finish();
+
+        assertTrue(points.size() <= 200, "points=" + points.size());
+        assertTrue(points.size() > 150, "points=" + points.size());
+        assertAscending(points);
+        assertEquals(new Point(START, value(0)), points.get(0));
+        assertEquals(new Point(time(READINGS - 1), value(READINGS - 1)), points.get(points.size() - 1));
+        assertTrue(points.contains(new Point(time(20000), 1000.0)), "尖峰应被保留");
+    }
+
+    @Test
+    void testMinMaxKeepsExtremes() {
+        SeriesDownsampler downsampler = SeriesDownsampler.create(Mode.MINMAX, START, END, 200);
+        feed(downsampler);
+
+        List<Point> points = downsampler.finish();
+
+        assertTrue(points.size() <= 200, "points=" + points.size());
+        assertAscending(points);
+        assertTrue(points.contains(new Point(time(20000), 1000.0)), "最大值应被保留");
+        assertTrue(points.contains(new Point(time(30000), -1000.0)), "最小值应被保留");
+    }
+
+    @Test
+    void testSparseReadingsReturnedUnchanged() {
+        for (Mode mode : Mode.values()) {
+            SeriesDownsampler downsampler = SeriesDownsampler.create(mode, START, END, 500);
+            List<Point> expected = List.of(
+                    new Point(START, 1.0),
+                    new Point(START.plusDays(3), 5.0),
+                    new Point(START.plusDays(10), 2.0),
+                    new Point(START.plusDays(20), 8.0),
+                    new Point(END, 3.0));
+            expected.forEach(point -> downsampler.add(point.time(), point.value()));
+
+            assertEquals(expected, downsampler.finish(), mode.name());
+        }
+        assertTrue(SeriesDownsampler.create(Mode.LTTB, START, END, 500).finish().isEmpty());
+    }
+
+    @Test
+    void testModeOf() {
+        assertEquals(Mode.MINMAX, Mode.of("minmax"));
+        assertEquals(Mode.LTTB, Mode.of("LTTB"));
+        assertThrows(IllegalArgumentException.class, () -> Mode.of("average"));
+    }
+
+    /**
+     * 30天每分钟一个读数: 正弦曲线 + 一个尖峰 + 一个低谷
+     */
+    private static void feed(SeriesDownsampler downsampler) {
+        for (int i = 0; i < READINGS; i++) {
+            downsampler.add(time(i), value(i));
+        }
+    }
+
+    private static LocalDateTime time(int i) {
+        return START.plusMinutes(i);
+    }
+
+    private static double value(int i) {
+        if (i == 20000) {
+            return 1000.0;
+        }
+        if (i == 30000) {
+            return -1000.0;
+        }
+        return 100 * Math.sin(i / 720.0);
+    }
+
+    private static void assertAscending(List<Point> points) {
+        for (int i = 1; i < points.size(); i++) {
+            assertFalse(points.get(i).time().isBefore(points.get(i - 1).time()), "index " + i);
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package com.cdutetc.ems.service;
+
+import com.cdutetc.ems.config.TimeSeriesPartitionProperties;
+import com.cdutetc.ems.config.TimeSeriesPartitionProperties.Granularity;
+import com.cdutetc.ems.service.TimeSeriesPartitionManager.Partition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TimeSeriesPartitionManager单元测试
+ *
+ * 测试目标:
+ * 1. 新建的空表转换为分区表，分区覆盖当前月份和提前创建的月份
+ * 2. 已有数据的表默认不自动转换，非MySQL数据库不做处理
+ * 3. 已分区的表从pmax拆出缺少的分区
+ * 4. 过期数据按分区边界整分区删除
+ * 5. 按天分区的命名和information_schema上界解析
+ * 6. 分区变更在命名锁内执行，其他节点持有锁时跳过；导出后记录数变化时放弃删除分区
+ *
+ * @author EMS Team
+ */
+class TimeSeriesPartitionManagerTest {
+
+    private static final String TABLE = "ems_radiation_device_data";
+    private static final LocalDateTime NOW = LocalDateTime.of(2025, 1, 15, 14, 30);
+
+    private final List<String> executed = new ArrayList<>();
+    private final List<Partition> partitions = new ArrayList<>();
+    private String product = "MySQL";
+    private int rows;
+    private LocalDateTime earliest;
+    private final List<String> locks = new ArrayList<>();
+    private boolean lockAvailable = true;
+
+    private TimeSeriesPartitionProperties properties;
+    private TimeSeriesPartitionManager manager;
+
+    @BeforeEach
+    void setUp() {
+        properties = new TimeSeriesPartitionProperties();
+        properties.setTables(List.of(TABLE));
+        Connection connection = connection();
+        JdbcTemplate jdbcTemplate = new JdbcTemplate() {
+            @Override
+            public <T> T execute(ConnectionCallback<T> action) {
+                try {
+                    return action.doInConnection(connection);
+                } catch (SQLException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+
+            @Override
+            public void execute(String sql) {
+                executed.add(sql);
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public <T> List<T> query(String sql, RowMapper<T> rowMapper, Object... args) {
+                return (List<T>) List.copyOf(partitions);
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public <T> T queryForObject(String sql, Class<T> requiredType) {
+                if (sql.startsWith("SELECT MIN")) {
+                    return (T) earliest;
+                }
+                return (T) Integer.valueOf(rows);
+            }
+        };
+        manager = new TimeSeriesPartitionManager(jdbcTemplate, properties);
+    }
+
+    @Test
+    void testConvertsEmptyTable() {
+        manager.maintain(NOW);
+
+        assertEquals(List.of("ALTER TABLE ems_radiation_device_data DROP PRIMARY KEY, ADD PRIMARY KEY (id, record_time) "
+                + "PARTITION BY RANGE COLUMNS(record_time) ("
+                + "PARTITION p202501 VALUES LESS THAN ('2025-02-01 00:00:00'), "
+                + "PARTITION p202502 VALUES LESS THAN ('2025-03-01 00:00:00'), "
+                + "PARTITION p202503 VALUES LESS THAN ('2025-04-01 00:00:00'), "
+                + "PARTITION p202504 VALUES LESS THAN ('2025-05-01 00:00:00'), "
+                + "PARTITION pmax VALUES LESS THAN (MAXVALUE))"), executed);
+    }
+
+    @Test
+    void testSkipsTableWithDataUnlessConversionEnabled() {
+        rows = 1;
+        earliest = LocalDateTime.of(2024, 11, 3, 8, 0);
+        manager.maintain(NOW);
+        assertTrue(executed.isEmpty());
+
+        product = "H2";
+        properties.setConvertExisting(true);
+        new TimeSeriesPartitionManager(new JdbcTemplate() {
+            @Override
+            public <T> T execute(ConnectionCallback<T> action) {
+                try {
+                    return action.doInConnection(connection());
+                } catch (SQLException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }, properties).maintain(NOW);
+        assertTrue(executed.isEmpty());
+
+        // 已有数据：从最早数据所在月份开始建分区
+        manager.maintain(NOW);
+        assertEquals(1, executed.size());
+        assertTrue(executed.get(0).contains("(PARTITION p202411 VALUES LESS THAN ('2024-12-01 00:00:00'), "));
+    }
+
+    @Test
+    void testReorganizesCatchAllPartition() {
+        partitions.add(new Partition("p202501", LocalDateTime.of(2025, 2, 1, 0, 0)));
+        partitions.add(new Partition("p202502", LocalDateTime.of(2025, 3, 1, 0, 0)));
+        partitions.add(new Partition("pmax", null));
+
+        manager.maintain(NOW);
+
+        assertEquals(List.of("ALTER TABLE ems_radiation_device_data REORGANIZE PARTITION pmax INTO ("
+                + "PARTITION p202503 VALUES LESS THAN ('2025-04-01 00:00:00'), "
+                + "PARTITION p202504 VALUES LESS THAN ('2025-05-01 00:00:00'), "
+                + "PARTITION pmax VALUES LESS THAN (MAXVALUE))"), executed);
+
+        // 分区已齐全时不做修改
+        executed.clear();
+        partitions.add(2, new Partition("p202503", LocalDateTime.of(2025, 4, 1, 0, 0)));
+        partitions.add(3, new Partition("p202504", LocalDateTime.of(2025, 5, 1, 0, 0)));
+        manager.maintain(NOW);
+        assertTrue(executed.isEmpty());
+    }
+
+    @Test
+    void testDropsExpiredPartitions() {
+        partitions.add(new Partition("p202410", LocalDateTime.of(2024, 11, 1, 0, 0)));
+        partitions.add(new Partition("p202411", LocalDateTime.of(2024, 12, 1, 0, 0)));
+        partitions.add(new Partition("p202412", LocalDateTime.of(2025, 1, 1, 0, 0)));
+        partitions.add(new Partition("pmax", null));
+        rows = 42;
+
+        assertTrue(manager.isPartitioned(TABLE));
+        LocalDateTime boundary = manager.retentionBoundary(TABLE, LocalDateTime.of(2024, 12, 15, 3, 0));
+        assertEquals(LocalDateTime.of(2024, 12, 1, 0, 0), boundary);
+        assertEquals(42, manager.countPartitionsBefore(TABLE, boundary));
+        assertEquals(42, manager.dropPartitionsBefore(TABLE, boundary, 42));
+        assertEquals(List.of("ALTER TABLE ems_radiation_device_data DROP PARTITION p202410, p202411"), executed);
+
+        assertNull(manager.retentionBoundary(TABLE, LocalDateTime.of(2024, 10, 31, 0, 0)));
+    }
+
+    @Test
+    void testKeepsPartitionsChangedAfterExport() {
+        partitions.add(new Partition("p202410", LocalDateTime.of(2024, 11, 1, 0, 0)));
+        partitions.add(new Partition("pmax", null));
+        rows = 43;
+
+        // 导出42条后又写入了补传数据：不删除分区
+        assertThrows(IllegalStateException.class,
+                () -> manager.dropPartitionsBefore(TABLE, LocalDateTime.of(2024, 11, 1, 0, 0), 42));
+        assertTrue(executed.isEmpty());
+    }
+
+    @Test
+    void testMaintenanceSerializedByNamedLock() {
+        partitions.add(new Partition("p202501", LocalDateTime.of(2025, 2, 1, 0, 0)));
+        partitions.add(new Partition("pmax", null));
+
+        // 其他节点持有锁：跳过本次维护
+        lockAvailable = false;
+        manager.maintain(NOW);
+        assertTrue(executed.isEmpty());
+        assertEquals(List.of("SELECT GET_LOCK(CONCAT(DATABASE(), '.ems_partition_maintenance'), ?) [0]"), locks);
+
+        locks.clear();
+        lockAvailable = true;
+        manager.maintain(NOW);
+        assertEquals(1, executed.size());
+        assertEquals(List.of("SELECT GET_LOCK(CONCAT(DATABASE(), '.ems_partition_maintenance'), ?) [0]",
+                "SELECT RELEASE_LOCK(CONCAT(DATABASE(), '.ems_partition_maintenance')) []"), locks);
+    }
+
+    @Test
+    void testDailyPartitionsAndBoundParsing() {
+        String sql = TimeSeriesPartitionManager.reorganizeSql(TABLE,
+                LocalDateTime.of(2025, 1, 31, 0, 0), LocalDateTime.of(2025, 2, 2, 0, 0), Granularity.DAY);
+        assertTrue(sql.contains("PARTITION p20250131 VALUES LESS THAN ('2025-02-01 00:00:00'), "
+                + "PARTITION p20250201 VALUES LESS THAN ('2025-02-02 00:00:00'), PARTITION pmax"));
+
+        assertEquals(LocalDateTime.of(2025, 2, 1, 0, 0),
+                TimeSeriesPartitionManager.parseBound("'2025-02-01 00:00:00'"));
+        assertNull(TimeSeriesPartitionManager.parseBound("MAXVALUE"));
+    }
+
+    /**
+     * 模拟连接：数据库产品名取product，GET_LOCK按lockAvailable返回，锁语句记录到locks
+     */
+    private Connection connection() {
+        DatabaseMetaData metaData = proxy(DatabaseMetaData.class, (method, args) ->
+                "getDatabaseProductName".equals(method.getName()) ? product : null);
+        return proxy(Connection.class, (method, args) -> {
+            if ("getMetaData".equals(method.getName())) {
+                return metaData;
+            }
+            if (!"prepareStatement".equals(method.getName())) {
+                return null;
+            }
+            String sql = (String) args[0];
+            List<Object> parameters = new ArrayList<>();
+            ResultSet resultSet = proxy(ResultSet.class, (rsMethod, rsArgs) -> switch (rsMethod.getName()) {
+                case "next" -> true;
+                case "getInt" -> sql.contains("GET_LOCK") && !lockAvailable ? 0 : 1;
+                default -> null;
+            });
+            return proxy(PreparedStatement.class, (psMethod, psArgs) -> switch (psMethod.getName()) {
+                case "setObject" -> {
+                    parameters.add(psArgs[1]);
+                    yield null;
+                }
+                case "executeQuery" -> {
+                    locks.add(sql + " " + parameters);
+                    yield resultSet;
+                }
+                default -> null;
+            });
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T proxy(Class<T> type, BiFunction<Method, Object[], Object> handler) {
+        return (T) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> handler.apply(method, args));
+    }
+}
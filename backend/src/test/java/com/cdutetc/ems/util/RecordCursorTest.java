@@ -0,0 +1,41 @@
+package com.cdutetc.ems.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * RecordCursor单元测试
+ *
+ * @author EMS Team
+ */
+class RecordCursorTest {
+
+    @Test
+    void testEncodeDecodeRoundTrip() {
+        RecordCursor cursor = new RecordCursor(LocalDateTime.of(2025, 3, 1, 12, 30, 15, 123456000), 987654321L);
+
+        String encoded = cursor.encode();
+
+        assertTrue(encoded.matches("[A-Za-z0-9_-]+"), encoded);
+        assertEquals(cursor, RecordCursor.decode(encoded));
+    }
+
+    @Test
+    void testFirstPage() {
+        LocalDateTime endTime = LocalDateTime.of(2025, 3, 1, 0, 0);
+
+        assertEquals(new RecordCursor(endTime, Long.MAX_VALUE), RecordCursor.first(endTime));
+        assertEquals(new RecordCursor(RecordCursor.LATEST, Long.MAX_VALUE), RecordCursor.first(null));
+    }
+
+    @Test
+    void testDecodeInvalidCursor() {
+        assertThrows(IllegalArgumentException.class, () -> RecordCursor.decode("not a cursor"));
+        assertThrows(IllegalArgumentException.class, () -> RecordCursor.decode("MjAyNQ"));
+        assertThrows(IllegalArgumentException.class, () -> RecordCursor.decode(
+                new RecordCursor(LocalDateTime.of(2025, 1, 1, 0, 0), 1L).encode().substring(3)));
+    }
+}